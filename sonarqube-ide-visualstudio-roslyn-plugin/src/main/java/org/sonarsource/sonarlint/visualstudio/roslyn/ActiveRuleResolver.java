@@ -0,0 +1,107 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.rule.RuleKey;
+
+/**
+ * Resolves the rule ids of the issues to the keys of the active rules during one sensor execution.
+ * A response has thousands of issues for a few dozen rules, so the resolution of each distinct rule id is cached:
+ * once cached, resolving a rule id is a single lookup that does not allocate.
+ */
+public class ActiveRuleResolver {
+  private static final Resolution INACTIVE = new Resolution(null);
+  private static final Resolution MALFORMED = new Resolution(null);
+  private final Set<RuleKey> activeRuleKeys = new HashSet<>();
+  private final Map<String, Resolution> resolutionsByRuleId = new ConcurrentHashMap<>();
+  private final AtomicInteger malformedRuleIdCount = new AtomicInteger();
+  private final AtomicInteger inactiveRuleIdCount = new AtomicInteger();
+
+  /**
+   * @param activeRules the rules sent to the server with the analysis request
+   */
+  public ActiveRuleResolver(Collection<ActiveRule> activeRules) {
+    for (var activeRule : activeRules) {
+      activeRuleKeys.add(activeRule.ruleKey());
+    }
+  }
+
+  /**
+   * @return the key of the rule, or null if the rule is not active or if the rule id is not of the form {@code repository:rule}
+   */
+  @CheckForNull
+  public RuleKey resolve(@Nullable String ruleId) {
+    if (ruleId == null) {
+      malformedRuleIdCount.incrementAndGet();
+      return null;
+    }
+    var resolution = resolutionsByRuleId.get(ruleId);
+    if (resolution == null) {
+      resolution = resolutionsByRuleId.computeIfAbsent(ruleId, this::computeResolution);
+    }
+    if (resolution == MALFORMED) {
+      malformedRuleIdCount.incrementAndGet();
+    } else if (resolution == INACTIVE) {
+      inactiveRuleIdCount.incrementAndGet();
+    }
+    return resolution.activeRuleKey();
+  }
+
+  /**
+   * @return the number of issues skipped so far because of a malformed rule id
+   */
+  public int getMalformedRuleIdCount() {
+    return malformedRuleIdCount.get();
+  }
+
+  /**
+   * @return the number of issues skipped so far because their rule is not active
+   */
+  public int getInactiveRuleIdCount() {
+    return inactiveRuleIdCount.get();
+  }
+
+  private Resolution computeResolution(String ruleId) {
+    var separator = ruleId.indexOf(':');
+    if (separator <= 0) {
+      return MALFORMED;
+    }
+    // same parts as ruleId.split(":")[0] and [1]
+    var ruleEnd = ruleId.indexOf(':', separator + 1);
+    var rule = ruleId.substring(separator + 1, ruleEnd < 0 ? ruleId.length() : ruleEnd);
+    if (rule.isEmpty()) {
+      return MALFORMED;
+    }
+    var ruleKey = RuleKey.of(ruleId.substring(0, separator), rule);
+    return activeRuleKeys.contains(ruleKey) ? new Resolution(ruleKey) : INACTIVE;
+  }
+
+  private record Resolution(@Nullable RuleKey activeRuleKey) {
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+/**
+ * Files per request, concurrent requests and timeout per request of one analysis, a value that is not positive meaning no limit.
+ */
+public record AnalysisBatching(int maxFilesPerBatch, int maxParallelBatches, int batchTimeoutSeconds) {
+  // all files in a single request by default, batching is enabled with the hidden properties
+  public static final int DEFAULT_MAX_FILES_PER_BATCH = 0;
+  public static final int DEFAULT_MAX_PARALLEL_BATCHES = 4;
+  // no timeout by default, a long analysis is stopped by cancelling it from the IDE
+  public static final int DEFAULT_BATCH_TIMEOUT_SECONDS = 0;
+  public static final AnalysisBatching DEFAULT = new AnalysisBatching(DEFAULT_MAX_FILES_PER_BATCH, DEFAULT_MAX_PARALLEL_BATCHES, DEFAULT_BATCH_TIMEOUT_SECONDS);
+  public static final AnalysisBatching SINGLE_REQUEST = new AnalysisBatching(0, 1);
+
+  public AnalysisBatching {
+    maxFilesPerBatch = orUnlimited(maxFilesPerBatch);
+    maxParallelBatches = orUnlimited(maxParallelBatches);
+    batchTimeoutSeconds = orUnlimited(batchTimeoutSeconds);
+  }
+
+  public AnalysisBatching(int maxFilesPerBatch, int maxParallelBatches) {
+    this(maxFilesPerBatch, maxParallelBatches, DEFAULT_BATCH_TIMEOUT_SECONDS);
+  }
+
+  private static int orUnlimited(int limit) {
+    return limit > 0 ? limit : Integer.MAX_VALUE;
+  }
+}
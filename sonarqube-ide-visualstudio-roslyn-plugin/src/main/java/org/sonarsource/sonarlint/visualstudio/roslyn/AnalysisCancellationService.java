@@ -20,24 +20,69 @@
 package org.sonarsource.sonarlint.visualstudio.roslyn;
 
 import org.sonar.api.Startable;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 import org.sonarsource.api.sonarlint.SonarLintSide;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Polls the running analyses for cancellation. A single ticker thread sweeps the registry of the live trackers every
+ * {@link #SWEEP_INTERVAL_MS} ms, and removes the ones that are completed, so that the cost does not depend on the number of
+ * concurrent analyses beyond one call per tracker and sweep.
+ */
 @SonarLintSide(lifespan = SonarLintSide.INSTANCE)
 public class AnalysisCancellationService implements Startable {
-  private final ScheduledExecutorService scheduledExecutorService;
+  private static final Logger LOG = Loggers.get(AnalysisCancellationService.class);
+  static final long SWEEP_INTERVAL_MS = 100;
+  private static final String TICKER_THREAD_NAME = "sqvs-roslyn-cancellation-ticker";
+  private final Set<AnalysisTracker> trackers = ConcurrentHashMap.newKeySet();
+  private final ScheduledExecutorService ticker;
 
   public AnalysisCancellationService() {
-    scheduledExecutorService = Executors.newScheduledThreadPool(5);
+    this(Executors.newSingleThreadScheduledExecutor(runnable -> {
+      var thread = new Thread(runnable, TICKER_THREAD_NAME);
+      thread.setDaemon(true);
+      return thread;
+    }));
+  }
+
+  AnalysisCancellationService(ScheduledExecutorService ticker) {
+    this.ticker = ticker;
+    ticker.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
   }
 
   public void registerAnalysis(AnalysisTracker analysisTracker) {
-    AnalysisPollingRunnable task = new AnalysisPollingRunnable(analysisTracker);
-    task.selfFuture = scheduledExecutorService.scheduleAtFixedRate(task, 100, 100, TimeUnit.MILLISECONDS);
+    if (ticker.isShutdown()) {
+      throw new RejectedExecutionException("The analysis cancellation service is stopped.");
+    }
+    trackers.add(analysisTracker);
+  }
+
+  int getRegisteredAnalysisCount() {
+    return trackers.size();
+  }
+
+  void sweep() {
+    trackers.removeIf(AnalysisCancellationService::cancelIfNeeded);
+  }
+
+  /**
+   * @return true if the tracker does not need to be polled anymore
+   */
+  private static boolean cancelIfNeeded(AnalysisTracker analysisTracker) {
+    try {
+      return analysisTracker.cancelIfNeeded();
+    } catch (RuntimeException e) {
+      // an exception would stop the periodic sweep for all trackers
+      LOG.error("Failed to check the cancellation of analysis {}: {}", analysisTracker.getAnalysisId(), e.getMessage(), e);
+      return true;
+    }
   }
 
   @Override
@@ -47,22 +92,7 @@ public class AnalysisCancellationService implements Startable {
 
   @Override
   public void stop() {
-    scheduledExecutorService.shutdownNow();
-  }
-
-  private static class AnalysisPollingRunnable implements Runnable{
-    private final AnalysisTracker analysisCompletion;
-    ScheduledFuture<?> selfFuture;
-
-    public AnalysisPollingRunnable(AnalysisTracker analysisCompletion) {
-      this.analysisCompletion = analysisCompletion;
-    }
-
-    @Override
-    public void run() {
-      if (analysisCompletion.cancelIfNeeded()) {
-        selfFuture.cancel(false);
-      }
-    }
+    ticker.shutdownNow();
+    trackers.clear();
   }
 }
@@ -0,0 +1,62 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.util.Locale;
+import org.sonar.api.batch.fs.InputFile;
+
+/**
+ * The files of an analysis are sent in separate requests per lane, each with the rules of its own repository only: the analyzers of a
+ * language never apply to the files of the other one. The Razor files are in their own lanes, so that the results of the other files
+ * do not wait for the compilation of the code generated from the Razor files.
+ */
+public enum AnalysisLane {
+  CSHARP(CSharpLanguage.REPOSITORY_KEY),
+  VBNET(VbNetLanguage.REPOSITORY_KEY),
+  CSHARP_RAZOR(CSharpLanguage.REPOSITORY_KEY),
+  VBNET_RAZOR(VbNetLanguage.REPOSITORY_KEY);
+
+  private static final String RAZOR_COMPONENT_EXTENSION = "razor";
+  private final String repositoryKey;
+
+  AnalysisLane(String repositoryKey) {
+    this.repositoryKey = repositoryKey;
+  }
+
+  public String getRepositoryKey() {
+    return repositoryKey;
+  }
+
+  public static AnalysisLane of(InputFile inputFile) {
+    var filename = inputFile.filename().toLowerCase(Locale.ROOT);
+    if (hasExtension(filename, VbNetLanguage.RAZOR_EXTENSION)) {
+      return VBNET_RAZOR;
+    }
+    // the Razor components are C# only, and their code is generated by the same Razor compiler as the one of the views
+    if (hasExtension(filename, CSharpLanguage.RAZOR_EXTENSION) || hasExtension(filename, RAZOR_COMPONENT_EXTENSION)) {
+      return CSHARP_RAZOR;
+    }
+    return VbNetLanguage.LANGUAGE_KEY.equals(inputFile.language()) ? VBNET : CSHARP;
+  }
+
+  private static boolean hasExtension(String filename, String extension) {
+    return filename.endsWith("." + extension);
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.rule.ActiveRule;
+
+/**
+ * The files of one {@link AnalysisLane}, with the active rules of its repository. The partitions of an analysis are analyzed concurrently.
+ *
+ * @param firstFileId the position of the first file of the partition in the files of the analysis, see {@link InputFileIndex}
+ */
+public record AnalysisPartition(AnalysisLane lane, List<URI> fileUris, int firstFileId, Collection<ActiveRule> activeRules) {
+
+  /**
+   * @return the files in the order of their lanes, so that the files of each partition are contiguous
+   */
+  public static List<InputFile> sortByLane(Collection<InputFile> inputFiles) {
+    var inputFilesByLane = new EnumMap<AnalysisLane, List<InputFile>>(AnalysisLane.class);
+    for (var inputFile : inputFiles) {
+      inputFilesByLane.computeIfAbsent(AnalysisLane.of(inputFile), lane -> new ArrayList<>()).add(inputFile);
+    }
+    var result = new ArrayList<InputFile>(inputFiles.size());
+    // in the order of the lanes, the files of a lane keeping their order
+    inputFilesByLane.values().forEach(result::addAll);
+    return result;
+  }
+
+  /**
+   * @param inputFiles the files of the analysis, sorted by {@link #sortByLane(Collection)}
+   * @param fileUris the URIs of the same files, in the same order
+   * @return the partitions of the lanes that have files, in the order of the lanes
+   */
+  public static List<AnalysisPartition> of(List<InputFile> inputFiles, List<URI> fileUris, Collection<ActiveRule> activeRules) {
+    var activeRulesByRepository = new HashMap<String, List<ActiveRule>>();
+    for (var activeRule : activeRules) {
+      activeRulesByRepository.computeIfAbsent(activeRule.ruleKey().repository(), key -> new ArrayList<>()).add(activeRule);
+    }
+    var result = new ArrayList<AnalysisPartition>();
+    var from = 0;
+    while (from < inputFiles.size()) {
+      var lane = AnalysisLane.of(inputFiles.get(from));
+      var to = from + 1;
+      while (to < inputFiles.size() && AnalysisLane.of(inputFiles.get(to)) == lane) {
+        to++;
+      }
+      result.add(new AnalysisPartition(lane, fileUris.subList(from, to), from, activeRulesByRepository.getOrDefault(lane.getRepositoryKey(), List.of())));
+      from = to;
+    }
+    return result;
+  }
+}
@@ -19,9 +19,6 @@
  */
 package org.sonarsource.sonarlint.visualstudio.roslyn;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonarsource.api.sonarlint.SonarLintSide;
@@ -29,24 +26,18 @@ import org.sonarsource.api.sonarlint.SonarLintSide;
 @SonarLintSide
 public class AnalysisPropertiesProvider {
 
-  private static final List<String> settingsKeysToExclude = List.of("sonar.cs.internal.shouldUseCsharpEnterprise", "sonar.cs.internal.shouldUseVbEnterprise");
   private final SensorContext context;
+  private final ConfigurationSnapshotProvider configurationSnapshotProvider;
 
-  public AnalysisPropertiesProvider(SensorContext context) {
+  public AnalysisPropertiesProvider(SensorContext context, ConfigurationSnapshotProvider configurationSnapshotProvider) {
     this.context = context;
+    this.configurationSnapshotProvider = configurationSnapshotProvider;
   }
 
+  /**
+   * @return the analysis properties of the {@link ConfigurationSnapshot} of the settings, which cannot be modified
+   */
   public Map<String, String> getAnalysisProperties() {
-    var settings = context.settings();
-
-    var settingsKeys = new ArrayList<String>();
-    settingsKeys.addAll(settings.getKeysStartingWith(SqvsRoslynPluginPropertyDefinitions.PROP_PREFIX + CSharpLanguage.LANGUAGE_KEY));
-    settingsKeys.addAll(settings.getKeysStartingWith(SqvsRoslynPluginPropertyDefinitions.PROP_PREFIX + VbNetLanguage.LANGUAGE_KEY));
-    settingsKeys.removeIf(settingsKeysToExclude::contains);
-
-    var analysisProperties = new HashMap<String, String>();
-    settingsKeys.forEach(settingsKey -> analysisProperties.put(settingsKey, settings.getString(settingsKey)));
-
-    return analysisProperties;
+    return configurationSnapshotProvider.get(context.settings()).getAnalysisProperties();
   }
 }
@@ -20,19 +20,41 @@
 package org.sonarsource.sonarlint.visualstudio.roslyn;
 
 import org.sonar.api.batch.sensor.SensorContext;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 import org.sonarsource.sonarlint.visualstudio.roslyn.http.HttpAnalysisRequestHandler;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+import javax.annotation.CheckForNull;
 
 public class AnalysisTrackerImpl implements AnalysisTracker {
+  private static final Logger LOG = Loggers.get(AnalysisTrackerImpl.class);
   private final UUID analysisId;
+  private final List<UUID> batchIds = new CopyOnWriteArrayList<>();
   private boolean isCompleted;
+  private boolean isCancelled;
   private SensorContext sensorContext;
   private final HttpAnalysisRequestHandler handler;
+  private CompletableFuture<?> analysis;
+  private final LongSupplier nanoTime;
+  // the last time the sensor was seen not cancelled, so that the cancellation latency includes the time needed to detect it
+  private volatile long notCancelledNanos;
+  private volatile Duration cancellationLatency;
 
   public AnalysisTrackerImpl(SensorContext sensorContext, HttpAnalysisRequestHandler handler, AnalysisCancellationService analysisCancellationService) {
+    this(sensorContext, handler, analysisCancellationService, System::nanoTime);
+  }
+
+  AnalysisTrackerImpl(SensorContext sensorContext, HttpAnalysisRequestHandler handler, AnalysisCancellationService analysisCancellationService, LongSupplier nanoTime) {
     this.sensorContext = sensorContext;
     this.handler = handler;
+    this.nanoTime = nanoTime;
+    this.notCancelledNanos = nanoTime.getAsLong();
     this.analysisId = UUID.randomUUID();
     analysisCancellationService.registerAnalysis(this);
   }
@@ -42,19 +64,77 @@ public class AnalysisTrackerImpl implements AnalysisTracker {
     return analysisId;
   }
 
+  /**
+   * @return the id of one more request of the analysis, when its files are sent in several batches. The server is asked to cancel
+   * the requests of all batches when the analysis is cancelled.
+   */
+  public UUID newBatchId() {
+    var batchId = UUID.randomUUID();
+    batchIds.add(batchId);
+    return batchId;
+  }
+
+  /**
+   * The given future is cancelled as soon as the analysis is, which aborts its requests in flight without waiting for the server
+   * to answer the cancel requests. It is cancelled at once if the analysis already is.
+   */
+  public void abortOnCancel(CompletableFuture<?> analysis) {
+    synchronized (this) {
+      this.analysis = analysis;
+      if (!isCancelled) {
+        return;
+      }
+    }
+    analysis.cancel(true);
+  }
+
   @Override
-  public synchronized boolean cancelIfNeeded() {
-    if (isCompleted) {
-      return true;
+  public boolean cancelIfNeeded() {
+    synchronized (this) {
+      if (isCompleted) {
+        return true;
+      }
+      if (!sensorContext.isCancelled()) {
+        notCancelledNanos = nanoTime.getAsLong();
+        return false;
+      }
     }
+    // outside of the lock, as aborting the analysis runs its completion callbacks
+    cancel();
+    return true;
+  }
 
-    if (sensorContext.isCancelled()) {
-      handler.cancelAnalysis(analysisId);
+  /**
+   * Aborts the requests in flight at once, then asks the server to stop analyzing the files of all batches.
+   * Does nothing if the analysis is already completed.
+   */
+  public void cancel() {
+    CompletableFuture<?> abortedAnalysis;
+    synchronized (this) {
+      if (isCompleted) {
+        return;
+      }
+      abortedAnalysis = analysis;
+      isCancelled = true;
       setCompletedState();
-      return true;
     }
+    // outside of the lock, as aborting the analysis runs its completion callbacks, and sending the cancel requests waits for the HTTP client
+    if (abortedAnalysis != null) {
+      abortedAnalysis.cancel(true);
+    }
+    cancellationLatency = Duration.ofNanos(nanoTime.getAsLong() - notCancelledNanos);
+    handler.cancelAnalysis(analysisId);
+    batchIds.forEach(handler::cancelAnalysis);
+    LOG.debug("Analysis {} cancelled, its requests were aborted at most {} ms after the cancellation.", analysisId, cancellationLatency.toMillis());
+  }
 
-    return false;
+  /**
+   * @return the time between the last check that found the sensor not cancelled and the abort of the requests in flight, which bounds the
+   * time between the cancellation and the abort, or null if the analysis was not cancelled
+   */
+  @CheckForNull
+  Duration getCancellationLatency() {
+    return cancellationLatency;
   }
 
   @Override
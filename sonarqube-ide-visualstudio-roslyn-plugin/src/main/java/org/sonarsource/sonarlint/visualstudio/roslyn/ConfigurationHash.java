@@ -0,0 +1,75 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.AnalyzerInfoDto;
+
+/**
+ * Hash of the configuration of an analysis: the active rules with their parameters, the analysis properties and the {@link AnalyzerInfoDto}.
+ * It does not depend on the iteration order of the rules, parameters and properties.
+ */
+public final class ConfigurationHash {
+
+  private ConfigurationHash() {
+  }
+
+  public static Hash128 of(Collection<ActiveRule> activeRules, Map<String, String> analysisProperties, AnalyzerInfoDto analyzerInfo) {
+    var builder = Hash128.builder();
+    var sortedActiveRules = new ArrayList<>(activeRules);
+    sortedActiveRules.sort(Comparator.comparing(activeRule -> activeRule.ruleKey().toString()));
+    builder.add(sortedActiveRules.size());
+    for (var activeRule : sortedActiveRules) {
+      builder.add(activeRule.ruleKey().toString());
+      addSorted(builder, activeRule.params());
+    }
+    addSorted(builder, analysisProperties);
+    return builder
+      .add(analyzerInfo.shouldUseCsharpEnterprise() ? 1 : 0)
+      .add(analyzerInfo.shouldUseVbEnterprise() ? 1 : 0)
+      .build();
+  }
+
+  /**
+   * Hash of the active rules with their parameters, in their iteration order: cheaper than sorting them, for the parts of a request that
+   * are encoded in that order. The same rules in another order only have another hash.
+   */
+  public static Hash128 ofActiveRulesInOrder(Collection<ActiveRule> activeRules) {
+    var builder = Hash128.builder().add(activeRules.size());
+    for (var activeRule : activeRules) {
+      builder.add(activeRule.ruleKey().toString());
+      var params = activeRule.params();
+      builder.add(params.size());
+      params.forEach((key, value) -> builder.add(key).add(value));
+    }
+    return builder.build();
+  }
+
+  private static void addSorted(Hash128.Builder builder, Map<String, String> values) {
+    var sortedValues = new TreeMap<>(values);
+    builder.add(sortedValues.size());
+    sortedValues.forEach((key, value) -> builder.add(key).add(value));
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.sonar.api.config.Settings;
+
+/**
+ * Immutable view of the analysis settings read by the plugin: the server port and token, and the analysis properties sent to the
+ * server, built by the {@link ConfigurationSnapshotProvider}.
+ */
+public final class ConfigurationSnapshot {
+  private static final List<String> SETTINGS_KEYS_TO_EXCLUDE = List.of("sonar.cs.internal.shouldUseCsharpEnterprise", "sonar.cs.internal.shouldUseVbEnterprise");
+  private final String serverPort;
+  private final String serverToken;
+  private final Map<String, String> analysisProperties;
+  private final Map<String, URI> serverUris = new ConcurrentHashMap<>();
+
+  private ConfigurationSnapshot(String serverPort, String serverToken, Map<String, String> analysisProperties) {
+    this.serverPort = serverPort;
+    this.serverToken = serverToken;
+    this.analysisProperties = analysisProperties;
+  }
+
+  public static ConfigurationSnapshot of(Settings settings) {
+    var settingsKeys = new ArrayList<String>();
+    settingsKeys.addAll(settings.getKeysStartingWith(SqvsRoslynPluginPropertyDefinitions.PROP_PREFIX + CSharpLanguage.LANGUAGE_KEY));
+    settingsKeys.addAll(settings.getKeysStartingWith(SqvsRoslynPluginPropertyDefinitions.PROP_PREFIX + VbNetLanguage.LANGUAGE_KEY));
+    settingsKeys.removeIf(SETTINGS_KEYS_TO_EXCLUDE::contains);
+
+    var analysisProperties = new HashMap<String, String>();
+    settingsKeys.forEach(settingsKey -> analysisProperties.put(settingsKey, settings.getString(settingsKey)));
+
+    return new ConfigurationSnapshot(
+      settings.getString(SqvsRoslynPluginPropertyDefinitions.getServerPort()),
+      settings.getString(SqvsRoslynPluginPropertyDefinitions.getServerToken()),
+      Collections.unmodifiableMap(analysisProperties));
+  }
+
+  public String getServerPort() {
+    return serverPort;
+  }
+
+  public String getServerToken() {
+    return serverToken;
+  }
+
+  /**
+   * @return the URI of the given endpoint of the server, parsed once per snapshot
+   */
+  public URI getServerUri(String path) {
+    return serverUris.computeIfAbsent(path, p -> URI.create(String.format("http://localhost:%s/%s", serverPort, p)));
+  }
+
+  /**
+   * The {@code sonar.cs.*} and {@code sonar.vbnet.*} settings, except the internal ones. The map is shared by the analyses and cannot be modified.
+   */
+  public Map<String, String> getAnalysisProperties() {
+    return analysisProperties;
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.util.concurrent.atomic.AtomicReference;
+import org.sonar.api.config.Settings;
+import org.sonarsource.api.sonarlint.SonarLintSide;
+
+/**
+ * Keeps the {@link ConfigurationSnapshot} of the last analysis settings, rebuilt when an analysis comes with other settings.
+ */
+@SonarLintSide(lifespan = SonarLintSide.INSTANCE)
+public class ConfigurationSnapshotProvider {
+  private final AtomicReference<SettingsSnapshot> lastSnapshot = new AtomicReference<>();
+
+  public ConfigurationSnapshot get(Settings settings) {
+    var last = lastSnapshot.get();
+    // the settings of an analysis are not modified once it started, comparing the instance is enough
+    if (last != null && last.settings() == settings) {
+      return last.snapshot();
+    }
+    var snapshot = ConfigurationSnapshot.of(settings);
+    lastSnapshot.set(new SettingsSnapshot(settings, snapshot));
+    return snapshot;
+  }
+
+  private record SettingsSnapshot(Settings settings, ConfigurationSnapshot snapshot) {
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Formats the counts reported once at the end of an analysis, such as the {@link DroppedLocationReport} and the issues skipped
+ * by the {@link IssueLimiter}: one line per key, the most frequent first, truncated after {@value #MAX_REPORTED_ENTRIES} lines.
+ */
+final class CountReport {
+  static final int MAX_REPORTED_ENTRIES = 20;
+
+  private CountReport() {
+  }
+
+  static long sum(Map<?, LongAdder> counts) {
+    return counts.values().stream().mapToLong(LongAdder::sum).sum();
+  }
+
+  static <K> String details(Map<K, LongAdder> counts) {
+    var details = new StringBuilder();
+    counts.entrySet().stream()
+      .sorted(Map.Entry.<K, LongAdder>comparingByValue(Comparator.comparingLong(LongAdder::sum)).reversed()
+        .thenComparing(entry -> entry.getKey().toString()))
+      .limit(MAX_REPORTED_ENTRIES)
+      .forEach(entry -> details.append(System.lineSeparator()).append("  ").append(entry.getKey()).append(": ").append(entry.getValue().sum()));
+    if (counts.size() > MAX_REPORTED_ENTRIES) {
+      details.append(System.lineSeparator()).append("  ... ").append(counts.size() - MAX_REPORTED_ENTRIES).append(" more");
+    }
+    return details.toString();
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Counts the issue locations dropped during one sensor execution because their text range does not fit in their file,
+ * which happens for all the issues of a file modified while it was being analyzed. Reported once, at the end of the analysis,
+ * instead of logging each dropped location.
+ */
+public class DroppedLocationReport {
+  private static final Logger LOG = Loggers.get(DroppedLocationReport.class);
+  private final Map<Entry, LongAdder> countsByEntry = new ConcurrentHashMap<>();
+
+  public void add(RuleKey ruleKey, InputFile inputFile) {
+    countsByEntry.computeIfAbsent(new Entry(ruleKey, inputFile), entry -> new LongAdder()).increment();
+  }
+
+  public long getDroppedLocationCount() {
+    return CountReport.sum(countsByEntry);
+  }
+
+  /**
+   * Logs the number of dropped locations per rule and per file, the most frequent first.
+   */
+  public void log() {
+    if (countsByEntry.isEmpty()) {
+      return;
+    }
+    LOG.warn("{} issue location(s) with a text range outside of their file were dropped:{}", getDroppedLocationCount(), CountReport.details(countsByEntry));
+  }
+
+  private record Entry(RuleKey ruleKey, InputFile inputFile) {
+    @Override
+    public String toString() {
+      return ruleKey + " in " + inputFile;
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.RoslynIssueSink;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueFlow;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueLocation;
+
+/**
+ * The files of an analysis sent in one request, with the rules of their partition. The server refers to the files of a request by
+ * their position in the request, so the file ids of the received issues are shifted by the position of the first file of the batch
+ * in the analysis.
+ */
+record FileBatch(Collection<URI> fileUris, int firstFileId, Collection<ActiveRule> activeRules) {
+
+  /**
+   * @return the batches of all partitions, the first batch of each partition first, so that the partitions are analyzed at once
+   */
+  static List<FileBatch> split(List<AnalysisPartition> partitions, int maxFilesPerBatch) {
+    var batchesByPartition = new ArrayList<List<FileBatch>>();
+    for (var partition : partitions) {
+      batchesByPartition.add(split(partition, maxFilesPerBatch));
+    }
+    var result = new ArrayList<FileBatch>();
+    for (var i = 0; !batchesByPartition.isEmpty(); i++) {
+      var index = i;
+      batchesByPartition.removeIf(batches -> batches.size() <= index);
+      batchesByPartition.forEach(batches -> result.add(batches.get(index)));
+    }
+    return result;
+  }
+
+  static List<FileBatch> split(AnalysisPartition partition, int maxFilesPerBatch) {
+    var fileUris = partition.fileUris();
+    if (fileUris.size() <= maxFilesPerBatch) {
+      return List.of(new FileBatch(fileUris, partition.firstFileId(), partition.activeRules()));
+    }
+    var batches = new ArrayList<FileBatch>();
+    for (var from = 0; from < fileUris.size(); from += maxFilesPerBatch) {
+      batches.add(new FileBatch(fileUris.subList(from, Math.min(from + maxFilesPerBatch, fileUris.size())), partition.firstFileId() + from,
+        partition.activeRules()));
+    }
+    return batches;
+  }
+
+  /**
+   * @return a sink passing the issues of this batch to the given one, with the file ids of the analysis
+   */
+  RoslynIssueSink rebasing(RoslynIssueSink issueSink) {
+    if (firstFileId == 0) {
+      return issueSink;
+    }
+    return new RoslynIssueSink() {
+      @Override
+      public boolean acceptsRule(@Nullable String ruleId) {
+        return issueSink.acceptsRule(ruleId);
+      }
+
+      @Override
+      public void accept(@Nullable RoslynIssue roslynIssue) {
+        issueSink.accept(roslynIssue == null ? null : rebase(roslynIssue));
+      }
+    };
+  }
+
+  private RoslynIssue rebase(RoslynIssue roslynIssue) {
+    List<RoslynIssueFlow> flows = null;
+    if (roslynIssue.getFlows() != null) {
+      flows = new ArrayList<>();
+      for (var flow : roslynIssue.getFlows()) {
+        flows.add(flow == null || flow.getLocations() == null ? flow
+          : new RoslynIssueFlow(flow.getLocations().stream().map(this::rebase).toList()));
+      }
+    }
+    return new RoslynIssue(roslynIssue.getRuleId(), rebase(roslynIssue.getPrimaryLocation()), flows, roslynIssue.getQuickFixes());
+  }
+
+  @CheckForNull
+  private RoslynIssueLocation rebase(@Nullable RoslynIssueLocation location) {
+    if (location == null || location.getFileId() == null) {
+      return location;
+    }
+    return new RoslynIssueLocation(location.getFileUri(), location.getFileId() + firstFileId, location.getMessage(), location.getTextRange());
+  }
+}
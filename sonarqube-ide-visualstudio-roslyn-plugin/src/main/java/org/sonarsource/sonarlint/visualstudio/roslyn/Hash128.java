@@ -0,0 +1,82 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import javax.annotation.Nullable;
+
+/**
+ * Stable 128-bit hash of a sequence of values: the fingerprint of an issue in the {@link IssuePipeline}, the hash of the contents of
+ * a file in the {@link IssueCacheKey}, and the {@link ConfigurationHash} of an analysis.
+ * <p>
+ * The two halves are computed in a single pass with two different 64-bit mixing functions, so that a collision on both is negligible,
+ * and only depend on the hashed values: a hash is the same from one JVM to another.
+ */
+public record Hash128(long high, long low) {
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static final class Builder {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private long high = FNV_OFFSET_BASIS;
+    private long low = GOLDEN_GAMMA;
+
+    private Builder() {
+    }
+
+    public Builder add(int value) {
+      high = (high ^ value) * FNV_PRIME;
+      low = Long.rotateLeft(low ^ (value * GOLDEN_GAMMA), 27) * 0xbf58476d1ce4e5b9L;
+      return this;
+    }
+
+    public Builder add(long value) {
+      add((int) (value >>> 32));
+      return add((int) value);
+    }
+
+    /**
+     * The length is hashed first, so that {@code ("ab", "c")} and {@code ("a", "bc")} have different hashes.
+     */
+    public Builder add(@Nullable String value) {
+      if (value == null) {
+        return add(-1);
+      }
+      add(value.length());
+      for (var i = 0; i < value.length(); i++) {
+        add(value.charAt(i));
+      }
+      return this;
+    }
+
+    public Hash128 build() {
+      return new Hash128(finish(high), finish(low));
+    }
+
+    private static long finish(long value) {
+      value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+      value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+      return value ^ (value >>> 33);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueLocation;
+
+/**
+ * Resolves the files of the issue locations during one sensor execution, without querying the file system for each location.
+ * The analyzed files are indexed by URI and by file id (their position in the request), in the single pass made over them to build the request.
+ * Locations on other files are looked up once in the file system, and the result, found or not, is cached.
+ */
+public class InputFileIndex {
+  private final FileSystem fileSystem;
+  private final InputFile[] inputFilesById;
+  private final List<URI> fileUris;
+  private final Map<URI, InputFile> inputFilesByUri;
+  private final Map<URI, Optional<InputFile>> otherInputFilesByUri = new ConcurrentHashMap<>();
+
+  public InputFileIndex(FileSystem fileSystem, Iterable<InputFile> analyzedInputFiles) {
+    this.fileSystem = fileSystem;
+    var inputFiles = new ArrayList<InputFile>();
+    var uris = new ArrayList<URI>();
+    inputFilesByUri = new HashMap<>();
+    for (var inputFile : analyzedInputFiles) {
+      var uri = inputFile.uri();
+      inputFiles.add(inputFile);
+      uris.add(uri);
+      inputFilesByUri.put(uri, inputFile);
+    }
+    inputFilesById = inputFiles.toArray(new InputFile[0]);
+    fileUris = Collections.unmodifiableList(uris);
+  }
+
+  /**
+   * The URIs of the analyzed files, the index of a URI in this list being the file id of the file.
+   */
+  public List<URI> getFileUris() {
+    return fileUris;
+  }
+
+  @CheckForNull
+  public InputFile find(RoslynIssueLocation location) {
+    var fileId = location.getFileId();
+    if (fileId != null) {
+      return fileId >= 0 && fileId < inputFilesById.length ? inputFilesById[fileId] : null;
+    }
+    return find(location.getFileUri());
+  }
+
+  @CheckForNull
+  public InputFile find(@Nullable URI uri) {
+    if (uri == null) {
+      return null;
+    }
+    var inputFile = inputFilesByUri.get(uri);
+    if (inputFile != null) {
+      return inputFile;
+    }
+    return otherInputFilesByUri
+      .computeIfAbsent(uri, key -> Optional.ofNullable(fileSystem.inputFile(fileSystem.predicates().hasURI(key))))
+      .orElse(null);
+  }
+}
@@ -20,16 +20,42 @@
 package org.sonarsource.sonarlint.visualstudio.roslyn;
 
 import org.sonar.api.config.Configuration;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 import org.sonarsource.api.sonarlint.SonarLintSide;
 
 @SonarLintSide(lifespan = SonarLintSide.INSTANCE)
 public class InstanceConfigurationProvider {
+  private static final Logger LOG = Loggers.get(InstanceConfigurationProvider.class);
   private final boolean shouldUseCsharpEnterprise;
   private final boolean shouldUseVbEnterprise;
+  private final IssueLimits issueLimits;
+  private final AnalysisBatching analysisBatching;
 
   public InstanceConfigurationProvider(Configuration configuration) {
     shouldUseCsharpEnterprise = configuration.get(SqvsRoslynPluginPropertyDefinitions.getShouldUseCsharpEnterprise()).map(Boolean::parseBoolean).orElse(false);
     shouldUseVbEnterprise = configuration.get(SqvsRoslynPluginPropertyDefinitions.getShouldUseVbEnterprise()).map(Boolean::parseBoolean).orElse(false);
+    issueLimits = new IssueLimits(
+      getInt(configuration, SqvsRoslynPluginPropertyDefinitions.getMaxIssuesPerFile(), IssueLimits.NO_LIMIT),
+      getInt(configuration, SqvsRoslynPluginPropertyDefinitions.getMaxIssuesPerRule(), IssueLimits.NO_LIMIT),
+      getInt(configuration, SqvsRoslynPluginPropertyDefinitions.getMaxIssuesPerAnalysis(), IssueLimits.NO_LIMIT));
+    analysisBatching = new AnalysisBatching(
+      getInt(configuration, SqvsRoslynPluginPropertyDefinitions.getMaxFilesPerBatch(), AnalysisBatching.DEFAULT_MAX_FILES_PER_BATCH),
+      getInt(configuration, SqvsRoslynPluginPropertyDefinitions.getMaxParallelBatches(), AnalysisBatching.DEFAULT_MAX_PARALLEL_BATCHES),
+      getInt(configuration, SqvsRoslynPluginPropertyDefinitions.getBatchTimeoutSeconds(), AnalysisBatching.DEFAULT_BATCH_TIMEOUT_SECONDS));
+  }
+
+  private static int getInt(Configuration configuration, String key, int defaultValue) {
+    var value = configuration.get(key).map(String::trim);
+    if (value.isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.get());
+    } catch (NumberFormatException e) {
+      LOG.warn("Invalid value '{}' for the property '{}', the default value {} is used instead.", value.get(), key, defaultValue);
+      return defaultValue;
+    }
   }
 
   public Boolean getShouldUseCsharpEnterprise() {
@@ -39,4 +65,12 @@ public class InstanceConfigurationProvider {
   public Boolean getShouldUseVbEnterprise() {
     return shouldUseVbEnterprise;
   }
+
+  public IssueLimits getIssueLimits() {
+    return issueLimits;
+  }
+
+  public AnalysisBatching getAnalysisBatching() {
+    return analysisBatching;
+  }
 }
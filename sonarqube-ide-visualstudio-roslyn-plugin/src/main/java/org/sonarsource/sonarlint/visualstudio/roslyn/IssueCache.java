@@ -0,0 +1,266 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonarsource.api.sonarlint.SonarLintSide;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.RoslynIssueSink;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueFlow;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueLocation;
+
+/**
+ * Issues of the files analyzed by the previous sensor executions, backed by the {@link PersistentIssueCache}, see {@link IssueCacheKey}.
+ */
+@SonarLintSide(lifespan = SonarLintSide.INSTANCE)
+public class IssueCache {
+  static final int MAX_CACHED_FILES = 10_000;
+  private static final Logger LOG = Loggers.get(IssueCache.class);
+  // guarded by this, the most recently used entry last
+  private final Map<IssueCacheKey, List<RoslynIssue>> issuesByKey;
+  private final PersistentIssueCache persistentIssueCache;
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder persistentHitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+
+  public IssueCache(PersistentIssueCache persistentIssueCache) {
+    this(persistentIssueCache, MAX_CACHED_FILES);
+  }
+
+  IssueCache(PersistentIssueCache persistentIssueCache, int maxCachedFiles) {
+    this.persistentIssueCache = persistentIssueCache;
+    issuesByKey = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<IssueCacheKey, List<RoslynIssue>> eldest) {
+        return size() > maxCachedFiles;
+      }
+    };
+  }
+
+  /**
+   * Splits the files of a sensor execution between the ones whose issues are cached and the ones to analyze.
+   */
+  public Lookup lookup(Iterable<InputFile> inputFiles, Hash128 configurationHash) {
+    var files = new ArrayList<InputFile>();
+    var contentHashes = new ArrayList<Hash128>();
+    for (var inputFile : inputFiles) {
+      files.add(inputFile);
+      contentHashes.add(contentHashOf(inputFile));
+    }
+    var projectHash = projectHashOf(files, contentHashes);
+    var keys = new ArrayList<IssueCacheKey>();
+    var cachedIssuesOfFiles = new ArrayList<List<RoslynIssue>>();
+    var persistentKeys = new ArrayList<IssueCacheKey>();
+    for (var i = 0; i < files.size(); i++) {
+      var contentHash = contentHashes.get(i);
+      var key = contentHash == null ? null : new IssueCacheKey(files.get(i).uri(), contentHash, configurationHash, projectHash);
+      var cachedIssues = key == null ? null : get(key);
+      if (key != null && cachedIssues == null) {
+        persistentKeys.add(key);
+      }
+      keys.add(key);
+      cachedIssuesOfFiles.add(cachedIssues);
+    }
+    // looked up at once, so that the persistent cache is locked once per analysis
+    var persistedIssuesByKey = persistentIssueCache.getAll(persistentKeys);
+    persistedIssuesByKey.forEach(this::put);
+    persistentHitCount.add(persistedIssuesByKey.size());
+    var lookup = new Lookup();
+    for (var i = 0; i < files.size(); i++) {
+      var key = keys.get(i);
+      var cachedIssues = cachedIssuesOfFiles.get(i) != null ? cachedIssuesOfFiles.get(i) : persistedIssuesByKey.get(key);
+      if (cachedIssues != null) {
+        hitCount.increment();
+        lookup.hitFileCount++;
+        lookup.cachedIssues.addAll(cachedIssues);
+      } else {
+        missCount.increment();
+        lookup.missedFiles.add(files.get(i));
+        if (key != null) {
+          lookup.keysByUri.put(key.fileUri(), key);
+        }
+      }
+    }
+    return lookup;
+  }
+
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * @return the number of hits found in the {@link PersistentIssueCache}, included in {@link #getHitCount()}
+   */
+  public long getPersistentHitCount() {
+    return persistentHitCount.sum();
+  }
+
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  /**
+   * @return the ratio of the looked up files whose issues were cached, 0 before the first lookup
+   */
+  public double getHitRatio() {
+    var hits = getHitCount();
+    var total = hits + getMissCount();
+    return total == 0 ? 0 : ((double) hits / total);
+  }
+
+  @CheckForNull
+  private static Hash128 contentHashOf(InputFile inputFile) {
+    try {
+      return Hash128.builder().add(inputFile.contents()).build();
+    } catch (IOException e) {
+      LOG.debug("The content of " + inputFile + " can not be read, its issues are not cached.", e);
+      return null;
+    }
+  }
+
+  /**
+   * Hashes the URIs and the contents of the files sorted by URI, as the order of the files of the file system is not specified.
+   */
+  private static Hash128 projectHashOf(List<InputFile> files, List<Hash128> contentHashes) {
+    var contentHashesByUri = new TreeMap<String, Hash128>();
+    for (var i = 0; i < files.size(); i++) {
+      contentHashesByUri.put(files.get(i).uri().toString(), contentHashes.get(i));
+    }
+    var builder = Hash128.builder().add(contentHashesByUri.size());
+    contentHashesByUri.forEach((fileUri, contentHash) -> {
+      builder.add(fileUri);
+      if (contentHash == null) {
+        builder.add(-1);
+      } else {
+        builder.add(contentHash.high()).add(contentHash.low());
+      }
+    });
+    return builder.build();
+  }
+
+  @CheckForNull
+  private synchronized List<RoslynIssue> get(IssueCacheKey key) {
+    return issuesByKey.get(key);
+  }
+
+  private synchronized void put(IssueCacheKey key, List<RoslynIssue> issues) {
+    issuesByKey.put(key, issues);
+  }
+
+  /**
+   * The files of one sensor execution, split between the ones whose issues are cached and the ones to analyze.
+   * The issues received for the files to analyze are recorded while they are passed to the {@link IssuePipeline}, and cached
+   * by {@link #store()} once all of them were received.
+   */
+  public class Lookup {
+    private final List<InputFile> missedFiles = new ArrayList<>();
+    private final List<RoslynIssue> cachedIssues = new ArrayList<>();
+    private final Map<URI, IssueCacheKey> keysByUri = new HashMap<>();
+    private final Map<URI, List<RoslynIssue>> receivedIssuesByUri = new HashMap<>();
+    private int hitFileCount;
+
+    private Lookup() {
+    }
+
+    public List<InputFile> getMissedFiles() {
+      return missedFiles;
+    }
+
+    public List<RoslynIssue> getCachedIssues() {
+      return cachedIssues;
+    }
+
+    public int getHitFileCount() {
+      return hitFileCount;
+    }
+
+    /**
+     * @return a sink passing the issues to the given one, and recording the issues of the missed files
+     */
+    public RoslynIssueSink recording(RoslynIssueSink issueSink, InputFileIndex inputFileIndex) {
+      return new RoslynIssueSink() {
+        @Override
+        public boolean acceptsRule(@Nullable String ruleId) {
+          return issueSink.acceptsRule(ruleId);
+        }
+
+        @Override
+        public void accept(RoslynIssue roslynIssue) {
+          record(roslynIssue, inputFileIndex);
+          issueSink.accept(roslynIssue);
+        }
+      };
+    }
+
+    /**
+     * Caches, and persists, the issues recorded for the missed files. Only to be called once the analysis of all the missed files
+     * completed with a complete response, as a file without recorded issues is cached without issues.
+     */
+    public void store() {
+      var storedIssuesByKey = new HashMap<IssueCacheKey, List<RoslynIssue>>();
+      keysByUri.forEach((fileUri, key) -> storedIssuesByKey.put(key, List.copyOf(receivedIssuesByUri.getOrDefault(fileUri, List.of()))));
+      storedIssuesByKey.forEach(IssueCache.this::put);
+      persistentIssueCache.putAll(storedIssuesByKey);
+    }
+
+    private void record(RoslynIssue roslynIssue, InputFileIndex inputFileIndex) {
+      var primaryLocation = roslynIssue.getPrimaryLocation();
+      var primaryInputFile = primaryLocation == null ? null : inputFileIndex.find(primaryLocation);
+      if (primaryInputFile == null || !keysByUri.containsKey(primaryInputFile.uri())) {
+        return;
+      }
+      receivedIssuesByUri.computeIfAbsent(primaryInputFile.uri(), fileUri -> new ArrayList<>()).add(withFileUris(roslynIssue, inputFileIndex));
+    }
+  }
+
+  private static RoslynIssue withFileUris(RoslynIssue roslynIssue, InputFileIndex inputFileIndex) {
+    List<RoslynIssueFlow> flows = null;
+    if (roslynIssue.getFlows() != null) {
+      flows = new ArrayList<>();
+      for (var flow : roslynIssue.getFlows()) {
+        flows.add(flow == null || flow.getLocations() == null ? flow
+          : new RoslynIssueFlow(flow.getLocations().stream().map(location -> withFileUri(location, inputFileIndex)).toList()));
+      }
+    }
+    return new RoslynIssue(roslynIssue.getRuleId(), withFileUri(roslynIssue.getPrimaryLocation(), inputFileIndex), flows, roslynIssue.getQuickFixes());
+  }
+
+  @CheckForNull
+  private static RoslynIssueLocation withFileUri(@Nullable RoslynIssueLocation location, InputFileIndex inputFileIndex) {
+    if (location == null || location.getFileId() == null) {
+      return location;
+    }
+    var inputFile = inputFileIndex.find(location);
+    return new RoslynIssueLocation(inputFile == null ? null : inputFile.uri(), location.getMessage(), location.getTextRange());
+  }
+}
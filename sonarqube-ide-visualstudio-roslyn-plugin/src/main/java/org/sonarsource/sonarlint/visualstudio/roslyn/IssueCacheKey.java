@@ -0,0 +1,30 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.net.URI;
+
+/**
+ * Identifies the issues of a file in the {@link IssueCache} and the {@link PersistentIssueCache}: the file, the hash of its content,
+ * the {@link ConfigurationHash} of the analysis, and the hash of all the files analyzed with it, as the issues of a file also depend
+ * on the other files of its compilation.
+ */
+public record IssueCacheKey(URI fileUri, Hash128 contentHash, Hash128 configurationHash, Hash128 projectHash) {
+}
@@ -0,0 +1,113 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Enforces the {@link IssueLimits} during one sensor execution, so that a generated file or a noisy rule can not flood the IDE
+ * with issues.
+ * <p>
+ * The limits per rule and per analysis only depend on the rule of an issue, so they are checked with {@link #hasRoomFor(RuleKey)}
+ * before the rest of the issue is decoded. The limit per file is only known once the file of the issue is resolved, so it is
+ * checked with {@link #tryAcquire(RuleKey, InputFile)} right before saving, on the thread saving the issues.
+ * The issues skipped because of a limit are reported once, at the end of the analysis.
+ */
+public class IssueLimiter {
+  private static final Logger LOG = Loggers.get(IssueLimiter.class);
+  private final IssueLimits limits;
+  private final AtomicInteger savedIssueCount = new AtomicInteger();
+  private final Map<RuleKey, AtomicInteger> savedIssueCountsByRule = new ConcurrentHashMap<>();
+  // only accessed by the thread saving the issues
+  private final Map<InputFile, Integer> savedIssueCountsByFile = new HashMap<>();
+  private final LongAdder skippedOverAnalysisLimit = new LongAdder();
+  private final Map<RuleKey, LongAdder> skippedOverRuleLimit = new ConcurrentHashMap<>();
+  private final Map<InputFile, LongAdder> skippedOverFileLimit = new ConcurrentHashMap<>();
+
+  public IssueLimiter(IssueLimits limits) {
+    this.limits = limits;
+  }
+
+  /**
+   * @return false, and counts the issue as skipped, if the limit of the analysis or of the rule is already reached
+   */
+  public boolean hasRoomFor(RuleKey ruleKey) {
+    if (savedIssueCount.get() >= limits.maxIssuesPerAnalysis()) {
+      skippedOverAnalysisLimit.increment();
+      return false;
+    }
+    var savedForRule = savedIssueCountsByRule.get(ruleKey);
+    if (savedForRule != null && savedForRule.get() >= limits.maxIssuesPerRule()) {
+      skippedOverRuleLimit.computeIfAbsent(ruleKey, key -> new LongAdder()).increment();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Counts an issue about to be saved.
+   *
+   * @return false, and counts the issue as skipped, if one of the limits is already reached
+   */
+  public boolean tryAcquire(RuleKey ruleKey, InputFile inputFile) {
+    if (!hasRoomFor(ruleKey)) {
+      return false;
+    }
+    int savedForFile = savedIssueCountsByFile.getOrDefault(inputFile, 0);
+    if (savedForFile >= limits.maxIssuesPerFile()) {
+      skippedOverFileLimit.computeIfAbsent(inputFile, key -> new LongAdder()).increment();
+      return false;
+    }
+    savedIssueCountsByFile.put(inputFile, savedForFile + 1);
+    savedIssueCountsByRule.computeIfAbsent(ruleKey, key -> new AtomicInteger()).incrementAndGet();
+    savedIssueCount.incrementAndGet();
+    return true;
+  }
+
+  public long getSkippedIssueCount() {
+    return skippedOverAnalysisLimit.sum() + CountReport.sum(skippedOverRuleLimit) + CountReport.sum(skippedOverFileLimit);
+  }
+
+  /**
+   * Logs the number of skipped issues per limit, with the rules and files that reached their limit, the most skipped first.
+   */
+  public void log() {
+    if (!skippedOverFileLimit.isEmpty()) {
+      LOG.warn("{} issue(s) over the limit of {} per file were skipped:{}", CountReport.sum(skippedOverFileLimit), limits.maxIssuesPerFile(),
+        CountReport.details(skippedOverFileLimit));
+    }
+    if (!skippedOverRuleLimit.isEmpty()) {
+      LOG.warn("{} issue(s) over the limit of {} per rule were skipped:{}", CountReport.sum(skippedOverRuleLimit), limits.maxIssuesPerRule(),
+        CountReport.details(skippedOverRuleLimit));
+    }
+    var skippedForAnalysis = skippedOverAnalysisLimit.sum();
+    if (skippedForAnalysis > 0) {
+      LOG.warn("{} issue(s) over the limit of {} per analysis were skipped.", skippedForAnalysis, limits.maxIssuesPerAnalysis());
+    }
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+/**
+ * The maximum number of issues saved per file, per rule and per analysis. A limit that is not positive means no limit.
+ * There is no limit by default, the hidden properties of {@link SqvsRoslynPluginPropertyDefinitions} opt in.
+ * <p>
+ * The files analyzed while issues were skipped are not stored in the {@link IssueCache}: the limits per rule and per analysis
+ * depend on the other files of the analysis, so the issues kept for a file would not be the same in another analysis.
+ */
+public record IssueLimits(int maxIssuesPerFile, int maxIssuesPerRule, int maxIssuesPerAnalysis) {
+  public static final int NO_LIMIT = 0;
+  public static final IssueLimits UNLIMITED = new IssueLimits(NO_LIMIT, NO_LIMIT, NO_LIMIT);
+
+  public IssueLimits {
+    maxIssuesPerFile = orUnlimited(maxIssuesPerFile);
+    maxIssuesPerRule = orUnlimited(maxIssuesPerRule);
+    maxIssuesPerAnalysis = orUnlimited(maxIssuesPerAnalysis);
+  }
+
+  private static int orUnlimited(int limit) {
+    return limit > 0 ? limit : Integer.MAX_VALUE;
+  }
+}
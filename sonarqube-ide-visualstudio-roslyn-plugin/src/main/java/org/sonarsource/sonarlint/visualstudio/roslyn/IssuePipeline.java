@@ -0,0 +1,302 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.TextRange;
+import org.sonar.api.batch.sensor.SensorContext;
+import org.sonar.api.batch.sensor.issue.NewIssue;
+import org.sonar.api.batch.sensor.issue.NewIssueLocation;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.RoslynIssueSink;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueLocation;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueTextRange;
+
+/**
+ * Saves the issues of one sensor execution as they are decoded. Their rules and text ranges are checked in parallel on the executor, while
+ * their files are resolved and the issues saved in the received order on the receiving thread, at most {@value #MAX_PENDING_ISSUES} at a time.
+ */
+public class IssuePipeline implements RoslynIssueSink {
+  static final int MAX_PENDING_ISSUES = 256;
+  private static final Logger LOG = Loggers.get(IssuePipeline.class);
+  private final SensorContext context;
+  private final ActiveRuleResolver activeRuleResolver;
+  private final InputFileIndex inputFileIndex;
+  private final Executor executor;
+  private final Deque<PendingIssue> pendingIssues = new ArrayDeque<>();
+  private final DroppedLocationReport droppedLocationReport = new DroppedLocationReport();
+  private final IssueLimiter issueLimiter;
+  private final Set<Hash128> savedFingerprints = new HashSet<>();
+  private final Set<InputFile> inputFilesWithMetadata = new HashSet<>();
+  private int savedIssueCount;
+  private int duplicateIssueCount;
+
+  public IssuePipeline(SensorContext context, ActiveRuleResolver activeRuleResolver, InputFileIndex inputFileIndex, Executor executor,
+    IssueLimits issueLimits) {
+    this.context = context;
+    this.activeRuleResolver = activeRuleResolver;
+    this.inputFileIndex = inputFileIndex;
+    this.executor = executor;
+    this.issueLimiter = new IssueLimiter(issueLimits);
+  }
+
+  @Override
+  public boolean acceptsRule(@Nullable String ruleId) {
+    var ruleKey = activeRuleResolver.resolve(ruleId);
+    return ruleKey != null && issueLimiter.hasRoomFor(ruleKey);
+  }
+
+  @Override
+  public void accept(RoslynIssue roslynIssue) {
+    CompletableFuture<PreparedIssue> preparedIssue;
+    try {
+      // looking the files up and loading their metadata are not thread safe
+      var inputFiles = resolveInputFiles(roslynIssue);
+      preparedIssue = CompletableFuture.supplyAsync(() -> prepare(roslynIssue, inputFiles), executor);
+    } catch (RuntimeException e) {
+      preparedIssue = CompletableFuture.failedFuture(e);
+    }
+    pendingIssues.add(new PendingIssue(roslynIssue.getRuleId(), preparedIssue));
+    while (!pendingIssues.isEmpty() && (pendingIssues.size() > MAX_PENDING_ISSUES || pendingIssues.peek().preparedIssue().isDone())) {
+      saveNext();
+    }
+  }
+
+  /**
+   * Waits for the issues still being prepared and saves them.
+   */
+  public void finish() {
+    while (!pendingIssues.isEmpty()) {
+      saveNext();
+    }
+  }
+
+  public int getSavedIssueCount() {
+    return savedIssueCount;
+  }
+
+  public int getDuplicateIssueCount() {
+    return duplicateIssueCount;
+  }
+
+  public IssueLimiter getIssueLimiter() {
+    return issueLimiter;
+  }
+
+  public DroppedLocationReport getDroppedLocationReport() {
+    return droppedLocationReport;
+  }
+
+  private void saveNext() {
+    var pendingIssue = pendingIssues.poll();
+    try {
+      var preparedIssue = pendingIssue.preparedIssue().join();
+      if (preparedIssue == null) {
+        return;
+      }
+      // checked here rather than while preparing, so that the first received copy is the one saved
+      if (savedFingerprints.contains(preparedIssue.fingerprint())) {
+        duplicateIssueCount++;
+        return;
+      }
+      if (!issueLimiter.tryAcquire(preparedIssue.ruleKey(), preparedIssue.primaryLocation().inputFile())) {
+        return;
+      }
+      preparedIssue.save(context);
+      savedFingerprints.add(preparedIssue.fingerprint());
+      savedIssueCount++;
+    } catch (CompletionException exception) {
+      logSaveFailure(pendingIssue.ruleId(), exception.getCause());
+    } catch (Exception exception) {
+      logSaveFailure(pendingIssue.ruleId(), exception);
+    }
+  }
+
+  private static void logSaveFailure(String ruleId, Throwable exception) {
+    LOG.error(String.format("Issue %s can not be saved due to ", ruleId), exception.fillInStackTrace());
+  }
+
+  /**
+   * @return the files of the primary location and of the flow locations, in that order, null for a location not in a known file
+   */
+  private List<InputFile> resolveInputFiles(RoslynIssue roslynIssue) {
+    var inputFiles = new ArrayList<InputFile>();
+    inputFiles.add(resolveInputFile(roslynIssue.getPrimaryLocation()));
+    for (var flow : roslynIssue.getFlows()) {
+      for (var flowLocation : flow.getLocations()) {
+        inputFiles.add(resolveInputFile(flowLocation));
+      }
+    }
+    return inputFiles;
+  }
+
+  @CheckForNull
+  private InputFile resolveInputFile(RoslynIssueLocation location) {
+    var inputFile = inputFileIndex.find(location);
+    if (inputFile != null && inputFilesWithMetadata.add(inputFile)) {
+      inputFile.lines();
+    }
+    return inputFile;
+  }
+
+  /**
+   * @return null if the rule is not active, or if the primary location is not in a known file or does not fit in it
+   */
+  @CheckForNull
+  private PreparedIssue prepare(RoslynIssue roslynIssue, List<InputFile> inputFiles) {
+    var ruleKey = activeRuleResolver.resolve(roslynIssue.getRuleId());
+    if (ruleKey == null) {
+      return null;
+    }
+    var remainingInputFiles = inputFiles.iterator();
+    var primaryInputFile = remainingInputFiles.next();
+    if (primaryInputFile == null) {
+      return null;
+    }
+    var primaryLocation = prepareLocation(ruleKey, roslynIssue.getPrimaryLocation(), primaryInputFile);
+    if (primaryLocation == null) {
+      return null;
+    }
+    var secondaryLocations = new ArrayList<PreparedLocation>();
+    for (var flow : roslynIssue.getFlows()) {
+      for (var flowLocation : flow.getLocations()) {
+        var inputFile = remainingInputFiles.next();
+        var secondaryLocation = inputFile == null ? null : prepareLocation(ruleKey, flowLocation, inputFile);
+        if (secondaryLocation != null) {
+          secondaryLocations.add(secondaryLocation);
+        }
+      }
+    }
+    var quickFixMessages = new ArrayList<String>();
+    for (var quickFix : roslynIssue.getQuickFixes()) {
+      quickFixMessages.add(quickFix.getValue());
+    }
+    return new PreparedIssue(ruleKey, primaryLocation, secondaryLocations, quickFixMessages, fingerprint(ruleKey, primaryLocation, secondaryLocations));
+  }
+
+  /**
+   * @return null if the text range does not fit in the file
+   */
+  @CheckForNull
+  private PreparedLocation prepareLocation(RuleKey ruleKey, RoslynIssueLocation location, InputFile inputFile) {
+    var textRange = location.getTextRange();
+    if (textRange != null && isFileLevelRange(textRange)) {
+      return new PreparedLocation(inputFile, location.getMessage(), null);
+    }
+    if (textRange == null || !fitsIn(textRange, inputFile)) {
+      droppedLocationReport.add(ruleKey, inputFile);
+      return null;
+    }
+    return new PreparedLocation(inputFile, location.getMessage(),
+      inputFile.newRange(textRange.getStartLine(), textRange.getStartLineOffset(), textRange.getEndLine(), textRange.getEndLineOffset()));
+  }
+
+  private static Hash128 fingerprint(RuleKey ruleKey, PreparedLocation primaryLocation, List<PreparedLocation> secondaryLocations) {
+    var builder = Hash128.builder().add(ruleKey.toString());
+    primaryLocation.addTo(builder);
+    builder.add(secondaryLocations.size());
+    for (var secondaryLocation : secondaryLocations) {
+      secondaryLocation.addTo(builder);
+    }
+    return builder.build();
+  }
+
+  private static boolean isFileLevelRange(RoslynIssueTextRange roslynRange) {
+    return roslynRange.getStartLine() == 1 && roslynRange.getStartLineOffset() == 0 && roslynRange.getEndLine() == 1 && roslynRange.getEndLineOffset() == 0;
+  }
+
+  /**
+   * Same checks as {@link InputFile#newRange(int, int, int, int)}, which throws when they fail: both ends are in the file,
+   * and the start is before the end.
+   */
+  private static boolean fitsIn(RoslynIssueTextRange textRange, InputFile inputFile) {
+    var startLine = textRange.getStartLine();
+    var endLine = textRange.getEndLine();
+    var startLineOffset = textRange.getStartLineOffset();
+    var endLineOffset = textRange.getEndLineOffset();
+    if (startLine < 1 || endLine < startLine || endLine > inputFile.lines() || startLineOffset < 0 || endLineOffset < 0) {
+      return false;
+    }
+    if (startLine == endLine) {
+      return startLineOffset < endLineOffset && endLineOffset <= lineLength(inputFile, endLine);
+    }
+    return startLineOffset <= lineLength(inputFile, startLine) && endLineOffset <= lineLength(inputFile, endLine);
+  }
+
+  private static int lineLength(InputFile inputFile, int line) {
+    return inputFile.selectLine(line).end().lineOffset();
+  }
+
+  private record PendingIssue(String ruleId, CompletableFuture<PreparedIssue> preparedIssue) {
+  }
+
+  private record PreparedLocation(InputFile inputFile, String message, @Nullable TextRange textRange) {
+    NewIssueLocation toNewIssueLocation(NewIssue newIssue) {
+      var newLocation = newIssue.newLocation()
+        .on(inputFile)
+        .message(message);
+      return textRange == null ? newLocation : newLocation.at(textRange);
+    }
+
+    void addTo(Hash128.Builder builder) {
+      builder.add(inputFile.uri().toString()).add(message);
+      if (textRange == null) {
+        builder.add(0);
+      } else {
+        builder.add(textRange.start().line()).add(textRange.start().lineOffset()).add(textRange.end().line()).add(textRange.end().lineOffset());
+      }
+    }
+  }
+
+  private record PreparedIssue(RuleKey ruleKey, PreparedLocation primaryLocation, List<PreparedLocation> secondaryLocations, List<String> quickFixMessages,
+    Hash128 fingerprint) {
+    void save(SensorContext context) {
+      var newIssue = context.newIssue();
+      newIssue
+        .forRule(ruleKey)
+        .at(primaryLocation.toNewIssueLocation(newIssue));
+      for (var secondaryLocation : secondaryLocations) {
+        newIssue.addLocation(secondaryLocation.toNewIssueLocation(newIssue));
+      }
+      for (var quickFixMessage : quickFixMessages) {
+        var newQuickFix = newIssue.newQuickFix();
+        // quickfixes are lazily evaluated on the client (VS) side,
+        // here we only pass the value that is then mapped back to the quickfix object by the client
+        newQuickFix.message(quickFixMessage);
+        newIssue.addQuickFix(newQuickFix);
+      }
+      newIssue.save();
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.sonar.api.Startable;
+import org.sonarsource.api.sonarlint.SonarLintSide;
+
+/**
+ * Bounded pool of threads preparing the received issues in parallel, see {@link IssuePipeline}.
+ * On a single core machine, the issues are prepared on the calling thread.
+ */
+@SonarLintSide(lifespan = SonarLintSide.INSTANCE)
+public class IssuePreparationExecutor implements Executor, Startable {
+  static final String THREAD_NAME_PREFIX = "sqvs-roslyn-issue-preparation-";
+  private final ExecutorService executorService;
+
+  public IssuePreparationExecutor() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  IssuePreparationExecutor(int threadCount) {
+    var threadNumber = new AtomicInteger();
+    executorService = threadCount > 1 ? Executors.newFixedThreadPool(threadCount, runnable -> {
+      var thread = new Thread(runnable, THREAD_NAME_PREFIX + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }) : null;
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    if (executorService == null) {
+      command.run();
+    } else {
+      executorService.execute(command);
+    }
+  }
+
+  @Override
+  public void start() {
+    // do nothing, executor created in constructor
+  }
+
+  @Override
+  public void stop() {
+    if (executorService != null) {
+      executorService.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.RoslynIssueSink;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+
+/**
+ * Bounded hand-off between the thread receiving and decoding the response, and the thread saving the issues, so that decoding
+ * the next issue overlaps with saving the current one.
+ * <p>
+ * When the queue is full, the receiving thread waits: a slow saver throttles the reading of the response instead of buffering it.
+ * Once {@link #drain()} stops because of a cancellation, the receiving thread fails with a {@link CancellationException}
+ * the next time it hands off an issue, which aborts the reading of the response.
+ */
+public class IssueQueue implements RoslynIssueSink {
+  static final int CAPACITY = 1024;
+  private final RoslynIssueSink issueSink;
+  private final int capacity;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  // all the following fields are guarded by the lock
+  private final Queue<RoslynIssue> queue = new ArrayDeque<>();
+  private boolean closed;
+  private boolean cancelled;
+
+  public IssueQueue(RoslynIssueSink issueSink) {
+    this(issueSink, CAPACITY);
+  }
+
+  IssueQueue(RoslynIssueSink issueSink, int capacity) {
+    this.issueSink = issueSink;
+    this.capacity = capacity;
+  }
+
+  /**
+   * Called on the receiving thread, before the rest of the issue is decoded.
+   */
+  @Override
+  public boolean acceptsRule(@Nullable String ruleId) {
+    return issueSink.acceptsRule(ruleId);
+  }
+
+  /**
+   * Called on the receiving thread, waits while the queue is full.
+   */
+  @Override
+  public void accept(@Nullable RoslynIssue roslynIssue) {
+    // a null issue could not be saved anyway
+    if (roslynIssue == null) {
+      return;
+    }
+    lock.lock();
+    try {
+      while (queue.size() >= capacity && !cancelled) {
+        notFull.await();
+      }
+      if (cancelled) {
+        throw new CancellationException("The analysis was cancelled.");
+      }
+      queue.add(roslynIssue);
+      notEmpty.signal();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("The analysis was cancelled.");
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Called once the whole response is read, or once reading it failed. Does not wait, the draining thread is only woken up.
+   */
+  public void close() {
+    lock.lock();
+    try {
+      closed = true;
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Called once the analysis is cancelled. Does not wait, the draining thread is woken up and stops at once.
+   */
+  public void cancel() {
+    lock.lock();
+    try {
+      cancelled = true;
+      queue.clear();
+      notEmpty.signal();
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Passes the queued issues to the sink on the calling thread, until the receiving thread is done or the analysis is cancelled.
+   *
+   * @return false if the analysis was cancelled before all issues were received
+   */
+  public boolean drain() {
+    var completed = false;
+    try {
+      while (!completed) {
+        RoslynIssue roslynIssue;
+        lock.lock();
+        try {
+          while (queue.isEmpty() && !closed && !cancelled) {
+            notEmpty.await();
+          }
+          if (cancelled) {
+            return false;
+          }
+          roslynIssue = queue.poll();
+          if (roslynIssue != null) {
+            notFull.signal();
+          }
+          completed = roslynIssue == null && closed;
+        } finally {
+          lock.unlock();
+        }
+        // outside of the lock, so that the next issue is received while this one is saved
+        if (roslynIssue != null) {
+          issueSink.accept(roslynIssue);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      if (!completed) {
+        // also when the sink failed, so that the receiving thread does not wait for a free slot forever
+        cancel();
+      }
+    }
+    return completed;
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.sonar.api.Startable;
+import org.sonarsource.api.sonarlint.SonarLintSide;
+
+/**
+ * Threads reading and decoding the analysis responses while the sensor threads save the issues, see {@link IssueQueue}.
+ * One thread per response being read, reused across analyses: no thread is used while waiting for the server to answer.
+ */
+@SonarLintSide(lifespan = SonarLintSide.INSTANCE)
+public class IssueReceiverExecutor implements Executor, Startable {
+  static final String THREAD_NAME_PREFIX = "sqvs-roslyn-issue-receiver-";
+  private final ExecutorService executorService;
+
+  public IssueReceiverExecutor() {
+    var threadNumber = new AtomicInteger();
+    executorService = Executors.newCachedThreadPool(runnable -> {
+      var thread = new Thread(runnable, THREAD_NAME_PREFIX + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    executorService.execute(command);
+  }
+
+  @Override
+  public void start() {
+    // do nothing, executor created in constructor
+  }
+
+  @Override
+  public void stop() {
+    executorService.shutdownNow();
+  }
+}
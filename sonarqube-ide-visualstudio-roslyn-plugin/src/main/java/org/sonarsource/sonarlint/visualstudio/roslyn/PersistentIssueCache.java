@@ -0,0 +1,351 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+import org.sonar.api.Startable;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonarsource.api.sonarlint.SonarLintSide;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.AnalysisResponseDto;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.BinaryCodec;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+
+/**
+ * On-disk counterpart of the {@link IssueCache}, so that the files that did not change are not analyzed again after a restart of the IDE.
+ * <p>
+ * The issues are kept in a single file, read on the first lookup and rewritten to a temporary file atomically renamed over it when
+ * issues are stored. By default, the file is in a directory local to the user, with one subdirectory locked per running IDE instance.
+ * Failing to read or write the cache only logs at debug level.
+ */
+@SonarLintSide(lifespan = SonarLintSide.INSTANCE)
+public class PersistentIssueCache implements Startable {
+  static final int MAGIC = 0x53514943;
+  static final int FORMAT_VERSION = 2;
+  static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+  static final int HEADER_SIZE = 8;
+  static final String ISSUES_FILE_NAME = "issues.bin";
+  static final int MAX_INSTANCES = 16;
+  private static final String INSTANCE_LOCK_FILE_NAME = "instance.lock";
+  // the instance directories locked by this process, as a process can not lock the same file twice
+  private static final Set<Path> LOCKED_INSTANCE_DIRECTORIES = ConcurrentHashMap.newKeySet();
+  private static final Logger LOG = Loggers.get(PersistentIssueCache.class);
+  private final Path baseDirectory;
+  private final boolean perInstance;
+  private final BinaryCodec binaryCodec;
+  private final long maxFileSize;
+  // all the following fields are guarded by this
+  @CheckForNull
+  private Path directory;
+  @CheckForNull
+  private FileChannel instanceLockChannel;
+  // in the order they were written, the most recent last
+  private final LinkedHashMap<IssueCacheKey, CacheRecord> recordsByKey = new LinkedHashMap<>();
+  private long fileSize = HEADER_SIZE;
+  private boolean loaded;
+
+  public PersistentIssueCache(Configuration configuration, BinaryCodec binaryCodec) {
+    this(configuration.get(SqvsRoslynPluginPropertyDefinitions.getIssueCacheDirectory()).map(Path::of).orElseGet(PersistentIssueCache::getDefaultDirectory),
+      configuration.get(SqvsRoslynPluginPropertyDefinitions.getIssueCacheDirectory()).isEmpty(), binaryCodec, MAX_FILE_SIZE);
+  }
+
+  PersistentIssueCache(Path directory, BinaryCodec binaryCodec, long maxFileSize) {
+    this(directory, false, binaryCodec, maxFileSize);
+  }
+
+  /**
+   * @param perInstance whether the issues are persisted in a subdirectory of the given one, locked by this instance
+   */
+  PersistentIssueCache(Path baseDirectory, boolean perInstance, BinaryCodec binaryCodec, long maxFileSize) {
+    this.baseDirectory = baseDirectory;
+    this.perInstance = perInstance;
+    this.binaryCodec = binaryCodec;
+    this.maxFileSize = maxFileSize;
+  }
+
+  /**
+   * Local to the user and to the machine, unlike the temporary directory, which is shared and cleaned by the OS.
+   */
+  static Path getDefaultDirectory() {
+    var localAppData = System.getenv("LOCALAPPDATA");
+    var userDirectory = localAppData == null || localAppData.isBlank() ? Path.of(System.getProperty("user.home"), ".sonarlint")
+      : Path.of(localAppData, "SonarLint for Visual Studio");
+    return userDirectory.resolve("sqvs-roslyn-issue-cache");
+  }
+
+  /**
+   * @return the cached issues of the given keys, the keys that are not cached being absent
+   */
+  public synchronized Map<IssueCacheKey, List<RoslynIssue>> getAll(Collection<IssueCacheKey> keys) {
+    var issuesByKey = new HashMap<IssueCacheKey, List<RoslynIssue>>();
+    if (keys.isEmpty()) {
+      return issuesByKey;
+    }
+    try {
+      load();
+      for (var key : keys) {
+        var cacheRecord = recordsByKey.get(key);
+        if (cacheRecord != null) {
+          issuesByKey.put(key, decodeIssues(cacheRecord));
+        }
+      }
+    } catch (IOException e) {
+      LOG.debug("The persistent issue cache can not be read.", e);
+    }
+    return issuesByKey;
+  }
+
+  public synchronized void putAll(Map<IssueCacheKey, List<RoslynIssue>> issuesByKey) {
+    if (issuesByKey.isEmpty()) {
+      return;
+    }
+    try {
+      var newRecords = new LinkedHashMap<IssueCacheKey, CacheRecord>();
+      var newRecordsSize = 0L;
+      for (var entry : issuesByKey.entrySet()) {
+        var cacheRecord = encode(entry.getKey(), entry.getValue());
+        newRecords.put(entry.getKey(), cacheRecord);
+        newRecordsSize += cacheRecord.size();
+      }
+      if (HEADER_SIZE + newRecordsSize > maxFileSize) {
+        LOG.debug("The issues are too large to be persisted.");
+        return;
+      }
+      load();
+      newRecords.forEach(this::add);
+      var iterator = recordsByKey.values().iterator();
+      while (fileSize > maxFileSize) {
+        fileSize -= iterator.next().size();
+        iterator.remove();
+      }
+      write();
+    } catch (IOException e) {
+      LOG.debug("The issues can not be written to the persistent issue cache.", e);
+    }
+  }
+
+  @Override
+  public void start() {
+    // do nothing, the cache is read on the first lookup
+  }
+
+  @Override
+  public synchronized void stop() {
+    recordsByKey.clear();
+    fileSize = HEADER_SIZE;
+    loaded = false;
+    try {
+      unlockInstanceDirectory();
+    } catch (IOException e) {
+      LOG.debug("The persistent issue cache can not be unlocked.", e);
+    }
+  }
+
+  /**
+   * @return the configured directory, or the first instance directory not locked by another IDE instance, locked until {@link #stop()}
+   */
+  synchronized Path getDirectory() throws IOException {
+    if (directory != null) {
+      return directory;
+    }
+    if (!perInstance) {
+      directory = baseDirectory;
+      return directory;
+    }
+    for (var instance = 0; instance < MAX_INSTANCES; instance++) {
+      var instanceDirectory = baseDirectory.resolve("instance-" + instance).toAbsolutePath();
+      if (!LOCKED_INSTANCE_DIRECTORIES.add(instanceDirectory)) {
+        continue;
+      }
+      try {
+        var lockChannel = tryLock(instanceDirectory);
+        if (lockChannel != null) {
+          instanceLockChannel = lockChannel;
+          directory = instanceDirectory;
+          return directory;
+        }
+      } finally {
+        if (directory == null) {
+          LOCKED_INSTANCE_DIRECTORIES.remove(instanceDirectory);
+        }
+      }
+    }
+    throw new IOException("The " + MAX_INSTANCES + " instance directories of the persistent issue cache are locked by other IDE instances.");
+  }
+
+  /**
+   * @return the channel holding the lock of the given instance directory, null when another process holds it
+   */
+  @CheckForNull
+  private static FileChannel tryLock(Path instanceDirectory) throws IOException {
+    Files.createDirectories(instanceDirectory);
+    var lockChannel = FileChannel.open(instanceDirectory.resolve(INSTANCE_LOCK_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    try {
+      if (lockChannel.tryLock() != null) {
+        return lockChannel;
+      }
+    } catch (IOException | RuntimeException e) {
+      lockChannel.close();
+      throw e;
+    }
+    lockChannel.close();
+    return null;
+  }
+
+  private void unlockInstanceDirectory() throws IOException {
+    if (instanceLockChannel != null) {
+      // closing the channel releases its lock
+      instanceLockChannel.close();
+      instanceLockChannel = null;
+      LOCKED_INSTANCE_DIRECTORIES.remove(directory);
+      directory = null;
+    }
+  }
+
+  private void add(IssueCacheKey key, CacheRecord cacheRecord) {
+    // removed first, so that the record moves to the end of the write order
+    var previousRecord = recordsByKey.remove(key);
+    if (previousRecord != null) {
+      fileSize -= previousRecord.size();
+    }
+    recordsByKey.put(key, cacheRecord);
+    fileSize += cacheRecord.size();
+  }
+
+  /**
+   * Reads the file once, a file of another format version or a corrupted file being ignored, and replaced on the next write.
+   */
+  private void load() throws IOException {
+    if (loaded) {
+      return;
+    }
+    var issuesFile = getDirectory().resolve(ISSUES_FILE_NAME);
+    loaded = true;
+    if (!Files.isRegularFile(issuesFile)) {
+      return;
+    }
+    var buffer = ByteBuffer.wrap(Files.readAllBytes(issuesFile));
+    if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+      LOG.debug("The persistent issue cache has another format, it is ignored.");
+      return;
+    }
+    var records = new LinkedHashMap<IssueCacheKey, CacheRecord>();
+    try {
+      while (buffer.hasRemaining()) {
+        var body = readBytes(buffer);
+        var bodyBuffer = ByteBuffer.wrap(body);
+        var fileUri = readBytes(bodyBuffer);
+        var key = new IssueCacheKey(URI.create(new String(fileUri, StandardCharsets.UTF_8)),
+          new Hash128(bodyBuffer.getLong(), bodyBuffer.getLong()), new Hash128(bodyBuffer.getLong(), bodyBuffer.getLong()),
+          new Hash128(bodyBuffer.getLong(), bodyBuffer.getLong()));
+        records.put(key, new CacheRecord(body, bodyBuffer.position()));
+      }
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      LOG.debug("The persistent issue cache is corrupted, it is ignored.", e);
+      return;
+    }
+    records.forEach(this::add);
+  }
+
+  /**
+   * @return the bytes following their length, checked against the remaining bytes before being allocated
+   */
+  private static byte[] readBytes(ByteBuffer buffer) {
+    var length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    var bytes = new byte[length];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private void write() throws IOException {
+    var cacheDirectory = getDirectory();
+    Files.createDirectories(cacheDirectory);
+    var temporaryFile = Files.createTempFile(cacheDirectory, ISSUES_FILE_NAME, ".tmp");
+    try {
+      try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        for (var cacheRecord : recordsByKey.values()) {
+          out.writeInt(cacheRecord.body().length);
+          out.write(cacheRecord.body());
+        }
+      }
+      Files.move(temporaryFile, cacheDirectory.resolve(ISSUES_FILE_NAME), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temporaryFile);
+    }
+  }
+
+  private CacheRecord encode(IssueCacheKey key, List<RoslynIssue> issues) throws IOException {
+    var body = new ByteArrayOutputStream();
+    var out = new DataOutputStream(body);
+    var fileUri = key.fileUri().toASCIIString().getBytes(StandardCharsets.UTF_8);
+    out.writeInt(fileUri.length);
+    out.write(fileUri);
+    out.writeLong(key.contentHash().high());
+    out.writeLong(key.contentHash().low());
+    out.writeLong(key.configurationHash().high());
+    out.writeLong(key.configurationHash().low());
+    out.writeLong(key.projectHash().high());
+    out.writeLong(key.projectHash().low());
+    var issuesOffset = out.size();
+    binaryCodec.writeAnalysisResponse(out, new AnalysisResponseDto(issues));
+    return new CacheRecord(body.toByteArray(), issuesOffset);
+  }
+
+  private List<RoslynIssue> decodeIssues(CacheRecord cacheRecord) throws IOException {
+    var body = cacheRecord.body();
+    return binaryCodec.readAnalysisResponse(new ByteArrayInputStream(body, cacheRecord.issuesOffset(), body.length - cacheRecord.issuesOffset())).roslynIssues();
+  }
+
+  /**
+   * @param body the key and the issues, as written to the file after the length of the body
+   */
+  private record CacheRecord(byte[] body, int issuesOffset) {
+    long size() {
+      return Integer.BYTES + (long) body.length;
+    }
+  }
+}
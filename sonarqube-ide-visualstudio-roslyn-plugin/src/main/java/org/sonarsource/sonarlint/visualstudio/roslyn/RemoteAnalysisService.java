@@ -19,16 +19,22 @@
  */
 package org.sonarsource.sonarlint.visualstudio.roslyn;
 
-import org.sonar.api.batch.rule.ActiveRule;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonarsource.api.sonarlint.SonarLintSide;
 import org.sonarsource.sonarlint.visualstudio.roslyn.http.AnalyzerInfoDto;
 import org.sonarsource.sonarlint.visualstudio.roslyn.http.HttpAnalysisRequestHandler;
-import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.RoslynIssueSink;
 
-import java.net.URI;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @SonarLintSide
 public class RemoteAnalysisService {
@@ -36,23 +42,145 @@ public class RemoteAnalysisService {
   private final AnalysisCancellationService analysisCancellationService;
   private final HttpAnalysisRequestHandler httpAnalysisRequestHandler;
   private final SensorContext sensorContext;
+  private final AnalysisBatching analysisBatching;
 
   public RemoteAnalysisService(
     AnalysisCancellationService analysisCancellationService,
     HttpAnalysisRequestHandler httpAnalysisRequestHandler,
-    SensorContext sensorContext) {
+    SensorContext sensorContext,
+    InstanceConfigurationProvider instanceConfigurationProvider) {
     this.analysisCancellationService = analysisCancellationService;
     this.httpAnalysisRequestHandler = httpAnalysisRequestHandler;
     this.sensorContext = sensorContext;
+    this.analysisBatching = instanceConfigurationProvider.getAnalysisBatching();
   }
 
-  public Collection<RoslynIssue> analyze(
-    Collection<URI> inputFiles,
-    Collection<ActiveRule> activeRules,
+  /**
+   * Same as {@link #analyzeAsync}, except that the issues of all batches are passed to the sink on the calling thread, which waits
+   * until all responses are read. Returns as soon as the analysis is cancelled by the {@link AnalysisCancellationService}, without
+   * waiting for the rest of the responses.
+   *
+   * @return true only when all batches were analyzed and their responses fully received, false when cancelled or when the server
+   * answered a batch with an error or without body
+   */
+  public boolean analyze(
+    List<AnalysisPartition> partitions,
     Map<String, String> analysisProperties,
-    AnalyzerInfoDto analyzerInfo) {
-    try (var tracker = new AnalysisTrackerImpl(sensorContext, httpAnalysisRequestHandler, analysisCancellationService)) {
-      return httpAnalysisRequestHandler.analyze(inputFiles, activeRules, analysisProperties, analyzerInfo, tracker.getAnalysisId());
+    AnalyzerInfoDto analyzerInfo,
+    RoslynIssueSink issueSink) {
+    var issueQueue = new IssueQueue(issueSink);
+    var tracker = newTracker();
+    var analysis = analyzeAsync(partitions, analysisProperties, analyzerInfo, issueQueue, tracker);
+    // the issues of all batches are received once the analysis completes, and the drain stops at once when it is cancelled
+    analysis.whenComplete((result, failure) -> {
+      if (analysis.isCancelled()) {
+        issueQueue.cancel();
+      } else {
+        issueQueue.close();
+      }
+    });
+    var completed = false;
+    try {
+      completed = issueQueue.drain();
+    } finally {
+      if (!completed) {
+        // cancelled, or the sink failed: the requests in flight are aborted and the server is asked to stop at once
+        analysis.cancel(true);
+      }
+    }
+    return completed && join(analysis);
+  }
+
+  /**
+   * The files of each partition are split into batches of {@link AnalysisBatching#maxFilesPerBatch()} files, sent with the rules of
+   * their partition in concurrent requests, so that the server analyzes the partitions and the batches in parallel. No thread waits
+   * for the server in the meantime: the issues are passed to the sink on the threads reading the responses, possibly concurrently
+   * for different batches.
+   * <p>
+   * The returned future completes with true once all batches were analyzed, and with false when the server answered one of them
+   * with an error or without body: the issues of the files are then unknown. It fails as soon as one batch fails, or takes longer than {@link AnalysisBatching#batchTimeoutSeconds()}.
+   * Cancelling it, or any failure, aborts the requests in flight and the pending batches are not sent anymore. Cancelling it also
+   * asks the server to stop analyzing, as does the cancellation of the sensor once detected by the {@link AnalysisCancellationService}.
+   */
+  public CompletableFuture<Boolean> analyzeAsync(
+    List<AnalysisPartition> partitions,
+    Map<String, String> analysisProperties,
+    AnalyzerInfoDto analyzerInfo,
+    RoslynIssueSink issueSink) {
+    return analyzeAsync(partitions, analysisProperties, analyzerInfo, issueSink, newTracker());
+  }
+
+  private AnalysisTrackerImpl newTracker() {
+    return new AnalysisTrackerImpl(sensorContext, httpAnalysisRequestHandler, analysisCancellationService);
+  }
+
+  private CompletableFuture<Boolean> analyzeAsync(
+    List<AnalysisPartition> partitions,
+    Map<String, String> analysisProperties,
+    AnalyzerInfoDto analyzerInfo,
+    RoslynIssueSink issueSink,
+    AnalysisTrackerImpl tracker) {
+    var analysis = new CompletableFuture<Boolean>();
+    tracker.abortOnCancel(analysis);
+    analysis.whenComplete((result, failure) -> {
+      if (analysis.isCancelled()) {
+        tracker.cancel();
+      }
+      tracker.close();
+    });
+    var batches = new ConcurrentLinkedQueue<>(FileBatch.split(partitions, analysisBatching.maxFilesPerBatch()));
+    var senders = new ArrayList<CompletableFuture<Boolean>>();
+    for (var i = Math.min(batches.size(), analysisBatching.maxParallelBatches()); i > 0; i--) {
+      var sender = sendBatches(batches, analysisProperties, analyzerInfo, tracker, issueSink, analysis);
+      sender.whenComplete((result, failure) -> {
+        if (failure != null) {
+          analysis.completeExceptionally(failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+        }
+      });
+      senders.add(sender);
+    }
+    CompletableFuture.allOf(senders.toArray(CompletableFuture<?>[]::new))
+      .thenRun(() -> analysis.complete(senders.stream().allMatch(CompletableFuture::join)));
+    return analysis;
+  }
+
+  /**
+   * Each sender sends the next pending batch once the response to its previous one is read, which caps the number of concurrent requests.
+   * Completes with false when the response to one of its batches was not complete.
+   */
+  private CompletableFuture<Boolean> sendBatches(
+    Queue<FileBatch> batches,
+    Map<String, String> analysisProperties,
+    AnalyzerInfoDto analyzerInfo,
+    AnalysisTrackerImpl tracker,
+    RoslynIssueSink issueSink,
+    CompletableFuture<Boolean> analysis) {
+    var batch = analysis.isDone() || sensorContext.isCancelled() ? null : batches.poll();
+    if (batch == null) {
+      return CompletableFuture.completedFuture(!sensorContext.isCancelled());
+    }
+    var requestId = batch.firstFileId() == 0 ? tracker.getAnalysisId() : tracker.newBatchId();
+    var request = httpAnalysisRequestHandler.analyzeAsync(batch.fileUris(), batch.activeRules(), analysisProperties, analyzerInfo, requestId, batch.rebasing(issueSink))
+      .orTimeout(analysisBatching.batchTimeoutSeconds(), TimeUnit.SECONDS);
+    analysis.whenComplete((result, failure) -> request.cancel(true));
+    return request.thenCompose(complete -> sendBatches(batches, analysisProperties, analyzerInfo, tracker, issueSink, analysis)
+      .thenApply(restComplete -> complete && restComplete));
+  }
+
+  private boolean join(CompletableFuture<Boolean> analysis) {
+    try {
+      return analysis.join();
+    } catch (CancellationException e) {
+      // cancelled by the AnalysisCancellationService while the last issues were drained
+      return false;
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      if (e.getCause() instanceof TimeoutException) {
+        throw new IllegalStateException("The analysis of a batch took longer than " + analysisBatching.batchTimeoutSeconds() + " seconds.", e.getCause());
+      }
+      throw e;
     }
   }
 }
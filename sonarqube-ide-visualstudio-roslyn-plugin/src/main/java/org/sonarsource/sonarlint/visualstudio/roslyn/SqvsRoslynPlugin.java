@@ -21,10 +21,15 @@ package org.sonarsource.sonarlint.visualstudio.roslyn;
 
 import org.sonar.api.Plugin;
 import org.sonar.api.SonarProduct;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.AnalysisResponseDecoder;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.AnalysisSession;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.BinaryCodec;
 import org.sonarsource.sonarlint.visualstudio.roslyn.http.HttpAnalysisRequestHandler;
 import org.sonarsource.sonarlint.visualstudio.roslyn.http.HttpClientHandler;
 import org.sonarsource.sonarlint.visualstudio.roslyn.http.HttpClientProvider;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.JsonCodec;
 import org.sonarsource.sonarlint.visualstudio.roslyn.http.JsonRequestBuilder;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.ServerCapabilities;
 
 public class SqvsRoslynPlugin implements Plugin {
 
@@ -33,11 +38,21 @@ public class SqvsRoslynPlugin implements Plugin {
     if (context.getRuntime().getProduct() == SonarProduct.SONARLINT) {
       context.addExtensions(
         SqvsRoslynSensor.class,
+        JsonCodec.class,
+        BinaryCodec.class,
+        AnalysisResponseDecoder.class,
         JsonRequestBuilder.class,
         HttpClientProvider.class,
         HttpClientHandler.class,
+        ServerCapabilities.class,
+        AnalysisSession.class,
         AnalysisCancellationService.class,
+        IssuePreparationExecutor.class,
+        IssueReceiverExecutor.class,
+        IssueCache.class,
+        PersistentIssueCache.class,
         InstanceConfigurationProvider.class,
+        ConfigurationSnapshotProvider.class,
         AnalysisPropertiesProvider.class,
         RemoteAnalysisService.class,
         HttpAnalysisRequestHandler.class);
@@ -48,6 +48,34 @@ public class SqvsRoslynPluginPropertyDefinitions {
     return PROP_PREFIX + PLUGIN_PREFIX + ".internal.serverToken";
   }
 
+  public static String getMaxIssuesPerFile() {
+    return PROP_PREFIX + PLUGIN_PREFIX + ".internal.maxIssuesPerFile";
+  }
+
+  public static String getMaxIssuesPerRule() {
+    return PROP_PREFIX + PLUGIN_PREFIX + ".internal.maxIssuesPerRule";
+  }
+
+  public static String getMaxIssuesPerAnalysis() {
+    return PROP_PREFIX + PLUGIN_PREFIX + ".internal.maxIssuesPerAnalysis";
+  }
+
+  public static String getMaxFilesPerBatch() {
+    return PROP_PREFIX + PLUGIN_PREFIX + ".internal.maxFilesPerBatch";
+  }
+
+  public static String getMaxParallelBatches() {
+    return PROP_PREFIX + PLUGIN_PREFIX + ".internal.maxParallelBatches";
+  }
+
+  public static String getBatchTimeoutSeconds() {
+    return PROP_PREFIX + PLUGIN_PREFIX + ".internal.batchTimeoutSeconds";
+  }
+
+  public static String getIssueCacheDirectory() {
+    return PROP_PREFIX + PLUGIN_PREFIX + ".internal.issueCacheDirectory";
+  }
+
   public List<PropertyDefinition> create() {
     List<PropertyDefinition> result = new ArrayList<>();
     result.add(
@@ -84,6 +112,40 @@ public class SqvsRoslynPluginPropertyDefinitions {
       PropertyDefinition.builder(getShouldUseCsharpEnterprise())
         .hidden()
         .build());
+    result.add(
+      PropertyDefinition.builder(getMaxIssuesPerFile())
+        .defaultValue(String.valueOf(IssueLimits.NO_LIMIT))
+        .hidden()
+        .build());
+    result.add(
+      PropertyDefinition.builder(getMaxIssuesPerRule())
+        .defaultValue(String.valueOf(IssueLimits.NO_LIMIT))
+        .hidden()
+        .build());
+    result.add(
+      PropertyDefinition.builder(getMaxIssuesPerAnalysis())
+        .defaultValue(String.valueOf(IssueLimits.NO_LIMIT))
+        .hidden()
+        .build());
+    result.add(
+      PropertyDefinition.builder(getMaxFilesPerBatch())
+        .defaultValue(String.valueOf(AnalysisBatching.DEFAULT_MAX_FILES_PER_BATCH))
+        .hidden()
+        .build());
+    result.add(
+      PropertyDefinition.builder(getMaxParallelBatches())
+        .defaultValue(String.valueOf(AnalysisBatching.DEFAULT_MAX_PARALLEL_BATCHES))
+        .hidden()
+        .build());
+    result.add(
+      PropertyDefinition.builder(getBatchTimeoutSeconds())
+        .defaultValue(String.valueOf(AnalysisBatching.DEFAULT_BATCH_TIMEOUT_SECONDS))
+        .hidden()
+        .build());
+    result.add(
+      PropertyDefinition.builder(getIssueCacheDirectory())
+        .hidden()
+        .build());
     return result;
   }
 
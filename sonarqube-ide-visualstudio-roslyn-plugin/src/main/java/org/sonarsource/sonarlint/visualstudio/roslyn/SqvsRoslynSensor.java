@@ -19,27 +19,16 @@
  */
 package org.sonarsource.sonarlint.visualstudio.roslyn;
 
-import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
-import java.util.stream.StreamSupport;
 import org.sonar.api.batch.fs.FilePredicate;
-import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.rule.ActiveRule;
 import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorDescriptor;
-import org.sonar.api.batch.sensor.issue.NewIssue;
-import org.sonar.api.batch.sensor.issue.NewIssueLocation;
-import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonarsource.sonarlint.visualstudio.roslyn.http.AnalyzerInfoDto;
-import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
-import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueLocation;
-import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueQuickFix;
-import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueTextRange;
 
 public class SqvsRoslynSensor implements Sensor {
 
@@ -47,80 +36,20 @@ public class SqvsRoslynSensor implements Sensor {
   private final InstanceConfigurationProvider instanceConfigurationProvider;
   private final AnalysisPropertiesProvider analysisPropertiesProvider;
   private final RemoteAnalysisService remoteAnalysisService;
+  private final IssuePreparationExecutor issuePreparationExecutor;
+  private final IssueCache issueCache;
 
   public SqvsRoslynSensor(
     InstanceConfigurationProvider instanceConfigurationProvider,
     AnalysisPropertiesProvider analysisPropertiesProvider,
-    RemoteAnalysisService remoteAnalysisService) {
+    RemoteAnalysisService remoteAnalysisService,
+    IssuePreparationExecutor issuePreparationExecutor,
+    IssueCache issueCache) {
     this.instanceConfigurationProvider = instanceConfigurationProvider;
     this.analysisPropertiesProvider = analysisPropertiesProvider;
     this.remoteAnalysisService = remoteAnalysisService;
-  }
-
-  private static void handle(SensorContext context, RoslynIssue roslynIssue) {
-    var parts = roslynIssue.getRuleId().split(":");
-    var ruleKey = RuleKey.of(parts[0], parts[1]);
-    if (context.activeRules().find(ruleKey) != null) {
-      var diagFilePath = roslynIssue.getPrimaryLocation().getFileUri();
-      var diagInputFile = findInputFile(context, diagFilePath);
-      if (diagInputFile != null) {
-        var newIssue = context.newIssue();
-        newIssue
-          .forRule(ruleKey)
-          .at(createLocation(newIssue, roslynIssue.getPrimaryLocation(), diagInputFile));
-        handleSecondaryLocations(context, roslynIssue, newIssue);
-        handleQuickFixes(roslynIssue, newIssue);
-        newIssue.save();
-      }
-    }
-  }
-
-  private static void handleQuickFixes(RoslynIssue roslynIssue, NewIssue newIssue) {
-    for (RoslynIssueQuickFix quickFix : roslynIssue.getQuickFixes()) {
-      var newQuickFix = newIssue.newQuickFix();
-      // quickfixes are lazily evaluated on the client (VS) side,
-      // here we only pass the value that is then mapped back to the quickfix object by the client
-      newQuickFix.message(quickFix.getValue());
-      newIssue.addQuickFix(newQuickFix);
-    }
-  }
-
-  private static void handleSecondaryLocations(SensorContext context, RoslynIssue diag, NewIssue newIssue) {
-    var flows = diag.getFlows();
-    for (var flow : flows) {
-      for (var flowLocation : flow.getLocations()) {
-        var filePath = flowLocation.getFileUri();
-        var inputFile = findInputFile(context, filePath);
-        if (inputFile != null) {
-          newIssue.addLocation(createLocation(newIssue, flowLocation, inputFile));
-        }
-      }
-    }
-  }
-
-  private static InputFile findInputFile(SensorContext context, URI filePath) {
-    return context.fileSystem().inputFile(context.fileSystem().predicates().hasURI(filePath));
-  }
-
-  private static NewIssueLocation createLocation(NewIssue newIssue, RoslynIssueLocation location, InputFile inputFile) {
-    var message = newIssue.newLocation()
-      .on(inputFile)
-      .message(location.getMessage());
-
-    if (!isFileLevelRange(location.getTextRange())) {
-      message = message
-        .at(inputFile.newRange(
-            location.getTextRange().getStartLine(),
-            location.getTextRange().getStartLineOffset(),
-            location.getTextRange().getEndLine(),
-            location.getTextRange().getEndLineOffset()));
-    }
-
-    return message;
-  }
-
-  private static boolean isFileLevelRange(RoslynIssueTextRange roslynRange){
-    return roslynRange.getStartLine() == 1 && roslynRange.getStartLineOffset() == 0 && roslynRange.getEndLine() == 1 && roslynRange.getEndLineOffset() == 0;
+    this.issuePreparationExecutor = issuePreparationExecutor;
+    this.issueCache = issueCache;
   }
 
   @Override
@@ -151,26 +80,47 @@ public class SqvsRoslynSensor implements Sensor {
   }
 
   private void analyze(SensorContext context, FilePredicate predicate) {
-    var inputFiles = getFileUris(context, predicate);
     var activeRules = getActiveRules(context);
     var analysisProperties = analysisPropertiesProvider.getAnalysisProperties();
     var analyzerInfo = getAnalyzerInfo();
-    var roslynIssues = remoteAnalysisService.analyze(inputFiles, activeRules, analysisProperties, analyzerInfo);
-    for (var roslynIssue : roslynIssues) {
-      try {
-        handle(context, roslynIssue);
-      } catch (Exception exception) {
-        LOG.error(String.format("Issue %s can not be saved due to ", roslynIssue.getRuleId()), exception.fillInStackTrace());
+    var configurationHash = ConfigurationHash.of(activeRules, analysisProperties, analyzerInfo);
+    var cacheLookup = issueCache.lookup(context.fileSystem().inputFiles(predicate), configurationHash);
+    // only the files whose issues are not cached are sent to the server, in one partition per lane
+    var missedFiles = AnalysisPartition.sortByLane(cacheLookup.getMissedFiles());
+    var inputFileIndex = new InputFileIndex(context.fileSystem(), missedFiles);
+    var activeRuleResolver = new ActiveRuleResolver(activeRules);
+    var issuePipeline = new IssuePipeline(context, activeRuleResolver, inputFileIndex, issuePreparationExecutor,
+      instanceConfigurationProvider.getIssueLimits());
+    var complete = true;
+    // issues are saved as soon as they are prepared, while the rest of the response is still being received
+    try {
+      cacheLookup.getCachedIssues().forEach(issuePipeline::accept);
+      if (!cacheLookup.getMissedFiles().isEmpty()) {
+        complete = remoteAnalysisService.analyze(AnalysisPartition.of(missedFiles, inputFileIndex.getFileUris(), activeRules), analysisProperties, analyzerInfo,
+          cacheLookup.recording(issuePipeline, inputFileIndex));
       }
+    } finally {
+      issuePipeline.finish();
     }
-
-  }
-
-  private static List<URI> getFileUris(SensorContext context, FilePredicate predicate) {
-    return StreamSupport.stream(
-      context.fileSystem().inputFiles(predicate).spliterator(), false)
-      .map(InputFile::uri)
-      .toList();
+    // the issues of a cancelled or failed analysis were not all received, and the issues kept under the limits depend on the other files
+    if (!complete || context.isCancelled()) {
+      LOG.debug("The analysis did not complete, the issues of the analyzed files are not cached.");
+    } else if (issuePipeline.getIssueLimiter().getSkippedIssueCount() > 0) {
+      LOG.debug("Issues over the limits were skipped, the issues of the analyzed files are not cached.");
+    } else {
+      cacheLookup.store();
+    }
+    LOG.debug("{} file(s) analyzed, the issues of {} file(s) found in the cache (hit ratio since startup: {}%).", cacheLookup.getMissedFiles().size(),
+      cacheLookup.getHitFileCount(), Math.round(issueCache.getHitRatio() * 100));
+    issuePipeline.getDroppedLocationReport().log();
+    issuePipeline.getIssueLimiter().log();
+    var malformedRuleIdCount = activeRuleResolver.getMalformedRuleIdCount();
+    if (malformedRuleIdCount > 0) {
+      LOG.warn("{} issue(s) with a malformed rule id were skipped.", malformedRuleIdCount);
+    }
+    LOG.info("{} issue(s) saved, {} duplicate issue(s) removed, {} issue(s) of inactive rules skipped, {} issue(s) over the limits skipped.",
+      issuePipeline.getSavedIssueCount(), issuePipeline.getDuplicateIssueCount(), activeRuleResolver.getInactiveRuleIdCount(),
+      issuePipeline.getIssueLimiter().getSkippedIssueCount());
   }
 
   private static Collection<ActiveRule> getActiveRules(SensorContext context) {
@@ -0,0 +1,232 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonarsource.sonarlint.visualstudio.roslyn.ConfigurationHash;
+
+/**
+ * Serializes an {@link AnalysisRequestDto} to JSON lazily, as a sequence of UTF-8 encoded chunks.
+ * The output is identical to the one of {@link JsonCodec#toJson(AnalysisRequestDto)} for the same request.
+ * The active rules, the analysis properties and the analyzer info are null when the request refers to an {@link AnalysisSession}.
+ * <p>
+ * The braces, the separators and the names of the members are written here, and each value by a JSON writer of its own. The active
+ * rules are encoded once per rule set, see {@link ConfigurationHash#ofActiveRulesInOrder}, and spliced as is between the name and the next
+ * member of the following requests with the same rules.
+ */
+class AnalysisRequestBody extends ChunkedBody {
+  private final JsonCodec jsonCodec;
+  private final FragmentCache activeRulesFragments;
+  private final Collection<URI> fileUris;
+  private final Collection<ActiveRule> activeRules;
+  private final Map<String, String> analysisProperties;
+  private final AnalyzerInfoDto analyzerInfo;
+  private final UUID analysisId;
+
+  AnalysisRequestBody(
+    JsonCodec jsonCodec,
+    Collection<URI> fileUris,
+    Collection<ActiveRule> activeRules,
+    Map<String, String> analysisProperties,
+    AnalyzerInfoDto analyzerInfo,
+    UUID analysisId) {
+    this(jsonCodec, new FragmentCache(), fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+  }
+
+  AnalysisRequestBody(
+    JsonCodec jsonCodec,
+    FragmentCache activeRulesFragments,
+    Collection<URI> fileUris,
+    Collection<ActiveRule> activeRules,
+    Map<String, String> analysisProperties,
+    AnalyzerInfoDto analyzerInfo,
+    UUID analysisId) {
+    this.jsonCodec = jsonCodec;
+    this.activeRulesFragments = activeRulesFragments;
+    this.fileUris = fileUris;
+    this.activeRules = activeRules;
+    this.analysisProperties = analysisProperties;
+    this.analyzerInfo = analyzerInfo;
+    this.analysisId = analysisId;
+  }
+
+  @Override
+  protected Encoder newEncoder(Output output) {
+    var members = members();
+    return new Encoder() {
+      private int currentMember = -1;
+      private Value currentValue;
+
+      @Override
+      public boolean writeNext() throws IOException {
+        if (currentValue == null) {
+          currentMember++;
+          if (currentMember > members.size()) {
+            return false;
+          }
+          if (currentMember == members.size()) {
+            output.write('}');
+            return true;
+          }
+          var member = members.get(currentMember);
+          // the names are constants that need no escaping
+          output.write(currentMember == 0 ? '{' : ',');
+          output.writeBytes(('"' + member.name() + "\":").getBytes(StandardCharsets.UTF_8));
+          currentValue = member.value();
+        }
+        if (!currentValue.writeNext(output)) {
+          currentValue = null;
+        }
+        return true;
+      }
+    };
+  }
+
+  /**
+   * The members with a null value are omitted, as with {@link JsonCodec#toJson(AnalysisRequestDto)}.
+   */
+  private List<Member> members() {
+    var members = new ArrayList<Member>();
+    if (fileUris != null) {
+      members.add(new Member("FileUris", new JsonValue(new ArraySection<>(fileUris.iterator(), jsonCodec::writeUri))));
+    }
+    if (activeRules != null) {
+      members.add(new Member("ActiveRules", output -> {
+        output.splice(activeRulesFragments.get(ConfigurationHash.ofActiveRulesInOrder(activeRules), this::encodeActiveRules));
+        return false;
+      }));
+    }
+    if (analysisProperties != null) {
+      members.add(new Member("AnalysisProperties", new JsonValue(writer -> {
+        jsonCodec.writeStringMap(writer, analysisProperties);
+        return false;
+      })));
+    }
+    if (analyzerInfo != null) {
+      members.add(new Member("AnalyzerInfo", new JsonValue(writer -> {
+        jsonCodec.writeAnalyzerInfo(writer, analyzerInfo);
+        return false;
+      })));
+    }
+    if (analysisId != null) {
+      members.add(new Member("AnalysisId", new JsonValue(writer -> {
+        jsonCodec.writeUuid(writer, analysisId);
+        return false;
+      })));
+    }
+    return members;
+  }
+
+  private byte[] encodeActiveRules() throws IOException {
+    var output = new ByteArrayOutputStream();
+    try (var writer = jsonCodec.newJsonWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+      writer.beginArray();
+      for (var rule : activeRules) {
+        jsonCodec.writeActiveRule(writer, new ActiveRuleDto(rule.ruleKey().toString(), rule.params()));
+      }
+      writer.endArray();
+    }
+    return output.toByteArray();
+  }
+
+  private record Member(String name, Value value) {
+  }
+
+  /**
+   * The value of a member, written in one or several steps.
+   */
+  private interface Value {
+    /**
+     * @return true if the value has more to write
+     */
+    boolean writeNext(Output output) throws IOException;
+  }
+
+  /**
+   * A value written by a JSON writer of its own, which ends with the value.
+   */
+  private final class JsonValue implements Value {
+    private final Section section;
+    private JsonWriter writer;
+
+    private JsonValue(Section section) {
+      this.section = section;
+    }
+
+    @Override
+    public boolean writeNext(Output output) throws IOException {
+      if (writer == null) {
+        writer = jsonCodec.newJsonWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+      }
+      var hasMore = section.writeNext(writer);
+      // moves the characters buffered by the encoder to the output, so that the size of the current chunk is accurate
+      writer.flush();
+      return hasMore;
+    }
+  }
+
+  private interface Section {
+    /**
+     * @return true if the section has more to write
+     */
+    boolean writeNext(JsonWriter writer) throws IOException;
+  }
+
+  private interface ElementWriter<T> {
+    void write(JsonWriter writer, T element) throws IOException;
+  }
+
+  private static final class ArraySection<T> implements Section {
+    private final Iterator<T> elements;
+    private final ElementWriter<T> elementWriter;
+    private boolean started;
+
+    private ArraySection(Iterator<T> elements, ElementWriter<T> elementWriter) {
+      this.elements = elements;
+      this.elementWriter = elementWriter;
+    }
+
+    @Override
+    public boolean writeNext(JsonWriter writer) throws IOException {
+      if (!started) {
+        writer.beginArray();
+        started = true;
+      }
+      if (elements.hasNext()) {
+        elementWriter.write(writer, elements.next());
+        return true;
+      }
+      writer.endArray();
+      return false;
+    }
+  }
+}
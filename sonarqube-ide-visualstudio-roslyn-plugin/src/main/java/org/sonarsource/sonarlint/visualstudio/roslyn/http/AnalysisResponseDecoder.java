@@ -0,0 +1,233 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonarsource.api.sonarlint.SonarLintSide;
+
+/**
+ * Decodes the body of an analyze response with the codec matching its {@code Content-Type}: {@link BinaryCodec} when the server
+ * answered with {@value BinaryCodec#MEDIA_TYPE}, {@link JsonCodec} otherwise. Gzip and deflate content encodings are decompressed on the fly.
+ */
+@SonarLintSide(lifespan = SonarLintSide.INSTANCE)
+public class AnalysisResponseDecoder {
+  private static final Logger LOG = Loggers.get(AnalysisResponseDecoder.class);
+  private static final String IDENTITY = "identity";
+  private static final String GZIP = "gzip";
+  private static final String X_GZIP = "x-gzip";
+  private static final String DEFLATE = "deflate";
+  private static final int ZLIB_DEFLATE_METHOD = 8;
+  private static final int BUFFER_SIZE = 16 * 1024;
+  private final JsonCodec jsonCodec;
+  private final BinaryCodec binaryCodec;
+  private final ServerCapabilities serverCapabilities;
+
+  public AnalysisResponseDecoder(JsonCodec jsonCodec, BinaryCodec binaryCodec, ServerCapabilities serverCapabilities) {
+    this.jsonCodec = jsonCodec;
+    this.binaryCodec = binaryCodec;
+    this.serverCapabilities = serverCapabilities;
+  }
+
+  /**
+   * Decodes the response of the single-response endpoint.
+   *
+   * @return false when the server sent no body, in which case the issues of the analyzed files are unknown
+   */
+  public boolean readIssues(HttpHeaders headers, InputStream body, RoslynIssueSink issueSink) throws IOException {
+    readProtocolVersion(headers);
+    readAcceptedRequestEncodings(headers);
+    try (var content = decodeContent(headers, body)) {
+      return readIssuesContent(headers, content, issueSink);
+    }
+  }
+
+  private boolean readIssuesContent(HttpHeaders headers, InputStream body, RoslynIssueSink issueSink) throws IOException {
+    if (isBinary(headers)) {
+      if (!readBinaryIssues(body, issueSink)) {
+        LOG.warn("No body received from the server.");
+        return false;
+      }
+      return true;
+    }
+    var reader = jsonCodec.newJsonReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+    if (isEmpty(reader)) {
+      LOG.warn("No body received from the server.");
+      return false;
+    }
+
+    jsonCodec.readAnalysisResponse(reader, issueSink);
+    return true;
+  }
+
+  /**
+   * Decodes the response of the streaming endpoint. In JSON, it is newline-delimited: each line has the same shape as {@link AnalysisResponseDto}
+   * and holds the issues of one file. The binary format is a stream of issues already, so it is decoded the same way for both endpoints.
+   */
+  public void readIssueBatches(HttpHeaders headers, InputStream body, RoslynIssueSink issueSink) throws IOException {
+    readProtocolVersion(headers);
+    readAcceptedRequestEncodings(headers);
+    try (var content = decodeContent(headers, body)) {
+      readIssueBatchesContent(headers, content, issueSink);
+    }
+  }
+
+  private void readIssueBatchesContent(HttpHeaders headers, InputStream body, RoslynIssueSink issueSink) throws IOException {
+    if (isBinary(headers)) {
+      readBinaryIssues(body, issueSink);
+      return;
+    }
+    var reader = jsonCodec.newJsonReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+    // lenient parsing accepts several top-level values separated by new lines
+    reader.setStrictness(Strictness.LENIENT);
+    if (isEmpty(reader)) {
+      return;
+    }
+    while (reader.peek() != JsonToken.END_DOCUMENT) {
+      jsonCodec.readAnalysisResponse(reader, issueSink);
+    }
+  }
+
+  /**
+   * Decompresses the body while it is read, according to its {@code Content-Encoding}. The body is never fully buffered, so the
+   * issues of a streaming response are still decoded as soon as the server flushes them.
+   */
+  private InputStream decodeContent(HttpHeaders headers, InputStream body) throws IOException {
+    var contentEncoding = headers.firstValue("Content-Encoding").map(value -> value.trim().toLowerCase(Locale.ROOT)).orElse(IDENTITY);
+    if (IDENTITY.equals(contentEncoding)) {
+      return body;
+    }
+    if (!GZIP.equals(contentEncoding) && !X_GZIP.equals(contentEncoding) && !DEFLATE.equals(contentEncoding)) {
+      throw new IOException("Unsupported content encoding: " + contentEncoding);
+    }
+    var input = new PushbackInputStream(body, 2);
+    var header = input.readNBytes(2);
+    if (header.length == 0) {
+      return input;
+    }
+    input.unread(header);
+    if (!DEFLATE.equals(contentEncoding)) {
+      return new GZIPInputStream(input, BUFFER_SIZE);
+    }
+    // "deflate" is meant to be zlib wrapped, but some servers (like .NET's DeflateStream) send raw deflate data
+    var inflater = new Inflater(!isZlibHeader(header));
+    return new InflaterInputStream(input, inflater, BUFFER_SIZE) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          // an inflater given to the stream is not released by it
+          inflater.end();
+        }
+      }
+    };
+  }
+
+  private static boolean isZlibHeader(byte[] header) {
+    if (header.length < 2) {
+      return false;
+    }
+    var compressionMethodAndFlags = header[0] & 0xFF;
+    var flags = header[1] & 0xFF;
+    return (compressionMethodAndFlags & 0x0F) == ZLIB_DEFLATE_METHOD && ((compressionMethodAndFlags << 8) | flags) % 31 == 0;
+  }
+
+  private boolean readBinaryIssues(InputStream body, RoslynIssueSink issueSink) throws IOException {
+    // a server answering in binary also accepts binary requests, unless it rejects one later on
+    serverCapabilities.setBinaryFormatSupported();
+    return binaryCodec.readAnalysisResponse(body, issueSink);
+  }
+
+  private void readProtocolVersion(HttpHeaders headers) {
+    // a server answering with a protocol version accepts the features of that version, unless it rejects them later on
+    var protocolVersion = headers.firstValue(HttpClientHandler.PROTOCOL_VERSION_HEADER)
+      .map(String::trim)
+      .filter(version -> version.matches("\\d{1,9}"))
+      .map(Integer::parseInt)
+      .orElse(0);
+    if (protocolVersion >= HttpClientHandler.SESSION_PROTOCOL_VERSION) {
+      serverCapabilities.setSessionSupported();
+    }
+    if (protocolVersion >= HttpClientHandler.ANALYZE_STREAM_PROTOCOL_VERSION) {
+      serverCapabilities.setAnalyzeStreamSupported();
+    }
+  }
+
+  /**
+   * A server advertises the content codings it accepts in requests with the {@code Accept-Encoding} header of its responses, see RFC 7694.
+   */
+  private void readAcceptedRequestEncodings(HttpHeaders headers) {
+    var gzipAccepted = headers.allValues("Accept-Encoding").stream()
+      .flatMap(value -> Arrays.stream(value.split(",")))
+      .anyMatch(AnalysisResponseDecoder::isAcceptedGzip);
+    if (gzipAccepted) {
+      serverCapabilities.setGzipRequestSupported();
+    }
+  }
+
+  /**
+   * @param coding a content coding of an {@code Accept-Encoding} header, with its optional weight, like {@code gzip;q=0.8}
+   */
+  private static boolean isAcceptedGzip(String coding) {
+    var parameters = coding.split(";");
+    var name = parameters[0].trim().toLowerCase(Locale.ROOT);
+    if (!GZIP.equals(name) && !X_GZIP.equals(name)) {
+      return false;
+    }
+    for (var i = 1; i < parameters.length; i++) {
+      var parameter = parameters[i].trim().toLowerCase(Locale.ROOT);
+      if (parameter.startsWith("q=")) {
+        // a weight of 0 means not acceptable
+        return !parameter.substring(2).matches("0(\\.0{0,3})?");
+      }
+    }
+    return true;
+  }
+
+  private static boolean isBinary(HttpHeaders headers) {
+    return headers.firstValue("Content-Type")
+      .map(contentType -> contentType.trim().toLowerCase(Locale.ROOT).startsWith(BinaryCodec.MEDIA_TYPE))
+      .orElse(false);
+  }
+
+  private static boolean isEmpty(JsonReader reader) throws IOException {
+    try {
+      return reader.peek() == JsonToken.NULL;
+    } catch (EOFException e) {
+      return true;
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import javax.annotation.CheckForNull;
+import org.sonarsource.api.sonarlint.SonarLintSide;
+import org.sonarsource.sonarlint.visualstudio.roslyn.ConfigurationHash;
+import org.sonarsource.sonarlint.visualstudio.roslyn.Hash128;
+
+/**
+ * The configurations registered on the server for the plugin instance. The active rules, the analysis properties and the analyzer info
+ * are sent once to the {@code session} endpoint, which answers with a config id. As long as the {@link ConfigurationHash} does not
+ * change, the analyze requests only send that id, in the {@value HttpClientHandler#CONFIG_ID_HEADER} header, along with the files.
+ * One configuration is kept per {@link org.sonarsource.sonarlint.visualstudio.roslyn.AnalysisLane}, each lane being sent with the rules
+ * of its language only.
+ * <p>
+ * The server answers {@value HttpClientHandler#UNKNOWN_CONFIG_STATUS} to a config id it does not know anymore, for example after a
+ * restart, and the configuration is then registered again.
+ * <p>
+ * The batches of one lane are sent concurrently with the same configuration, they all wait for the same registration.
+ */
+@SonarLintSide(lifespan = SonarLintSide.INSTANCE)
+public class AnalysisSession {
+  static final int MAX_REGISTRATIONS = 8;
+  private final Map<Hash128, String> configIdsByHash = new ConcurrentHashMap<>();
+  private final Map<Hash128, CompletableFuture<String>> pendingRegistrationsByHash = new ConcurrentHashMap<>();
+
+  /**
+   * @return the config id of the given configuration, or null if it is not registered on the server
+   */
+  @CheckForNull
+  public String getConfigId(Hash128 configurationHash) {
+    return configIdsByHash.get(configurationHash);
+  }
+
+  public void register(Hash128 configurationHash, String configId) {
+    // the configurations of the previous rule sets are forgotten at once, they are not used anymore
+    if (configIdsByHash.size() >= MAX_REGISTRATIONS && !configIdsByHash.containsKey(configurationHash)) {
+      configIdsByHash.clear();
+    }
+    configIdsByHash.put(configurationHash, configId);
+  }
+
+  /**
+   * Registers the configuration with the given session request, unless another request is already registering it,
+   * in which case the config id it receives is shared. The session request is aborted with the exchange that sent it,
+   * the other exchanges then send the configuration with their request.
+   *
+   * @return the registered config id, or null if the configuration has to be sent with each request
+   */
+  public CompletableFuture<String> register(Hash128 configurationHash, Supplier<CompletableFuture<String>> sessionRequest) {
+    var registration = new CompletableFuture<String>();
+    var pendingRegistration = pendingRegistrationsByHash.putIfAbsent(configurationHash, registration);
+    if (pendingRegistration != null) {
+      return pendingRegistration.exceptionally(failure -> null);
+    }
+    CompletableFuture<String> configId;
+    try {
+      configId = sessionRequest.get();
+    } catch (RuntimeException e) {
+      configId = CompletableFuture.failedFuture(e);
+    }
+    configId.whenComplete((registeredConfigId, failure) -> {
+      if (registeredConfigId != null) {
+        register(configurationHash, registeredConfigId);
+      }
+      pendingRegistrationsByHash.remove(configurationHash, registration);
+      if (failure != null) {
+        registration.completeExceptionally(failure);
+      } else {
+        registration.complete(registeredConfigId);
+      }
+    });
+    return registration.copy();
+  }
+
+  /**
+   * Forgets the given config id, unless another one was registered in the meantime for its configuration.
+   */
+  public void invalidate(String configId) {
+    configIdsByHash.values().remove(configId);
+  }
+}
@@ -0,0 +1,455 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonarsource.api.sonarlint.SonarLintSide;
+import org.sonarsource.sonarlint.visualstudio.roslyn.ConfigurationHash;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueFlow;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueLocation;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueQuickFix;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueTextRange;
+
+/**
+ * Compact binary encoding of the analysis requests and of the {@link AnalysisResponseDto}, negotiated with the server through the
+ * {@value #MEDIA_TYPE} media type. JSON stays the default when the server does not advertise it. Only the client direction is
+ * implemented: requests are written and responses are read. Responses are also written, but only to store issues in the
+ * {@link org.sonarsource.sonarlint.visualstudio.roslyn.PersistentIssueCache}.
+ * <p>
+ * Both documents start with a {@link #FORMAT_VERSION} byte. Integers are unsigned LEB128 varints, text range values are zigzag varints,
+ * strings are UTF-8 bytes prefixed by their length, and strings, lists and maps prefixed by {@code size + 1}, {@code 0} standing for null.
+ * <ul>
+ *   <li>request: file URIs, active rules (rule id and parameters), analysis properties, analyzer info flags and analysis id</li>
+ *   <li>response: a sequence of issues, each one preceded by an {@code ISSUE} tag, and terminated by an {@code END} tag, so that issues can be
+ *   decoded as soon as they are received. A location holds its file URI, or its file id (see {@link RoslynIssueLocation#getFileId()})</li>
+ * </ul>
+ */
+@SonarLintSide(lifespan = SonarLintSide.INSTANCE)
+public class BinaryCodec {
+  public static final String MEDIA_TYPE = "application/x-sqvs-roslyn";
+  static final int FORMAT_VERSION = 1;
+  private static final int END = 0;
+  private static final int ISSUE = 1;
+  private static final int NULL = 0;
+  private static final int PRESENT = 1;
+  private static final int LOCATION_HAS_TEXT_RANGE = 2;
+  private static final int LOCATION_HAS_FILE_ID = 4;
+  private static final int ANALYZER_INFO_CSHARP_ENTERPRISE = 2;
+  private static final int ANALYZER_INFO_VB_ENTERPRISE = 4;
+  // the active rules rarely change between analyses, and are the largest part of the request after the files
+  private final FragmentCache activeRulesFragments = new FragmentCache();
+
+  /**
+   * Encodes the request lazily, see {@link ChunkedBody}. The active rules are encoded once per rule set, see {@link ConfigurationHash#ofActiveRulesInOrder},
+   * and spliced as is into the following requests with the same rules.
+   */
+  Iterable<byte[]> encodeAnalysisRequest(
+    Collection<URI> fileUris,
+    Collection<ActiveRule> activeRules,
+    Map<String, String> analysisProperties,
+    AnalyzerInfoDto analyzerInfo,
+    UUID analysisId) {
+    return new ChunkedBody() {
+      @Override
+      protected Encoder newEncoder(Output output) {
+        return new AnalysisRequestEncoder(output, fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+      }
+    };
+  }
+
+  /**
+   * Encodes issues in the response format for the {@link org.sonarsource.sonarlint.visualstudio.roslyn.PersistentIssueCache}.
+   */
+  public void writeAnalysisResponse(OutputStream output, AnalysisResponseDto analysisResponse) throws IOException {
+    var out = new DataOutputStream(output);
+    out.writeByte(FORMAT_VERSION);
+    if (analysisResponse.roslynIssues() != null) {
+      for (var roslynIssue : analysisResponse.roslynIssues()) {
+        out.writeByte(ISSUE);
+        writeRoslynIssue(out, roslynIssue);
+      }
+    }
+    out.writeByte(END);
+    out.flush();
+  }
+
+  public AnalysisResponseDto readAnalysisResponse(InputStream input) throws IOException {
+    var roslynIssues = new ArrayList<RoslynIssue>();
+    readAnalysisResponse(input, roslynIssues::add);
+    return new AnalysisResponseDto(roslynIssues);
+  }
+
+  /**
+   * Streaming counterpart of {@link #readAnalysisResponse(InputStream)}: each issue is handed to the sink as soon as it is decoded.
+   * Issues whose rule is rejected by {@link RoslynIssueSink#acceptsRule(String)} are skipped without being materialized.
+   *
+   * @return false if the input is empty
+   */
+  public boolean readAnalysisResponse(InputStream input, RoslynIssueSink issueSink) throws IOException {
+    var in = new DataInputStream(input);
+    var version = in.read();
+    if (version == -1) {
+      return false;
+    }
+    checkFormatVersion(version);
+    var uriReader = new UriReader();
+    int tag;
+    while ((tag = in.readUnsignedByte()) == ISSUE) {
+      var ruleId = readString(in);
+      if (issueSink.acceptsRule(ruleId)) {
+        issueSink.accept(readRoslynIssue(in, ruleId, uriReader));
+      } else {
+        skipRoslynIssue(in);
+      }
+    }
+    if (tag != END) {
+      throw new IOException("Unexpected tag in binary response: " + tag);
+    }
+    return true;
+  }
+
+  private static void writeTrailer(DataOutputStream out, Map<String, String> analysisProperties, AnalyzerInfoDto analyzerInfo, UUID analysisId)
+    throws IOException {
+    writeStringMap(out, analysisProperties);
+    if (analyzerInfo == null) {
+      out.writeByte(NULL);
+    } else {
+      out.writeByte(PRESENT
+        | (analyzerInfo.shouldUseCsharpEnterprise() ? ANALYZER_INFO_CSHARP_ENTERPRISE : 0)
+        | (analyzerInfo.shouldUseVbEnterprise() ? ANALYZER_INFO_VB_ENTERPRISE : 0));
+    }
+    if (analysisId == null) {
+      out.writeByte(NULL);
+    } else {
+      out.writeByte(PRESENT);
+      out.writeLong(analysisId.getMostSignificantBits());
+      out.writeLong(analysisId.getLeastSignificantBits());
+    }
+  }
+
+  private static void writeActiveRule(DataOutputStream out, ActiveRuleDto activeRule) throws IOException {
+    writeString(out, activeRule.ruleId());
+    writeStringMap(out, activeRule.parameters());
+  }
+
+  private static void writeRoslynIssue(DataOutputStream out, RoslynIssue roslynIssue) throws IOException {
+    writeString(out, roslynIssue.getRuleId());
+    writeLocation(out, roslynIssue.getPrimaryLocation());
+    writeCount(out, roslynIssue.getFlows());
+    if (roslynIssue.getFlows() != null) {
+      for (var flow : roslynIssue.getFlows()) {
+        writeCount(out, flow.getLocations());
+        if (flow.getLocations() != null) {
+          for (var location : flow.getLocations()) {
+            writeLocation(out, location);
+          }
+        }
+      }
+    }
+    writeCount(out, roslynIssue.getQuickFixes());
+    if (roslynIssue.getQuickFixes() != null) {
+      for (var quickFix : roslynIssue.getQuickFixes()) {
+        writeString(out, quickFix.getValue());
+      }
+    }
+  }
+
+  private static RoslynIssue readRoslynIssue(DataInputStream in, String ruleId, UriReader uriReader) throws IOException {
+    var primaryLocation = readLocation(in, uriReader);
+    var flows = readList(in, flowIn -> new RoslynIssueFlow(readList(flowIn, locationIn -> readLocation(locationIn, uriReader))));
+    var quickFixes = readList(in, quickFixIn -> new RoslynIssueQuickFix(readString(quickFixIn)));
+    return new RoslynIssue(ruleId, primaryLocation, flows, quickFixes);
+  }
+
+  /**
+   * Skips the rest of an issue once its rule id is read, without allocating anything.
+   */
+  private static void skipRoslynIssue(DataInputStream in) throws IOException {
+    skipLocation(in);
+    var flowCount = readVarInt(in) - 1;
+    for (var i = 0; i < flowCount; i++) {
+      var locationCount = readVarInt(in) - 1;
+      for (var j = 0; j < locationCount; j++) {
+        skipLocation(in);
+      }
+    }
+    var quickFixCount = readVarInt(in) - 1;
+    for (var i = 0; i < quickFixCount; i++) {
+      skipString(in);
+    }
+  }
+
+  private static void writeLocation(DataOutputStream out, RoslynIssueLocation location) throws IOException {
+    if (location == null) {
+      out.writeByte(NULL);
+      return;
+    }
+    var textRange = location.getTextRange();
+    var fileId = location.getFileId();
+    out.writeByte(PRESENT | (textRange != null ? LOCATION_HAS_TEXT_RANGE : 0) | (fileId != null ? LOCATION_HAS_FILE_ID : 0));
+    writeUri(out, location.getFileUri());
+    if (fileId != null) {
+      writeVarInt(out, fileId);
+    }
+    writeString(out, location.getMessage());
+    if (textRange != null) {
+      writeSignedVarInt(out, textRange.getStartLine());
+      writeSignedVarInt(out, textRange.getEndLine());
+      writeSignedVarInt(out, textRange.getStartLineOffset());
+      writeSignedVarInt(out, textRange.getEndLineOffset());
+    }
+  }
+
+  private static RoslynIssueLocation readLocation(DataInputStream in, UriReader uriReader) throws IOException {
+    var flags = in.readUnsignedByte();
+    if (flags == NULL) {
+      return null;
+    }
+    var fileUri = uriReader.read(in);
+    var fileId = (flags & LOCATION_HAS_FILE_ID) != 0 ? readVarInt(in) : null;
+    var message = readString(in);
+    RoslynIssueTextRange textRange = null;
+    if ((flags & LOCATION_HAS_TEXT_RANGE) != 0) {
+      textRange = new RoslynIssueTextRange(readSignedVarInt(in), readSignedVarInt(in), readSignedVarInt(in), readSignedVarInt(in));
+    }
+    return new RoslynIssueLocation(fileUri, fileId, message, textRange);
+  }
+
+  private static void skipLocation(DataInputStream in) throws IOException {
+    var flags = in.readUnsignedByte();
+    if (flags == NULL) {
+      return;
+    }
+    skipString(in);
+    if ((flags & LOCATION_HAS_FILE_ID) != 0) {
+      readVarInt(in);
+    }
+    skipString(in);
+    if ((flags & LOCATION_HAS_TEXT_RANGE) != 0) {
+      for (var i = 0; i < 4; i++) {
+        readVarInt(in);
+      }
+    }
+  }
+
+  private static void writeUri(DataOutputStream out, URI uri) throws IOException {
+    writeString(out, uri == null ? null : uri.toASCIIString());
+  }
+
+  private static void writeStringMap(DataOutputStream out, Map<String, String> map) throws IOException {
+    if (map == null) {
+      writeVarInt(out, NULL);
+      return;
+    }
+    writeVarInt(out, map.size() + 1);
+    for (var entry : map.entrySet()) {
+      writeString(out, entry.getKey());
+      writeString(out, entry.getValue());
+    }
+  }
+
+  private static void writeCount(DataOutputStream out, Collection<?> collection) throws IOException {
+    writeVarInt(out, collection == null ? NULL : (collection.size() + 1));
+  }
+
+  private static <T> List<T> readList(DataInputStream in, ElementReader<T> elementReader) throws IOException {
+    var size = readVarInt(in) - 1;
+    if (size < 0) {
+      return null;
+    }
+    // the size is not trusted for the initial capacity, a corrupted stream would fail with an EOFException instead
+    var list = new ArrayList<T>(Math.min(size, 1024));
+    for (var i = 0; i < size; i++) {
+      list.add(elementReader.read(in));
+    }
+    return list;
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      writeVarInt(out, NULL);
+      return;
+    }
+    var bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarInt(out, bytes.length + 1);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    var length = readVarInt(in) - 1;
+    if (length < 0) {
+      return null;
+    }
+    var bytes = in.readNBytes(length);
+    if (bytes.length != length) {
+      throw new EOFException();
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void skipString(DataInputStream in) throws IOException {
+    var length = readVarInt(in) - 1;
+    if (length > 0) {
+      in.skipNBytes(length);
+    }
+  }
+
+  private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int readVarInt(DataInputStream in) throws IOException {
+    var value = 0;
+    for (var shift = 0; shift < 32; shift += 7) {
+      var b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint in binary payload");
+  }
+
+  private static void writeSignedVarInt(DataOutputStream out, int value) throws IOException {
+    writeVarInt(out, (value << 1) ^ (value >> 31));
+  }
+
+  private static int readSignedVarInt(DataInputStream in) throws IOException {
+    var value = readVarInt(in);
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void checkFormatVersion(int version) throws IOException {
+    if (version != FORMAT_VERSION) {
+      throw new IOException("Unsupported binary format version: " + version);
+    }
+  }
+
+  private interface ElementReader<T> {
+    T read(DataInputStream in) throws IOException;
+  }
+
+  /**
+   * The locations of the issues of a file come one after the other, so the last parsed URI is very likely to be the next one.
+   * Created for each document, so it needs no synchronization.
+   */
+  private static final class UriReader {
+    private String lastText;
+    private URI lastUri;
+
+    URI read(DataInputStream in) throws IOException {
+      var text = readString(in);
+      if (text == null) {
+        return null;
+      }
+      if (text.equals(lastText)) {
+        return lastUri;
+      }
+      try {
+        lastUri = new URI(text);
+        lastText = text;
+        return lastUri;
+      } catch (URISyntaxException e) {
+        throw new IOException("Invalid file URI in binary payload: " + text, e);
+      }
+    }
+  }
+
+  private byte[] encodeActiveRules(Collection<ActiveRule> activeRules) throws IOException {
+    var output = new ByteArrayOutputStream();
+    var out = new DataOutputStream(output);
+    writeCount(out, activeRules);
+    for (var rule : activeRules) {
+      writeActiveRule(out, new ActiveRuleDto(rule.ruleKey().toString(), rule.params()));
+    }
+    return output.toByteArray();
+  }
+
+  private final class AnalysisRequestEncoder implements ChunkedBody.Encoder {
+    private final ChunkedBody.Output output;
+    private final DataOutputStream out;
+    private final Collection<URI> fileUris;
+    private final Collection<ActiveRule> activeRules;
+    private final Map<String, String> analysisProperties;
+    private final AnalyzerInfoDto analyzerInfo;
+    private final UUID analysisId;
+    private Iterator<URI> remainingFileUris;
+    private boolean activeRulesWritten;
+    private boolean completed;
+
+    private AnalysisRequestEncoder(ChunkedBody.Output output, Collection<URI> fileUris, Collection<ActiveRule> activeRules, Map<String, String> analysisProperties,
+      AnalyzerInfoDto analyzerInfo, UUID analysisId) {
+      this.output = output;
+      this.out = new DataOutputStream(output);
+      this.fileUris = fileUris;
+      this.activeRules = activeRules;
+      this.analysisProperties = analysisProperties;
+      this.analyzerInfo = analyzerInfo;
+      this.analysisId = analysisId;
+    }
+
+    @Override
+    public boolean writeNext() throws IOException {
+      if (completed) {
+        return false;
+      }
+      if (remainingFileUris == null) {
+        out.writeByte(FORMAT_VERSION);
+        writeCount(out, fileUris);
+        remainingFileUris = fileUris.iterator();
+      } else if (remainingFileUris.hasNext()) {
+        writeUri(out, remainingFileUris.next());
+      } else if (!activeRulesWritten) {
+        if (activeRules == null) {
+          writeCount(out, null);
+        } else {
+          // the data output does not buffer, so the fragment lands right after the file URIs
+          output.splice(activeRulesFragments.get(ConfigurationHash.ofActiveRulesInOrder(activeRules), () -> encodeActiveRules(activeRules)));
+        }
+        activeRulesWritten = true;
+      } else {
+        writeTrailer(out, analysisProperties, analyzerInfo, analysisId);
+        completed = true;
+      }
+      return true;
+    }
+  }
+}
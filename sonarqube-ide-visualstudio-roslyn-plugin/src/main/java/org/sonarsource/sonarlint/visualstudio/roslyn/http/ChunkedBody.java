@@ -0,0 +1,128 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A request body that is encoded lazily, as a sequence of chunks of about {@link #CHUNK_SIZE} bytes.
+ * Chunks are produced while the HTTP client consumes them, so the full payload never exists in memory as a single byte[].
+ */
+abstract class ChunkedBody implements Iterable<byte[]> {
+  static final int CHUNK_SIZE = 16 * 1024;
+
+  /**
+   * Called for each iteration, so that the body can be sent again (e.g. on retry).
+   */
+  protected abstract Encoder newEncoder(Output output);
+
+  interface Encoder {
+    /**
+     * Writes the next part of the body to the output.
+     *
+     * @return false once the whole body has been written
+     */
+    boolean writeNext() throws IOException;
+  }
+
+  /**
+   * The output of an {@link Encoder}. Large parts of the body that are already encoded, like a fragment reused across requests,
+   * are {@linkplain #splice spliced} as chunks of their own instead of being copied.
+   */
+  static final class Output extends ByteArrayOutputStream {
+    private final Deque<byte[]> splicedChunks = new ArrayDeque<>();
+
+    private Output(int size) {
+      super(size);
+    }
+
+    /**
+     * Appends the bytes to the body. They are handed to the HTTP client as they are, so they must not be modified afterwards.
+     * Anything written to a stream wrapping this output must be flushed first.
+     */
+    void splice(byte[] bytes) {
+      // copying a small fragment is cheaper than sending it as a chunk of its own
+      if (bytes.length < CHUNK_SIZE) {
+        writeBytes(bytes);
+        return;
+      }
+      if (size() > 0) {
+        splicedChunks.add(toByteArray());
+        reset();
+      }
+      splicedChunks.add(bytes);
+    }
+  }
+
+  @Override
+  public Iterator<byte[]> iterator() {
+    return new ChunkIterator();
+  }
+
+  private final class ChunkIterator implements Iterator<byte[]> {
+    private final Output buffer = new Output(CHUNK_SIZE * 2);
+    private final Encoder encoder = newEncoder(buffer);
+    private boolean completed;
+    private byte[] nextChunk;
+
+    @Override
+    public boolean hasNext() {
+      if (nextChunk == null) {
+        nextChunk = writeChunk();
+      }
+      return nextChunk != null;
+    }
+
+    @Override
+    public byte[] next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      var chunk = nextChunk;
+      nextChunk = null;
+      return chunk;
+    }
+
+    private byte[] writeChunk() {
+      try {
+        while (!completed && buffer.splicedChunks.isEmpty() && buffer.size() < CHUNK_SIZE) {
+          completed = !encoder.writeNext();
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      if (!buffer.splicedChunks.isEmpty()) {
+        return buffer.splicedChunks.poll();
+      }
+      if (buffer.size() == 0) {
+        return null;
+      }
+      var chunk = buffer.toByteArray();
+      buffer.reset();
+      return chunk;
+    }
+  }
+}
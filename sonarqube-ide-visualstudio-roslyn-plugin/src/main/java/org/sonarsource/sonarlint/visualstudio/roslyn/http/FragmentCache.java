@@ -0,0 +1,55 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.sonarsource.sonarlint.visualstudio.roslyn.Hash128;
+
+/**
+ * The last encoded forms of a part of the requests, reused as is as long as the hash of what it encodes does not change.
+ * A few of them are kept, one per {@link org.sonarsource.sonarlint.visualstudio.roslyn.AnalysisLane} sent with its own rules.
+ */
+final class FragmentCache {
+  static final int MAX_FRAGMENTS = 8;
+  private final Map<Hash128, byte[]> fragmentsByHash = new ConcurrentHashMap<>();
+
+  interface FragmentEncoder {
+    byte[] encode() throws IOException;
+  }
+
+  /**
+   * The returned bytes are shared by the requests, they must not be modified.
+   */
+  byte[] get(Hash128 hash, FragmentEncoder encoder) throws IOException {
+    var bytes = fragmentsByHash.get(hash);
+    if (bytes != null) {
+      return bytes;
+    }
+    bytes = encoder.encode();
+    // the fragments of the previous rule sets are forgotten at once, they are not used anymore
+    if (fragmentsByHash.size() >= MAX_FRAGMENTS) {
+      fragmentsByHash.clear();
+    }
+    fragmentsByHash.put(hash, bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compresses the chunks of another body while they are produced, so that compression overlaps with the transfer.
+ */
+class GzipBody extends ChunkedBody {
+  private final Iterable<byte[]> uncompressedBody;
+  private final Set<GzipEncoder> openEncoders = ConcurrentHashMap.newKeySet();
+
+  GzipBody(Iterable<byte[]> uncompressedBody) {
+    this.uncompressedBody = uncompressedBody;
+  }
+
+  /**
+   * Stops encoding the body as soon as the threshold is reached, so that only the beginning of a large body is produced twice.
+   */
+  static boolean isLargerThan(Iterable<byte[]> body, int threshold) {
+    long size = 0;
+    for (var chunk : body) {
+      size += chunk.length;
+      if (size > threshold) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  protected Encoder newEncoder(Output output) {
+    var encoder = new GzipEncoder(uncompressedBody.iterator(), output);
+    openEncoders.add(encoder);
+    return encoder;
+  }
+
+  /**
+   * Releases the native memory of the deflaters of the iterations that did not reach the end of the body, when the exchange is
+   * aborted mid-body. To be called once the exchange completed, the body can not be sent anymore afterwards.
+   */
+  void close() {
+    openEncoders.forEach(GzipEncoder::close);
+  }
+
+  private final class GzipEncoder implements Encoder {
+    private final Iterator<byte[]> chunks;
+    private final Output output;
+    // guarded by this, as the body is closed on another thread than the one sending it
+    private ReleasableGzipOutputStream gzip;
+    private boolean closed;
+
+    private GzipEncoder(Iterator<byte[]> chunks, Output output) {
+      this.chunks = chunks;
+      this.output = output;
+    }
+
+    @Override
+    public synchronized boolean writeNext() throws IOException {
+      if (closed) {
+        throw new IOException("The compressed body was closed before being fully sent.");
+      }
+      if (gzip == null) {
+        gzip = new ReleasableGzipOutputStream(output);
+      }
+      if (chunks.hasNext()) {
+        gzip.write(chunks.next());
+        return true;
+      }
+      gzip.finish();
+      close();
+      return false;
+    }
+
+    synchronized void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      openEncoders.remove(this);
+      if (gzip != null) {
+        gzip.release();
+      }
+    }
+  }
+
+  /**
+   * Can release its deflater without finishing the stream, output is a memory buffer that does not need to be closed.
+   */
+  private static final class ReleasableGzipOutputStream extends GZIPOutputStream {
+    private ReleasableGzipOutputStream(OutputStream output) throws IOException {
+      super(output, CHUNK_SIZE);
+    }
+
+    void release() {
+      def.end();
+    }
+  }
+}
@@ -19,58 +19,161 @@
  */
 package org.sonarsource.sonarlint.visualstudio.roslyn.http;
 
-import com.google.gson.Gson;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.HttpURLConnection;
 import java.net.URI;
-import java.util.ArrayList;
+import java.net.http.HttpResponse;
 import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 
 import org.sonar.api.batch.rule.ActiveRule;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonarsource.api.sonarlint.SonarLintSide;
-import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+import org.sonarsource.sonarlint.visualstudio.roslyn.IssueReceiverExecutor;
 
 @SonarLintSide
 public class HttpAnalysisRequestHandler {
   private static final Logger LOG = Loggers.get(HttpAnalysisRequestHandler.class);
+  static final Set<Integer> ENDPOINT_NOT_SUPPORTED_STATUS_CODES = Set.of(
+    HttpURLConnection.HTTP_NOT_FOUND,
+    HttpURLConnection.HTTP_BAD_METHOD,
+    HttpURLConnection.HTTP_NOT_IMPLEMENTED);
   private final HttpClientHandler httpClientHandler;
+  private final ServerCapabilities serverCapabilities;
+  private final AnalysisResponseDecoder responseDecoder;
+  private final IssueReceiverExecutor issueReceiverExecutor;
 
-  public HttpAnalysisRequestHandler(HttpClientHandler httpClientHandler) {
+  public HttpAnalysisRequestHandler(HttpClientHandler httpClientHandler, ServerCapabilities serverCapabilities, AnalysisResponseDecoder responseDecoder,
+    IssueReceiverExecutor issueReceiverExecutor) {
     this.httpClientHandler = httpClientHandler;
+    this.serverCapabilities = serverCapabilities;
+    this.responseDecoder = responseDecoder;
+    this.issueReceiverExecutor = issueReceiverExecutor;
   }
 
-  public Collection<RoslynIssue> analyze(
+  /**
+   * Sends the analysis request and streams the issues of the response to the given sink while the body is being received,
+   * without buffering the whole response in memory.
+   * Once the server advertised it, see {@link ServerCapabilities}, the per-file streaming endpoint is used, so that issues of the first analyzed files reach the sink
+   * before the server is done with the whole analysis. Otherwise, it falls back to the single-response endpoint.
+   * Blocks until the whole response is read, see {@link #analyzeAsync}.
+   *
+   * @return false when the server answered with an error or without body, or when interrupted: the issues of the files are then unknown
+   */
+  public boolean analyze(
     Collection<URI> fileUris,
     Collection<ActiveRule> activeRules,
     Map<String, String> analysisProperties,
     AnalyzerInfoDto analyzerInfo,
-    UUID analysisId) {
-    Collection<RoslynIssue> roslynIssues = new ArrayList<>();
+    UUID analysisId,
+    RoslynIssueSink issueSink) {
+    var analysis = analyzeAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, issueSink);
     try {
-      var response = httpClientHandler.sendAnalyzeRequest(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+      return analysis.get();
+    } catch (InterruptedException e) {
+      LOG.debug("Interrupted!", e);
+      analysis.cancel(true);
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Same as {@link #analyze}, without blocking the calling thread while the server analyzes the files: the returned future completes
+   * once all issues of the response are passed to the sink, which is called on a thread of the {@link IssueReceiverExecutor}.
+   * It completes with false when the server answered with an error or without body, as {@link #analyze} returns.
+   * Cancelling the future, or completing it in any other way before, for example with {@link CompletableFuture#orTimeout},
+   * aborts the request in flight, or stops reading its response.
+   */
+  public CompletableFuture<Boolean> analyzeAsync(
+    Collection<URI> fileUris,
+    Collection<ActiveRule> activeRules,
+    Map<String, String> analysisProperties,
+    AnalyzerInfoDto analyzerInfo,
+    UUID analysisId,
+    RoslynIssueSink issueSink) {
+    var analysis = new CompletableFuture<Boolean>();
+    CompletableFuture<AnalysisResponse> response;
+    if (serverCapabilities.isAnalyzeStreamSupported()) {
+      response = abortedWith(analysis, httpClientHandler.sendAnalyzeStreamRequestAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId))
+        .thenCompose(streamResponse -> {
+          if (!ENDPOINT_NOT_SUPPORTED_STATUS_CODES.contains(streamResponse.statusCode())) {
+            return CompletableFuture.completedFuture(new AnalysisResponse(streamResponse, true));
+          }
+          HttpClientHandler.closeBody(streamResponse);
+          LOG.debug("Streaming analysis is not supported by the server, falling back to single-response analysis.");
+          serverCapabilities.setAnalyzeStreamUnsupported();
+          return sendAnalyzeRequest(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, analysis);
+        });
+    } else {
+      response = sendAnalyzeRequest(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, analysis);
+    }
+    response
+      .thenApplyAsync(analysisResponse -> readIssues(analysisResponse, issueSink, analysis), issueReceiverExecutor)
+      .whenComplete((complete, failure) -> {
+        if (failure == null) {
+          analysis.complete(complete);
+        } else {
+          var cause = failure;
+          while ((cause instanceof CompletionException || cause instanceof UncheckedIOException) && cause.getCause() != null) {
+            cause = cause.getCause();
+          }
+          analysis.completeExceptionally(new IllegalStateException("Response crashed due to: " + cause.getMessage(), cause));
+        }
+      });
+    return analysis;
+  }
+
+  private CompletableFuture<AnalysisResponse> sendAnalyzeRequest(
+    Collection<URI> fileUris,
+    Collection<ActiveRule> activeRules,
+    Map<String, String> analysisProperties,
+    AnalyzerInfoDto analyzerInfo,
+    UUID analysisId,
+    CompletableFuture<Boolean> analysis) {
+    return abortedWith(analysis, httpClientHandler.sendAnalyzeRequestAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId))
+      .thenApply(response -> new AnalysisResponse(response, false));
+  }
+
+  private static <T> CompletableFuture<T> abortedWith(CompletableFuture<Boolean> analysis, CompletableFuture<T> request) {
+    analysis.whenComplete((result, failure) -> request.cancel(true));
+    return request;
+  }
+
+  private boolean readIssues(AnalysisResponse analysisResponse, RoslynIssueSink issueSink, CompletableFuture<Boolean> analysis) {
+    var response = analysisResponse.response();
+    // closing the body makes the reading thread fail, which stops it once the analysis is cancelled or timed out
+    analysis.whenComplete((result, failure) -> HttpClientHandler.closeBody(response));
+    try (var body = response.body()) {
       if (response.statusCode() != HttpURLConnection.HTTP_OK) {
         LOG.error("Response from server is {}.", response.statusCode());
-        return roslynIssues;
+        return false;
       }
 
-      var responseDto = new Gson().fromJson(response.body(), AnalysisResponseDto.class);
-      if (responseDto == null) {
-        LOG.warn("No body received from the server.");
-        return roslynIssues;
+      if (analysisResponse.stream()) {
+        responseDecoder.readIssueBatches(response.headers(), body, issueSink);
+        return true;
       }
-
-      roslynIssues = responseDto.roslynIssues();
-    } catch (InterruptedException e) {
-      LOG.debug("Interrupted!", e);
-      Thread.currentThread().interrupt();
-    } catch (Exception e) {
-      throw new IllegalStateException("Response crashed due to: " + e.getMessage(), e.fillInStackTrace());
+      return responseDecoder.readIssues(response.headers(), body, issueSink);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
+  }
 
-    return roslynIssues;
+  private record AnalysisResponse(HttpResponse<InputStream> response, boolean stream) {
   }
 
   public void cancelAnalysis(UUID analysisId) {
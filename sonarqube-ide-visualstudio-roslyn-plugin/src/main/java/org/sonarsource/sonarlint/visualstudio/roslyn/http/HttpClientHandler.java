@@ -20,28 +20,68 @@
 package org.sonarsource.sonarlint.visualstudio.roslyn.http;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import org.sonar.api.batch.rule.ActiveRule;
 import org.sonar.api.batch.sensor.SensorContext;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 import org.sonarsource.api.sonarlint.SonarLintSide;
-import org.sonarsource.sonarlint.visualstudio.roslyn.SqvsRoslynPluginPropertyDefinitions;
+import org.sonarsource.sonarlint.visualstudio.roslyn.ConfigurationHash;
+import org.sonarsource.sonarlint.visualstudio.roslyn.ConfigurationSnapshot;
+import org.sonarsource.sonarlint.visualstudio.roslyn.ConfigurationSnapshotProvider;
 
 @SonarLintSide
 public class HttpClientHandler {
-  private final SensorContext context;
+  private static final Logger LOG = Loggers.get(HttpClientHandler.class);
+  static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+  // the binary format is preferred, servers that do not know it keep answering with JSON
+  static final String ANALYZE_ACCEPT = BinaryCodec.MEDIA_TYPE + ", application/json;q=0.9";
+  static final String ANALYZE_ACCEPT_ENCODING = "gzip, deflate";
+  static final String PROTOCOL_VERSION_HEADER = "X-Protocol-Version";
+  // version 2: issue locations may refer to their file by its index in the FileUris of the request, instead of repeating the URI
+  // version 3: the configuration may be registered once in an AnalysisSession, and the analyze requests refer to it by its config id
+  // version 4: the analyze-stream endpoint is available, older servers answer 404 to it after reading the whole request
+  static final String PROTOCOL_VERSION = "4";
+  static final int SESSION_PROTOCOL_VERSION = 3;
+  static final int ANALYZE_STREAM_PROTOCOL_VERSION = 4;
+  static final String CONFIG_ID_HEADER = "X-Config-Id";
+  // the server does not know the config id anymore, for example because it restarted
+  static final int UNKNOWN_CONFIG_STATUS = HttpURLConnection.HTTP_GONE;
+  // below this size, compressing takes longer than sending the bytes to a local server
+  static final int COMPRESSION_THRESHOLD = 64 * 1024;
   private final JsonRequestBuilder jsonRequestBuilder;
+  private final JsonCodec jsonCodec;
+  private final BinaryCodec binaryCodec;
+  private final ServerCapabilities serverCapabilities;
+  private final AnalysisSession analysisSession;
+  // resolved once per sensor execution instead of once per request, the settings do not change during an analysis
+  private final ConfigurationSnapshot configurationSnapshot;
   private final java.net.http.HttpClient httpClient;
 
-  public HttpClientHandler(SensorContext context, JsonRequestBuilder jsonRequestBuilder, HttpClientProvider httpClientProvider) {
-    this.context = context;
+  public HttpClientHandler(SensorContext context, JsonRequestBuilder jsonRequestBuilder, JsonCodec jsonCodec, BinaryCodec binaryCodec,
+    HttpClientProvider httpClientProvider, ServerCapabilities serverCapabilities, AnalysisSession analysisSession,
+    ConfigurationSnapshotProvider configurationSnapshotProvider) {
     this.jsonRequestBuilder = jsonRequestBuilder;
+    this.jsonCodec = jsonCodec;
+    this.binaryCodec = binaryCodec;
+    this.serverCapabilities = serverCapabilities;
+    this.analysisSession = analysisSession;
+    this.configurationSnapshot = configurationSnapshotProvider.get(context.settings());
     this.httpClient = httpClientProvider.getHttpClient();
   }
 
@@ -51,28 +91,220 @@ public class HttpClientHandler {
     return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding());
   }
 
-  public HttpResponse<String> sendAnalyzeRequest(
+  /**
+   * Sends the analysis request without blocking the calling thread. The returned future completes once the headers of the response
+   * are received, the body being read afterwards. Cancelling the future, or completing it in any other way before the response is
+   * received, for example with {@link CompletableFuture#orTimeout}, aborts the request in flight.
+   */
+  public CompletableFuture<HttpResponse<InputStream>> sendAnalyzeRequestAsync(
     Collection<URI> fileUris,
     Collection<ActiveRule> activeRules,
     Map<String, String> analysisProperties,
     AnalyzerInfoDto analyzerInfo,
-    UUID analysisId)
-    throws IOException, InterruptedException {
-    var jsonPayload = jsonRequestBuilder.buildAnalyzeBody(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
-    var request = createRequest(jsonPayload, "analyze");
-    return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    UUID analysisId) {
+    return new AnalyzeExchange(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, "analyze").start();
+  }
+
+  /**
+   * Same payload as {@link #sendAnalyzeRequestAsync}, but the server answers with newline-delimited JSON,
+   * one batch of issues per file, written as soon as each file is analyzed.
+   * A server supporting the binary format answers with a stream of binary issues instead.
+   */
+  public CompletableFuture<HttpResponse<InputStream>> sendAnalyzeStreamRequestAsync(
+    Collection<URI> fileUris,
+    Collection<ActiveRule> activeRules,
+    Map<String, String> analysisProperties,
+    AnalyzerInfoDto analyzerInfo,
+    UUID analysisId) {
+    return new AnalyzeExchange(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, "analyze-stream").start();
+  }
+
+  static void closeBody(HttpResponse<InputStream> response) {
+    try {
+      response.body().close();
+    } catch (IOException e) {
+      LOG.debug("Failed to close the response: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Sends the request asynchronously, and aborts it when the exchange it belongs to completes first, for example because it was cancelled.
+   */
+  private CompletableFuture<HttpResponse<InputStream>> send(HttpRequest request, CompletableFuture<?> exchange) {
+    var response = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+    exchange.whenComplete((result, failure) -> response.cancel(true));
+    return response;
+  }
+
+  /**
+   * One analyze request, sent again with the configuration, or without the features the server rejected, until it is accepted.
+   * Each retry is composed on the response to the previous attempt, so that no thread waits for the server in the meantime.
+   */
+  private final class AnalyzeExchange {
+    private final CompletableFuture<HttpResponse<InputStream>> result = new CompletableFuture<>();
+    private final Collection<URI> fileUris;
+    private final Collection<ActiveRule> activeRules;
+    private final Map<String, String> analysisProperties;
+    private final AnalyzerInfoDto analyzerInfo;
+    private final UUID analysisId;
+    private final String path;
+    private boolean unknownConfigRetried;
+
+    private AnalyzeExchange(Collection<URI> fileUris, Collection<ActiveRule> activeRules, Map<String, String> analysisProperties, AnalyzerInfoDto analyzerInfo,
+      UUID analysisId, String path) {
+      this.fileUris = fileUris;
+      this.activeRules = activeRules;
+      this.analysisProperties = analysisProperties;
+      this.analyzerInfo = analyzerInfo;
+      this.analysisId = analysisId;
+      this.path = path;
+    }
+
+    private CompletableFuture<HttpResponse<InputStream>> start() {
+      CompletableFuture<HttpResponse<InputStream>> firstAttempt;
+      try {
+        firstAttempt = send();
+      } catch (RuntimeException e) {
+        firstAttempt = CompletableFuture.failedFuture(e);
+      }
+      firstAttempt.whenComplete((response, failure) -> {
+        if (failure != null) {
+          result.completeExceptionally(failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+        } else if (!result.complete(response)) {
+          // the exchange was cancelled while the response was being received
+          closeBody(response);
+        }
+      });
+      return result;
+    }
+
+    private CompletableFuture<HttpResponse<InputStream>> send() {
+      var configId = serverCapabilities.isSessionSupported()
+        ? getSessionConfigId(activeRules, analysisProperties, analyzerInfo, result)
+        : CompletableFuture.<String>completedFuture(null);
+      return configId.thenCompose(this::send);
+    }
+
+    private CompletableFuture<HttpResponse<InputStream>> send(@Nullable String configId) {
+      // the server already knows the configuration of the session, only the files are sent
+      var requestRules = configId == null ? activeRules : null;
+      var requestProperties = configId == null ? analysisProperties : null;
+      var requestAnalyzerInfo = configId == null ? analyzerInfo : null;
+      var binary = serverCapabilities.isBinaryRequestSupported();
+      var body = binary
+        ? binaryCodec.encodeAnalysisRequest(fileUris, requestRules, requestProperties, requestAnalyzerInfo, analysisId)
+        : jsonRequestBuilder.buildAnalyzeBodyChunks(fileUris, requestRules, requestProperties, requestAnalyzerInfo, analysisId);
+      var compressed = serverCapabilities.isGzipRequestSupported() && GzipBody.isLargerThan(body, COMPRESSION_THRESHOLD);
+      var gzipBody = compressed ? new GzipBody(body) : null;
+      var request = createAnalyzeRequest(compressed ? gzipBody : body, binary ? BinaryCodec.MEDIA_TYPE : JSON_CONTENT_TYPE, compressed, configId, path);
+      var response = HttpClientHandler.this.send(request, result);
+      if (gzipBody != null) {
+        // also when the exchange is aborted mid-body, which leaves the deflater of the body unfinished
+        response.whenComplete((ignored, failure) -> gzipBody.close());
+      }
+      return response.thenCompose(httpResponse -> onResponse(httpResponse, configId, compressed, binary));
+    }
+
+    private CompletableFuture<HttpResponse<InputStream>> onResponse(HttpResponse<InputStream> response, @Nullable String configId, boolean compressed, boolean binary) {
+      if (configId != null && response.statusCode() == UNKNOWN_CONFIG_STATUS) {
+        closeBody(response);
+        analysisSession.invalidate(configId);
+        // a config id unknown right after being registered means the server does not keep sessions, the configuration is then sent with each request
+        if (unknownConfigRetried) {
+          LOG.debug("The server does not keep the analysis session, falling back to sending the configuration with each request.");
+          serverCapabilities.setSessionUnsupported();
+        }
+        unknownConfigRetried = true;
+        return send();
+      }
+      if (response.statusCode() != HttpURLConnection.HTTP_UNSUPPORTED_TYPE || !(compressed || binary)) {
+        return CompletableFuture.completedFuture(response);
+      }
+      closeBody(response);
+      // each retry disables one feature for the plugin instance, so this ends at the latest with an uncompressed JSON request
+      if (compressed) {
+        LOG.debug("Compressed requests are not supported by the server, falling back to uncompressed requests.");
+        serverCapabilities.setGzipRequestUnsupported();
+      } else {
+        LOG.debug("Binary requests are not supported by the server, falling back to JSON.");
+        serverCapabilities.setBinaryRequestUnsupported();
+      }
+      return send();
+    }
+  }
+
+  /**
+   * @return the config id of the configuration, registering it first if the server does not know it yet,
+   * or null if the configuration has to be sent with the request
+   */
+  private CompletableFuture<String> getSessionConfigId(Collection<ActiveRule> activeRules, Map<String, String> analysisProperties, AnalyzerInfoDto analyzerInfo,
+    CompletableFuture<?> exchange) {
+    var configurationHash = ConfigurationHash.of(activeRules, analysisProperties, analyzerInfo);
+    var configId = analysisSession.getConfigId(configurationHash);
+    if (configId != null) {
+      return CompletableFuture.completedFuture(configId);
+    }
+    return analysisSession.register(configurationHash, () -> sendSessionRequest(activeRules, analysisProperties, analyzerInfo, exchange));
+  }
+
+  private CompletableFuture<String> sendSessionRequest(Collection<ActiveRule> activeRules, Map<String, String> analysisProperties, AnalyzerInfoDto analyzerInfo,
+    CompletableFuture<?> exchange) {
+    var payload = jsonRequestBuilder.buildSessionBody(activeRules, analysisProperties, analyzerInfo);
+    var request = newRequestBuilder(HttpRequest.BodyPublishers.ofString(payload), "session")
+      .header("Content-Type", JSON_CONTENT_TYPE)
+      .header(PROTOCOL_VERSION_HEADER, PROTOCOL_VERSION)
+      .build();
+    return send(request, exchange).thenApply(this::readSessionResponse);
+  }
+
+  @CheckForNull
+  private String readSessionResponse(HttpResponse<InputStream> response) {
+    try (var body = response.body()) {
+      if (HttpAnalysisRequestHandler.ENDPOINT_NOT_SUPPORTED_STATUS_CODES.contains(response.statusCode())) {
+        LOG.debug("Analysis sessions are not supported by the server, falling back to sending the configuration with each request.");
+        serverCapabilities.setSessionUnsupported();
+        return null;
+      }
+      if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+        LOG.debug("Response from session request is {}, sending the configuration with the request.", response.statusCode());
+        return null;
+      }
+      var configId = jsonCodec.readSessionResponse(jsonCodec.newJsonReader(new InputStreamReader(body, StandardCharsets.UTF_8))).configId();
+      return configId == null || configId.isBlank() ? null : configId;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private HttpRequest createAnalyzeRequest(Iterable<byte[]> body, String contentType, boolean compressed, @Nullable String configId, String path) {
+    var requestBuilder = newRequestBuilder(HttpRequest.BodyPublishers.ofByteArrays(body), path)
+      .header("Content-Type", contentType)
+      .header("Accept", ANALYZE_ACCEPT)
+      .header("Accept-Encoding", ANALYZE_ACCEPT_ENCODING)
+      .header(PROTOCOL_VERSION_HEADER, PROTOCOL_VERSION);
+    if (compressed) {
+      requestBuilder.header("Content-Encoding", "gzip");
+    }
+    if (configId != null) {
+      requestBuilder.header(CONFIG_ID_HEADER, configId);
+    }
+    return requestBuilder.build();
   }
 
   public HttpRequest createRequest(String jsonPayload, String path) {
-    var settings = context.settings();
-    var port = settings.getString(SqvsRoslynPluginPropertyDefinitions.getServerPort());
-    var token = settings.getString(SqvsRoslynPluginPropertyDefinitions.getServerToken());
-    var uri = String.format("http://localhost:%s/%s", port, path);
-    return HttpRequest.newBuilder()
-      .uri(URI.create(uri))
-      .header("Content-Type", "application/json; charset=utf-8")
-      .header("X-Auth-Token", token)
-      .POST(HttpRequest.BodyPublishers.ofString(jsonPayload))
+    return createRequest(HttpRequest.BodyPublishers.ofString(jsonPayload), path);
+  }
+
+  public HttpRequest createRequest(HttpRequest.BodyPublisher bodyPublisher, String path) {
+    return newRequestBuilder(bodyPublisher, path)
+      .header("Content-Type", JSON_CONTENT_TYPE)
       .build();
   }
+
+  private HttpRequest.Builder newRequestBuilder(HttpRequest.BodyPublisher bodyPublisher, String path) {
+    return HttpRequest.newBuilder()
+      .uri(configurationSnapshot.getServerUri(path))
+      .header("X-Auth-Token", configurationSnapshot.getServerToken())
+      .POST(bodyPublisher);
+  }
 }
@@ -0,0 +1,419 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Predicate;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonarsource.api.sonarlint.SonarLintSide;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueFlow;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueLocation;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueQuickFix;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueTextRange;
+
+/**
+ * Hand-written streaming JSON encoding of the DTOs exchanged with the analysis server, in the direction of the client only:
+ * the requests are written, the responses are read. It does not rely on reflection.
+ * The produced JSON is identical to the one of a default {@link com.google.gson.Gson} instance, which honors the {@code @SerializedName} of the DTOs.
+ */
+@SonarLintSide(lifespan = SonarLintSide.INSTANCE)
+public class JsonCodec {
+  private static final String ROSLYN_ISSUES = "RoslynIssues";
+
+  // the locations of the issues of a file come one after the other, so the last parsed URI is very likely to be the next one
+  private volatile ParsedUri lastParsedUri = new ParsedUri("", URI.create(""));
+
+  /**
+   * Same configuration as the writers of a default Gson instance: compact, HTML-safe and omitting null properties.
+   */
+  public JsonWriter newJsonWriter(Writer writer) {
+    var jsonWriter = new JsonWriter(writer);
+    jsonWriter.setHtmlSafe(true);
+    jsonWriter.setSerializeNulls(false);
+    return jsonWriter;
+  }
+
+  public JsonReader newJsonReader(Reader reader) {
+    return new JsonReader(reader);
+  }
+
+  public String toJson(CancellationRequestDto cancellationRequest) {
+    return toJson(JsonCodec::writeCancellationRequest, cancellationRequest);
+  }
+
+  public String toJson(AnalysisRequestDto analysisRequest) {
+    return toJson(JsonCodec::writeAnalysisRequest, analysisRequest);
+  }
+
+  public void writeUri(JsonWriter writer, @Nullable URI uri) throws IOException {
+    writeNullable(writer, uri, JsonCodec::writeUriValue);
+  }
+
+  public void writeUuid(JsonWriter writer, @Nullable UUID uuid) throws IOException {
+    writeNullable(writer, uuid, JsonCodec::writeUuidValue);
+  }
+
+  public void writeStringMap(JsonWriter writer, @Nullable Map<String, String> map) throws IOException {
+    writeNullable(writer, map, JsonCodec::writeStringMapValue);
+  }
+
+  public void writeActiveRule(JsonWriter writer, @Nullable ActiveRuleDto activeRule) throws IOException {
+    writeNullable(writer, activeRule, JsonCodec::writeActiveRuleValue);
+  }
+
+  public void writeAnalyzerInfo(JsonWriter writer, @Nullable AnalyzerInfoDto analyzerInfo) throws IOException {
+    writeNullable(writer, analyzerInfo, JsonCodec::writeAnalyzerInfoValue);
+  }
+
+  @CheckForNull
+  public SessionResponseDto readSessionResponse(JsonReader reader) throws IOException {
+    return readNullable(reader, JsonCodec::readSessionResponseValue);
+  }
+
+  /**
+   * Each issue of the response is handed to the sink as soon as it is decoded, so the issues are never all in memory at the same time.
+   * Issues whose rule is rejected by {@link RoslynIssueSink#acceptsRule(String)} are skipped without being materialized.
+   */
+  public void readAnalysisResponse(JsonReader reader, RoslynIssueSink issueSink) throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (!ROSLYN_ISSUES.equals(reader.nextName()) || reader.peek() == JsonToken.NULL) {
+        reader.skipValue();
+        continue;
+      }
+      reader.beginArray();
+      while (reader.hasNext()) {
+        readRoslynIssue(reader, issueSink);
+      }
+      reader.endArray();
+    }
+    reader.endObject();
+  }
+
+  private void readRoslynIssue(JsonReader reader, RoslynIssueSink issueSink) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      issueSink.accept(null);
+      return;
+    }
+    var roslynIssue = readRoslynIssueValue(reader, issueSink::acceptsRule);
+    if (roslynIssue != null) {
+      issueSink.accept(roslynIssue);
+    }
+  }
+
+  private <T> String toJson(ValueWriter<T> valueWriter, T value) {
+    var stringWriter = new StringWriter();
+    try {
+      writeNullable(newJsonWriter(stringWriter), value, valueWriter);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return stringWriter.toString();
+  }
+
+  private static void writeAnalysisRequest(JsonWriter writer, AnalysisRequestDto value) throws IOException {
+    writer.beginObject();
+    writer.name("FileUris");
+    writeCollection(writer, value.fileUris(), JsonCodec::writeUriValue);
+    writer.name("ActiveRules");
+    writeCollection(writer, value.activeRules(), JsonCodec::writeActiveRuleValue);
+    writer.name("AnalysisProperties");
+    writeNullable(writer, value.analysisProperties(), JsonCodec::writeStringMapValue);
+    writer.name("AnalyzerInfo");
+    writeNullable(writer, value.analyzerInfo(), JsonCodec::writeAnalyzerInfoValue);
+    writer.name("AnalysisId");
+    writeNullable(writer, value.analysisId(), JsonCodec::writeUuidValue);
+    writer.endObject();
+  }
+
+  private static void writeCancellationRequest(JsonWriter writer, CancellationRequestDto value) throws IOException {
+    writer.beginObject();
+    writer.name("AnalysisId");
+    writeNullable(writer, value.analysisId(), JsonCodec::writeUuidValue);
+    writer.endObject();
+  }
+
+  private static void writeUriValue(JsonWriter writer, URI value) throws IOException {
+    writer.value(value.toASCIIString());
+  }
+
+  private static void writeUuidValue(JsonWriter writer, UUID value) throws IOException {
+    writer.value(value.toString());
+  }
+
+  private static void writeStringMapValue(JsonWriter writer, Map<String, String> value) throws IOException {
+    writer.beginObject();
+    for (var entry : value.entrySet()) {
+      writer.name(String.valueOf(entry.getKey())).value(entry.getValue());
+    }
+    writer.endObject();
+  }
+
+  private static void writeActiveRuleValue(JsonWriter writer, ActiveRuleDto value) throws IOException {
+    writer.beginObject();
+    writer.name("RuleId").value(value.ruleId());
+    writer.name("Parameters");
+    writeNullable(writer, value.parameters(), JsonCodec::writeStringMapValue);
+    writer.endObject();
+  }
+
+  private static void writeAnalyzerInfoValue(JsonWriter writer, AnalyzerInfoDto value) throws IOException {
+    writer.beginObject();
+    writer.name("ShouldUseCsharpEnterprise").value(value.shouldUseCsharpEnterprise());
+    writer.name("ShouldUseVbEnterprise").value(value.shouldUseVbEnterprise());
+    writer.endObject();
+  }
+
+  private static SessionResponseDto readSessionResponseValue(JsonReader reader) throws IOException {
+    String configId = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if ("ConfigId".equals(reader.nextName())) {
+        configId = readString(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new SessionResponseDto(configId);
+  }
+
+  /**
+   * @return null if the rule of the issue is rejected by the filter, in which case the rest of the issue is skipped at the token level
+   */
+  @CheckForNull
+  private RoslynIssue readRoslynIssueValue(JsonReader reader, Predicate<String> ruleFilter) throws IOException {
+    String ruleId = null;
+    RoslynIssueLocation primaryLocation = null;
+    List<RoslynIssueFlow> flows = null;
+    List<RoslynIssueQuickFix> quickFixes = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "RuleId" -> {
+          ruleId = readString(reader);
+          if (!ruleFilter.test(ruleId)) {
+            skipRemainingProperties(reader);
+            return null;
+          }
+        }
+        case "PrimaryLocation" -> primaryLocation = readNullable(reader, this::readLocationValue);
+        case "Flows" -> flows = readList(reader, this::readFlowValue);
+        case "QuickFixes" -> quickFixes = readList(reader, JsonCodec::readQuickFixValue);
+        default -> reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new RoslynIssue(ruleId, primaryLocation, flows, quickFixes);
+  }
+
+  private RoslynIssueFlow readFlowValue(JsonReader reader) throws IOException {
+    List<RoslynIssueLocation> locations = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if ("Locations".equals(reader.nextName())) {
+        locations = readList(reader, this::readLocationValue);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new RoslynIssueFlow(locations);
+  }
+
+  private RoslynIssueLocation readLocationValue(JsonReader reader) throws IOException {
+    URI fileUri = null;
+    Integer fileId = null;
+    String message = null;
+    RoslynIssueTextRange textRange = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "FileUri" -> fileUri = readNullable(reader, this::readUriValue);
+        case "FileId" -> fileId = readNullableInt(reader);
+        case "Message" -> message = readString(reader);
+        case "TextRange" -> textRange = readNullable(reader, JsonCodec::readTextRangeValue);
+        default -> reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new RoslynIssueLocation(fileUri, fileId, message, textRange);
+  }
+
+  @CheckForNull
+  private URI readUriValue(JsonReader reader) throws IOException {
+    var text = reader.nextString();
+    if ("null".equals(text)) {
+      return null;
+    }
+    var last = lastParsedUri;
+    if (last.text().equals(text)) {
+      return last.uri();
+    }
+    try {
+      var uri = new URI(text);
+      lastParsedUri = new ParsedUri(text, uri);
+      return uri;
+    } catch (URISyntaxException e) {
+      throw new JsonIOException(e);
+    }
+  }
+
+  private static RoslynIssueTextRange readTextRangeValue(JsonReader reader) throws IOException {
+    var startLine = 0;
+    var endLine = 0;
+    var startLineOffset = 0;
+    var endLineOffset = 0;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "StartLine" -> startLine = readInt(reader);
+        case "EndLine" -> endLine = readInt(reader);
+        case "StartLineOffset" -> startLineOffset = readInt(reader);
+        case "EndLineOffset" -> endLineOffset = readInt(reader);
+        default -> reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new RoslynIssueTextRange(startLine, endLine, startLineOffset, endLineOffset);
+  }
+
+  private static RoslynIssueQuickFix readQuickFixValue(JsonReader reader) throws IOException {
+    String value = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if ("Value".equals(reader.nextName())) {
+        value = readString(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new RoslynIssueQuickFix(value);
+  }
+
+  private static String readString(JsonReader reader) throws IOException {
+    var token = reader.peek();
+    if (token == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    if (token == JsonToken.BOOLEAN) {
+      return Boolean.toString(reader.nextBoolean());
+    }
+    return reader.nextString();
+  }
+
+  private static int readInt(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return 0;
+    }
+    return reader.nextInt();
+  }
+
+  private static void skipRemainingProperties(JsonReader reader) throws IOException {
+    while (reader.hasNext()) {
+      reader.nextName();
+      reader.skipValue();
+    }
+    reader.endObject();
+  }
+
+  private static Integer readNullableInt(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return reader.nextInt();
+  }
+
+  @CheckForNull
+  private static <T> T readNullable(JsonReader reader, ValueReader<T> valueReader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return valueReader.read(reader);
+  }
+
+  private static <T> List<T> readList(JsonReader reader, ValueReader<T> elementReader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    var list = new ArrayList<T>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      list.add(readNullable(reader, elementReader));
+    }
+    reader.endArray();
+    return list;
+  }
+
+  private static <T> void writeNullable(JsonWriter writer, @Nullable T value, ValueWriter<T> valueWriter) throws IOException {
+    if (value == null) {
+      writer.nullValue();
+    } else {
+      valueWriter.write(writer, value);
+    }
+  }
+
+  private static <T> void writeCollection(JsonWriter writer, @Nullable Collection<T> collection, ValueWriter<T> elementWriter) throws IOException {
+    if (collection == null) {
+      writer.nullValue();
+      return;
+    }
+    writer.beginArray();
+    for (T element : collection) {
+      writeNullable(writer, element, elementWriter);
+    }
+    writer.endArray();
+  }
+
+  private interface ValueWriter<T> {
+    void write(JsonWriter writer, T value) throws IOException;
+  }
+
+  private interface ValueReader<T> {
+    T read(JsonReader reader) throws IOException;
+  }
+
+  private record ParsedUri(String text, URI uri) {
+  }
+}
@@ -19,8 +19,6 @@
  */
 package org.sonarsource.sonarlint.visualstudio.roslyn.http;
 
-import com.google.gson.Gson;
-
 import java.net.URI;
 import java.util.Collection;
 import java.util.Map;
@@ -31,26 +29,39 @@ import org.sonarsource.api.sonarlint.SonarLintSide;
 
 @SonarLintSide(lifespan = "INSTANCE")
 public class JsonRequestBuilder {
+  private final JsonCodec jsonCodec;
+  // the active rules rarely change between analyses, and are the largest part of the request after the files
+  private final FragmentCache activeRulesFragments = new FragmentCache();
+
+  public JsonRequestBuilder(JsonCodec jsonCodec) {
+    this.jsonCodec = jsonCodec;
+  }
 
-  public String buildAnalyzeBody(
+  /**
+   * The UTF-8 chunks of the request, encoded lazily on each iteration, see {@link AnalysisRequestBody}.
+   */
+  public Iterable<byte[]> buildAnalyzeBodyChunks(
     Collection<URI> fileUris,
     Collection<ActiveRule> activeRules,
     Map<String, String> analysisProperties,
     AnalyzerInfoDto analyzerInfo,
     UUID analysisId) {
+    return new AnalysisRequestBody(jsonCodec, activeRulesFragments, fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+  }
+
+  /**
+   * The configuration registered by an {@link AnalysisSession}: an analyze request without files nor analysis id.
+   */
+  public String buildSessionBody(Collection<ActiveRule> activeRules, Map<String, String> analysisProperties, AnalyzerInfoDto analyzerInfo) {
     var activeRuleDtos = activeRules.stream()
-      .map(rule -> new ActiveRuleDto(
-        rule.ruleKey().toString(),
-        rule.params()))
+      .map(rule -> new ActiveRuleDto(rule.ruleKey().toString(), rule.params()))
       .toList();
-    var analysisRequest = new AnalysisRequestDto(fileUris, activeRuleDtos, analysisProperties, analyzerInfo, analysisId);
-
-    return new Gson().toJson(analysisRequest);
+    return jsonCodec.toJson(new AnalysisRequestDto(null, activeRuleDtos, analysisProperties, analyzerInfo, null));
   }
 
   public String buildCancelBody(UUID analysisId) {
     var analysisRequest = new CancellationRequestDto(analysisId);
 
-    return new Gson().toJson(analysisRequest);
+    return jsonCodec.toJson(analysisRequest);
   }
 }
@@ -0,0 +1,39 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import javax.annotation.Nullable;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+
+/**
+ * Receives the issues of an analysis one by one, as soon as they are decoded from the server response.
+ */
+@FunctionalInterface
+public interface RoslynIssueSink {
+  void accept(RoslynIssue roslynIssue);
+
+  /**
+   * Called by the decoders with the rule id of an issue, before decoding the rest of it.
+   * Issues of rejected rules are skipped without being materialized, and never reach {@link #accept(RoslynIssue)}.
+   */
+  default boolean acceptsRule(@Nullable String ruleId) {
+    return true;
+  }
+}
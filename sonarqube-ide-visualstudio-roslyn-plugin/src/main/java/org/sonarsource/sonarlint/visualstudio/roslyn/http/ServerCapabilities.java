@@ -0,0 +1,101 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import org.sonarsource.api.sonarlint.SonarLintSide;
+
+/**
+ * Remembers, for the lifetime of the plugin instance, which optional protocol features the analysis server supports.
+ * Features are used only once the server advertised them, and until it rejects them.
+ */
+@SonarLintSide(lifespan = SonarLintSide.INSTANCE)
+public class ServerCapabilities {
+  private volatile boolean analyzeStreamSupported;
+  private volatile boolean analyzeStreamRejected;
+  private volatile boolean binaryFormatSupported;
+  private volatile boolean binaryRequestRejected;
+  private volatile boolean gzipRequestSupported;
+  private volatile boolean gzipRequestRejected;
+  private volatile boolean sessionSupported;
+  private volatile boolean sessionRejected;
+
+  /**
+   * The streaming endpoint is used only once the server has answered with a protocol version supporting it, and as long as it
+   * did not reject it: a server without the endpoint would receive the whole request twice.
+   */
+  public boolean isAnalyzeStreamSupported() {
+    return analyzeStreamSupported && !analyzeStreamRejected;
+  }
+
+  public void setAnalyzeStreamSupported() {
+    analyzeStreamSupported = true;
+  }
+
+  public void setAnalyzeStreamUnsupported() {
+    analyzeStreamRejected = true;
+  }
+
+  /**
+   * Requests are sent in the binary format only once the server has answered with it, and as long as it did not reject a binary request.
+   */
+  public boolean isBinaryRequestSupported() {
+    return binaryFormatSupported && !binaryRequestRejected;
+  }
+
+  public void setBinaryFormatSupported() {
+    binaryFormatSupported = true;
+  }
+
+  public void setBinaryRequestUnsupported() {
+    binaryRequestRejected = true;
+  }
+
+  /**
+   * Requests are compressed only once the server has advertised gzip in the {@code Accept-Encoding} header of a response, and as long
+   * as it did not reject a compressed request. A server compressing its responses does not necessarily accept compressed requests.
+   */
+  public boolean isGzipRequestSupported() {
+    return gzipRequestSupported && !gzipRequestRejected;
+  }
+
+  public void setGzipRequestSupported() {
+    gzipRequestSupported = true;
+  }
+
+  public void setGzipRequestUnsupported() {
+    gzipRequestRejected = true;
+  }
+
+  /**
+   * The configuration is registered in an {@link AnalysisSession} only once the server has answered with a protocol version supporting it,
+   * and as long as it did not reject a session.
+   */
+  public boolean isSessionSupported() {
+    return sessionSupported && !sessionRejected;
+  }
+
+  public void setSessionSupported() {
+    sessionSupported = true;
+  }
+
+  public void setSessionUnsupported() {
+    sessionRejected = true;
+  }
+}
@@ -36,6 +36,17 @@ public class RoslynIssue {
   @SerializedName("QuickFixes")
   private List<RoslynIssueQuickFix> quickFixes;
 
+  public RoslynIssue() {
+    // used by Gson
+  }
+
+  public RoslynIssue(String ruleId, RoslynIssueLocation primaryLocation, List<RoslynIssueFlow> flows, List<RoslynIssueQuickFix> quickFixes) {
+    this.ruleId = ruleId;
+    this.primaryLocation = primaryLocation;
+    this.flows = flows;
+    this.quickFixes = quickFixes;
+  }
+
   public String getRuleId() {
     return ruleId;
   }
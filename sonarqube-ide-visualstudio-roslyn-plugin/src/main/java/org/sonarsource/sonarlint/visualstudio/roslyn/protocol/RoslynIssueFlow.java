@@ -27,6 +27,14 @@ public class RoslynIssueFlow {
   @SerializedName("Locations")
   private List<RoslynIssueLocation> locations;
 
+  public RoslynIssueFlow() {
+    // used by Gson
+  }
+
+  public RoslynIssueFlow(List<RoslynIssueLocation> locations) {
+    this.locations = locations;
+  }
+
   public List<RoslynIssueLocation> getLocations() {
     return locations;
   }
@@ -27,16 +27,41 @@ public class RoslynIssueLocation {
   @SerializedName("FileUri")
   private URI fileUri;
 
+  /**
+   * Index of the file in the {@code FileUris} of the request, sent instead of the URI by servers supporting protocol version 2.
+   */
+  @SerializedName("FileId")
+  private Integer fileId;
+
   @SerializedName("Message")
   private String message;
 
   @SerializedName("TextRange")
   private RoslynIssueTextRange textRange;
 
+  public RoslynIssueLocation() {
+    // used by Gson
+  }
+
+  public RoslynIssueLocation(URI fileUri, String message, RoslynIssueTextRange textRange) {
+    this(fileUri, null, message, textRange);
+  }
+
+  public RoslynIssueLocation(URI fileUri, Integer fileId, String message, RoslynIssueTextRange textRange) {
+    this.fileUri = fileUri;
+    this.fileId = fileId;
+    this.message = message;
+    this.textRange = textRange;
+  }
+
   public URI getFileUri() {
     return fileUri;
   }
 
+  public Integer getFileId() {
+    return fileId;
+  }
+
   public String getMessage() {
     return message;
   }
@@ -25,6 +25,14 @@ public class RoslynIssueQuickFix {
   @SerializedName("Value")
   private String value;
 
+  public RoslynIssueQuickFix() {
+    // used by Gson
+  }
+
+  public RoslynIssueQuickFix(String value) {
+    this.value = value;
+  }
+
   public String getValue() {
     return value;
   }
@@ -34,6 +34,17 @@ public class RoslynIssueTextRange {
   @SerializedName("EndLineOffset")
   private int endLineOffset;
 
+  public RoslynIssueTextRange() {
+    // used by Gson
+  }
+
+  public RoslynIssueTextRange(int startLine, int endLine, int startLineOffset, int endLineOffset) {
+    this.startLine = startLine;
+    this.endLine = endLine;
+    this.startLineOffset = startLineOffset;
+    this.endLineOffset = endLineOffset;
+  }
+
   public int getStartLine() {
     return startLine;
   }
@@ -0,0 +1,89 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import java.util.List;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.rule.RuleKey;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ActiveRuleResolverTest {
+  private static final RuleKey ACTIVE_RULE = RuleKey.of(CSharpLanguage.REPOSITORY_KEY, "S100");
+  private ActiveRuleResolver underTest;
+
+  @BeforeEach
+  void init() {
+    var activeRule = mock(ActiveRule.class);
+    when(activeRule.ruleKey()).thenReturn(ACTIVE_RULE);
+    underTest = new ActiveRuleResolver(List.of(activeRule));
+  }
+
+  @Test
+  void resolve_activeRule_returnsRuleKey() {
+    assertThat(underTest.resolve("csharpsquid:S100")).isEqualTo(ACTIVE_RULE);
+  }
+
+  @Test
+  void resolve_inactiveRule_returnsNullAndIsCounted() {
+    assertThat(underTest.resolve("csharpsquid:S101")).isNull();
+    assertThat(underTest.resolve("vbnet:S100")).isNull();
+
+    assertThat(underTest.getInactiveRuleIdCount()).isEqualTo(2);
+    assertThat(underTest.getMalformedRuleIdCount()).isZero();
+  }
+
+  @Test
+  void resolve_sameRuleIdSeveralTimes_returnsCachedRuleKey() {
+    var first = underTest.resolve("csharpsquid:S100");
+    var second = underTest.resolve(new String("csharpsquid:S100"));
+
+    assertThat(second).isSameAs(first);
+    assertThat(underTest.getInactiveRuleIdCount()).isZero();
+  }
+
+  @Test
+  void resolve_ruleIdWithSeveralSeparators_usesTheFirstTwoParts() {
+    assertThat(underTest.resolve("csharpsquid:S100:extra")).isEqualTo(ACTIVE_RULE);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", "S100", ":S100", "csharpsquid:", "csharpsquid::S100"})
+  void resolve_malformedRuleId_isCountedAndSkipped(String ruleId) {
+    assertThat(underTest.resolve(ruleId)).isNull();
+    assertThat(underTest.resolve(ruleId)).isNull();
+
+    assertThat(underTest.getMalformedRuleIdCount()).isEqualTo(2);
+    assertThat(underTest.getInactiveRuleIdCount()).isZero();
+  }
+
+  @Test
+  void resolve_nullRuleId_isCountedAndSkipped() {
+    assertThat(underTest.resolve(null)).isNull();
+
+    assertThat(underTest.getMalformedRuleIdCount()).isEqualTo(1);
+  }
+}
@@ -19,73 +19,187 @@
  */
 package org.sonarsource.sonarlint.visualstudio.roslyn;
 
-import static org.junit.Assert.*;
-import static org.mockito.Mockito.*;
-
-import java.util.concurrent.CountDownLatch;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.Mockito;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mockito.ArgumentCaptor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 class AnalysisCancellationServiceTest {
-  private AnalysisTracker createMockTrackerWithLatch(CountDownLatch latch) {
-    var mockTracker = Mockito.mock(AnalysisTrackerImpl.class);
-    when(mockTracker.cancelIfNeeded()).thenAnswer(invocation -> {
-      latch.countDown();
-      return latch.getCount() == 0;
-    });
-    return mockTracker;
+  private static final int STRESS_TRACKER_COUNT = 5000;
+  private ScheduledExecutorService ticker;
+  private AnalysisCancellationService underTest;
+
+  @BeforeEach
+  void init() {
+    // the sweeps are run by the tests themselves
+    ticker = mock(ScheduledExecutorService.class);
+    underTest = new AnalysisCancellationService(ticker);
   }
 
   @Test
-  void testAnalysisPollingWhenCancellationNeeded() throws InterruptedException {
-    var service = new AnalysisCancellationService();
-    final var latch = new CountDownLatch(3);
-    var mockTracker = createMockTrackerWithLatch(latch);
+  void constructor_schedulesTheSweepOfTheRegisteredAnalyses() {
+    var sweep = ArgumentCaptor.forClass(Runnable.class);
+    verify(ticker).scheduleWithFixedDelay(sweep.capture(), eq(AnalysisCancellationService.SWEEP_INTERVAL_MS), eq(AnalysisCancellationService.SWEEP_INTERVAL_MS),
+      eq(TimeUnit.MILLISECONDS));
+    var tracker = mock(AnalysisTracker.class);
+    underTest.registerAnalysis(tracker);
 
-    try {
-      service.registerAnalysis(mockTracker);
-      assertTrue(latch.await(400, TimeUnit.MILLISECONDS));
-      verify(mockTracker, times(3)).cancelIfNeeded();
-    } finally {
-      service.stop();
+    sweep.getValue().run();
+
+    verify(tracker).cancelIfNeeded();
+  }
+
+  @Test
+  void testAnalysisPollingWhenCancellationNeeded() {
+    var tracker = mock(AnalysisTrackerImpl.class);
+    when(tracker.cancelIfNeeded()).thenReturn(false, false, true);
+    underTest.registerAnalysis(tracker);
+
+    for (var i = 0; i < 4; i++) {
+      underTest.sweep();
     }
+
+    verify(tracker, times(3)).cancelIfNeeded();
+    assertThat(underTest.getRegisteredAnalysisCount()).isZero();
+  }
+
+  @Test
+  void testMultipleAnalysisRegistration() {
+    var tracker1 = mock(AnalysisTrackerImpl.class);
+    var tracker2 = mock(AnalysisTrackerImpl.class);
+    underTest.registerAnalysis(tracker1);
+    underTest.registerAnalysis(tracker2);
+
+    underTest.sweep();
+
+    verify(tracker1).cancelIfNeeded();
+    verify(tracker2).cancelIfNeeded();
+    assertThat(underTest.getRegisteredAnalysisCount()).isEqualTo(2);
   }
 
   @Test
-  void testMultipleAnalysisRegistration() throws InterruptedException {
+  void testRegisterAnalysisAfterStop() {
     var service = new AnalysisCancellationService();
+    service.stop();
+    var tracker = mock(AnalysisTrackerImpl.class);
 
-    final var latch1 = new CountDownLatch(1);
-    final var latch2 = new CountDownLatch(1);
+    assertThrows(RejectedExecutionException.class, () -> service.registerAnalysis(tracker));
+    assertThat(service.getRegisteredAnalysisCount()).isZero();
+  }
 
-    var mockTracker1 = createMockTrackerWithLatch(latch1);
-    var mockTracker2 = createMockTrackerWithLatch(latch2);
+  @Test
+  void stop_shutsTheTickerDownAndForgetsTheAnalyses() {
+    var tracker = mock(AnalysisTrackerImpl.class);
+    underTest.registerAnalysis(tracker);
 
-    try {
-      service.registerAnalysis(mockTracker1);
-      service.registerAnalysis(mockTracker2);
+    underTest.stop();
+    underTest.sweep();
 
-      assertTrue(latch1.await(200, TimeUnit.MILLISECONDS));
-      assertTrue(latch2.await(200, TimeUnit.MILLISECONDS));
+    verify(ticker).shutdownNow();
+    verify(tracker, never()).cancelIfNeeded();
+    assertThat(underTest.getRegisteredAnalysisCount()).isZero();
+  }
 
-      verify(mockTracker1, atLeastOnce()).cancelIfNeeded();
-      verify(mockTracker2, atLeastOnce()).cancelIfNeeded();
+  @Test
+  void testTrackerThrows_isRemovedWithoutStoppingTheSweep() {
+    var failingTracker = mock(AnalysisTracker.class);
+    when(failingTracker.cancelIfNeeded()).thenThrow(new IllegalStateException("boom"));
+    var tracker = mock(AnalysisTrackerImpl.class);
+    underTest.registerAnalysis(failingTracker);
+    underTest.registerAnalysis(tracker);
+
+    underTest.sweep();
+    underTest.sweep();
+
+    verify(failingTracker, times(1)).cancelIfNeeded();
+    verify(tracker, times(2)).cancelIfNeeded();
+    assertThat(underTest.getRegisteredAnalysisCount()).isEqualTo(1);
+  }
+
+  /**
+   * Run with {@code mvn test -Dtest=AnalysisCancellationServiceTest -Dsqvs.benchmark=true}.
+   */
+  @Test
+  @EnabledIfSystemProperty(named = "sqvs.benchmark", matches = "true")
+  void benchmarkThousandsOfConcurrentAnalyses_areSweptWithBoundedLatency() throws InterruptedException {
+    var trackers = createCountingTrackers(STRESS_TRACKER_COUNT);
+    registerConcurrently(underTest, trackers);
+    assertThat(underTest.getRegisteredAnalysisCount()).isEqualTo(STRESS_TRACKER_COUNT);
+
+    var sweepMs = timeSweep();
+    assertThat(trackers).allSatisfy(tracker -> assertThat(tracker.polls.get()).isEqualTo(1));
+    assertThat(sweepMs).as("one sweep over %d trackers, in ms", STRESS_TRACKER_COUNT).isLessThan(AnalysisCancellationService.SWEEP_INTERVAL_MS);
+
+    trackers.forEach(CountingTracker::close);
+    var removalMs = timeSweep();
+    assertThat(underTest.getRegisteredAnalysisCount()).isZero();
+    assertThat(removalMs).as("removal of %d completed trackers, in ms", STRESS_TRACKER_COUNT).isLessThan(AnalysisCancellationService.SWEEP_INTERVAL_MS);
+  }
+
+  private long timeSweep() {
+    var start = System.nanoTime();
+    underTest.sweep();
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+
+  private static List<CountingTracker> createCountingTrackers(int count) {
+    var trackers = new ArrayList<CountingTracker>();
+    for (var i = 0; i < count; i++) {
+      trackers.add(new CountingTracker());
+    }
+    return trackers;
+  }
+
+  private static void registerConcurrently(AnalysisCancellationService service, List<CountingTracker> trackers) throws InterruptedException {
+    ExecutorService registeringThreads = Executors.newFixedThreadPool(8);
+    try {
+      for (var tracker : trackers) {
+        registeringThreads.execute(() -> service.registerAnalysis(tracker));
+      }
+      registeringThreads.shutdown();
+      assertThat(registeringThreads.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
     } finally {
-      service.stop();
+      registeringThreads.shutdownNow();
     }
   }
 
-  @Test
-  void testRegisterAnalysisAfterStop() throws InterruptedException {
-    var service = new AnalysisCancellationService();
-    service.stop();
-    final var latch = new CountDownLatch(Integer.MAX_VALUE);
-    var mockTracker = createMockTrackerWithLatch(latch);
+  private static class CountingTracker implements AnalysisTracker {
+    private final UUID analysisId = UUID.randomUUID();
+    private final AtomicInteger polls = new AtomicInteger();
+    private volatile boolean completed;
 
-    assertThrows(RejectedExecutionException.class, () -> service.registerAnalysis(mockTracker));
-    assertFalse(latch.await(300, TimeUnit.MILLISECONDS));
+    @Override
+    public UUID getAnalysisId() {
+      return analysisId;
+    }
+
+    @Override
+    public boolean cancelIfNeeded() {
+      polls.incrementAndGet();
+      return completed;
+    }
+
+    @Override
+    public void close() {
+      completed = true;
+    }
   }
 }
@@ -0,0 +1,100 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.rule.RuleKey;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AnalysisPartitionTest {
+  private final InputFile csFile = createInputFile("File.cs", CSharpLanguage.LANGUAGE_KEY);
+  private final InputFile csFile2 = createInputFile("File2.cs", CSharpLanguage.LANGUAGE_KEY);
+  private final InputFile vbFile = createInputFile("File.vb", VbNetLanguage.LANGUAGE_KEY);
+  private final InputFile cshtmlFile = createInputFile("View.cshtml", SqvsRoslynPluginPropertyDefinitions.HTML_LANGUAGE_KEY);
+  private final InputFile razorFile = createInputFile("Component.Razor", CSharpLanguage.LANGUAGE_KEY);
+  private final InputFile vbhtmlFile = createInputFile("View.vbhtml", SqvsRoslynPluginPropertyDefinitions.HTML_LANGUAGE_KEY);
+  private final ActiveRule csRule = mockActiveRule(CSharpLanguage.REPOSITORY_KEY, "S100");
+  private final ActiveRule csRule2 = mockActiveRule(CSharpLanguage.REPOSITORY_KEY, "S101");
+  private final ActiveRule vbRule = mockActiveRule(VbNetLanguage.REPOSITORY_KEY, "S100");
+
+  @Test
+  void lane_dependsOnTheLanguageAndTheRazorExtensions() {
+    assertThat(AnalysisLane.of(csFile)).isEqualTo(AnalysisLane.CSHARP);
+    assertThat(AnalysisLane.of(vbFile)).isEqualTo(AnalysisLane.VBNET);
+    assertThat(AnalysisLane.of(cshtmlFile)).isEqualTo(AnalysisLane.CSHARP_RAZOR);
+    assertThat(AnalysisLane.of(razorFile)).isEqualTo(AnalysisLane.CSHARP_RAZOR);
+    assertThat(AnalysisLane.of(vbhtmlFile)).isEqualTo(AnalysisLane.VBNET_RAZOR);
+  }
+
+  @Test
+  void lane_razorExtensions_winOverTheLanguageOfTheFile() {
+    assertThat(AnalysisLane.of(createInputFile("View.vbhtml", VbNetLanguage.LANGUAGE_KEY))).isEqualTo(AnalysisLane.VBNET_RAZOR);
+    assertThat(AnalysisLane.of(createInputFile("View.VBHTML", CSharpLanguage.LANGUAGE_KEY))).isEqualTo(AnalysisLane.VBNET_RAZOR);
+    assertThat(AnalysisLane.of(createInputFile("Component.razor", SqvsRoslynPluginPropertyDefinitions.HTML_LANGUAGE_KEY))).isEqualTo(AnalysisLane.CSHARP_RAZOR);
+    assertThat(AnalysisLane.of(createInputFile("Component.razor", VbNetLanguage.LANGUAGE_KEY))).isEqualTo(AnalysisLane.CSHARP_RAZOR);
+    assertThat(AnalysisLane.of(createInputFile("Component.razor.cs", CSharpLanguage.LANGUAGE_KEY))).isEqualTo(AnalysisLane.CSHARP);
+    assertThat(AnalysisLane.of(createInputFile("View.vbhtml.vb", VbNetLanguage.LANGUAGE_KEY))).isEqualTo(AnalysisLane.VBNET);
+  }
+
+  @Test
+  void sortByLane_keepsTheOrderOfTheFilesOfEachLane() {
+    var result = AnalysisPartition.sortByLane(List.of(vbhtmlFile, csFile2, vbFile, cshtmlFile, csFile, razorFile));
+
+    assertThat(result).containsExactly(csFile2, csFile, vbFile, cshtmlFile, razorFile, vbhtmlFile);
+  }
+
+  @Test
+  void of_returnsOnePartitionPerLaneWithTheRulesOfItsRepository() {
+    var inputFiles = AnalysisPartition.sortByLane(List.of(vbhtmlFile, csFile, vbFile, csFile2));
+    var fileUris = inputFiles.stream().map(InputFile::uri).toList();
+
+    var result = AnalysisPartition.of(inputFiles, fileUris, List.of(csRule, vbRule, csRule2));
+
+    assertThat(result).containsExactly(
+      new AnalysisPartition(AnalysisLane.CSHARP, List.of(csFile.uri(), csFile2.uri()), 0, List.of(csRule, csRule2)),
+      new AnalysisPartition(AnalysisLane.VBNET, List.of(vbFile.uri()), 2, List.of(vbRule)),
+      new AnalysisPartition(AnalysisLane.VBNET_RAZOR, List.of(vbhtmlFile.uri()), 3, List.of(vbRule)));
+  }
+
+  @Test
+  void of_noRulesForTheLane_returnsThePartitionWithoutRules() {
+    var result = AnalysisPartition.of(List.of(vbFile), List.of(vbFile.uri()), List.of(csRule));
+
+    assertThat(result).containsExactly(new AnalysisPartition(AnalysisLane.VBNET, List.of(vbFile.uri()), 0, List.of()));
+  }
+
+  private static InputFile createInputFile(String fileName, String languageKey) {
+    return TestInputFileBuilder.create("", fileName).setModuleBaseDir(Path.of("project").toAbsolutePath()).setLanguage(languageKey).build();
+  }
+
+  private static ActiveRule mockActiveRule(String repository, String rule) {
+    var activeRule = mock(ActiveRule.class);
+    when(activeRule.ruleKey()).thenReturn(RuleKey.of(repository, rule));
+    return activeRule;
+  }
+}
@@ -29,6 +29,7 @@ import org.sonar.api.batch.sensor.internal.SensorContextTester;
 import org.sonar.api.config.internal.MapSettings;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
 class AnalysisPropertiesProviderTest {
   private SensorContextTester sensorContext;
@@ -38,7 +39,7 @@ class AnalysisPropertiesProviderTest {
   void prepare(@TempDir Path tmp) throws IOException {
     var baseDir = tmp.toRealPath();
     sensorContext = SensorContextTester.create(baseDir);
-    underTest = new AnalysisPropertiesProvider(sensorContext);
+    underTest = new AnalysisPropertiesProvider(sensorContext, new ConfigurationSnapshotProvider());
   }
 
   @Test
@@ -81,6 +82,27 @@ class AnalysisPropertiesProviderTest {
     assertThat(result).isEmpty();
   }
 
+  @Test
+  void sameSettings_returnsTheSameUnmodifiableProperties() {
+    mockAnalysisProperties(Map.of("sonar.cs.disableRazor", "true"));
+
+    var result = underTest.getAnalysisProperties();
+
+    assertThat(underTest.getAnalysisProperties()).isSameAs(result);
+    assertThatExceptionOfType(UnsupportedOperationException.class).isThrownBy(() -> result.put("sonar.cs.other", "value"));
+  }
+
+  @Test
+  void changedSettings_returnsTheNewProperties() {
+    mockAnalysisProperties(Map.of("sonar.cs.disableRazor", "true"));
+    underTest.getAnalysisProperties();
+    mockAnalysisProperties(Map.of("sonar.cs.disableRazor", "false"));
+
+    var result = underTest.getAnalysisProperties();
+
+    assertThat(result).containsOnly(Map.entry("sonar.cs.disableRazor", "false"));
+  }
+
   private void mockAnalysisProperties(Map<String, String> analysisProperties) {
     var mapSettings = new MapSettings();
     analysisProperties.forEach(mapSettings::setProperty);
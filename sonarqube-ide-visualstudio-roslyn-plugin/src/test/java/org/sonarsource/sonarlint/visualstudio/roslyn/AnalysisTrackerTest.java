@@ -19,7 +19,11 @@
  */
 package org.sonarsource.sonarlint.visualstudio.roslyn;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.sonar.api.batch.sensor.SensorContext;
@@ -74,6 +78,20 @@ class AnalysisTrackerTest {
     verify(handler).cancelAnalysis(underTest.getAnalysisId());
   }
 
+  @Test
+  void cancelIfNeeded_shouldCancelAllBatches() {
+    var firstBatchId = underTest.newBatchId();
+    var secondBatchId = underTest.newBatchId();
+    when(sensorContext.isCancelled()).thenReturn(true);
+
+    underTest.cancelIfNeeded();
+
+    assertThat(firstBatchId).isNotEqualTo(secondBatchId).isNotEqualTo(underTest.getAnalysisId());
+    verify(handler).cancelAnalysis(underTest.getAnalysisId());
+    verify(handler).cancelAnalysis(firstBatchId);
+    verify(handler).cancelAnalysis(secondBatchId);
+  }
+
   @Test
   void cancelIfNeeded_shouldReturnFalseWhenAnalysisIsNotCancelled() {
     when(sensorContext.isCancelled()).thenReturn(false);
@@ -96,4 +114,80 @@ class AnalysisTrackerTest {
     assertThat(secondResult).isTrue();
     verify(handler, times(1)).cancelAnalysis(any());
   }
+
+  @Test
+  void cancelIfNeeded_shouldAbortTheAnalysisAtOnceAndRecordTheLatency() {
+    var analysis = new CompletableFuture<Void>();
+    underTest.abortOnCancel(analysis);
+    when(sensorContext.isCancelled()).thenReturn(true);
+
+    underTest.cancelIfNeeded();
+
+    assertThat(analysis).isCancelled();
+    verify(handler).cancelAnalysis(underTest.getAnalysisId());
+    assertThat(underTest.getCancellationLatency()).isNotNull();
+  }
+
+  @Test
+  void cancelIfNeeded_latencyIncludesTheTimeSinceTheSensorWasLastSeenNotCancelled() {
+    var nanoTime = new AtomicLong();
+    underTest = new AnalysisTrackerImpl(sensorContext, handler, analysisCancellationService, nanoTime::get);
+    when(sensorContext.isCancelled()).thenReturn(false, true);
+    nanoTime.set(Duration.ofMillis(10).toNanos());
+    underTest.cancelIfNeeded();
+    nanoTime.set(Duration.ofMillis(60).toNanos());
+
+    underTest.cancelIfNeeded();
+
+    assertThat(underTest.getCancellationLatency()).isEqualTo(Duration.ofMillis(50));
+  }
+
+  @Test
+  void abortOnCancel_alreadyCancelled_abortsTheAnalysisAtOnce() {
+    underTest.cancel();
+    var analysis = new CompletableFuture<Void>();
+
+    underTest.abortOnCancel(analysis);
+
+    assertThat(analysis).isCancelled();
+  }
+
+  @Test
+  void cancel_shouldAbortTheAnalysisBeforeAskingTheServerToCancel() {
+    var analysis = new CompletableFuture<Void>();
+    underTest.abortOnCancel(analysis);
+    var abortedWhenServerAsked = new ArrayList<Boolean>();
+    doAnswer(invocation -> abortedWhenServerAsked.add(analysis.isCancelled())).when(handler).cancelAnalysis(any());
+    underTest.newBatchId();
+
+    underTest.cancel();
+
+    assertThat(abortedWhenServerAsked).containsExactly(true, true);
+  }
+
+  @Test
+  void cancel_shouldAskTheServerToCancelEvenIfTheSensorIsNotCancelled() {
+    var analysis = new CompletableFuture<Void>();
+    underTest.abortOnCancel(analysis);
+
+    underTest.cancel();
+
+    assertThat(analysis).isCancelled();
+    verify(handler).cancelAnalysis(underTest.getAnalysisId());
+    assertThat(underTest.cancelIfNeeded()).isTrue();
+    verifyNoInteractions(sensorContext);
+  }
+
+  @Test
+  void cancel_shouldDoNothingWhenAlreadyCompleted() {
+    var analysis = new CompletableFuture<Void>();
+    underTest.abortOnCancel(analysis);
+    underTest.close();
+
+    underTest.cancel();
+
+    assertThat(analysis).isNotDone();
+    verifyNoInteractions(handler);
+    assertThat(underTest.getCancellationLatency()).isNull();
+  }
 }
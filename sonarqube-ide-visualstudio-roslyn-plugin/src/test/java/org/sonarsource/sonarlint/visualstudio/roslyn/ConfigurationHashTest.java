@@ -0,0 +1,74 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.rule.RuleKey;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.AnalyzerInfoDto;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ConfigurationHashTest {
+  private static final AnalyzerInfoDto ANALYZER_INFO = new AnalyzerInfoDto(false, false);
+
+  @Test
+  void of_doesNotDependOnTheOrder() {
+    var rule1 = mockActiveRule("S100", Map.of("a", "1", "b", "2"));
+    var rule2 = mockActiveRule("S101", Map.of());
+
+    assertThat(ConfigurationHash.of(List.of(rule1, rule2), Map.of("x", "1", "y", "2"), ANALYZER_INFO))
+      .isEqualTo(ConfigurationHash.of(List.of(rule2, rule1), Map.of("y", "2", "x", "1"), ANALYZER_INFO));
+  }
+
+  @Test
+  void of_otherConfiguration_otherHash() {
+    var hash = ConfigurationHash.of(List.of(mockActiveRule("S100", Map.of("a", "1"))), Map.of("x", "1"), ANALYZER_INFO);
+
+    assertThat(ConfigurationHash.of(List.of(mockActiveRule("S100", Map.of("a", "2"))), Map.of("x", "1"), ANALYZER_INFO)).isNotEqualTo(hash);
+    assertThat(ConfigurationHash.of(List.of(mockActiveRule("S101", Map.of("a", "1"))), Map.of("x", "1"), ANALYZER_INFO)).isNotEqualTo(hash);
+    assertThat(ConfigurationHash.of(List.of(mockActiveRule("S100", Map.of("a", "1"))), Map.of("x", "2"), ANALYZER_INFO)).isNotEqualTo(hash);
+    assertThat(ConfigurationHash.of(List.of(mockActiveRule("S100", Map.of("a", "1"))), Map.of("x", "1"), new AnalyzerInfoDto(false, true))).isNotEqualTo(hash);
+    assertThat(ConfigurationHash.of(List.of(mockActiveRule("S100", Map.of("a", "1"))), Map.of("x", "1"), ANALYZER_INFO)).isEqualTo(hash);
+  }
+
+  @Test
+  void ofActiveRulesInOrder_dependsOnTheRulesTheirParametersAndTheirOrder() {
+    var rule1 = mockActiveRule("S100", Map.of("a", "1"));
+    var rule2 = mockActiveRule("S101", Map.of());
+    var hash = ConfigurationHash.ofActiveRulesInOrder(List.of(rule1, rule2));
+
+    assertThat(ConfigurationHash.ofActiveRulesInOrder(List.of(mockActiveRule("S100", Map.of("a", "1")), mockActiveRule("S101", Map.of())))).isEqualTo(hash);
+    assertThat(ConfigurationHash.ofActiveRulesInOrder(List.of(rule2, rule1))).isNotEqualTo(hash);
+    assertThat(ConfigurationHash.ofActiveRulesInOrder(List.of(mockActiveRule("S100", Map.of("a", "2")), rule2))).isNotEqualTo(hash);
+    assertThat(ConfigurationHash.ofActiveRulesInOrder(List.of(rule1))).isNotEqualTo(hash);
+  }
+
+  private static ActiveRule mockActiveRule(String rule, Map<String, String> params) {
+    var activeRule = mock(ActiveRule.class);
+    when(activeRule.ruleKey()).thenReturn(RuleKey.of("csharpsquid", rule));
+    when(activeRule.params()).thenReturn(params);
+    return activeRule;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.net.URI;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.internal.MapSettings;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConfigurationSnapshotProviderTest {
+  private MapSettings settings;
+  private ConfigurationSnapshotProvider underTest;
+
+  @BeforeEach
+  void init() {
+    settings = new MapSettings();
+    settings.setProperty(SqvsRoslynPluginPropertyDefinitions.getServerPort(), "60000");
+    settings.setProperty(SqvsRoslynPluginPropertyDefinitions.getServerToken(), "myToken");
+    settings.setProperty("sonar.cs.disableRazor", "true");
+    settings.setProperty("sonar.cs.internal.shouldUseCsharpEnterprise", "true");
+    settings.setProperty("sonar.js.other", "value");
+    underTest = new ConfigurationSnapshotProvider();
+  }
+
+  @Test
+  void get_readsTheServerAndAnalysisSettings() {
+    var result = underTest.get(settings);
+
+    assertThat(result.getServerPort()).isEqualTo("60000");
+    assertThat(result.getServerToken()).isEqualTo("myToken");
+    assertThat(result.getServerUri("analyze")).isEqualTo(URI.create("http://localhost:60000/analyze"));
+    assertThat(result.getServerUri("analyze")).isSameAs(result.getServerUri("analyze"));
+    assertThat(result.getAnalysisProperties()).containsOnly(Map.entry("sonar.cs.disableRazor", "true"));
+  }
+
+  @Test
+  void get_sameSettings_reusesTheSnapshot() {
+    var first = underTest.get(settings);
+
+    assertThat(underTest.get(settings)).isSameAs(first);
+  }
+
+  @Test
+  void get_otherSettings_buildsANewSnapshot() {
+    var first = underTest.get(settings);
+    var otherSettings = new MapSettings();
+    settings.getProperties().forEach(otherSettings::setProperty);
+    otherSettings.setProperty(SqvsRoslynPluginPropertyDefinitions.getServerPort(), "60001");
+
+    var result = underTest.get(otherSettings);
+
+    assertThat(result).isNotSameAs(first);
+    assertThat(result.getServerUri("analyze")).isEqualTo(URI.create("http://localhost:60001/analyze"));
+    assertThat(first.getServerUri("analyze")).isEqualTo(URI.create("http://localhost:60000/analyze"));
+  }
+}
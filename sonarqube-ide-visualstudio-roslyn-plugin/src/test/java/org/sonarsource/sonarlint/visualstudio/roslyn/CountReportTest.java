@@ -0,0 +1,73 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CountReportTest {
+
+  @Test
+  void details_listsTheMostFrequentFirstThenByKey() {
+    var counts = Map.of("b", count(1), "a", count(1), "c", count(3));
+
+    assertThat(CountReport.sum(counts)).isEqualTo(5);
+    assertThat(CountReport.details(counts)).isEqualTo(lines("  c: 3", "  a: 1", "  b: 1"));
+  }
+
+  @Test
+  void details_tooManyEntries_truncatesAndCountsTheOthers() {
+    var counts = new HashMap<String, LongAdder>();
+    for (var i = 0; i < CountReport.MAX_REPORTED_ENTRIES + 2; i++) {
+      counts.put(String.format("key-%02d", i), count(1));
+    }
+
+    var details = CountReport.details(counts);
+
+    assertThat(details.split(System.lineSeparator())).hasSize(CountReport.MAX_REPORTED_ENTRIES + 2)
+      .contains("  key-00: 1")
+      .doesNotContain("  key-21: 1")
+      .endsWith("  ... 2 more");
+  }
+
+  @Test
+  void details_noEntries_isEmpty() {
+    assertThat(CountReport.details(Map.of())).isEmpty();
+    assertThat(CountReport.sum(Map.of())).isZero();
+  }
+
+  private static LongAdder count(long value) {
+    var count = new LongAdder();
+    count.add(value);
+    return count;
+  }
+
+  private static String lines(String... lines) {
+    var result = new StringBuilder();
+    for (var line : lines) {
+      result.append(System.lineSeparator()).append(line);
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.RoslynIssueSink;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueFlow;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueLocation;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueTextRange;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class FileBatchTest {
+  private static final URI FILE_1 = URI.create("file:///C:/project/File1.cs");
+  private static final URI FILE_2 = URI.create("file:///C:/project/File2.cs");
+  private static final URI FILE_3 = URI.create("file:///C:/project/File3.cs");
+  private static final URI FILE_4 = URI.create("file:///C:/project/File4.vb");
+  private static final List<ActiveRule> CSHARP_RULES = List.of(mock(ActiveRule.class));
+  private static final List<ActiveRule> VBNET_RULES = List.of(mock(ActiveRule.class));
+
+  @Test
+  void split_fewerFilesThanTheBatchSize_returnsASingleBatchWithTheSameFiles() {
+    var fileUris = List.of(FILE_1, FILE_2);
+
+    var result = FileBatch.split(new AnalysisPartition(AnalysisLane.CSHARP, fileUris, 3, CSHARP_RULES), 2);
+
+    assertThat(result).singleElement().satisfies(batch -> {
+      assertThat(batch.fileUris()).isSameAs(fileUris);
+      assertThat(batch.firstFileId()).isEqualTo(3);
+      assertThat(batch.activeRules()).isSameAs(CSHARP_RULES);
+    });
+  }
+
+  @Test
+  void split_moreFilesThanTheBatchSize_returnsBatchesInTheOrderOfTheFiles() {
+    var result = FileBatch.split(new AnalysisPartition(AnalysisLane.CSHARP, List.of(FILE_1, FILE_2, FILE_3), 3, CSHARP_RULES), 2);
+
+    assertThat(result).containsExactly(
+      new FileBatch(List.of(FILE_1, FILE_2), 3, CSHARP_RULES),
+      new FileBatch(List.of(FILE_3), 5, CSHARP_RULES));
+  }
+
+  @Test
+  void split_partitions_returnsTheFirstBatchOfEachPartitionFirst() {
+    var result = FileBatch.split(List.of(
+      new AnalysisPartition(AnalysisLane.CSHARP, List.of(FILE_1, FILE_2, FILE_3), 0, CSHARP_RULES),
+      new AnalysisPartition(AnalysisLane.VBNET, List.of(FILE_4), 3, VBNET_RULES)), 1);
+
+    assertThat(result).containsExactly(
+      new FileBatch(List.of(FILE_1), 0, CSHARP_RULES),
+      new FileBatch(List.of(FILE_4), 3, VBNET_RULES),
+      new FileBatch(List.of(FILE_2), 1, CSHARP_RULES),
+      new FileBatch(List.of(FILE_3), 2, CSHARP_RULES));
+  }
+
+  @Test
+  void rebasing_firstBatch_returnsTheSameSink() {
+    RoslynIssueSink issueSink = issue -> {
+    };
+
+    assertThat(new FileBatch(List.of(FILE_1), 0, CSHARP_RULES).rebasing(issueSink)).isSameAs(issueSink);
+  }
+
+  @Test
+  void rebasing_shiftsTheFileIdsOfAllLocations() {
+    var received = new ArrayList<RoslynIssue>();
+    var textRange = new RoslynIssueTextRange(1, 2, 3, 4);
+    var issue = new RoslynIssue("csharpsquid:S100",
+      new RoslynIssueLocation(null, 0, "primary", textRange),
+      List.of(new RoslynIssueFlow(List.of(new RoslynIssueLocation(null, 1, "secondary", textRange), new RoslynIssueLocation(FILE_1, "other", textRange)))),
+      null);
+
+    new FileBatch(List.of(FILE_2, FILE_3), 5, CSHARP_RULES).rebasing(received::add).accept(issue);
+
+    assertThat(received).singleElement().satisfies(rebased -> {
+      assertThat(rebased.getRuleId()).isEqualTo("csharpsquid:S100");
+      assertThat(rebased.getPrimaryLocation().getFileId()).isEqualTo(5);
+      assertThat(rebased.getPrimaryLocation().getMessage()).isEqualTo("primary");
+      assertThat(rebased.getPrimaryLocation().getTextRange()).isSameAs(textRange);
+      var flowLocations = rebased.getFlows().get(0).getLocations();
+      assertThat(flowLocations.get(0).getFileId()).isEqualTo(6);
+      assertThat(flowLocations.get(1).getFileId()).isNull();
+      assertThat(flowLocations.get(1).getFileUri()).isEqualTo(FILE_1);
+    });
+  }
+
+  @Test
+  void rebasing_delegatesTheRuleFilter() {
+    RoslynIssueSink issueSink = new RoslynIssueSink() {
+      @Override
+      public void accept(RoslynIssue roslynIssue) {
+        // not called
+      }
+
+      @Override
+      public boolean acceptsRule(String ruleId) {
+        return "csharpsquid:S100".equals(ruleId);
+      }
+    };
+
+    var rebasing = new FileBatch(List.of(FILE_2), 1, CSHARP_RULES).rebasing(issueSink);
+
+    assertThat(rebasing.acceptsRule("csharpsquid:S100")).isTrue();
+    assertThat(rebasing.acceptsRule("csharpsquid:S200")).isFalse();
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.util.HashSet;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Hash128Test {
+
+  @Test
+  void build_sameValues_sameHash() {
+    var first = Hash128.builder().add("csharpsquid:S100").add(new String("file:///C:/File.cs")).add(1).add(null).build();
+    var second = Hash128.builder().add("csharpsquid:S100").add("file:///C:/File.cs").add(1).add(null).build();
+
+    assertThat(first).isEqualTo(second).hasSameHashCodeAs(second);
+  }
+
+  @Test
+  void build_isStableAcrossRuns() {
+    var fingerprint = Hash128.builder().add("csharpsquid:S100").add(42).build();
+
+    assertThat(fingerprint).isEqualTo(Hash128.builder().add("csharpsquid:S100").add(42).build());
+    assertThat(Hash128.builder().build()).isEqualTo(Hash128.builder().build());
+  }
+
+  @Test
+  void build_differentValues_differentHashes() {
+    var fingerprints = new HashSet<Hash128>();
+    fingerprints.add(Hash128.builder().add("ab").add("c").build());
+    fingerprints.add(Hash128.builder().add("a").add("bc").build());
+    fingerprints.add(Hash128.builder().add("c").add("ab").build());
+    fingerprints.add(Hash128.builder().add("abc").build());
+    fingerprints.add(Hash128.builder().add("").build());
+    fingerprints.add(Hash128.builder().add(null).build());
+    fingerprints.add(Hash128.builder().add(3).build());
+    fingerprints.add(Hash128.builder().add(1).add(2).build());
+    fingerprints.add(Hash128.builder().add(2).add(1).build());
+    fingerprints.add(Hash128.builder().build());
+
+    assertThat(fingerprints).hasSize(10);
+  }
+
+  @Test
+  void build_manyIssuesOfTheSameFile_haveNoCollision() {
+    var fingerprints = new HashSet<Hash128>();
+    var halves = new HashSet<Long>();
+    for (var line = 1; line <= 1_000; line++) {
+      for (var offset = 0; offset < 100; offset++) {
+        var fingerprint = Hash128.builder().add("csharpsquid:S100").add("file:///C:/File.cs").add("message")
+          .add(line).add(offset).add(line).add(offset + 1).build();
+        fingerprints.add(fingerprint);
+        halves.add(fingerprint.high());
+      }
+    }
+
+    assertThat(fingerprints).hasSize(100_000);
+    assertThat(halves).hasSize(100_000);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Locale;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.batch.sensor.internal.SensorContextTester;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the cost of resolving the files of the issue locations through the file system and through {@link InputFileIndex}.
+ * Run with {@code mvn test -Dtest=InputFileIndexBenchmarkTest -Dsqvs.benchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "sqvs.benchmark", matches = "true")
+class InputFileIndexBenchmarkTest {
+  private static final Logger LOG = Loggers.get(InputFileIndexBenchmarkTest.class);
+  private static final int FILES = 2_000;
+  private static final int ISSUES = 100_000;
+  // primary location, one flow location in the same file and one outside of the analyzed files
+  private static final int LOCATIONS_PER_ISSUE = 3;
+  private static final int ROUNDS = 5;
+
+  @Test
+  void resolveLocations_100kIssues(@TempDir Path baseDir) {
+    var context = SensorContextTester.create(baseDir);
+    for (var i = 0; i < FILES; i++) {
+      context.fileSystem().add(TestInputFileBuilder.create("", "src/File" + i + ".cs").setModuleBaseDir(baseDir).setLanguage(CSharpLanguage.LANGUAGE_KEY).build());
+    }
+    var analyzedFiles = context.fileSystem().inputFiles(context.fileSystem().predicates().all());
+    var locations = new ArrayList<URI>(ISSUES * LOCATIONS_PER_ISSUE);
+    for (var i = 0; i < ISSUES; i++) {
+      // issues of a file come one after the other, and each location carries its own copy of the URI
+      var fileUri = baseDir.resolve("src/File" + (i * FILES / ISSUES) + ".cs").toUri();
+      locations.add(URI.create(fileUri.toString()));
+      locations.add(URI.create(fileUri.toString()));
+      locations.add(baseDir.resolve("obj/Generated" + (i % 10) + ".cs").toUri());
+    }
+
+    for (var round = 0; round < ROUNDS; round++) {
+      var fileSystemStart = System.nanoTime();
+      var fromFileSystem = new ArrayList<InputFile>(locations.size());
+      for (var uri : locations) {
+        fromFileSystem.add(context.fileSystem().inputFile(context.fileSystem().predicates().hasURI(uri)));
+      }
+      var fileSystemNanos = System.nanoTime() - fileSystemStart;
+
+      var indexStart = System.nanoTime();
+      var index = new InputFileIndex(context.fileSystem(), analyzedFiles);
+      var fromIndex = new ArrayList<InputFile>(locations.size());
+      for (var uri : locations) {
+        fromIndex.add(index.find(uri));
+      }
+      var indexNanos = System.nanoTime() - indexStart;
+
+      assertThat(fromIndex).isEqualTo(fromFileSystem);
+      report(round, fileSystemNanos, indexNanos);
+    }
+  }
+
+  private static void report(int round, long fileSystemNanos, long indexNanos) {
+    LOG.info(String.format(Locale.ROOT, "round %d: file system %.1f ns/issue, index (including its construction) %.1f ns/issue",
+      round, (double) fileSystemNanos / ISSUES, (double) indexNanos / ISSUES));
+  }
+}
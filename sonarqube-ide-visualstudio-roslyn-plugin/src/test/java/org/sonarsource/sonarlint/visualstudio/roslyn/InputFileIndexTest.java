@@ -0,0 +1,122 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.net.URI;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.batch.fs.FilePredicate;
+import org.sonar.api.batch.fs.FilePredicates;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueLocation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class InputFileIndexTest {
+  private static final URI FILE_1 = URI.create("file:///C:/project/src/File1.cs");
+  private static final URI FILE_2 = URI.create("file:///C:/project/src/File2.vb");
+  private static final URI OTHER_FILE = URI.create("file:///C:/project/src/Other.cs");
+  private static final URI UNKNOWN_FILE = URI.create("file:///C:/elsewhere/Unknown.cs");
+  private FileSystem fileSystem;
+  private InputFile inputFile1;
+  private InputFile inputFile2;
+  private InputFile otherInputFile;
+  private InputFileIndex underTest;
+
+  @BeforeEach
+  void init() {
+    fileSystem = mock(FileSystem.class);
+    var predicates = mock(FilePredicates.class);
+    when(fileSystem.predicates()).thenReturn(predicates);
+    var otherFilePredicate = mock(FilePredicate.class);
+    when(predicates.hasURI(any())).thenReturn(mock(FilePredicate.class));
+    when(predicates.hasURI(OTHER_FILE)).thenReturn(otherFilePredicate);
+    inputFile1 = mockInputFile(FILE_1);
+    inputFile2 = mockInputFile(FILE_2);
+    otherInputFile = mockInputFile(OTHER_FILE);
+    when(fileSystem.inputFile(otherFilePredicate)).thenReturn(otherInputFile);
+    underTest = new InputFileIndex(fileSystem, List.of(inputFile1, inputFile2));
+  }
+
+  @Test
+  void getFileUris_returnsUrisInIterationOrder() {
+    assertThat(underTest.getFileUris()).containsExactly(FILE_1, FILE_2);
+  }
+
+  @Test
+  void find_analyzedFile_doesNotQueryFileSystem() {
+    assertThat(underTest.find(FILE_1)).isSameAs(inputFile1);
+    assertThat(underTest.find(URI.create(FILE_2.toString()))).isSameAs(inputFile2);
+
+    verify(fileSystem, never()).inputFile(any());
+  }
+
+  @Test
+  void find_fileOutsideOfAnalyzedFiles_queriesFileSystemOnce() {
+    assertThat(underTest.find(OTHER_FILE)).isSameAs(otherInputFile);
+    assertThat(underTest.find(OTHER_FILE)).isSameAs(otherInputFile);
+
+    verify(fileSystem, times(1)).inputFile(any());
+  }
+
+  @Test
+  void find_unknownFile_cachesThatItIsNotFound() {
+    assertThat(underTest.find(UNKNOWN_FILE)).isNull();
+    assertThat(underTest.find(UNKNOWN_FILE)).isNull();
+
+    verify(fileSystem, times(1)).inputFile(any());
+  }
+
+  @Test
+  void find_nullUri_returnsNull() {
+    assertThat(underTest.find((URI) null)).isNull();
+  }
+
+  @Test
+  void find_locationWithFileId_usesPositionInRequest() {
+    assertThat(underTest.find(new RoslynIssueLocation(null, 1, "message", null))).isSameAs(inputFile2);
+    assertThat(underTest.find(new RoslynIssueLocation(FILE_2, 0, "message", null))).isSameAs(inputFile1);
+  }
+
+  @Test
+  void find_locationWithUnknownFileId_returnsNull() {
+    assertThat(underTest.find(new RoslynIssueLocation(null, 2, "message", null))).isNull();
+    assertThat(underTest.find(new RoslynIssueLocation(null, -1, "message", null))).isNull();
+  }
+
+  @Test
+  void find_locationWithoutFileId_usesUri() {
+    assertThat(underTest.find(new RoslynIssueLocation(FILE_2, "message", null))).isSameAs(inputFile2);
+  }
+
+  private static InputFile mockInputFile(URI uri) {
+    var inputFile = mock(InputFile.class);
+    when(inputFile.uri()).thenReturn(uri);
+    return inputFile;
+  }
+}
@@ -23,16 +23,22 @@ import java.util.Optional;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.slf4j.event.Level;
 import org.sonar.api.config.Configuration;
+import org.sonar.api.testfixtures.log.LogAndArguments;
+import org.sonar.api.testfixtures.log.LogTesterJUnit5;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 class InstanceConfigurationProviderTests {
+  @RegisterExtension
+  LogTesterJUnit5 logTester = new LogTesterJUnit5();
 
   private Configuration configuration;
 
@@ -59,6 +65,42 @@ class InstanceConfigurationProviderTests {
 
     assertThat(underTest.getShouldUseCsharpEnterprise()).isFalse();
     assertThat(underTest.getShouldUseVbEnterprise()).isFalse();
+    assertThat(underTest.getIssueLimits()).isEqualTo(IssueLimits.UNLIMITED);
+    assertThat(underTest.getAnalysisBatching()).isEqualTo(AnalysisBatching.DEFAULT);
+  }
+
+  @Test
+  void issueLimitsDefined_initializesIssueLimits() {
+    when(configuration.get(SqvsRoslynPluginPropertyDefinitions.getMaxIssuesPerFile())).thenReturn(Optional.of("10"));
+    when(configuration.get(SqvsRoslynPluginPropertyDefinitions.getMaxIssuesPerRule())).thenReturn(Optional.of(" 20 "));
+    when(configuration.get(SqvsRoslynPluginPropertyDefinitions.getMaxIssuesPerAnalysis())).thenReturn(Optional.of("0"));
+
+    var underTest = new InstanceConfigurationProvider(configuration);
+
+    assertThat(underTest.getIssueLimits()).isEqualTo(new IssueLimits(10, 20, Integer.MAX_VALUE));
+  }
+
+  @Test
+  void invalidNumber_logsAWarningAndUsesTheDefaultValue() {
+    when(configuration.get(SqvsRoslynPluginPropertyDefinitions.getMaxIssuesPerFile())).thenReturn(Optional.of("ten"));
+    when(configuration.get(SqvsRoslynPluginPropertyDefinitions.getMaxIssuesPerRule())).thenReturn(Optional.of("20"));
+
+    var underTest = new InstanceConfigurationProvider(configuration);
+
+    assertThat(underTest.getIssueLimits()).isEqualTo(new IssueLimits(IssueLimits.NO_LIMIT, 20, IssueLimits.NO_LIMIT));
+    assertThat(logTester.getLogs(Level.WARN)).extracting(LogAndArguments::getFormattedMsg)
+      .containsExactly("Invalid value 'ten' for the property '" + SqvsRoslynPluginPropertyDefinitions.getMaxIssuesPerFile() + "', the default value 0 is used instead.");
+  }
+
+  @Test
+  void analysisBatchingDefined_initializesAnalysisBatching() {
+    when(configuration.get(SqvsRoslynPluginPropertyDefinitions.getMaxFilesPerBatch())).thenReturn(Optional.of(" 50 "));
+    when(configuration.get(SqvsRoslynPluginPropertyDefinitions.getMaxParallelBatches())).thenReturn(Optional.of("0"));
+    when(configuration.get(SqvsRoslynPluginPropertyDefinitions.getBatchTimeoutSeconds())).thenReturn(Optional.of("30"));
+
+    var underTest = new InstanceConfigurationProvider(configuration);
+
+    assertThat(underTest.getAnalysisBatching()).isEqualTo(new AnalysisBatching(50, Integer.MAX_VALUE, 30));
   }
 
   private void mockConfigurationProperty(String name, boolean value) {
@@ -0,0 +1,218 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.rule.RuleKey;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.AnalyzerInfoDto;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.RoslynIssueSink;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueFlow;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueLocation;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueTextRange;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IssueCacheTest {
+  private static final URI FILE_1 = URI.create("file:///C:/project/src/File1.cs");
+  private static final URI FILE_2 = URI.create("file:///C:/project/src/File2.cs");
+  private static final AnalyzerInfoDto ANALYZER_INFO = new AnalyzerInfoDto(false, false);
+  private static final Hash128 CONFIGURATION = ConfigurationHash.of(List.of(), Map.of(), ANALYZER_INFO);
+  private InputFile inputFile1;
+  private InputFile inputFile2;
+  private PersistentIssueCache persistentIssueCache;
+  private IssueCache underTest;
+
+  @BeforeEach
+  void init() throws IOException {
+    inputFile1 = mockInputFile(FILE_1, "class A {}");
+    inputFile2 = mockInputFile(FILE_2, "class B {}");
+    persistentIssueCache = mock(PersistentIssueCache.class);
+    underTest = new IssueCache(persistentIssueCache);
+  }
+
+  @Test
+  void lookup_afterStore_replaysTheIssuesOfTheUnchangedFiles() {
+    var issue = createIssue(FILE_1, null);
+    analyze(List.of(inputFile1, inputFile2), issue);
+
+    var lookup = underTest.lookup(List.of(inputFile1, inputFile2), CONFIGURATION);
+
+    assertThat(lookup.getMissedFiles()).isEmpty();
+    assertThat(lookup.getHitFileCount()).isEqualTo(2);
+    assertThat(lookup.getCachedIssues()).extracting(cachedIssue -> cachedIssue.getPrimaryLocation().getMessage()).containsExactly("message");
+    assertThat(underTest.getHitCount()).isEqualTo(2);
+    assertThat(underTest.getMissCount()).isEqualTo(2);
+    assertThat(underTest.getHitRatio()).isEqualTo(0.5);
+  }
+
+  @Test
+  void lookup_withoutStore_missesTheCache() {
+    var lookup = underTest.lookup(List.of(inputFile1), CONFIGURATION);
+    lookup.recording(mock(RoslynIssueSink.class), new InputFileIndex(mock(FileSystem.class), lookup.getMissedFiles())).accept(createIssue(FILE_1, null));
+
+    assertThat(underTest.lookup(List.of(inputFile1), CONFIGURATION).getMissedFiles()).containsExactly(inputFile1);
+  }
+
+  @Test
+  void lookup_changedContent_missesTheCacheOfAllTheFiles() throws IOException {
+    analyze(List.of(inputFile1, inputFile2), createIssue(FILE_1, null));
+    var changedInputFile2 = mockInputFile(FILE_2, "class B { }");
+
+    var lookup = underTest.lookup(List.of(inputFile1, changedInputFile2), CONFIGURATION);
+
+    assertThat(lookup.getMissedFiles()).containsExactly(inputFile1, changedInputFile2);
+    assertThat(lookup.getCachedIssues()).isEmpty();
+  }
+
+  @Test
+  void lookup_otherFiles_missesTheCache() {
+    analyze(List.of(inputFile1, inputFile2), createIssue(FILE_1, null));
+
+    assertThat(underTest.lookup(List.of(inputFile1), CONFIGURATION).getMissedFiles()).containsExactly(inputFile1);
+    assertThat(underTest.lookup(List.of(inputFile2, inputFile1), CONFIGURATION).getMissedFiles()).isEmpty();
+  }
+
+  @Test
+  void lookup_otherConfiguration_missesTheCache() {
+    analyze(List.of(inputFile1), createIssue(FILE_1, null));
+    var activeRule = mock(ActiveRule.class);
+    when(activeRule.ruleKey()).thenReturn(RuleKey.of("csharpsquid", "S100"));
+
+    assertThat(underTest.lookup(List.of(inputFile1), ConfigurationHash.of(List.of(activeRule), Map.of(), ANALYZER_INFO)).getMissedFiles()).hasSize(1);
+    assertThat(underTest.lookup(List.of(inputFile1), ConfigurationHash.of(List.of(), Map.of("sonar.cs.key", "value"), ANALYZER_INFO)).getMissedFiles()).hasSize(1);
+    assertThat(underTest.lookup(List.of(inputFile1), ConfigurationHash.of(List.of(), Map.of(), new AnalyzerInfoDto(true, false))).getMissedFiles()).hasSize(1);
+    assertThat(underTest.lookup(List.of(inputFile1), CONFIGURATION).getMissedFiles()).isEmpty();
+  }
+
+  @Test
+  void lookup_unreadableContent_missesTheCache() throws IOException {
+    when(inputFile1.contents()).thenThrow(new IOException("locked"));
+    analyze(List.of(inputFile1), createIssue(FILE_1, null));
+
+    assertThat(underTest.lookup(List.of(inputFile1), CONFIGURATION).getMissedFiles()).containsExactly(inputFile1);
+  }
+
+  @Test
+  void store_fileIds_areReplacedByUris() {
+    var issue = new RoslynIssue("csharpsquid:S100", new RoslynIssueLocation(null, 1, "message", new RoslynIssueTextRange(1, 1, 0, 1)),
+      List.of(new RoslynIssueFlow(List.of(new RoslynIssueLocation(null, 0, "secondary", new RoslynIssueTextRange(1, 1, 0, 1))))), List.of());
+    analyze(List.of(inputFile1, inputFile2), issue);
+
+    var cachedIssue = underTest.lookup(List.of(inputFile1, inputFile2), CONFIGURATION).getCachedIssues().get(0);
+
+    assertThat(cachedIssue.getPrimaryLocation().getFileUri()).isEqualTo(FILE_2);
+    assertThat(cachedIssue.getPrimaryLocation().getFileId()).isNull();
+    assertThat(cachedIssue.getFlows().get(0).getLocations().get(0).getFileUri()).isEqualTo(FILE_1);
+  }
+
+  @Test
+  void recording_passesTheIssuesToTheSink() {
+    var sink = mock(RoslynIssueSink.class);
+    when(sink.acceptsRule("csharpsquid:S100")).thenReturn(true);
+    var lookup = underTest.lookup(List.of(inputFile1), CONFIGURATION);
+    var issue = createIssue(FILE_1, null);
+
+    var recording = lookup.recording(sink, new InputFileIndex(mock(FileSystem.class), lookup.getMissedFiles()));
+    recording.accept(issue);
+
+    assertThat(recording.acceptsRule("csharpsquid:S100")).isTrue();
+    verify(sink).accept(issue);
+  }
+
+  @Test
+  void lookup_overTheMaximumNumberOfFiles_evictsTheLeastRecentlyUsed() throws IOException {
+    underTest = new IssueCache(persistentIssueCache, 2);
+    var inputFile3 = mockInputFile(URI.create("file:///C:/project/src/File3.cs"), "class C {}");
+    analyze(List.of(inputFile1));
+    analyze(List.of(inputFile2));
+    underTest.lookup(List.of(inputFile1), CONFIGURATION);
+
+    analyze(List.of(inputFile3));
+
+    assertThat(underTest.lookup(List.of(inputFile1), CONFIGURATION).getMissedFiles()).isEmpty();
+    assertThat(underTest.lookup(List.of(inputFile3), CONFIGURATION).getMissedFiles()).isEmpty();
+    assertThat(underTest.lookup(List.of(inputFile2), CONFIGURATION).getMissedFiles()).containsExactly(inputFile2);
+  }
+
+  @Test
+  void lookup_missingFromMemory_isLookedUpInThePersistentCache() {
+    var persistedIssue = createIssue(FILE_2, null);
+    when(persistentIssueCache.getAll(anyCollection())).thenAnswer(invocation -> invocation.<Collection<IssueCacheKey>>getArgument(0).stream()
+      .filter(key -> key.fileUri().equals(FILE_2))
+      .collect(Collectors.toMap(key -> key, key -> List.of(persistedIssue))));
+
+    var lookup = underTest.lookup(List.of(inputFile1, inputFile2), CONFIGURATION);
+
+    verify(persistentIssueCache).getAll(argThat(keys -> keys.stream().map(IssueCacheKey::fileUri).toList().equals(List.of(FILE_1, FILE_2))));
+    assertThat(lookup.getMissedFiles()).containsExactly(inputFile1);
+    assertThat(lookup.getCachedIssues()).containsExactly(persistedIssue);
+    assertThat(underTest.getPersistentHitCount()).isEqualTo(1);
+    assertThat(underTest.getHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  void store_persistsTheIssues() {
+    var issue = createIssue(FILE_1, null);
+
+    analyze(List.of(inputFile1), issue);
+
+    verify(persistentIssueCache).putAll(argThat(issuesByKey -> issuesByKey.size() == 1
+      && issuesByKey.entrySet().stream().allMatch(entry -> entry.getKey().fileUri().equals(FILE_1)
+        && entry.getKey().contentHash().equals(Hash128.builder().add("class A {}").build())
+        && entry.getKey().configurationHash().equals(CONFIGURATION)
+        && entry.getValue().get(0).getPrimaryLocation().getMessage().equals("message"))));
+  }
+
+  private void analyze(List<InputFile> inputFiles, RoslynIssue... receivedIssues) {
+    var lookup = underTest.lookup(inputFiles, CONFIGURATION);
+    var recording = lookup.recording(mock(RoslynIssueSink.class), new InputFileIndex(mock(FileSystem.class), lookup.getMissedFiles()));
+    for (var receivedIssue : receivedIssues) {
+      recording.accept(receivedIssue);
+    }
+    lookup.store();
+  }
+
+  private static RoslynIssue createIssue(URI fileUri, Integer fileId) {
+    return new RoslynIssue("csharpsquid:S100", new RoslynIssueLocation(fileUri, fileId, "message", new RoslynIssueTextRange(1, 1, 0, 1)), List.of(), List.of());
+  }
+
+  private static InputFile mockInputFile(URI uri, String contents) throws IOException {
+    var inputFile = mock(InputFile.class);
+    when(inputFile.uri()).thenReturn(uri);
+    when(inputFile.contents()).thenReturn(contents);
+    return inputFile;
+  }
+}
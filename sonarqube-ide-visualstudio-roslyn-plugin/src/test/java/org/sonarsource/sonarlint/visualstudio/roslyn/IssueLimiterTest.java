@@ -0,0 +1,123 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.nio.file.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.event.Level;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.testfixtures.log.LogTesterJUnit5;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IssueLimiterTest {
+  private static final RuleKey RULE = RuleKey.of("csharpsquid", "S100");
+  private static final RuleKey OTHER_RULE = RuleKey.of("csharpsquid", "S101");
+  @RegisterExtension
+  LogTesterJUnit5 logTester = new LogTesterJUnit5();
+  private InputFile file;
+  private InputFile otherFile;
+
+  @BeforeEach
+  void init(@TempDir Path baseDir) {
+    file = TestInputFileBuilder.create("", "File.cs").setModuleBaseDir(baseDir).build();
+    otherFile = TestInputFileBuilder.create("", "Other.cs").setModuleBaseDir(baseDir).build();
+  }
+
+  @Test
+  void limits_notPositive_meanNoLimit() {
+    var limits = new IssueLimits(0, -1, 0);
+
+    assertThat(limits.maxIssuesPerFile()).isEqualTo(Integer.MAX_VALUE);
+    assertThat(limits.maxIssuesPerRule()).isEqualTo(Integer.MAX_VALUE);
+    assertThat(limits.maxIssuesPerAnalysis()).isEqualTo(Integer.MAX_VALUE);
+  }
+
+  @Test
+  void tryAcquire_limitPerFile_onlySkipsTheIssuesOfThatFile() {
+    var underTest = new IssueLimiter(new IssueLimits(1, 0, 0));
+
+    assertThat(underTest.tryAcquire(RULE, file)).isTrue();
+    assertThat(underTest.tryAcquire(OTHER_RULE, file)).isFalse();
+    assertThat(underTest.tryAcquire(RULE, otherFile)).isTrue();
+    assertThat(underTest.hasRoomFor(RULE)).isTrue();
+    assertThat(underTest.getSkippedIssueCount()).isEqualTo(1);
+  }
+
+  @Test
+  void hasRoomFor_limitPerRule_onlySkipsTheIssuesOfThatRule() {
+    var underTest = new IssueLimiter(new IssueLimits(0, 2, 0));
+
+    assertThat(underTest.tryAcquire(RULE, file)).isTrue();
+    assertThat(underTest.tryAcquire(RULE, otherFile)).isTrue();
+
+    assertThat(underTest.hasRoomFor(RULE)).isFalse();
+    assertThat(underTest.tryAcquire(RULE, file)).isFalse();
+    assertThat(underTest.hasRoomFor(OTHER_RULE)).isTrue();
+    assertThat(underTest.getSkippedIssueCount()).isEqualTo(2);
+  }
+
+  @Test
+  void hasRoomFor_limitPerAnalysis_skipsAllTheIssues() {
+    var underTest = new IssueLimiter(new IssueLimits(0, 0, 2));
+
+    assertThat(underTest.tryAcquire(RULE, file)).isTrue();
+    assertThat(underTest.tryAcquire(OTHER_RULE, otherFile)).isTrue();
+
+    assertThat(underTest.hasRoomFor(RULE)).isFalse();
+    assertThat(underTest.hasRoomFor(OTHER_RULE)).isFalse();
+    assertThat(underTest.getSkippedIssueCount()).isEqualTo(2);
+  }
+
+  @Test
+  void log_noSkippedIssue_logsNothing() {
+    var underTest = new IssueLimiter(IssueLimits.UNLIMITED);
+    underTest.tryAcquire(RULE, file);
+
+    underTest.log();
+
+    assertThat(logTester.logs()).isEmpty();
+  }
+
+  @Test
+  void log_skippedIssues_logsWhatWasTruncatedPerLimit() {
+    var underTest = new IssueLimiter(new IssueLimits(1, 2, 3));
+    underTest.tryAcquire(RULE, file);
+    underTest.tryAcquire(RULE, file);
+    underTest.tryAcquire(RULE, otherFile);
+    underTest.hasRoomFor(RULE);
+    underTest.tryAcquire(OTHER_RULE, file);
+    underTest.tryAcquire(OTHER_RULE, TestInputFileBuilder.create("", "Third.cs").build());
+    underTest.hasRoomFor(OTHER_RULE);
+
+    underTest.log();
+
+    assertThat(logTester.logs(Level.WARN)).containsExactly(
+      "2 issue(s) over the limit of 1 per file were skipped:" + System.lineSeparator() + "  " + file + ": 2",
+      "1 issue(s) over the limit of 2 per rule were skipped:" + System.lineSeparator() + "  " + RULE + ": 1",
+      "1 issue(s) over the limit of 3 per analysis were skipped.");
+    assertThat(underTest.getSkippedIssueCount()).isEqualTo(4);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.batch.sensor.internal.SensorContextTester;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueFlow;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueLocation;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueQuickFix;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueTextRange;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares saving the issues when they are prepared on the receiving thread and when they are prepared by {@link IssuePreparationExecutor}.
+ * Run with {@code mvn test -Dtest=IssuePipelineBenchmarkTest -Dsqvs.benchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "sqvs.benchmark", matches = "true")
+class IssuePipelineBenchmarkTest {
+  private static final Logger LOG = Loggers.get(IssuePipelineBenchmarkTest.class);
+  private static final int FILES = 500;
+  private static final int LINES_PER_FILE = 400;
+  private static final int ISSUES = 100_000;
+  private static final int ROUNDS = 5;
+  private static final RuleKey RULE_KEY = RuleKey.of(CSharpLanguage.REPOSITORY_KEY, "S100");
+
+  @Test
+  void saveIssues_100kIssues(@TempDir Path baseDir) {
+    var content = "    var value = 42;\n".repeat(LINES_PER_FILE);
+    var inputFiles = new ArrayList<InputFile>(FILES);
+    for (var i = 0; i < FILES; i++) {
+      inputFiles.add(TestInputFileBuilder.create("", "src/File" + i + ".cs").setModuleBaseDir(baseDir).setLanguage(CSharpLanguage.LANGUAGE_KEY).initMetadata(content).build());
+    }
+    var issues = new ArrayList<RoslynIssue>(ISSUES);
+    for (var i = 0; i < ISSUES; i++) {
+      var fileUri = inputFiles.get(i * FILES / ISSUES).uri();
+      var line = 1 + i % LINES_PER_FILE;
+      var secondaryLocations = List.of(
+        new RoslynIssueLocation(fileUri, "secondary", new RoslynIssueTextRange(line, line, 4, 7)),
+        new RoslynIssueLocation(fileUri, "secondary", new RoslynIssueTextRange(line, line, 8, 13)));
+      issues.add(new RoslynIssue(RULE_KEY.toString(), new RoslynIssueLocation(fileUri, "message", new RoslynIssueTextRange(line, line, 4, 18)),
+        List.of(new RoslynIssueFlow(secondaryLocations)), List.of(new RoslynIssueQuickFix("fix"))));
+    }
+    var activeRule = mock(ActiveRule.class);
+    when(activeRule.ruleKey()).thenReturn(RULE_KEY);
+    var threadCount = Runtime.getRuntime().availableProcessors();
+    var sequentialExecutor = new IssuePreparationExecutor(1);
+    var parallelExecutor = new IssuePreparationExecutor(threadCount);
+
+    try {
+      for (var round = 0; round < ROUNDS; round++) {
+        var sequentialNanos = saveIssues(baseDir, inputFiles, issues, activeRule, sequentialExecutor);
+        var parallelNanos = saveIssues(baseDir, inputFiles, issues, activeRule, parallelExecutor);
+        LOG.info(String.format(Locale.ROOT, "round %d: sequential %.1f ns/issue, %d threads %.1f ns/issue, speedup x%.2f",
+          round, (double) sequentialNanos / ISSUES, threadCount, (double) parallelNanos / ISSUES, (double) sequentialNanos / parallelNanos));
+      }
+    } finally {
+      parallelExecutor.stop();
+    }
+  }
+
+  private static long saveIssues(Path baseDir, List<InputFile> inputFiles, List<RoslynIssue> issues, ActiveRule activeRule, IssuePreparationExecutor executor) {
+    var context = SensorContextTester.create(baseDir);
+    inputFiles.forEach(context.fileSystem()::add);
+    var start = System.nanoTime();
+    var pipeline = new IssuePipeline(context, new ActiveRuleResolver(List.of(activeRule)), new InputFileIndex(context.fileSystem(), inputFiles), executor,
+      IssueLimits.UNLIMITED);
+    issues.forEach(pipeline::accept);
+    pipeline.finish();
+    var nanos = System.nanoTime() - start;
+    assertThat(pipeline.getSavedIssueCount()).isEqualTo(ISSUES);
+    return nanos;
+  }
+}
@@ -0,0 +1,310 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.slf4j.event.Level;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.batch.sensor.internal.SensorContextTester;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.testfixtures.log.LogTesterJUnit5;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueFlow;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueLocation;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueQuickFix;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueTextRange;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IssuePipelineTest {
+  private static final String ACTIVE_RULE_ID = "csharpsquid:S100";
+  @RegisterExtension
+  LogTesterJUnit5 logTester = new LogTesterJUnit5();
+  private SensorContextTester context;
+  private InputFile inputFile;
+  private ActiveRuleResolver activeRuleResolver;
+  private InputFileIndex inputFileIndex;
+
+  @BeforeEach
+  void init(@TempDir Path baseDir) {
+    context = SensorContextTester.create(baseDir);
+    inputFile = TestInputFileBuilder.create("", "File.cs")
+      .setModuleBaseDir(baseDir)
+      .setLanguage(CSharpLanguage.LANGUAGE_KEY)
+      .initMetadata("class A\n{\n}\n")
+      .build();
+    context.fileSystem().add(inputFile);
+    var activeRule = mock(ActiveRule.class);
+    when(activeRule.ruleKey()).thenReturn(RuleKey.parse(ACTIVE_RULE_ID));
+    activeRuleResolver = new ActiveRuleResolver(List.of(activeRule));
+    inputFileIndex = new InputFileIndex(context.fileSystem(), List.of(inputFile));
+  }
+
+  @Test
+  void acceptsRule_onlyAcceptsActiveRules() {
+    var underTest = new IssuePipeline(context, activeRuleResolver, inputFileIndex, Runnable::run, IssueLimits.UNLIMITED);
+
+    assertThat(underTest.acceptsRule(ACTIVE_RULE_ID)).isTrue();
+    assertThat(underTest.acceptsRule("csharpsquid:S101")).isFalse();
+    assertThat(underTest.acceptsRule(null)).isFalse();
+  }
+
+  @Test
+  void accept_preparedOnCallingThread_isSavedImmediately() {
+    var underTest = new IssuePipeline(context, activeRuleResolver, inputFileIndex, Runnable::run, IssueLimits.UNLIMITED);
+
+    underTest.accept(createIssue("first", 1));
+
+    assertThat(context.allIssues()).hasSize(1);
+    assertThat(underTest.getSavedIssueCount()).isEqualTo(1);
+  }
+
+  @Test
+  void finish_issuesPreparedOutOfOrder_areSavedInReceivedOrder() {
+    var preparations = new ArrayList<Runnable>();
+    var underTest = new IssuePipeline(context, activeRuleResolver, inputFileIndex, preparations::add, IssueLimits.UNLIMITED);
+    for (var i = 1; i <= 3; i++) {
+      underTest.accept(createIssue("issue " + i, i));
+    }
+    Collections.reverse(preparations);
+    preparations.forEach(Runnable::run);
+
+    underTest.finish();
+
+    assertThat(context.allIssues()).extracting(issue -> issue.primaryLocation().message()).containsExactly("issue 1", "issue 2", "issue 3");
+    assertThat(underTest.getSavedIssueCount()).isEqualTo(3);
+  }
+
+  @Test
+  void finish_duplicateIssues_savesTheFirstReceivedCopyOnly() {
+    var preparations = new ArrayList<Runnable>();
+    var underTest = new IssuePipeline(context, activeRuleResolver, inputFileIndex, preparations::add, IssueLimits.UNLIMITED);
+    var location = new RoslynIssueLocation(inputFile.uri(), "message", new RoslynIssueTextRange(1, 1, 0, 1));
+    underTest.accept(new RoslynIssue(ACTIVE_RULE_ID, location, List.of(), List.of(new RoslynIssueQuickFix("first"))));
+    underTest.accept(new RoslynIssue(ACTIVE_RULE_ID, location, List.of(), List.of(new RoslynIssueQuickFix("second"))));
+    underTest.accept(createIssue("message", 2));
+    Collections.reverse(preparations);
+    preparations.forEach(Runnable::run);
+
+    underTest.finish();
+
+    assertThat(context.allIssues()).extracting(issue -> issue.primaryLocation().textRange().start().line()).containsExactly(1, 2);
+    assertThat(underTest.getSavedIssueCount()).isEqualTo(2);
+    assertThat(underTest.getDuplicateIssueCount()).isEqualTo(1);
+  }
+
+  @Test
+  void accept_preparesLocationsAndQuickFixes() {
+    var underTest = new IssuePipeline(context, activeRuleResolver, inputFileIndex, Runnable::run, IssueLimits.UNLIMITED);
+    var secondaryLocation = new RoslynIssueLocation(inputFile.uri(), "secondary", new RoslynIssueTextRange(2, 2, 0, 1));
+    var unknownFileLocation = new RoslynIssueLocation(Path.of("Unknown.cs").toAbsolutePath().toUri(), "unknown", new RoslynIssueTextRange(1, 1, 0, 1));
+    var fileLevelLocation = new RoslynIssueLocation(inputFile.uri(), "file level", new RoslynIssueTextRange(1, 1, 0, 0));
+
+    underTest.accept(new RoslynIssue(ACTIVE_RULE_ID, fileLevelLocation, List.of(new RoslynIssueFlow(List.of(secondaryLocation, unknownFileLocation))),
+      List.of(new RoslynIssueQuickFix("fix"))));
+
+    var issue = context.allIssues().iterator().next();
+    assertThat(issue.primaryLocation().textRange()).isNull();
+    assertThat(issue.flows()).singleElement().satisfies(flow -> assertThat(flow.locations()).singleElement()
+      .satisfies(location -> assertThat(location.message()).isEqualTo("secondary")));
+  }
+
+  @Test
+  void accept_loadsTheMetadataOfEachFileOnceBeforePreparingTheIssues() {
+    var mockedInputFile = mock(InputFile.class);
+    when(mockedInputFile.uri()).thenReturn(inputFile.uri());
+    var preparations = new ArrayList<Runnable>();
+    var underTest = new IssuePipeline(context, activeRuleResolver, new InputFileIndex(context.fileSystem(), List.of(mockedInputFile)), preparations::add,
+      IssueLimits.UNLIMITED);
+    var secondaryLocation = new RoslynIssueLocation(inputFile.uri(), "secondary", new RoslynIssueTextRange(2, 2, 0, 1));
+
+    underTest.accept(new RoslynIssue(ACTIVE_RULE_ID, new RoslynIssueLocation(inputFile.uri(), "first", null),
+      List.of(new RoslynIssueFlow(List.of(secondaryLocation))), List.of()));
+    underTest.accept(new RoslynIssue(ACTIVE_RULE_ID, new RoslynIssueLocation(inputFile.uri(), "second", null), List.of(), List.of()));
+
+    assertThat(preparations).hasSize(2);
+    verify(mockedInputFile, times(1)).lines();
+  }
+
+  @Test
+  void accept_issueOfInactiveRuleOrUnknownFile_isNotSaved() {
+    var underTest = new IssuePipeline(context, activeRuleResolver, inputFileIndex, Runnable::run, IssueLimits.UNLIMITED);
+    var location = new RoslynIssueLocation(inputFile.uri(), "message", new RoslynIssueTextRange(1, 1, 0, 1));
+    var unknownFileLocation = new RoslynIssueLocation(Path.of("Unknown.cs").toAbsolutePath().toUri(), "message", new RoslynIssueTextRange(1, 1, 0, 1));
+
+    underTest.accept(new RoslynIssue("csharpsquid:S101", location, List.of(), List.of()));
+    underTest.accept(new RoslynIssue(ACTIVE_RULE_ID, unknownFileLocation, List.of(), List.of()));
+    underTest.finish();
+
+    assertThat(context.allIssues()).isEmpty();
+    assertThat(underTest.getSavedIssueCount()).isZero();
+  }
+
+  @Test
+  void accept_preparationFails_logsAndSavesNextIssues() {
+    var underTest = new IssuePipeline(context, activeRuleResolver, inputFileIndex, Runnable::run, IssueLimits.UNLIMITED);
+    var location = new RoslynIssueLocation(inputFile.uri(), "without flows", new RoslynIssueTextRange(1, 1, 0, 1));
+
+    underTest.accept(new RoslynIssue(ACTIVE_RULE_ID, location, null, List.of()));
+    underTest.accept(createIssue("in the file", 1));
+
+    assertThat(context.allIssues()).extracting(issue -> issue.primaryLocation().message()).containsExactly("in the file");
+    assertThat(logTester.getLogs(Level.ERROR)).singleElement()
+      .satisfies(log -> assertThat(log.getRawMsg()).isEqualTo("Issue " + ACTIVE_RULE_ID + " can not be saved due to "));
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "0, 1, 0, 1",
+    "2, 1, 0, 1",
+    "5, 5, 0, 1",
+    "1, 5, 0, 1",
+    "1, 1, -1, 1",
+    "1, 1, 3, 3",
+    "1, 1, 4, 2",
+    "1, 1, 0, 8",
+    "1, 2, 8, 1",
+    "1, 2, 0, 2",
+  })
+  void accept_primaryLocationOutsideOfTheFile_dropsTheIssueWithoutLogging(int startLine, int endLine, int startLineOffset, int endLineOffset) {
+    var underTest = new IssuePipeline(context, activeRuleResolver, inputFileIndex, Runnable::run, IssueLimits.UNLIMITED);
+    var textRange = new RoslynIssueTextRange(startLine, endLine, startLineOffset, endLineOffset);
+
+    underTest.accept(new RoslynIssue(ACTIVE_RULE_ID, new RoslynIssueLocation(inputFile.uri(), "message", textRange), List.of(), List.of()));
+
+    assertThat(context.allIssues()).isEmpty();
+    assertThat(underTest.getDroppedLocationReport().getDroppedLocationCount()).isEqualTo(1);
+    assertThat(logTester.logs()).isEmpty();
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "1, 1, 0, 7",
+    "1, 2, 7, 0",
+    "1, 3, 0, 1",
+    "2, 2, 0, 1",
+    "3, 4, 1, 0",
+  })
+  void accept_rangeAtTheLimitsOfTheFile_isKept(int startLine, int endLine, int startLineOffset, int endLineOffset) {
+    var underTest = new IssuePipeline(context, activeRuleResolver, inputFileIndex, Runnable::run, IssueLimits.UNLIMITED);
+    var textRange = new RoslynIssueTextRange(startLine, endLine, startLineOffset, endLineOffset);
+
+    underTest.accept(new RoslynIssue(ACTIVE_RULE_ID, new RoslynIssueLocation(inputFile.uri(), "message", textRange), List.of(), List.of()));
+
+    assertThat(context.allIssues()).hasSize(1);
+    assertThat(underTest.getDroppedLocationReport().getDroppedLocationCount()).isZero();
+  }
+
+  @Test
+  void accept_secondaryLocationOutsideOfTheFile_isDroppedAlone() {
+    var underTest = new IssuePipeline(context, activeRuleResolver, inputFileIndex, Runnable::run, IssueLimits.UNLIMITED);
+    var primaryLocation = new RoslynIssueLocation(inputFile.uri(), "primary", new RoslynIssueTextRange(1, 1, 0, 1));
+    var validSecondaryLocation = new RoslynIssueLocation(inputFile.uri(), "valid", new RoslynIssueTextRange(2, 2, 0, 1));
+    var invalidSecondaryLocation = new RoslynIssueLocation(inputFile.uri(), "invalid", new RoslynIssueTextRange(10, 10, 0, 1));
+    var withoutRange = new RoslynIssueLocation(inputFile.uri(), "without range", null);
+
+    underTest.accept(new RoslynIssue(ACTIVE_RULE_ID, primaryLocation,
+      List.of(new RoslynIssueFlow(List.of(validSecondaryLocation, invalidSecondaryLocation, withoutRange))), List.of()));
+
+    var issue = context.allIssues().iterator().next();
+    assertThat(issue.flows()).extracting(flow -> flow.locations().get(0).message()).containsExactly("valid");
+    assertThat(underTest.getDroppedLocationReport().getDroppedLocationCount()).isEqualTo(2);
+  }
+
+  @Test
+  void accept_tooManyPendingIssues_waitsForTheOldestOneToBeSaved() throws Exception {
+    var release = new CountDownLatch(1);
+    var preparationExecutor = new IssuePreparationExecutor(2);
+    Executor gatedExecutor = command -> preparationExecutor.execute(() -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      command.run();
+    });
+    try {
+      var underTest = new IssuePipeline(context, activeRuleResolver, inputFileIndex, gatedExecutor, IssueLimits.UNLIMITED);
+      for (var i = 0; i < IssuePipeline.MAX_PENDING_ISSUES; i++) {
+        underTest.accept(createIssue("issue " + i, 1));
+      }
+
+      var overflow = CompletableFuture.runAsync(() -> underTest.accept(createIssue("overflow", 1)));
+
+      assertThrows(TimeoutException.class, () -> overflow.get(200, TimeUnit.MILLISECONDS));
+      release.countDown();
+      overflow.get(5, TimeUnit.SECONDS);
+      underTest.finish();
+      assertThat(underTest.getSavedIssueCount()).isEqualTo(IssuePipeline.MAX_PENDING_ISSUES + 1);
+    } finally {
+      release.countDown();
+      preparationExecutor.stop();
+    }
+  }
+
+  @Test
+  void accept_overTheLimits_skipsTheIssues() {
+    var underTest = new IssuePipeline(context, activeRuleResolver, inputFileIndex, Runnable::run, new IssueLimits(2, 0, 0));
+
+    for (var i = 0; i < 5; i++) {
+      underTest.accept(createIssue("issue " + i, 1));
+    }
+
+    assertThat(context.allIssues()).extracting(issue -> issue.primaryLocation().message()).containsExactly("issue 0", "issue 1");
+    assertThat(underTest.getIssueLimiter().getSkippedIssueCount()).isEqualTo(3);
+  }
+
+  @Test
+  void acceptsRule_ruleOverItsLimit_isRejectedBeforeDecoding() {
+    var underTest = new IssuePipeline(context, activeRuleResolver, inputFileIndex, Runnable::run, new IssueLimits(0, 1, 0));
+
+    assertThat(underTest.acceptsRule(ACTIVE_RULE_ID)).isTrue();
+    underTest.accept(createIssue("first", 1));
+
+    assertThat(underTest.acceptsRule(ACTIVE_RULE_ID)).isFalse();
+    assertThat(context.allIssues()).hasSize(1);
+    assertThat(underTest.getIssueLimiter().getSkippedIssueCount()).isEqualTo(1);
+  }
+
+  private RoslynIssue createIssue(String message, int line) {
+    return new RoslynIssue(ACTIVE_RULE_ID, new RoslynIssueLocation(inputFile.uri(), message, new RoslynIssueTextRange(line, line, 0, 1)), List.of(), List.of());
+  }
+}
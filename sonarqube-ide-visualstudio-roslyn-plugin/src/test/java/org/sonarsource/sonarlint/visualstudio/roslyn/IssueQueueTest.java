@@ -0,0 +1,135 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.Test;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.RoslynIssueSink;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IssueQueueTest {
+  private final List<RoslynIssue> received = new ArrayList<>();
+
+  @Test
+  void drain_passesIssuesInReceivedOrderUntilClosed() {
+    var underTest = new IssueQueue(received::add);
+    var issues = List.of(mock(RoslynIssue.class), mock(RoslynIssue.class), mock(RoslynIssue.class));
+    CompletableFuture.runAsync(() -> {
+      issues.forEach(underTest::accept);
+      underTest.accept(null);
+      underTest.close();
+    });
+
+    var completed = underTest.drain();
+
+    assertThat(completed).isTrue();
+    assertThat(received).containsExactlyElementsOf(issues);
+  }
+
+  @Test
+  void accept_queueFull_waitsUntilAnIssueIsDrained() throws Exception {
+    var underTest = new IssueQueue(received::add, 1);
+    var receiving = CompletableFuture.runAsync(() -> {
+      underTest.accept(mock(RoslynIssue.class));
+      underTest.accept(mock(RoslynIssue.class));
+      underTest.close();
+    });
+
+    assertThrows(TimeoutException.class, () -> receiving.get(300, TimeUnit.MILLISECONDS));
+
+    assertThat(underTest.drain()).isTrue();
+    receiving.get(5, TimeUnit.SECONDS);
+    assertThat(received).hasSize(2);
+  }
+
+  @Test
+  void close_queueFull_doesNotWait() {
+    var underTest = new IssueQueue(received::add, 1);
+    underTest.accept(mock(RoslynIssue.class));
+
+    underTest.close();
+
+    assertThat(underTest.drain()).isTrue();
+    assertThat(received).hasSize(1);
+  }
+
+  @Test
+  void cancel_stopsTheDrainAndMakesTheReceiverFail() {
+    var underTest = new IssueQueue(received::add, 1);
+    var receiving = CompletableFuture.runAsync(() -> {
+      underTest.accept(mock(RoslynIssue.class));
+      underTest.accept(mock(RoslynIssue.class));
+    });
+    underTest.cancel();
+
+    var completed = underTest.drain();
+
+    assertThat(completed).isFalse();
+    assertThat(received).isEmpty();
+    var thrown = assertThrows(ExecutionException.class, () -> receiving.get(5, TimeUnit.SECONDS));
+    assertThat(thrown).hasCauseInstanceOf(CancellationException.class);
+  }
+
+  @Test
+  void cancel_fromAnotherThread_wakesTheDrainUp() {
+    var underTest = new IssueQueue(received::add);
+    CompletableFuture.runAsync(underTest::cancel);
+
+    assertThat(underTest.drain()).isFalse();
+  }
+
+  @Test
+  void drain_sinkFails_makesTheReceiverFail() {
+    var underTest = new IssueQueue(roslynIssue -> {
+      throw new IllegalStateException("boom");
+    }, 1);
+    var receiving = CompletableFuture.runAsync(() -> {
+      for (var i = 0; i < 3; i++) {
+        underTest.accept(mock(RoslynIssue.class));
+      }
+    });
+
+    assertThrows(IllegalStateException.class, () -> underTest.drain());
+
+    var thrown = assertThrows(ExecutionException.class, () -> receiving.get(5, TimeUnit.SECONDS));
+    assertThat(thrown).hasCauseInstanceOf(CancellationException.class);
+  }
+
+  @Test
+  void acceptsRule_delegatesToTheSink() {
+    var issueSink = mock(RoslynIssueSink.class);
+    when(issueSink.acceptsRule("csharpsquid:S100")).thenReturn(true);
+    var underTest = new IssueQueue(issueSink);
+
+    assertThat(underTest.acceptsRule("csharpsquid:S100")).isTrue();
+    assertThat(underTest.acceptsRule("csharpsquid:S101")).isFalse();
+  }
+}
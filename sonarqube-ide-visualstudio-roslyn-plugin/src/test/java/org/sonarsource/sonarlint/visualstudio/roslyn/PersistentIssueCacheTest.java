@@ -0,0 +1,197 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.BinaryCodec;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueLocation;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueTextRange;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PersistentIssueCacheTest {
+  private static final Hash128 CONFIGURATION = new Hash128(7, 8);
+  private static final Hash128 PROJECT = new Hash128(9, 10);
+  @TempDir
+  Path directory;
+  private final List<PersistentIssueCache> caches = new ArrayList<>();
+
+  @AfterEach
+  void stopCaches() {
+    caches.forEach(PersistentIssueCache::stop);
+  }
+
+  @Test
+  void getAll_emptyDirectory_findsNothing() {
+    assertThat(newCache().getAll(List.of(key(1)))).isEmpty();
+  }
+
+  @Test
+  void getAll_afterRestart_findsThePersistedIssues() {
+    var cache = newCache();
+    cache.putAll(Map.of(key(1), issues(1), key(2), List.of()));
+    cache.stop();
+
+    var issuesByKey = newCache().getAll(List.of(key(1), key(2), key(3)));
+
+    assertThat(issuesByKey).containsOnlyKeys(key(1), key(2));
+    assertThat(issuesByKey.get(key(1))).extracting(issue -> issue.getPrimaryLocation().getMessage()).containsExactly("message 1");
+    assertThat(issuesByKey.get(key(2))).isEmpty();
+  }
+
+  @Test
+  void getAll_truncatedFile_isIgnoredAndReplacedOnTheNextWrite() throws IOException {
+    var cache = newCache();
+    cache.putAll(Map.of(key(1), issues(1)));
+    cache.stop();
+    var file = directory.resolve(PersistentIssueCache.ISSUES_FILE_NAME);
+    try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(Files.size(file) - 1);
+    }
+
+    var restartedCache = newCache();
+    assertThat(restartedCache.getAll(List.of(key(1)))).isEmpty();
+    restartedCache.putAll(Map.of(key(2), issues(2)));
+
+    assertThat(newCache().getAll(List.of(key(1), key(2)))).containsOnlyKeys(key(2));
+  }
+
+  @Test
+  void getAll_corruptedRecordLength_isIgnored() throws IOException {
+    var cache = newCache();
+    cache.putAll(Map.of(key(1), issues(1)));
+    cache.stop();
+    try (var channel = FileChannel.open(directory.resolve(PersistentIssueCache.ISSUES_FILE_NAME), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(Integer.MAX_VALUE).flip(), PersistentIssueCache.HEADER_SIZE);
+    }
+
+    assertThat(newCache().getAll(List.of(key(1)))).isEmpty();
+  }
+
+  @Test
+  void getAll_otherFormatVersion_isIgnoredAndTheFileReplacedOnTheNextWrite() throws IOException {
+    var cache = newCache();
+    cache.putAll(Map.of(key(1), issues(1)));
+    cache.stop();
+    try (var channel = FileChannel.open(directory.resolve(PersistentIssueCache.ISSUES_FILE_NAME), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(PersistentIssueCache.FORMAT_VERSION + 1).flip(), Integer.BYTES);
+    }
+
+    var restartedCache = newCache();
+    assertThat(restartedCache.getAll(List.of(key(1)))).isEmpty();
+    restartedCache.putAll(Map.of(key(2), issues(2)));
+
+    assertThat(newCache().getAll(List.of(key(1), key(2)))).containsOnlyKeys(key(2));
+  }
+
+  @Test
+  void putAll_overTheMaximumSize_keepsTheMostRecentIssues() throws IOException {
+    var cache = newCache(4096);
+    var keys = new ArrayList<IssueCacheKey>();
+    for (var i = 0; i < 200; i++) {
+      cache.putAll(Map.of(key(i), issues(i)));
+      keys.add(key(i));
+    }
+
+    var issuesByKey = cache.getAll(keys);
+
+    assertThat(issuesByKey).containsKey(key(199)).doesNotContainKey(key(0)).hasSizeLessThan(200);
+    assertThat(cacheFiles()).containsExactly(PersistentIssueCache.ISSUES_FILE_NAME);
+    assertThat(Files.size(directory.resolve(PersistentIssueCache.ISSUES_FILE_NAME))).isLessThanOrEqualTo(4096);
+  }
+
+  @Test
+  void putAll_sameKey_lastWriteWins() {
+    var cache = newCache();
+    cache.putAll(Map.of(key(1), issues(1)));
+
+    cache.putAll(Map.of(key(1), List.of()));
+
+    assertThat(newCache().getAll(List.of(key(1))).get(key(1))).isEmpty();
+  }
+
+  @Test
+  void getDirectory_perInstance_locksOneDirectoryPerRunningInstance() throws IOException {
+    var cache = newPerInstanceCache();
+    var otherCache = newPerInstanceCache();
+    cache.putAll(Map.of(key(1), issues(1)));
+
+    assertThat(cache.getDirectory()).isEqualTo(directory.resolve("instance-0").toAbsolutePath());
+    assertThat(otherCache.getDirectory()).isEqualTo(directory.resolve("instance-1").toAbsolutePath());
+    assertThat(otherCache.getAll(List.of(key(1)))).isEmpty();
+  }
+
+  @Test
+  void getAll_perInstanceAfterRestart_findsTheIssuesPersistedByThePreviousInstance() throws IOException {
+    var cache = newPerInstanceCache();
+    cache.putAll(Map.of(key(1), issues(1)));
+    cache.stop();
+
+    var restartedCache = newPerInstanceCache();
+
+    assertThat(restartedCache.getDirectory()).isEqualTo(directory.resolve("instance-0").toAbsolutePath());
+    assertThat(restartedCache.getAll(List.of(key(1)))).containsOnlyKeys(key(1));
+  }
+
+  private PersistentIssueCache newCache() {
+    return newCache(PersistentIssueCache.MAX_FILE_SIZE);
+  }
+
+  private PersistentIssueCache newCache(long maxFileSize) {
+    var cache = new PersistentIssueCache(directory, new BinaryCodec(), maxFileSize);
+    caches.add(cache);
+    return cache;
+  }
+
+  private PersistentIssueCache newPerInstanceCache() {
+    var cache = new PersistentIssueCache(directory, true, new BinaryCodec(), PersistentIssueCache.MAX_FILE_SIZE);
+    caches.add(cache);
+    return cache;
+  }
+
+  private List<String> cacheFiles() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.map(file -> file.getFileName().toString()).sorted().toList();
+    }
+  }
+
+  private static IssueCacheKey key(int index) {
+    return new IssueCacheKey(URI.create("file:///C:/project/src/File" + index + ".cs"), new Hash128(index, index), CONFIGURATION, PROJECT);
+  }
+
+  private static List<RoslynIssue> issues(int index) {
+    return List.of(new RoslynIssue("csharpsquid:S100", new RoslynIssueLocation(key(index).fileUri(), "message " + index, new RoslynIssueTextRange(1, 1, 0, 1)),
+      List.of(), List.of()));
+  }
+}
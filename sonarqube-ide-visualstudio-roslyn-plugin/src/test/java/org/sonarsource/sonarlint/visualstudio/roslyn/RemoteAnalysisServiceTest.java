@@ -20,23 +20,40 @@
 package org.sonarsource.sonarlint.visualstudio.roslyn;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
 import org.sonar.api.batch.rule.ActiveRule;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonarsource.sonarlint.visualstudio.roslyn.http.AnalyzerInfoDto;
 import org.sonarsource.sonarlint.visualstudio.roslyn.http.HttpAnalysisRequestHandler;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.RoslynIssueSink;
 import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueLocation;
 
-import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -44,9 +61,13 @@ class RemoteAnalysisServiceTest {
 
   private AnalysisCancellationService analysisCancellationService;
   private HttpAnalysisRequestHandler httpAnalysisRequestHandler;
+  private SensorContext sensorContext;
+  private IssueReceiverExecutor issueReceiverExecutor;
+  private InstanceConfigurationProvider instanceConfigurationProvider;
   private RemoteAnalysisService underTest;
+  private final List<AnalysisTracker> trackers = new CopyOnWriteArrayList<>();
 
-  private final Collection<URI> fileUris = List.of(
+  private final List<URI> fileUris = List.of(
       URI.create("file:///C:/project/src/File1.cs"),
       URI.create("file://localhost/$c/project/src/File2.cs")
   );
@@ -58,41 +79,328 @@ class RemoteAnalysisServiceTest {
   @BeforeEach
   void setUp() {
     analysisCancellationService = mock(AnalysisCancellationService.class);
+    doAnswer(invocation -> trackers.add(invocation.getArgument(0))).when(analysisCancellationService).registerAnalysis(any());
     httpAnalysisRequestHandler = mock(HttpAnalysisRequestHandler.class);
-    var sensorContext = mock(SensorContext.class);
+    sensorContext = mock(SensorContext.class);
+    issueReceiverExecutor = new IssueReceiverExecutor();
+    instanceConfigurationProvider = mock(InstanceConfigurationProvider.class);
+    when(instanceConfigurationProvider.getAnalysisBatching()).thenReturn(AnalysisBatching.DEFAULT);
 
-    underTest = new RemoteAnalysisService(
+    underTest = createRemoteAnalysisService();
+  }
+
+  private RemoteAnalysisService createRemoteAnalysisService() {
+    return new RemoteAnalysisService(
       analysisCancellationService,
       httpAnalysisRequestHandler,
-      sensorContext);
+      sensorContext,
+      instanceConfigurationProvider);
+  }
+
+  private RemoteAnalysisService createRemoteAnalysisService(AnalysisBatching analysisBatching) {
+    when(instanceConfigurationProvider.getAnalysisBatching()).thenReturn(analysisBatching);
+    return createRemoteAnalysisService();
+  }
+
+  /**
+   * Checks the cancellation of the registered analyses, as the ticker of the {@link AnalysisCancellationService} does.
+   */
+  private void sweep() {
+    trackers.forEach(AnalysisTracker::cancelIfNeeded);
+  }
+
+  private List<AnalysisPartition> partition(List<URI> partitionFileUris) {
+    return List.of(new AnalysisPartition(AnalysisLane.CSHARP, partitionFileUris, 0, activeRules));
+  }
+
+  private static List<URI> createFileUris(int count) {
+    var result = new ArrayList<URI>();
+    for (var i = 0; i < count; i++) {
+      result.add(URI.create("file:///C:/project/src/File" + i + ".cs"));
+    }
+    return result;
+  }
+
+  /**
+   * Runs the answer on another thread, as the handler reads the response once it is received.
+   */
+  private Answer<CompletableFuture<Boolean>> async(Answer<?> answer) {
+    return invocation -> CompletableFuture.supplyAsync(() -> {
+      try {
+        answer.answer(invocation);
+        return true;
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }, issueReceiverExecutor);
+  }
+
+  @AfterEach
+  void tearDown() {
+    issueReceiverExecutor.stop();
   }
 
   @Test
-  void analyze_ShouldReturnRoslynIssues() {
-    var mockIssues = mockIssues();
+  void analyze_ShouldPassRoslynIssuesToSink() {
+    var mockIssue = mock(RoslynIssue.class);
+    doAnswer(async(invocation -> {
+      invocation.getArgument(5, RoslynIssueSink.class).accept(mockIssue);
+      return null;
+    })).when(httpAnalysisRequestHandler).analyzeAsync(any(), any(), any(), any(), any(UUID.class), any());
+    var result = new ArrayList<RoslynIssue>();
 
-    var result = underTest.analyze(
-        fileUris,
-      activeRules,
+    var complete = underTest.analyze(
+      partition(fileUris),
       analysisProperties,
-      analyzerInfo);
+      analyzerInfo,
+      result::add);
 
-    assertSame(mockIssues, result);
-    verify(httpAnalysisRequestHandler).analyze(
+    assertThat(complete).isTrue();
+    assertThat(result).containsExactly(mockIssue);
+    verify(httpAnalysisRequestHandler).analyzeAsync(
       eq(fileUris),
       eq(activeRules),
       eq(analysisProperties),
       eq(analyzerInfo),
-      any(UUID.class));
+      any(UUID.class),
+      any(RoslynIssueSink.class));
     verify(analysisCancellationService).registerAnalysis(any(AnalysisTrackerImpl.class));
   }
 
-  private List<RoslynIssue> mockIssues() {
-    var mockIssue = mock(RoslynIssue.class);
-    var expectedIssues = List.of(mockIssue);
-    when(httpAnalysisRequestHandler.analyze(
-      any(), any(), any(), any(), any(UUID.class)))
-        .thenReturn(expectedIssues);
-    return expectedIssues;
+  @Test
+  void analyze_ShouldReceiveIssuesOnAnotherThreadAndPassThemToSinkOnCallingThread() {
+    var callingThread = Thread.currentThread();
+    var receivingThreads = new ArrayList<Thread>();
+    var sinkThreads = new ArrayList<Thread>();
+    doAnswer(async(invocation -> {
+      receivingThreads.add(Thread.currentThread());
+      var issueSink = invocation.getArgument(5, RoslynIssueSink.class);
+      for (var i = 0; i < 3 * IssueQueue.CAPACITY; i++) {
+        issueSink.accept(mock(RoslynIssue.class));
+      }
+      return null;
+    })).when(httpAnalysisRequestHandler).analyzeAsync(any(), any(), any(), any(), any(UUID.class), any());
+
+    underTest.analyze(partition(fileUris), analysisProperties, analyzerInfo, issue -> sinkThreads.add(Thread.currentThread()));
+
+    assertThat(receivingThreads).singleElement().isNotSameAs(callingThread);
+    assertThat(sinkThreads).hasSize(3 * IssueQueue.CAPACITY).containsOnly(callingThread);
+  }
+
+  @Test
+  void analyze_receivingFails_rethrowsOnCallingThread() {
+    doReturn(CompletableFuture.failedFuture(new IllegalStateException("Response crashed due to: boom")))
+      .when(httpAnalysisRequestHandler).analyzeAsync(any(), any(), any(), any(), any(UUID.class), any());
+
+    var thrown = assertThrows(IllegalStateException.class, () -> underTest.analyze(partition(fileUris), analysisProperties, analyzerInfo, issue -> {
+    }));
+
+    assertThat(thrown).hasMessage("Response crashed due to: boom");
+  }
+
+  @Test
+  void analyze_oneBatchIncomplete_sendsTheOtherBatchesAndReturnsFalse() {
+    var sentBatches = new AtomicInteger();
+    doAnswer(invocation -> CompletableFuture.completedFuture(sentBatches.incrementAndGet() != 2))
+      .when(httpAnalysisRequestHandler).analyzeAsync(any(), any(), any(), any(), any(UUID.class), any());
+
+    var complete = createRemoteAnalysisService(new AnalysisBatching(1, 1)).analyze(partition(createFileUris(3)), analysisProperties, analyzerInfo, issue -> {
+    });
+
+    assertThat(complete).isFalse();
+    assertThat(sentBatches.get()).isEqualTo(3);
+  }
+
+  @Test
+  void analyze_cancelled_returnsWithoutWaitingForTheRestOfTheResponse() throws InterruptedException {
+    var receiverStopped = new CountDownLatch(1);
+    doAnswer(async(invocation -> {
+      var issueSink = invocation.getArgument(5, RoslynIssueSink.class);
+      try {
+        while (true) {
+          issueSink.accept(mock(RoslynIssue.class));
+        }
+      } finally {
+        receiverStopped.countDown();
+      }
+    })).when(httpAnalysisRequestHandler).analyzeAsync(any(), any(), any(), any(), any(UUID.class), any());
+    var received = new ArrayList<RoslynIssue>();
+    when(sensorContext.isCancelled()).thenAnswer(invocation -> received.size() >= 10);
+
+    var complete = underTest.analyze(partition(fileUris), analysisProperties, analyzerInfo, issue -> {
+      received.add(issue);
+      if (received.size() == 10) {
+        sweep();
+      }
+    });
+
+    assertThat(complete).isFalse();
+    assertThat(received).hasSize(10);
+    assertTrue(receiverStopped.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void analyze_manyFiles_sendsBatchesAndMergesTheirIssuesWithTheFileIdsOfTheAnalysis() {
+    var files = createFileUris(5);
+    var requestIds = ConcurrentHashMap.<UUID>newKeySet();
+    var sentFiles = ConcurrentHashMap.<URI>newKeySet();
+    doAnswer(async(invocation -> {
+      Collection<URI> batchFiles = invocation.getArgument(0);
+      sentFiles.addAll(batchFiles);
+      requestIds.add(invocation.getArgument(4, UUID.class));
+      var issueSink = invocation.getArgument(5, RoslynIssueSink.class);
+      for (var fileId = 0; fileId < batchFiles.size(); fileId++) {
+        issueSink.accept(new RoslynIssue("csharpsquid:S100", new RoslynIssueLocation(null, fileId, "message", null), null, null));
+      }
+      return null;
+    })).when(httpAnalysisRequestHandler).analyzeAsync(any(), any(), any(), any(), any(UUID.class), any());
+    var receivedFileIds = new ArrayList<Integer>();
+
+    createRemoteAnalysisService(new AnalysisBatching(2, 2))
+      .analyze(partition(files), analysisProperties, analyzerInfo, issue -> receivedFileIds.add(issue.getPrimaryLocation().getFileId()));
+
+    verify(httpAnalysisRequestHandler, times(3)).analyzeAsync(any(), eq(activeRules), eq(analysisProperties), eq(analyzerInfo), any(UUID.class), any());
+    assertThat(sentFiles).containsExactlyInAnyOrderElementsOf(files);
+    assertThat(requestIds).hasSize(3);
+    assertThat(receivedFileIds).containsExactlyInAnyOrder(0, 1, 2, 3, 4);
+  }
+
+  @Test
+  void analyzeAsync_manyBatches_sendsAtMostMaxParallelBatchesAtOnce() {
+    var requests = new ArrayList<CompletableFuture<Boolean>>();
+    doAnswer(invocation -> {
+      var request = new CompletableFuture<Boolean>();
+      requests.add(request);
+      return request;
+    }).when(httpAnalysisRequestHandler).analyzeAsync(any(), any(), any(), any(), any(UUID.class), any());
+
+    var analysis = createRemoteAnalysisService(new AnalysisBatching(1, 2)).analyzeAsync(partition(createFileUris(6)), analysisProperties, analyzerInfo, issue -> {
+    });
+
+    // completing the oldest request sends the next pending batch
+    for (var sent = 2; sent <= 6; sent++) {
+      assertThat(requests).hasSize(sent);
+      assertThat(requests).filteredOn(request -> !request.isDone()).hasSize(2);
+      assertThat(analysis).isNotDone();
+      requests.get(sent - 2).complete(true);
+    }
+    requests.get(5).complete(true);
+    assertThat(requests).hasSize(6);
+    assertThat(analysis).isCompletedWithValue(true);
+  }
+
+  @Test
+  void analyze_batchFails_doesNotSendThePendingBatchesAndRethrows() {
+    doReturn(CompletableFuture.failedFuture(new IllegalStateException("Response crashed due to: boom")))
+      .when(httpAnalysisRequestHandler).analyzeAsync(any(), any(), any(), any(), any(UUID.class), any());
+    var batchingService = createRemoteAnalysisService(new AnalysisBatching(1, 1));
+    var files = createFileUris(3);
+
+    var thrown = assertThrows(IllegalStateException.class, () -> batchingService.analyze(partition(files), analysisProperties, analyzerInfo, issue -> {
+    }));
+
+    assertThat(thrown).hasMessage("Response crashed due to: boom");
+    verify(httpAnalysisRequestHandler).analyzeAsync(any(), any(), any(), any(), any(UUID.class), any());
+  }
+
+  @Test
+  void analyze_cancelled_doesNotSendThePendingBatches() {
+    var sentBatches = new AtomicInteger();
+    doAnswer(async(invocation -> {
+      sentBatches.incrementAndGet();
+      return null;
+    })).when(httpAnalysisRequestHandler).analyzeAsync(any(), any(), any(), any(), any(UUID.class), any());
+    when(sensorContext.isCancelled()).thenAnswer(invocation -> sentBatches.get() >= 1);
+
+    createRemoteAnalysisService(new AnalysisBatching(1, 1)).analyze(partition(createFileUris(3)), analysisProperties, analyzerInfo, issue -> {
+    });
+
+    assertThat(sentBatches.get()).isEqualTo(1);
+  }
+
+  @Test
+  void analyze_partitions_sendsEachPartitionWithItsOwnRulesAndMergesTheirIssues() {
+    var csharpRules = List.of(mock(ActiveRule.class));
+    var vbNetRules = List.of(mock(ActiveRule.class));
+    var files = createFileUris(3);
+    var partitions = List.of(
+      new AnalysisPartition(AnalysisLane.CSHARP, files.subList(0, 2), 0, csharpRules),
+      new AnalysisPartition(AnalysisLane.VBNET, files.subList(2, 3), 2, vbNetRules));
+    doAnswer(async(invocation -> {
+      Collection<URI> batchFiles = invocation.getArgument(0);
+      var issueSink = invocation.getArgument(5, RoslynIssueSink.class);
+      for (var fileId = 0; fileId < batchFiles.size(); fileId++) {
+        issueSink.accept(new RoslynIssue("csharpsquid:S100", new RoslynIssueLocation(null, fileId, "message", null), null, null));
+      }
+      return null;
+    })).when(httpAnalysisRequestHandler).analyzeAsync(any(), any(), any(), any(), any(UUID.class), any());
+    var receivedFileIds = new ArrayList<Integer>();
+
+    underTest.analyze(partitions, analysisProperties, analyzerInfo, issue -> receivedFileIds.add(issue.getPrimaryLocation().getFileId()));
+
+    verify(httpAnalysisRequestHandler).analyzeAsync(eq(files.subList(0, 2)), eq(csharpRules), eq(analysisProperties), eq(analyzerInfo), any(UUID.class), any());
+    verify(httpAnalysisRequestHandler).analyzeAsync(eq(files.subList(2, 3)), eq(vbNetRules), eq(analysisProperties), eq(analyzerInfo), any(UUID.class), any());
+    assertThat(receivedFileIds).containsExactlyInAnyOrder(0, 1, 2);
+  }
+
+  @Test
+  void analyzeAsync_returnsWithoutWaitingForTheResponses() {
+    var pendingRequest = new CompletableFuture<Boolean>();
+    doReturn(pendingRequest).when(httpAnalysisRequestHandler).analyzeAsync(any(), any(), any(), any(), any(UUID.class), any());
+
+    var analysis = underTest.analyzeAsync(partition(fileUris), analysisProperties, analyzerInfo, issue -> {
+    });
+
+    assertThat(analysis).isNotDone();
+    pendingRequest.complete(true);
+    assertThat(analysis).isCompletedWithValue(true);
+  }
+
+  @Test
+  void analyzeAsync_cancelled_cancelsTheRequestsInFlightAndDoesNotSendThePendingBatches() {
+    var pendingRequest = new CompletableFuture<Boolean>();
+    doReturn(pendingRequest).when(httpAnalysisRequestHandler).analyzeAsync(any(), any(), any(), any(), any(UUID.class), any());
+
+    createRemoteAnalysisService(new AnalysisBatching(1, 1)).analyzeAsync(partition(createFileUris(3)), analysisProperties, analyzerInfo, issue -> {
+    }).cancel(true);
+
+    assertThat(pendingRequest).isCancelled();
+    verify(httpAnalysisRequestHandler).analyzeAsync(any(), any(), any(), any(), any(UUID.class), any());
+    verify(httpAnalysisRequestHandler).cancelAnalysis(any(UUID.class));
+  }
+
+  @Test
+  void analyze_cancelledWhileWaitingForTheServer_abortsTheRequestAndAsksTheServerToCancel() {
+    var pendingRequest = new CompletableFuture<Boolean>();
+    var cancelled = new AtomicBoolean();
+    doAnswer(invocation -> {
+      // the sensor is cancelled once the request is sent, and the cancellation detected by the ticker
+      cancelled.set(true);
+      CompletableFuture.runAsync(this::sweep);
+      return pendingRequest;
+    }).when(httpAnalysisRequestHandler).analyzeAsync(any(), any(), any(), any(), any(UUID.class), any());
+    when(sensorContext.isCancelled()).thenAnswer(invocation -> cancelled.get());
+
+    var complete = underTest.analyze(partition(fileUris), analysisProperties, analyzerInfo, issue -> {
+    });
+
+    assertThat(complete).isFalse();
+    assertThat(pendingRequest).isCancelled();
+    verify(httpAnalysisRequestHandler).cancelAnalysis(any(UUID.class));
+  }
+
+  @Test
+  void analyze_batchTimesOut_cancelsTheRequestAndThrows() {
+    var pendingRequest = new CompletableFuture<Boolean>();
+    doReturn(pendingRequest).when(httpAnalysisRequestHandler).analyzeAsync(any(), any(), any(), any(), any(UUID.class), any());
+    var timingOutService = createRemoteAnalysisService(new AnalysisBatching(0, 1, 1));
+
+    var thrown = assertThrows(IllegalStateException.class, () -> timingOutService.analyze(partition(fileUris), analysisProperties, analyzerInfo, issue -> {
+    }));
+
+    assertThat(thrown).hasMessage("The analysis of a batch took longer than 1 seconds.");
+    assertThat(pendingRequest).isCompletedExceptionally();
   }
 }
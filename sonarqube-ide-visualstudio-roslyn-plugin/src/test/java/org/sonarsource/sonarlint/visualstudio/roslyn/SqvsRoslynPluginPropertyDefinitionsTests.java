@@ -31,6 +31,13 @@ class SqvsRoslynPluginPropertyDefinitionsTests {
     assertThat(SqvsRoslynPluginPropertyDefinitions.getShouldUseVbEnterprise()).isEqualTo("sonar.cs.internal.shouldUseVbEnterprise");
     assertThat(SqvsRoslynPluginPropertyDefinitions.getServerPort()).isEqualTo("sonar.sqvsRoslynPlugin.internal.serverPort");
     assertThat(SqvsRoslynPluginPropertyDefinitions.getServerToken()).isEqualTo("sonar.sqvsRoslynPlugin.internal.serverToken");
+    assertThat(SqvsRoslynPluginPropertyDefinitions.getMaxIssuesPerFile()).isEqualTo("sonar.sqvsRoslynPlugin.internal.maxIssuesPerFile");
+    assertThat(SqvsRoslynPluginPropertyDefinitions.getMaxIssuesPerRule()).isEqualTo("sonar.sqvsRoslynPlugin.internal.maxIssuesPerRule");
+    assertThat(SqvsRoslynPluginPropertyDefinitions.getMaxIssuesPerAnalysis()).isEqualTo("sonar.sqvsRoslynPlugin.internal.maxIssuesPerAnalysis");
+    assertThat(SqvsRoslynPluginPropertyDefinitions.getMaxFilesPerBatch()).isEqualTo("sonar.sqvsRoslynPlugin.internal.maxFilesPerBatch");
+    assertThat(SqvsRoslynPluginPropertyDefinitions.getMaxParallelBatches()).isEqualTo("sonar.sqvsRoslynPlugin.internal.maxParallelBatches");
+    assertThat(SqvsRoslynPluginPropertyDefinitions.getBatchTimeoutSeconds()).isEqualTo("sonar.sqvsRoslynPlugin.internal.batchTimeoutSeconds");
+    assertThat(SqvsRoslynPluginPropertyDefinitions.getIssueCacheDirectory()).isEqualTo("sonar.sqvsRoslynPlugin.internal.issueCacheDirectory");
   }
 
 }
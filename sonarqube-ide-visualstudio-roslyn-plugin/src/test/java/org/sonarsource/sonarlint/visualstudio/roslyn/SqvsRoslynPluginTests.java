@@ -30,8 +30,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 class SqvsRoslynPluginTests {
 
-  private static final int PROPERTY_DEFINITIONS_COUNT = 6;
-  private static final int REGISTERED_CLASSES_COUNT = 11;
+  private static final int PROPERTY_DEFINITIONS_COUNT = 13;
+  private static final int REGISTERED_CLASSES_COUNT = 21;
 
   @Test
   void getExtensions() {
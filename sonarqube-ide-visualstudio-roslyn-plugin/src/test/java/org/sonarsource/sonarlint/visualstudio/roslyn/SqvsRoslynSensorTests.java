@@ -20,15 +20,22 @@
 package org.sonarsource.sonarlint.visualstudio.roslyn;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
@@ -37,10 +44,13 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentMatcher;
+import org.mockito.stubbing.Answer;
 import org.slf4j.event.Level;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.TextRange;
 import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.batch.rule.ActiveRule;
 import org.sonar.api.batch.rule.internal.ActiveRulesBuilder;
 import org.sonar.api.batch.rule.internal.NewActiveRule;
 import org.sonar.api.batch.sensor.internal.DefaultSensorDescriptor;
@@ -50,11 +60,18 @@ import org.sonar.api.batch.sensor.issue.IssueLocation;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.testfixtures.log.LogAndArguments;
 import org.sonar.api.testfixtures.log.LogTesterJUnit5;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.AnalysisResponseDecoder;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.BinaryCodec;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.HttpAnalysisRequestHandler;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.HttpClientHandler;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.JsonCodec;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.RoslynIssueSink;
+import org.sonarsource.sonarlint.visualstudio.roslyn.http.ServerCapabilities;
 import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.*;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 class SqvsRoslynSensorTests {
@@ -65,6 +82,8 @@ class SqvsRoslynSensorTests {
   private RemoteAnalysisService remoteAnalysisService;
   private InstanceConfigurationProvider instanceConfigurationProvider;
   private AnalysisPropertiesProvider analysisPropertiesProvider;
+  private IssuePreparationExecutor issuePreparationExecutor;
+  private IssueCache issueCache;
   private SensorContextTester sensorContext;
   private SqvsRoslynSensor underTest;
   private Path baseDir;
@@ -99,9 +118,12 @@ class SqvsRoslynSensorTests {
     remoteAnalysisService = mock(RemoteAnalysisService.class);
     analysisPropertiesProvider = mock(AnalysisPropertiesProvider.class);
     instanceConfigurationProvider = mock(InstanceConfigurationProvider.class);
+    when(instanceConfigurationProvider.getIssueLimits()).thenReturn(IssueLimits.UNLIMITED);
     baseDir = tmp.toRealPath();
     sensorContext = SensorContextTester.create(baseDir);
-    underTest = new SqvsRoslynSensor(instanceConfigurationProvider, analysisPropertiesProvider, remoteAnalysisService);
+    issuePreparationExecutor = new IssuePreparationExecutor(4);
+    issueCache = new IssueCache(mock(PersistentIssueCache.class));
+    underTest = new SqvsRoslynSensor(instanceConfigurationProvider, analysisPropertiesProvider, remoteAnalysisService, issuePreparationExecutor, issueCache);
     csFile = createInputFile("foo.cs", "var a=1;", CSharpLanguage.LANGUAGE_KEY);
     csFile2 = createInputFile("foo2.cs", "var b=2;", CSharpLanguage.LANGUAGE_KEY);
     vbFile = createInputFile("boo.vb", "Dim a As Integer = 1", VbNetLanguage.LANGUAGE_KEY);
@@ -110,6 +132,11 @@ class SqvsRoslynSensorTests {
     vbIssue = mockRoslynIssue("S456", VbNetLanguage.REPOSITORY_KEY, vbFile.uri());
   }
 
+  @AfterEach
+  void stopExecutor() {
+    issuePreparationExecutor.stop();
+  }
+
   @Test
   void describe() {
     DefaultSensorDescriptor descriptor = new DefaultSensorDescriptor();
@@ -136,8 +163,8 @@ class SqvsRoslynSensorTests {
 
     underTest.execute(sensorContext);
 
-    verify(remoteAnalysisService).analyze(argThat(fileNames -> fileNames.stream().anyMatch(f -> f.toString().contains(fileName))),
-      anyList(), any(), any());
+    verify(remoteAnalysisService).analyze(argThat(partitions(fileNames -> fileNames.stream().anyMatch(f -> f.toString().contains(fileName)),
+        activeRules -> true)), any(), any(), any());
   }
 
   @ParameterizedTest
@@ -165,10 +192,10 @@ class SqvsRoslynSensorTests {
 
     underTest.execute(sensorContext);
 
-    verify(remoteAnalysisService).analyze(argThat(fileNames -> fileNames.stream().anyMatch(file -> file.toString().contains(fileName))),
-      argThat(activeRules -> activeRules.size() == 1 && activeRules.stream().findFirst().get().ruleKey().rule().equals("S123")),
+    verify(remoteAnalysisService).analyze(argThat(partitions(fileNames -> fileNames.stream().anyMatch(file -> file.toString().contains(fileName)),
+        activeRules -> activeRules.size() == 1 && activeRules.stream().findFirst().get().ruleKey().rule().equals("S123"))),
       argThat(x -> x.entrySet().contains(Map.entry("sonar.cs.disableRazor", "true"))),
-      argThat(x -> x.shouldUseCsharpEnterprise() == expectedShouldUseCsharpEnterprise && !x.shouldUseVbEnterprise()));
+      argThat(x -> x.shouldUseCsharpEnterprise() == expectedShouldUseCsharpEnterprise && !x.shouldUseVbEnterprise()), any());
   }
 
   @ParameterizedTest
@@ -185,10 +212,10 @@ class SqvsRoslynSensorTests {
 
     underTest.execute(sensorContext);
 
-    verify(remoteAnalysisService).analyze(argThat(fileNames -> fileNames.stream().anyMatch(file -> file.toString().contains(fileName))),
-      argThat(activeRules -> activeRules.size() == 1 && activeRules.stream().findFirst().get().ruleKey().rule().equals("S456")),
+    verify(remoteAnalysisService).analyze(argThat(partitions(fileNames -> fileNames.stream().anyMatch(file -> file.toString().contains(fileName)),
+        activeRules -> activeRules.size() == 1 && activeRules.stream().findFirst().get().ruleKey().rule().equals("S456"))),
       argThat(x -> x.entrySet().contains(Map.entry("sonar.vbnet.disableRazor", "false"))),
-      argThat(x -> x.shouldUseVbEnterprise() == expectedShouldUseVbEnterprise && !x.shouldUseCsharpEnterprise()));
+      argThat(x -> x.shouldUseVbEnterprise() == expectedShouldUseVbEnterprise && !x.shouldUseCsharpEnterprise()), any());
   }
 
   @Test
@@ -204,24 +231,43 @@ class SqvsRoslynSensorTests {
 
     underTest.execute(sensorContext);
 
-    verify(remoteAnalysisService).analyze(argThat(fileNames -> fileNames.size() == 2 &&
-      fileNames.stream().anyMatch(file -> file.toString().contains("foo.cs") || file.toString().contains("boo.vb"))),
-      argThat(activeRules -> activeRules.size() == 2 &&
-        activeRules.stream().anyMatch(rule -> rule.ruleKey().rule().equals("S123") || rule.ruleKey().rule().contains("S456"))),
+    verify(remoteAnalysisService).analyze(argThat(partitions(fileNames -> fileNames.size() == 2 &&
+      fileNames.stream().anyMatch(file -> file.toString().contains("foo.cs") || file.toString().contains("boo.vb")),
+        activeRules -> activeRules.size() == 2 &&
+        activeRules.stream().anyMatch(rule -> rule.ruleKey().rule().equals("S123") || rule.ruleKey().rule().contains("S456")))),
       argThat(x -> x.entrySet().contains(Map.entry("sonar.cs.disableRazor", "true"))),
-      argThat(x -> x.shouldUseCsharpEnterprise() && x.shouldUseVbEnterprise()));
+      argThat(x -> x.shouldUseCsharpEnterprise() && x.shouldUseVbEnterprise()), any());
+  }
+
+  @Test
+  void analyzeCsAndVbNetAndRazorFiles_sendsOnePartitionPerLaneWithTheRulesOfItsLanguage() throws Exception {
+    var cshtmlFile = createInputFile("View.cshtml", "<p>@Model</p>", SqvsRoslynPluginPropertyDefinitions.HTML_LANGUAGE_KEY);
+    sensorContext.fileSystem().add(cshtmlFile);
+    sensorContext.fileSystem().add(vbFile);
+    sensorContext.fileSystem().add(csFile);
+    sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).addRule(vbActiveRule).build());
+
+    underTest.execute(sensorContext);
+
+    verify(remoteAnalysisService).analyze(argThat(partitions -> partitions.stream()
+      .map(partition -> partition.lane() + " " + partition.fileUris() + " " + partition.firstFileId() + " "
+        + partition.activeRules().stream().map(activeRule -> activeRule.ruleKey().toString()).toList())
+      .toList().equals(List.of(
+        "CSHARP " + List.of(csFile.uri()) + " 0 [csharpsquid:S123]",
+        "VBNET " + List.of(vbFile.uri()) + " 1 [vbnet:S456]",
+        "CSHARP_RAZOR " + List.of(cshtmlFile.uri()) + " 2 [csharpsquid:S123]"))),
+      any(), any(), any());
   }
 
   @Test
   void analyzeCs_reportIssueForActiveRules() {
     sensorContext.fileSystem().add(csFile);
     sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).build());
-    when(remoteAnalysisService.analyze(
-      argThat(x -> x.stream().anyMatch(file -> file.toString().contains(csFile.filename()))),
-      argThat(x -> x.stream().anyMatch(cs -> cs.ruleKey().rule().contains(csActiveRule.ruleKey().rule()))),
+    doAnswer(returnIssues(csharpIssue)).when(remoteAnalysisService).analyze(
+      argThat(partitions(x -> x.stream().anyMatch(file -> file.toString().contains(csFile.filename())),
+        x -> x.stream().anyMatch(cs -> cs.ruleKey().rule().contains(csActiveRule.ruleKey().rule())))),
       any(),
-      argThat(x -> !x.shouldUseCsharpEnterprise() && !x.shouldUseVbEnterprise())))
-        .thenReturn(List.of(csharpIssue));
+      argThat(x -> !x.shouldUseCsharpEnterprise() && !x.shouldUseVbEnterprise()), any());
 
     underTest.execute(sensorContext);
 
@@ -234,12 +280,11 @@ class SqvsRoslynSensorTests {
     sensorContext.setActiveRules(new ActiveRulesBuilder()
       .addRule(vbActiveRule)
       .build());
-    when(remoteAnalysisService.analyze(
-      argThat(x -> x.stream().anyMatch(file -> file.toString().contains(vbFile.uri().toString()))),
-      argThat(x -> x.stream().anyMatch(cs -> cs.ruleKey().rule().contains(vbActiveRule.ruleKey().rule()))),
+    doAnswer(returnIssues(vbIssue)).when(remoteAnalysisService).analyze(
+      argThat(partitions(x -> x.stream().anyMatch(file -> file.toString().contains(vbFile.uri().toString())),
+        x -> x.stream().anyMatch(cs -> cs.ruleKey().rule().contains(vbActiveRule.ruleKey().rule())))),
       any(),
-      argThat(x -> !x.shouldUseCsharpEnterprise() && !x.shouldUseVbEnterprise())))
-        .thenReturn(List.of(vbIssue));
+      argThat(x -> !x.shouldUseCsharpEnterprise() && !x.shouldUseVbEnterprise()), any());
 
     underTest.execute(sensorContext);
 
@@ -251,12 +296,11 @@ class SqvsRoslynSensorTests {
     sensorContext.fileSystem().add(csFile);
     sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).build());
     var csFileLevelIssue = mockRoslynIssueWithFileLevelLocation(csActiveRule.ruleKey().rule(), CSharpLanguage.REPOSITORY_KEY, csFile.uri());
-    when(remoteAnalysisService.analyze(
-        argThat(x -> x.stream().anyMatch(file -> file.toString().contains(csFile.filename()))),
-        argThat(x -> x.stream().anyMatch(cs -> cs.ruleKey().rule().contains(csActiveRule.ruleKey().rule()))),
+    doAnswer(returnIssues(csFileLevelIssue)).when(remoteAnalysisService).analyze(
+        argThat(partitions(x -> x.stream().anyMatch(file -> file.toString().contains(csFile.filename())),
+          x -> x.stream().anyMatch(cs -> cs.ruleKey().rule().contains(csActiveRule.ruleKey().rule())))),
         any(),
-        argThat(x -> !x.shouldUseCsharpEnterprise() && !x.shouldUseVbEnterprise())))
-        .thenReturn(List.of(csFileLevelIssue));
+        argThat(x -> !x.shouldUseCsharpEnterprise() && !x.shouldUseVbEnterprise()), any());
 
     underTest.execute(sensorContext);
 
@@ -271,12 +315,11 @@ class SqvsRoslynSensorTests {
     sensorContext.fileSystem().add(csFile2);
     sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).build());
     var csIssueWithSecondaryLocations = mockRoslynIssueWithSecondaryLocations(csActiveRule.ruleKey().rule(), CSharpLanguage.REPOSITORY_KEY, csFile.uri(), csFile2.uri());
-    when(remoteAnalysisService.analyze(
-      argThat(x -> x.stream().anyMatch(file -> file.toString().contains(csFile.filename()))),
-      argThat(x -> x.stream().anyMatch(cs -> cs.ruleKey().rule().contains(csActiveRule.ruleKey().rule()))),
+    doAnswer(returnIssues(csIssueWithSecondaryLocations)).when(remoteAnalysisService).analyze(
+      argThat(partitions(x -> x.stream().anyMatch(file -> file.toString().contains(csFile.filename())),
+        x -> x.stream().anyMatch(cs -> cs.ruleKey().rule().contains(csActiveRule.ruleKey().rule())))),
       any(),
-      argThat(x -> !x.shouldUseCsharpEnterprise() && !x.shouldUseVbEnterprise())))
-        .thenReturn(List.of(csIssueWithSecondaryLocations));
+      argThat(x -> !x.shouldUseCsharpEnterprise() && !x.shouldUseVbEnterprise()), any());
 
     underTest.execute(sensorContext);
 
@@ -293,12 +336,11 @@ class SqvsRoslynSensorTests {
     sensorContext.fileSystem().add(vbFile);
     sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(vbActiveRule).build());
     var csFileLevelIssue = mockRoslynIssueWithFileLevelLocation(vbActiveRule.ruleKey().rule(), VbNetLanguage.REPOSITORY_KEY, vbFile.uri());
-    when(remoteAnalysisService.analyze(
-        argThat(x -> x.stream().anyMatch(file -> file.toString().contains(vbFile.filename()))),
-        argThat(x -> x.stream().anyMatch(cs -> cs.ruleKey().rule().contains(vbActiveRule.ruleKey().rule()))),
+    doAnswer(returnIssues(csFileLevelIssue)).when(remoteAnalysisService).analyze(
+        argThat(partitions(x -> x.stream().anyMatch(file -> file.toString().contains(vbFile.filename())),
+          x -> x.stream().anyMatch(cs -> cs.ruleKey().rule().contains(vbActiveRule.ruleKey().rule())))),
         any(),
-        argThat(x -> !x.shouldUseCsharpEnterprise() && !x.shouldUseVbEnterprise())))
-        .thenReturn(List.of(csFileLevelIssue));
+        argThat(x -> !x.shouldUseCsharpEnterprise() && !x.shouldUseVbEnterprise()), any());
 
     underTest.execute(sensorContext);
 
@@ -313,12 +355,11 @@ class SqvsRoslynSensorTests {
     sensorContext.fileSystem().add(vbFile2);
     sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(vbActiveRule).build());
     var vbIssueWithSecondaryLocations = mockRoslynIssueWithSecondaryLocations(vbActiveRule.ruleKey().rule(), VbNetLanguage.REPOSITORY_KEY, vbFile.uri(), vbFile2.uri());
-    when(remoteAnalysisService.analyze(
-      argThat(x -> x.stream().anyMatch(file -> file.toString().contains(vbFile.filename()))),
-      argThat(x -> x.stream().anyMatch(cs -> cs.ruleKey().rule().contains(vbActiveRule.ruleKey().rule()))),
+    doAnswer(returnIssues(vbIssueWithSecondaryLocations)).when(remoteAnalysisService).analyze(
+      argThat(partitions(x -> x.stream().anyMatch(file -> file.toString().contains(vbFile.filename())),
+        x -> x.stream().anyMatch(cs -> cs.ruleKey().rule().contains(vbActiveRule.ruleKey().rule())))),
       any(),
-      argThat(x -> !x.shouldUseCsharpEnterprise() && !x.shouldUseVbEnterprise())))
-        .thenReturn(List.of(vbIssueWithSecondaryLocations));
+      argThat(x -> !x.shouldUseCsharpEnterprise() && !x.shouldUseVbEnterprise()), any());
 
     underTest.execute(sensorContext);
 
@@ -336,9 +377,9 @@ class SqvsRoslynSensorTests {
     sensorContext.setActiveRules(new ActiveRulesBuilder()
       .addRule(vbActiveRule)
       .build());
-    var vbWrongIssue = mockRoslynIssueWithWrongLocation(vbActiveRule.ruleKey().rule(), VbNetLanguage.REPOSITORY_KEY, vbFile.uri());
-    when(remoteAnalysisService.analyze(any(), any(), any(), any()))
-      .thenReturn(List.of(vbIssue, vbWrongIssue));
+    var vbWrongIssue = mockRoslynIssue(vbActiveRule.ruleKey().rule(), VbNetLanguage.REPOSITORY_KEY, vbFile.uri());
+    when(vbWrongIssue.getFlows()).thenReturn(null);
+    doAnswer(returnIssues(vbIssue, vbWrongIssue)).when(remoteAnalysisService).analyze(any(), any(), any(), any());
 
     underTest.execute(sensorContext);
 
@@ -346,6 +387,264 @@ class SqvsRoslynSensorTests {
     assertThat(getLog(Level.ERROR).getRawMsg()).contains(String.format("Issue %s can not be saved due to ", vbWrongIssue.getRuleId()));
   }
 
+  @Test
+  void analyze_locationsOutsideOfTheirFile_areDroppedAndReportedOnce() {
+    sensorContext.fileSystem().add(vbFile);
+    sensorContext.setActiveRules(new ActiveRulesBuilder()
+      .addRule(vbActiveRule)
+      .build());
+    var vbWrongIssue = mockRoslynIssueWithWrongLocation(vbActiveRule.ruleKey().rule(), VbNetLanguage.REPOSITORY_KEY, vbFile.uri());
+    doAnswer(returnIssues(vbIssue, vbWrongIssue, vbWrongIssue)).when(remoteAnalysisService).analyze(any(), any(), any(), any());
+
+    underTest.execute(sensorContext);
+
+    verifyExpectedRoslynIssue(vbIssue);
+    assertThat(logTester.getLogs(Level.ERROR)).isEmpty();
+    assertThat(getLog(Level.WARN).getFormattedMsg()).isEqualTo("2 issue location(s) with a text range outside of their file were dropped:"
+      + System.lineSeparator() + "  " + vbActiveRule.ruleKey() + " in " + vbFile + ": 2");
+  }
+
+  @Test
+  void analyze_savesIssuesInTheOrderInWhichTheyAreReceived() {
+    sensorContext.fileSystem().add(csFile);
+    sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).build());
+    var roslynIssues = new ArrayList<RoslynIssue>();
+    for (var i = 0; i < 1000; i++) {
+      var textRange = new RoslynIssueTextRange(1, 1, i % 8, 8);
+      roslynIssues.add(new RoslynIssue(csharpIssue.getRuleId(), new RoslynIssueLocation(csFile.uri(), "message " + i, textRange), List.of(), List.of()));
+    }
+    doAnswer(returnIssues(roslynIssues.toArray(RoslynIssue[]::new))).when(remoteAnalysisService).analyze(any(), any(), any(), any());
+
+    underTest.execute(sensorContext);
+
+    assertThat(sensorContext.allIssues()).extracting(issue -> issue.primaryLocation().message())
+      .containsExactlyElementsOf(roslynIssues.stream().map(issue -> issue.getPrimaryLocation().getMessage()).toList());
+  }
+
+  @Test
+  void analyze_duplicateIssues_areSavedOnceAndCounted() {
+    sensorContext.fileSystem().add(csFile);
+    sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).build());
+    var textRange = new RoslynIssueTextRange(1, 1, 1, 5);
+    var secondaryLocation = new RoslynIssueLocation(csFile.uri(), "secondary", textRange);
+    var issue = new RoslynIssue(csharpIssue.getRuleId(), new RoslynIssueLocation(csFile.uri(), "message", textRange),
+      List.of(new RoslynIssueFlow(List.of(secondaryLocation))), List.of());
+    // same diagnostic reported for another target framework, the file being referred to by its id
+    var copy = new RoslynIssue(csharpIssue.getRuleId(), new RoslynIssueLocation(null, 0, "message", textRange),
+      List.of(new RoslynIssueFlow(List.of(secondaryLocation))), List.of());
+    var withoutSecondaryLocation = new RoslynIssue(csharpIssue.getRuleId(), new RoslynIssueLocation(csFile.uri(), "message", textRange), List.of(), List.of());
+    var withOtherMessage = new RoslynIssue(csharpIssue.getRuleId(), new RoslynIssueLocation(csFile.uri(), "other message", textRange), List.of(), List.of());
+    doAnswer(returnIssues(issue, copy, withoutSecondaryLocation, withOtherMessage, withOtherMessage)).when(remoteAnalysisService).analyze(any(), any(), any(), any());
+
+    underTest.execute(sensorContext);
+
+    assertThat(sensorContext.allIssues()).extracting(actualIssue -> actualIssue.primaryLocation().message(), actualIssue -> actualIssue.flows().size())
+      .containsExactly(tuple("message", 1), tuple("message", 0), tuple("other message", 0));
+    assertThat(getLog(Level.INFO).getFormattedMsg()).isEqualTo("3 issue(s) saved, 2 duplicate issue(s) removed, 0 issue(s) of inactive rules skipped, 0 issue(s) over the limits skipped.");
+  }
+
+  @Test
+  void analyze_issuesOverTheLimitPerFile_areSkippedAndReported() {
+    logTester.setLevel(Level.DEBUG);
+    when(instanceConfigurationProvider.getIssueLimits()).thenReturn(new IssueLimits(2, 0, 0));
+    sensorContext.fileSystem().add(csFile);
+    sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).build());
+    var roslynIssues = new ArrayList<RoslynIssue>();
+    for (var i = 0; i < 5; i++) {
+      roslynIssues.add(new RoslynIssue(csharpIssue.getRuleId(), new RoslynIssueLocation(csFile.uri(), "message " + i, new RoslynIssueTextRange(1, 1, 1, 5)),
+        List.of(), List.of()));
+    }
+    doAnswer(returnIssues(roslynIssues.toArray(RoslynIssue[]::new))).when(remoteAnalysisService).analyze(any(), any(), any(), any());
+
+    underTest.execute(sensorContext);
+
+    assertThat(sensorContext.allIssues()).extracting(issue -> issue.primaryLocation().message()).containsExactly("message 0", "message 1");
+    assertThat(getLog(Level.WARN).getFormattedMsg()).isEqualTo("3 issue(s) over the limit of 2 per file were skipped:"
+      + System.lineSeparator() + "  " + csFile + ": 3");
+    assertThat(getLog(Level.INFO).getFormattedMsg()).isEqualTo("2 issue(s) saved, 0 duplicate issue(s) removed, 0 issue(s) of inactive rules skipped, 3 issue(s) over the limits skipped.");
+    assertThat(logTester.getLogs(Level.DEBUG)).extracting(LogAndArguments::getFormattedMsg)
+      .contains("Issues over the limits were skipped, the issues of the analyzed files are not cached.");
+  }
+
+  @Test
+  void analyze_changedFile_sendsAllTheFilesAgain() throws IOException {
+    sensorContext.fileSystem().add(csFile);
+    sensorContext.fileSystem().add(csFile2);
+    sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).build());
+    var issue = new RoslynIssue(csharpIssue.getRuleId(), new RoslynIssueLocation(csFile.uri(), "message", new RoslynIssueTextRange(1, 1, 1, 5)), List.of(), List.of());
+    doAnswer(returnIssues(issue)).when(remoteAnalysisService).analyze(any(), any(), any(), any());
+    underTest.execute(sensorContext);
+
+    var secondContext = SensorContextTester.create(baseDir);
+    var changedCsFile2 = createInputFile("foo2.cs", "var b=3;", CSharpLanguage.LANGUAGE_KEY);
+    secondContext.fileSystem().add(csFile);
+    secondContext.fileSystem().add(changedCsFile2);
+    secondContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).build());
+    doAnswer(returnIssues()).when(remoteAnalysisService).analyze(any(), any(), any(), any());
+    underTest.execute(secondContext);
+
+    verify(remoteAnalysisService).analyze(argThat(partitions(fileUris -> Set.copyOf(fileUris).equals(Set.of(csFile.uri(), changedCsFile2.uri())), activeRules -> true)),
+      any(), any(), any());
+    assertThat(secondContext.allIssues()).isEmpty();
+    assertThat(issueCache.getHitCount()).isZero();
+    assertThat(issueCache.getMissCount()).isEqualTo(4);
+  }
+
+  @Test
+  void analyze_allFilesCached_doesNotCallTheServer() {
+    sensorContext.fileSystem().add(csFile);
+    sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).build());
+    doAnswer(returnIssues(csharpIssue)).when(remoteAnalysisService).analyze(any(), any(), any(), any());
+    underTest.execute(sensorContext);
+
+    var secondContext = SensorContextTester.create(baseDir);
+    secondContext.fileSystem().add(csFile);
+    secondContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).build());
+    underTest.execute(secondContext);
+
+    verify(remoteAnalysisService, times(1)).analyze(any(), any(), any(), any());
+    assertThat(secondContext.allIssues()).hasSize(1);
+    assertThat(issueCache.getHitRatio()).isEqualTo(0.5);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void analyze_serverAnswersWithAnError_doesNotCacheTheFilesWithoutIssues() {
+    var httpClientHandler = mock(HttpClientHandler.class);
+    HttpResponse<InputStream> errorResponse = mock(HttpResponse.class);
+    when(errorResponse.statusCode()).thenReturn(500);
+    when(errorResponse.body()).thenAnswer(invocation -> InputStream.nullInputStream());
+    when(httpClientHandler.sendAnalyzeRequestAsync(any(), any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(errorResponse));
+    when(instanceConfigurationProvider.getAnalysisBatching()).thenReturn(AnalysisBatching.DEFAULT);
+    var serverCapabilities = mock(ServerCapabilities.class);
+    var issueReceiverExecutor = new IssueReceiverExecutor();
+    var httpAnalysisRequestHandler = new HttpAnalysisRequestHandler(httpClientHandler, serverCapabilities,
+      new AnalysisResponseDecoder(new JsonCodec(), new BinaryCodec(), serverCapabilities), issueReceiverExecutor);
+    underTest = new SqvsRoslynSensor(instanceConfigurationProvider, analysisPropertiesProvider,
+      new RemoteAnalysisService(mock(AnalysisCancellationService.class), httpAnalysisRequestHandler, sensorContext, instanceConfigurationProvider),
+      issuePreparationExecutor, issueCache);
+    sensorContext.fileSystem().add(csFile);
+    sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).build());
+
+    try {
+      underTest.execute(sensorContext);
+      underTest.execute(sensorContext);
+    } finally {
+      issueReceiverExecutor.stop();
+    }
+
+    verify(httpClientHandler, times(2)).sendAnalyzeRequestAsync(any(), any(), any(), any(), any());
+    assertThat(issueCache.getHitCount()).isZero();
+    assertThat(logTester.getLogs(Level.ERROR)).extracting(LogAndArguments::getFormattedMsg)
+      .containsExactly("Response from server is 500.", "Response from server is 500.");
+  }
+
+  @Test
+  void analyze_otherActiveRules_missTheCache() {
+    sensorContext.fileSystem().add(csFile);
+    sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).build());
+    underTest.execute(sensorContext);
+
+    var secondContext = SensorContextTester.create(baseDir);
+    secondContext.fileSystem().add(csFile);
+    secondContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).addRule(vbActiveRule).build());
+    underTest.execute(secondContext);
+
+    verify(remoteAnalysisService, times(2)).analyze(any(), any(), any(), any());
+    assertThat(issueCache.getHitCount()).isZero();
+  }
+
+  @Test
+  void analyze_malformedRuleIds_areSkippedAndCounted() {
+    sensorContext.fileSystem().add(csFile);
+    sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).build());
+    var withoutRepository = mockRoslynIssue("S123", "", csFile.uri());
+    var withoutRule = mockRoslynIssue("", CSharpLanguage.REPOSITORY_KEY, csFile.uri());
+    doAnswer(returnIssues(withoutRepository, csharpIssue, withoutRule)).when(remoteAnalysisService).analyze(any(), any(), any(), any());
+
+    underTest.execute(sensorContext);
+
+    verifyExpectedRoslynIssue(csharpIssue);
+    assertThat(getLog(Level.WARN).getFormattedMsg()).isEqualTo("2 issue(s) with a malformed rule id were skipped.");
+    assertThat(logTester.getLogs(Level.ERROR)).isEmpty();
+  }
+
+  @Test
+  void analyze_issuesOfInactiveRules_areRejectedBeforeBeingDecodedAndCounted() {
+    sensorContext.fileSystem().add(csFile);
+    sensorContext.fileSystem().add(vbFile);
+    sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).build());
+    var inactiveIssue = mockRoslynIssue("S999", CSharpLanguage.REPOSITORY_KEY, csFile.uri());
+    var acceptedRuleIds = new ArrayList<String>();
+    doAnswer(invocation -> {
+      RoslynIssueSink sink = invocation.getArgument(3);
+      for (var roslynIssue : List.of(csharpIssue, inactiveIssue, vbIssue, inactiveIssue)) {
+        if (sink.acceptsRule(roslynIssue.getRuleId())) {
+          acceptedRuleIds.add(roslynIssue.getRuleId());
+          sink.accept(roslynIssue);
+        }
+      }
+      return true;
+    }).when(remoteAnalysisService).analyze(any(), any(), any(), any());
+
+    underTest.execute(sensorContext);
+
+    verifyExpectedRoslynIssue(csharpIssue);
+    assertThat(acceptedRuleIds).containsExactly(csharpIssue.getRuleId());
+    assertThat(getLog(Level.INFO).getFormattedMsg()).isEqualTo("1 issue(s) saved, 0 duplicate issue(s) removed, 3 issue(s) of inactive rules skipped, 0 issue(s) over the limits skipped.");
+  }
+
+  @Test
+  void analyze_savesEachIssueAsSoonAsItIsReceived() {
+    // issues prepared on the receiving thread are saved before the next one is received
+    underTest = new SqvsRoslynSensor(instanceConfigurationProvider, analysisPropertiesProvider, remoteAnalysisService, new IssuePreparationExecutor(1), issueCache);
+    sensorContext.fileSystem().add(csFile);
+    sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).build());
+    var otherCsharpIssue = mockRoslynIssue("S123", CSharpLanguage.REPOSITORY_KEY, csFile.uri());
+    mockTextRange(otherCsharpIssue.getPrimaryLocation(), 1, 1, 2, 6);
+    var savedIssuesCountWhenReceived = new ArrayList<Integer>();
+    doAnswer(invocation -> {
+      RoslynIssueSink sink = invocation.getArgument(3);
+      sink.accept(csharpIssue);
+      savedIssuesCountWhenReceived.add(sensorContext.allIssues().size());
+      sink.accept(otherCsharpIssue);
+      savedIssuesCountWhenReceived.add(sensorContext.allIssues().size());
+      return true;
+    }).when(remoteAnalysisService).analyze(any(), any(), any(), any());
+
+    underTest.execute(sensorContext);
+
+    assertThat(savedIssuesCountWhenReceived).containsExactly(1, 2);
+  }
+
+  @Test
+  void analyze_resolvesLocationsByFileIdInRequestOrder() {
+    sensorContext.fileSystem().add(csFile);
+    sensorContext.fileSystem().add(csFile2);
+    sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(csActiveRule).build());
+    doAnswer(invocation -> {
+      List<AnalysisPartition> partitions = invocation.getArgument(0);
+      var fileUris = allFileUris(partitions);
+      RoslynIssueSink sink = invocation.getArgument(3);
+      var textRange = new RoslynIssueTextRange(1, 1, 1, 5);
+      var secondaryLocation = new RoslynIssueLocation(null, fileUris.indexOf(csFile.uri()), "secondary", textRange);
+      sink.accept(new RoslynIssue(csharpIssue.getRuleId(), new RoslynIssueLocation(null, fileUris.indexOf(csFile2.uri()), "message", textRange),
+        List.of(new RoslynIssueFlow(List.of(secondaryLocation))), List.of()));
+      sink.accept(new RoslynIssue(csharpIssue.getRuleId(), new RoslynIssueLocation(null, fileUris.size(), "unknown file", textRange), List.of(), List.of()));
+      return true;
+    }).when(remoteAnalysisService).analyze(any(), any(), any(), any());
+
+    underTest.execute(sensorContext);
+
+    var actualIssues = sensorContext.allIssues();
+    assertThat(actualIssues).hasSize(1);
+    var actualIssue = actualIssues.iterator().next();
+    assertThat(actualIssue.primaryLocation().inputComponent()).isEqualTo(csFile2);
+    assertThat(actualIssue.primaryLocation().message()).isEqualTo("message");
+    assertThat(actualIssue.flows()).hasSize(1);
+    assertThat(actualIssue.flows().get(0).locations().get(0).inputComponent()).isEqualTo(csFile);
+  }
+
   private void testQuickFixes(InputFile testFile, NewActiveRule activeRule, String languageRepositoryKey) {
     var mockNewIssue = new MockSonarLintIssue();
     sensorContext = spy(sensorContext);
@@ -354,18 +653,35 @@ class SqvsRoslynSensorTests {
     sensorContext.fileSystem().add(testFile);
     sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(activeRule).build());
     var csIssueWithQuickFix = mockRoslynIssueWithQuickFixes(activeRule.ruleKey().rule(), languageRepositoryKey, testFileName, "Custom QuickFix value provided by RoslynIssue");
-    when(remoteAnalysisService.analyze(
-      argThat(x -> x.stream().anyMatch(file -> file.toString().contains(testFileName.toString()))),
-      argThat(x -> x.stream().anyMatch(cs -> cs.ruleKey().rule().contains(activeRule.ruleKey().rule()))),
+    doAnswer(returnIssues(csIssueWithQuickFix)).when(remoteAnalysisService).analyze(
+      argThat(partitions(x -> x.stream().anyMatch(file -> file.toString().contains(testFileName.toString())),
+        x -> x.stream().anyMatch(cs -> cs.ruleKey().rule().contains(activeRule.ruleKey().rule())))),
       any(),
-      argThat(x -> !x.shouldUseCsharpEnterprise() && !x.shouldUseVbEnterprise())))
-      .thenReturn(List.of(csIssueWithQuickFix));
+      argThat(x -> !x.shouldUseCsharpEnterprise() && !x.shouldUseVbEnterprise()), any());
 
     underTest.execute(sensorContext);
 
     verifyExpectedQuickFixes(csIssueWithQuickFix, mockNewIssue);
   }
 
+  private static ArgumentMatcher<List<AnalysisPartition>> partitions(Predicate<List<URI>> fileUris, Predicate<List<ActiveRule>> activeRules) {
+    return partitions -> fileUris.test(allFileUris(partitions)) && activeRules.test(partitions.stream().flatMap(partition -> partition.activeRules().stream()).toList());
+  }
+
+  private static List<URI> allFileUris(List<AnalysisPartition> partitions) {
+    return partitions.stream().flatMap(partition -> partition.fileUris().stream()).toList();
+  }
+
+  private static Answer<Boolean> returnIssues(RoslynIssue... roslynIssues) {
+    return invocation -> {
+      RoslynIssueSink sink = invocation.getArgument(3);
+      for (var roslynIssue : roslynIssues) {
+        sink.accept(roslynIssue);
+      }
+      return true;
+    };
+  }
+
   private void mockInputFiles(SensorContextTester sensorContextTester, String... fileNames) throws IOException {
     for (var fileName : fileNames) {
       mockInputFile(sensorContextTester, fileName, "some content");
@@ -0,0 +1,148 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import com.google.gson.Gson;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.rule.RuleKey;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AnalysisRequestBodyTest {
+  private static final UUID ANALYSIS_ID = UUID.fromString("ed89f185-c2d6-4d03-aef1-334747e7fbdb");
+  private static final AnalyzerInfoDto ANALYZER_INFO = new AnalyzerInfoDto(true, false);
+
+  @Test
+  void largeRequest_isSplitInChunksMatchingGsonOutput() {
+    var fileUris = new ArrayList<URI>();
+    for (var i = 0; i < 5_000; i++) {
+      fileUris.add(URI.create("file:///C:/project/src/%C3%A9t%C3%A9/File" + i + ".cs"));
+    }
+    var activeRules = List.of(createMockActiveRule("csharpsquid:S100", Map.of("format", "^[A-Z]")));
+    var analysisProperties = Map.of("sonar.cs.analyzeGeneratedCode", "false", "sonar.cs.text", "d\u00e9j\u00e0 vu \ud83d\ude00 <'>");
+    var underTest = new AnalysisRequestBody(new JsonCodec(), fileUris, activeRules, analysisProperties, ANALYZER_INFO, ANALYSIS_ID);
+
+    var chunks = new ArrayList<byte[]>();
+    underTest.forEach(chunks::add);
+
+    assertThat(chunks).hasSizeGreaterThan(1);
+    assertThat(chunks.subList(0, chunks.size() - 1)).allSatisfy(chunk -> assertThat(chunk.length).isGreaterThanOrEqualTo(AnalysisRequestBody.CHUNK_SIZE));
+    var expectedRules = List.of(new ActiveRuleDto("csharpsquid:S100", Map.of("format", "^[A-Z]")));
+    var expected = new Gson().toJson(new AnalysisRequestDto(fileUris, expectedRules, analysisProperties, ANALYZER_INFO, ANALYSIS_ID));
+    assertThat(concat(chunks)).isEqualTo(expected);
+  }
+
+  @Test
+  void nullValues_areOmittedLikeGson() {
+    var underTest = new AnalysisRequestBody(new JsonCodec(), List.of(), List.of(), Map.of(), null, null);
+
+    var result = toString(underTest);
+
+    assertThat(result).isEqualTo("{\"FileUris\":[],\"ActiveRules\":[],\"AnalysisProperties\":{}}");
+  }
+
+  @Test
+  void withoutConfiguration_sendsOnlyTheFilesAndAnalysisId() {
+    var fileUris = List.of(URI.create("file:///C:/project/src/File1.cs"));
+    var underTest = new AnalysisRequestBody(new JsonCodec(), fileUris, null, null, null, ANALYSIS_ID);
+
+    var result = toString(underTest);
+
+    assertThat(result).isEqualTo(new Gson().toJson(new AnalysisRequestDto(fileUris, null, null, null, ANALYSIS_ID)));
+  }
+
+  @Test
+  void iteratingTwice_producesTheSameBody() {
+    var fileUris = List.of(URI.create("file:///C:/project/src/File1.cs"));
+    var underTest = new AnalysisRequestBody(new JsonCodec(), fileUris, List.of(), Map.of(), ANALYZER_INFO, ANALYSIS_ID);
+
+    assertThat(toString(underTest)).isEqualTo(toString(underTest));
+  }
+
+  @Test
+  void largeActiveRules_areSplicedAsOneChunkReusedByTheNextRequestsWithTheSameRules() {
+    var activeRules = createLargeActiveRules("csharpsquid:S");
+    var fileUris = List.of(URI.create("file:///C:/project/src/File1.cs"));
+    var fragments = new FragmentCache();
+    var first = new ArrayList<byte[]>();
+    new AnalysisRequestBody(new JsonCodec(), fragments, fileUris, activeRules, Map.of(), ANALYZER_INFO, ANALYSIS_ID).forEach(first::add);
+    var second = new ArrayList<byte[]>();
+    new AnalysisRequestBody(new JsonCodec(), fragments, fileUris, activeRules, Map.of(), ANALYZER_INFO, ANALYSIS_ID).forEach(second::add);
+
+    assertThat(first).hasSize(3);
+    assertThat(second).hasSize(3);
+    assertThat(second.get(1)).isSameAs(first.get(1));
+    var expectedRules = activeRules.stream().map(rule -> new ActiveRuleDto(rule.ruleKey().toString(), rule.params())).toList();
+    assertThat(concat(second)).isEqualTo(new Gson().toJson(new AnalysisRequestDto(fileUris, expectedRules, Map.of(), ANALYZER_INFO, ANALYSIS_ID)));
+  }
+
+  @Test
+  void otherActiveRules_areEncodedAgain() {
+    var fragments = new FragmentCache();
+    var first = new ArrayList<byte[]>();
+    new AnalysisRequestBody(new JsonCodec(), fragments, List.of(), createLargeActiveRules("csharpsquid:S"), Map.of(), ANALYZER_INFO, ANALYSIS_ID).forEach(first::add);
+    var otherRules = createLargeActiveRules("vbnet:S");
+    var second = new ArrayList<byte[]>();
+    new AnalysisRequestBody(new JsonCodec(), fragments, List.of(), otherRules, Map.of(), ANALYZER_INFO, ANALYSIS_ID).forEach(second::add);
+
+    assertThat(second.get(1)).isNotSameAs(first.get(1));
+    var expectedRules = otherRules.stream().map(rule -> new ActiveRuleDto(rule.ruleKey().toString(), rule.params())).toList();
+    assertThat(concat(second)).isEqualTo(new Gson().toJson(new AnalysisRequestDto(List.of(), expectedRules, Map.of(), ANALYZER_INFO, ANALYSIS_ID)));
+  }
+
+  private static String toString(AnalysisRequestBody body) {
+    var chunks = new ArrayList<byte[]>();
+    body.forEach(chunks::add);
+    return concat(chunks);
+  }
+
+  private static String concat(List<byte[]> chunks) {
+    var output = new ByteArrayOutputStream();
+    chunks.forEach(output::writeBytes);
+    return output.toString(StandardCharsets.UTF_8);
+  }
+
+  private static List<ActiveRule> createLargeActiveRules(String ruleKeyPrefix) {
+    var activeRules = new ArrayList<ActiveRule>();
+    for (var i = 0; i < 1_000; i++) {
+      activeRules.add(createMockActiveRule(ruleKeyPrefix + i, Map.of("format", "^[A-Z][a-zA-Z0-9]*$")));
+    }
+    return activeRules;
+  }
+
+  private static ActiveRule createMockActiveRule(String ruleKey, Map<String, String> params) {
+    var activeRule = mock(ActiveRule.class);
+    var rule = mock(RuleKey.class);
+    when(rule.toString()).thenReturn(ruleKey);
+    when(activeRule.ruleKey()).thenReturn(rule);
+    when(activeRule.params()).thenReturn(params);
+    return activeRule;
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AnalysisResponseDecoderTest {
+  private static final String RESPONSE = "{\"RoslynIssues\":[{\"RuleId\":\"S100\"},{\"RuleId\":\"S101\"}]}";
+  private ServerCapabilities serverCapabilities;
+  private AnalysisResponseDecoder underTest;
+  private List<RoslynIssue> result;
+
+  @BeforeEach
+  void init() {
+    serverCapabilities = new ServerCapabilities();
+    underTest = new AnalysisResponseDecoder(new JsonCodec(), new BinaryCodec(), serverCapabilities);
+    result = new ArrayList<>();
+  }
+
+  @Test
+  void readIssues_gzipEncoding_decompressesBodyWithoutAssumingGzipRequestSupport() throws IOException {
+    var body = compress(RESPONSE, GZIPOutputStream::new);
+
+    underTest.readIssues(headers("gzip"), new ByteArrayInputStream(body), result::add);
+
+    assertThat(result).extracting(RoslynIssue::getRuleId).containsExactly("S100", "S101");
+    assertThat(serverCapabilities.isGzipRequestSupported()).isFalse();
+  }
+
+  @Test
+  void readIssues_acceptEncodingGzip_remembersGzipRequestSupport() throws IOException {
+    var headers = HttpHeaders.of(Map.of("Content-Type", List.of("application/json; charset=utf-8"), "Accept-Encoding", List.of("deflate, GZIP;q=0.5")),
+      (name, value) -> true);
+
+    underTest.readIssues(headers, new ByteArrayInputStream(RESPONSE.getBytes(StandardCharsets.UTF_8)), result::add);
+
+    assertThat(serverCapabilities.isGzipRequestSupported()).isTrue();
+  }
+
+  @Test
+  void readIssues_acceptEncodingGzipWithZeroWeight_doesNotRememberGzipRequestSupport() throws IOException {
+    var headers = HttpHeaders.of(Map.of("Content-Type", List.of("application/json; charset=utf-8"), "Accept-Encoding", List.of("gzip;q=0, identity")),
+      (name, value) -> true);
+
+    underTest.readIssues(headers, new ByteArrayInputStream(RESPONSE.getBytes(StandardCharsets.UTF_8)), result::add);
+
+    assertThat(serverCapabilities.isGzipRequestSupported()).isFalse();
+  }
+
+  @Test
+  void readIssues_zlibDeflateEncoding_decompressesBody() throws IOException {
+    var body = compress(RESPONSE, DeflaterOutputStream::new);
+
+    underTest.readIssues(headers("deflate"), new ByteArrayInputStream(body), result::add);
+
+    assertThat(result).extracting(RoslynIssue::getRuleId).containsExactly("S100", "S101");
+  }
+
+  @Test
+  void readIssues_rawDeflateEncoding_decompressesBody() throws IOException {
+    var body = compress(RESPONSE, output -> new DeflaterOutputStream(output, new Deflater(Deflater.DEFAULT_COMPRESSION, true)));
+
+    underTest.readIssues(headers("deflate"), new ByteArrayInputStream(body), result::add);
+
+    assertThat(result).extracting(RoslynIssue::getRuleId).containsExactly("S100", "S101");
+  }
+
+  @Test
+  void readIssueBatches_gzipEncoding_decompressesEachBatch() throws IOException {
+    var body = compress(RESPONSE + "\n" + RESPONSE.replace("S10", "S20") + "\n", GZIPOutputStream::new);
+
+    underTest.readIssueBatches(headers("gzip"), new ByteArrayInputStream(body), result::add);
+
+    assertThat(result).extracting(RoslynIssue::getRuleId).containsExactly("S100", "S101", "S200", "S201");
+  }
+
+  @Test
+  void readIssueBatches_gzipEncodingWithEmptyBody_returnsNoIssues() throws IOException {
+    underTest.readIssueBatches(headers("gzip"), new ByteArrayInputStream(new byte[0]), result::add);
+
+    assertThat(result).isEmpty();
+  }
+
+  @Test
+  void readIssues_identityEncoding_readsBodyAsIs() throws IOException {
+    underTest.readIssues(headers("identity"), new ByteArrayInputStream(RESPONSE.getBytes(StandardCharsets.UTF_8)), result::add);
+
+    assertThat(result).hasSize(2);
+    assertThat(serverCapabilities.isGzipRequestSupported()).isFalse();
+  }
+
+  @Test
+  void readIssues_sessionProtocolVersion_remembersSessionSupport() throws IOException {
+    var headers = HttpHeaders.of(Map.of("Content-Type", List.of("application/json; charset=utf-8"), "X-Protocol-Version", List.of("3")), (name, value) -> true);
+
+    underTest.readIssues(headers, new ByteArrayInputStream(RESPONSE.getBytes(StandardCharsets.UTF_8)), result::add);
+
+    assertThat(result).hasSize(2);
+    assertThat(serverCapabilities.isSessionSupported()).isTrue();
+    assertThat(serverCapabilities.isAnalyzeStreamSupported()).isFalse();
+  }
+
+  @Test
+  void readIssues_analyzeStreamProtocolVersion_remembersAnalyzeStreamAndSessionSupport() throws IOException {
+    var headers = HttpHeaders.of(Map.of("Content-Type", List.of("application/json; charset=utf-8"), "X-Protocol-Version", List.of("4")), (name, value) -> true);
+
+    underTest.readIssues(headers, new ByteArrayInputStream(RESPONSE.getBytes(StandardCharsets.UTF_8)), result::add);
+
+    assertThat(result).hasSize(2);
+    assertThat(serverCapabilities.isAnalyzeStreamSupported()).isTrue();
+    assertThat(serverCapabilities.isSessionSupported()).isTrue();
+  }
+
+  @Test
+  void readIssueBatches_olderOrInvalidProtocolVersion_doesNotSupportSession() throws IOException {
+    for (var version : List.of("2", "three")) {
+      var headers = HttpHeaders.of(Map.of("Content-Type", List.of("application/json; charset=utf-8"), "X-Protocol-Version", List.of(version)), (name, value) -> true);
+
+      underTest.readIssueBatches(headers, new ByteArrayInputStream(new byte[0]), result::add);
+    }
+
+    assertThat(serverCapabilities.isSessionSupported()).isFalse();
+  }
+
+  @Test
+  void readIssues_unknownEncoding_throws() {
+    var body = new ByteArrayInputStream(RESPONSE.getBytes(StandardCharsets.UTF_8));
+
+    var thrown = assertThrows(IOException.class, () -> underTest.readIssues(headers("br"), body, result::add));
+
+    assertThat(thrown).hasMessage("Unsupported content encoding: br");
+  }
+
+  private static HttpHeaders headers(String contentEncoding) {
+    return HttpHeaders.of(Map.of("Content-Type", List.of("application/json; charset=utf-8"), "Content-Encoding", List.of(contentEncoding)), (name, value) -> true);
+  }
+
+  private static byte[] compress(String content, Compressor compressor) throws IOException {
+    var output = new ByteArrayOutputStream();
+    try (var compressed = compressor.wrap(output)) {
+      compressed.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+    return output.toByteArray();
+  }
+
+  private interface Compressor {
+    OutputStream wrap(OutputStream output) throws IOException;
+  }
+}
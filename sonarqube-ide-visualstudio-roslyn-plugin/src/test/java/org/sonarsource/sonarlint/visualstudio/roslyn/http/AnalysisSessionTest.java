@@ -0,0 +1,129 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.sonarsource.sonarlint.visualstudio.roslyn.Hash128;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AnalysisSessionTest {
+  private static final Hash128 CONFIGURATION_1 = Hash128.builder().add("configuration-1").build();
+  private static final Hash128 CONFIGURATION_2 = Hash128.builder().add("configuration-2").build();
+  private final AnalysisSession underTest = new AnalysisSession();
+
+  @Test
+  void getConfigId_returnsTheIdOfTheRegisteredConfigurationsOnly() {
+    assertThat(underTest.getConfigId(CONFIGURATION_1)).isNull();
+
+    underTest.register(CONFIGURATION_1, "config-1");
+
+    assertThat(underTest.getConfigId(CONFIGURATION_1)).isEqualTo("config-1");
+    assertThat(underTest.getConfigId(CONFIGURATION_2)).isNull();
+
+    underTest.register(CONFIGURATION_2, "config-2");
+
+    assertThat(underTest.getConfigId(CONFIGURATION_1)).isEqualTo("config-1");
+    assertThat(underTest.getConfigId(CONFIGURATION_2)).isEqualTo("config-2");
+  }
+
+  @Test
+  void register_tooManyConfigurations_forgetsThePreviousOnes() {
+    for (var i = 0; i < AnalysisSession.MAX_REGISTRATIONS; i++) {
+      underTest.register(Hash128.builder().add("other-" + i).build(), "other-" + i);
+    }
+    underTest.register(Hash128.builder().add("other-0").build(), "other-0-again");
+
+    assertThat(underTest.getConfigId(Hash128.builder().add("other-1").build())).isEqualTo("other-1");
+
+    underTest.register(CONFIGURATION_1, "config-1");
+
+    assertThat(underTest.getConfigId(CONFIGURATION_1)).isEqualTo("config-1");
+    assertThat(underTest.getConfigId(Hash128.builder().add("other-1").build())).isNull();
+  }
+
+  @Test
+  void invalidate_forgetsTheConfigIdUnlessAnotherOneWasRegistered() {
+    underTest.register(CONFIGURATION_1, "config-1");
+    underTest.register(CONFIGURATION_1, "config-2");
+
+    underTest.invalidate("config-1");
+
+    assertThat(underTest.getConfigId(CONFIGURATION_1)).isEqualTo("config-2");
+
+    underTest.invalidate("config-2");
+
+    assertThat(underTest.getConfigId(CONFIGURATION_1)).isNull();
+  }
+
+  @Test
+  void register_concurrentRegistrations_sendOneSessionRequestAndShareItsConfigId() {
+    var sessionRequests = new AtomicInteger();
+    var sessionResponse = new CompletableFuture<String>();
+
+    var first = underTest.register(CONFIGURATION_1, () -> {
+      sessionRequests.incrementAndGet();
+      return sessionResponse;
+    });
+    var second = underTest.register(CONFIGURATION_1, () -> {
+      sessionRequests.incrementAndGet();
+      return CompletableFuture.completedFuture("config-2");
+    });
+
+    assertThat(first).isNotDone();
+    assertThat(second).isNotDone();
+
+    sessionResponse.complete("config-1");
+
+    assertThat(sessionRequests).hasValue(1);
+    assertThat(first).isCompletedWithValue("config-1");
+    assertThat(second).isCompletedWithValue("config-1");
+    assertThat(underTest.getConfigId(CONFIGURATION_1)).isEqualTo("config-1");
+  }
+
+  @Test
+  void register_afterTheRegistrationCompleted_sendsANewSessionRequest() {
+    underTest.register(CONFIGURATION_1, () -> CompletableFuture.completedFuture(null)).join();
+
+    var registration = underTest.register(CONFIGURATION_1, () -> CompletableFuture.completedFuture("config-1"));
+
+    assertThat(registration).isCompletedWithValue("config-1");
+  }
+
+  @Test
+  void register_sessionRequestFails_failsTheRegisteringRequestOnlyAndRegistersNothing() {
+    var sessionResponse = new CompletableFuture<String>();
+    var first = underTest.register(CONFIGURATION_1, () -> sessionResponse);
+    var second = underTest.register(CONFIGURATION_1, () -> CompletableFuture.completedFuture("config-2"));
+
+    sessionResponse.completeExceptionally(new IOException("connection reset"));
+
+    var thrown = assertThrows(CompletionException.class, first::join);
+    assertThat(thrown).hasCauseInstanceOf(IOException.class);
+    // the configuration is then sent with the request
+    assertThat(second).isCompletedWithValue(null);
+    assertThat(underTest.getConfigId(CONFIGURATION_1)).isNull();
+  }
+}
@@ -0,0 +1,282 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import com.google.gson.Gson;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.rule.RuleKey;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueFlow;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueLocation;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueQuickFix;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueTextRange;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BinaryCodecTest {
+  private static final UUID ANALYSIS_ID = UUID.fromString("ed89f185-c2d6-4d03-aef1-334747e7fbdb");
+  private static final URI FILE_URI = URI.create("file:///C:/project/src/%C3%A9t%C3%A9/File1.cs");
+  private final BinaryCodec underTest = new BinaryCodec();
+
+  @Test
+  void encodeAnalysisRequest_isDecodedByTheServer() throws IOException {
+    var analysisProperties = new LinkedHashMap<String, String>();
+    analysisProperties.put("sonar.cs.text", "d\u00e9j\u00e0 vu \ud83d\ude00");
+    analysisProperties.put("sonar.cs.empty", null);
+    var fileUris = List.of(FILE_URI, URI.create("file://localhost/$c/project/src/File2.cs"));
+    var activeRules = List.of(createMockActiveRule("csharpsquid:S100", Map.of("format", "^[A-Z]")), createMockActiveRule("vbnet:S101", null));
+
+    var result = BinaryRequestDecoder.decode(encode(fileUris, activeRules, analysisProperties, new AnalyzerInfoDto(true, false), ANALYSIS_ID));
+
+    assertThat(result).isEqualTo(new AnalysisRequestDto(fileUris,
+      List.of(new ActiveRuleDto("csharpsquid:S100", Map.of("format", "^[A-Z]")), new ActiveRuleDto("vbnet:S101", null)),
+      analysisProperties, new AnalyzerInfoDto(true, false), ANALYSIS_ID));
+  }
+
+  @Test
+  void encodeAnalysisRequest_withNullValues_isDecodedByTheServer() throws IOException {
+    var result = BinaryRequestDecoder.decode(encode(List.of(), null, null, null, null));
+
+    assertThat(result).isEqualTo(new AnalysisRequestDto(List.of(), null, null, null, null));
+  }
+
+  @Test
+  void encodeAnalysisRequest_isSplitInChunksOfTheWholeRequest() throws IOException {
+    var fileUris = new ArrayList<URI>();
+    for (var i = 0; i < 5_000; i++) {
+      fileUris.add(URI.create("file:///C:/project/src/File" + i + ".cs"));
+    }
+    var activeRules = List.of(createMockActiveRule("csharpsquid:S100", Map.of("format", "^[A-Z]")));
+    var analysisProperties = Map.of("sonar.cs.analyzeGeneratedCode", "false");
+    var analyzerInfo = new AnalyzerInfoDto(false, true);
+
+    var chunks = new ArrayList<byte[]>();
+    underTest.encodeAnalysisRequest(fileUris, activeRules, analysisProperties, analyzerInfo, ANALYSIS_ID).forEach(chunks::add);
+
+    assertThat(chunks).hasSizeGreaterThan(1);
+    var output = new ByteArrayOutputStream();
+    chunks.forEach(output::writeBytes);
+    var expectedRules = List.of(new ActiveRuleDto("csharpsquid:S100", Map.of("format", "^[A-Z]")));
+    assertThat(BinaryRequestDecoder.decode(output.toByteArray())).isEqualTo(new AnalysisRequestDto(fileUris, expectedRules, analysisProperties, analyzerInfo, ANALYSIS_ID));
+  }
+
+  @Test
+  void encodeAnalysisRequest_withoutConfiguration_isDecodedByTheServer() throws IOException {
+    var fileUris = List.of(FILE_URI);
+
+    var result = BinaryRequestDecoder.decode(encode(fileUris, null, null, null, ANALYSIS_ID));
+
+    assertThat(result).isEqualTo(new AnalysisRequestDto(fileUris, null, null, null, ANALYSIS_ID));
+  }
+
+  @Test
+  void encodeAnalysisRequest_largeActiveRules_areSplicedAsOneChunkReusedByTheNextRequests() throws IOException {
+    var activeRules = new ArrayList<ActiveRule>();
+    var expectedRules = new ArrayList<ActiveRuleDto>();
+    for (var i = 0; i < 1_000; i++) {
+      activeRules.add(createMockActiveRule("csharpsquid:S" + i, Map.of("format", "^[A-Z][a-zA-Z0-9]*$")));
+      expectedRules.add(new ActiveRuleDto("csharpsquid:S" + i, Map.of("format", "^[A-Z][a-zA-Z0-9]*$")));
+    }
+    var fileUris = List.of(FILE_URI);
+    var first = new ArrayList<byte[]>();
+    underTest.encodeAnalysisRequest(fileUris, activeRules, Map.of(), null, ANALYSIS_ID).forEach(first::add);
+    var second = new ArrayList<byte[]>();
+    underTest.encodeAnalysisRequest(fileUris, activeRules, Map.of(), null, ANALYSIS_ID).forEach(second::add);
+
+    assertThat(second).hasSize(3);
+    assertThat(second.get(1)).isSameAs(first.get(1));
+    var output = new ByteArrayOutputStream();
+    second.forEach(output::writeBytes);
+    assertThat(BinaryRequestDecoder.decode(output.toByteArray())).isEqualTo(new AnalysisRequestDto(fileUris, expectedRules, Map.of(), null, ANALYSIS_ID));
+  }
+
+  @Test
+  void analysisResponse_roundTrips() throws IOException {
+    var issue = new RoslynIssue("csharpsquid:S100",
+      new RoslynIssueLocation(FILE_URI, "message", new RoslynIssueTextRange(1, 2, 0, Integer.MAX_VALUE)),
+      List.of(new RoslynIssueFlow(List.of(new RoslynIssueLocation(FILE_URI, "secondary", null))), new RoslynIssueFlow(null)),
+      List.of(new RoslynIssueQuickFix("fix")));
+    var issueWithNullValues = new RoslynIssue(null, null, null, null);
+
+    var result = underTest.readAnalysisResponse(new ByteArrayInputStream(write(new AnalysisResponseDto(List.of(issue, issueWithNullValues)))));
+
+    assertThat(result.roslynIssues()).hasSize(2);
+    var first = result.roslynIssues().get(0);
+    assertThat(first.getRuleId()).isEqualTo("csharpsquid:S100");
+    assertThat(first.getPrimaryLocation().getFileUri()).isEqualTo(FILE_URI);
+    assertThat(first.getPrimaryLocation().getMessage()).isEqualTo("message");
+    var textRange = first.getPrimaryLocation().getTextRange();
+    assertThat(textRange.getStartLine()).isEqualTo(1);
+    assertThat(textRange.getEndLine()).isEqualTo(2);
+    assertThat(textRange.getStartLineOffset()).isZero();
+    assertThat(textRange.getEndLineOffset()).isEqualTo(Integer.MAX_VALUE);
+    assertThat(first.getPrimaryLocation().getFileId()).isNull();
+    var secondaryLocation = first.getFlows().get(0).getLocations().get(0);
+    assertThat(secondaryLocation.getMessage()).isEqualTo("secondary");
+    assertThat(secondaryLocation.getTextRange()).isNull();
+    assertThat(secondaryLocation.getFileUri()).isSameAs(first.getPrimaryLocation().getFileUri());
+    assertThat(first.getFlows().get(1).getLocations()).isNull();
+    assertThat(first.getQuickFixes()).extracting(RoslynIssueQuickFix::getValue).containsExactly("fix");
+    var second = result.roslynIssues().get(1);
+    assertThat(second.getRuleId()).isNull();
+    assertThat(second.getPrimaryLocation()).isNull();
+    assertThat(second.getFlows()).isNull();
+    assertThat(second.getQuickFixes()).isNull();
+  }
+
+  @Test
+  void analysisResponse_negativeTextRangeValues_roundTrip() throws IOException {
+    var issue = new RoslynIssue("S100", new RoslynIssueLocation(FILE_URI, null, new RoslynIssueTextRange(-1, Integer.MIN_VALUE, -64, 64)), null, null);
+
+    var result = underTest.readAnalysisResponse(new ByteArrayInputStream(write(new AnalysisResponseDto(List.of(issue)))));
+
+    var textRange = result.roslynIssues().get(0).getPrimaryLocation().getTextRange();
+    assertThat(textRange.getStartLine()).isEqualTo(-1);
+    assertThat(textRange.getEndLine()).isEqualTo(Integer.MIN_VALUE);
+    assertThat(textRange.getStartLineOffset()).isEqualTo(-64);
+    assertThat(textRange.getEndLineOffset()).isEqualTo(64);
+  }
+
+  @Test
+  void analysisResponse_isSmallerThanJson() throws IOException {
+    var issues = new ArrayList<RoslynIssue>();
+    for (var i = 0; i < 100; i++) {
+      issues.add(new RoslynIssue("csharpsquid:S100", new RoslynIssueLocation(FILE_URI, "message", new RoslynIssueTextRange(i, i, 4, 12)), List.of(), List.of()));
+    }
+    var response = new AnalysisResponseDto(issues);
+    var json = new Gson().toJson(issues.get(0));
+
+    assertThat(write(response).length).isLessThan(json.length() * issues.size() / 2);
+  }
+
+  @Test
+  void analysisResponse_withFileIds_roundTrips() throws IOException {
+    var issue = new RoslynIssue("S100", new RoslynIssueLocation(null, 300, "message", new RoslynIssueTextRange(1, 1, 0, 4)),
+      List.of(new RoslynIssueFlow(List.of(new RoslynIssueLocation(null, 0, "secondary", null)))), null);
+
+    var result = underTest.readAnalysisResponse(new ByteArrayInputStream(write(new AnalysisResponseDto(List.of(issue)))));
+
+    var primaryLocation = result.roslynIssues().get(0).getPrimaryLocation();
+    assertThat(primaryLocation.getFileId()).isEqualTo(300);
+    assertThat(primaryLocation.getFileUri()).isNull();
+    assertThat(primaryLocation.getMessage()).isEqualTo("message");
+    assertThat(primaryLocation.getTextRange().getEndLineOffset()).isEqualTo(4);
+    assertThat(result.roslynIssues().get(0).getFlows().get(0).getLocations().get(0).getFileId()).isZero();
+  }
+
+  @Test
+  void readAnalysisResponse_passesEachIssueToSinkAndReportsEmptyInput() throws IOException {
+    var issues = List.of(new RoslynIssue("S100", null, null, null), new RoslynIssue("S101", null, null, null));
+    var received = new ArrayList<String>();
+
+    var hasBody = underTest.readAnalysisResponse(new ByteArrayInputStream(write(new AnalysisResponseDto(issues))), issue -> received.add(issue.getRuleId()));
+    var emptyHasBody = underTest.readAnalysisResponse(new ByteArrayInputStream(new byte[0]), issue -> received.add(issue.getRuleId()));
+
+    assertThat(hasBody).isTrue();
+    assertThat(emptyHasBody).isFalse();
+    assertThat(received).containsExactly("S100", "S101");
+  }
+
+  @Test
+  void readAnalysisResponse_rejectedRule_skipsTheRestOfTheIssue() throws IOException {
+    var skipped = new RoslynIssue("csharpsquid:S101", new RoslynIssueLocation(URI.create("file:///C:/other.cs"), 5, "message", new RoslynIssueTextRange(-1, 2, 3, 4)),
+      List.of(new RoslynIssueFlow(List.of(new RoslynIssueLocation(FILE_URI, "secondary", null), new RoslynIssueLocation(null, 0, null, null))), new RoslynIssueFlow(null)),
+      List.of(new RoslynIssueQuickFix("fix"), new RoslynIssueQuickFix(null)));
+    var accepted = new RoslynIssue("csharpsquid:S100", new RoslynIssueLocation(FILE_URI, "kept", new RoslynIssueTextRange(1, 1, 0, 4)), List.of(), List.of());
+    var body = write(new AnalysisResponseDto(List.of(skipped, accepted, new RoslynIssue(null, null, null, null), skipped)));
+    var checkedRuleIds = new ArrayList<String>();
+    var received = new ArrayList<RoslynIssue>();
+
+    underTest.readAnalysisResponse(new ByteArrayInputStream(body), new RoslynIssueSink() {
+      @Override
+      public boolean acceptsRule(String ruleId) {
+        checkedRuleIds.add(ruleId);
+        return "csharpsquid:S100".equals(ruleId);
+      }
+
+      @Override
+      public void accept(RoslynIssue roslynIssue) {
+        received.add(roslynIssue);
+      }
+    });
+
+    assertThat(checkedRuleIds).containsExactly("csharpsquid:S101", "csharpsquid:S100", null, "csharpsquid:S101");
+    assertThat(received).singleElement().satisfies(issue -> {
+      assertThat(issue.getPrimaryLocation().getFileUri()).isEqualTo(FILE_URI);
+      assertThat(issue.getPrimaryLocation().getMessage()).isEqualTo("kept");
+      assertThat(issue.getPrimaryLocation().getTextRange().getEndLineOffset()).isEqualTo(4);
+    });
+  }
+
+  @Test
+  void readAnalysisResponse_truncatedInput_throws() throws IOException {
+    var body = write(new AnalysisResponseDto(List.of(new RoslynIssue("S100", new RoslynIssueLocation(FILE_URI, "message", null), null, null))));
+    var truncated = new ByteArrayInputStream(Arrays.copyOf(body, body.length - 3));
+
+    assertThrows(EOFException.class, () -> underTest.readAnalysisResponse(truncated, issue -> {
+    }));
+  }
+
+  @Test
+  void readAnalysisResponse_unknownVersion_throws() {
+    var input = new ByteArrayInputStream(new byte[] {(byte) (BinaryCodec.FORMAT_VERSION + 1)});
+
+    var thrown = assertThrows(IOException.class, () -> underTest.readAnalysisResponse(input, issue -> {
+    }));
+
+    assertThat(thrown).hasMessage("Unsupported binary format version: 2");
+  }
+
+  private byte[] encode(List<URI> fileUris, List<ActiveRule> activeRules, Map<String, String> analysisProperties, AnalyzerInfoDto analyzerInfo, UUID analysisId) {
+    var output = new ByteArrayOutputStream();
+    underTest.encodeAnalysisRequest(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId).forEach(output::writeBytes);
+    return output.toByteArray();
+  }
+
+  private byte[] write(AnalysisResponseDto response) throws IOException {
+    var output = new ByteArrayOutputStream();
+    underTest.writeAnalysisResponse(output, response);
+    return output.toByteArray();
+  }
+
+  private static ActiveRule createMockActiveRule(String ruleKey, Map<String, String> params) {
+    var activeRule = mock(ActiveRule.class);
+    var rule = mock(RuleKey.class);
+    when(rule.toString()).thenReturn(ruleKey);
+    when(activeRule.ruleKey()).thenReturn(rule);
+    when(activeRule.params()).thenReturn(params);
+    return activeRule;
+  }
+}
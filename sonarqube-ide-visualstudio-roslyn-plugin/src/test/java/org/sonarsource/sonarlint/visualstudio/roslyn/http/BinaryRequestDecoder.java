@@ -0,0 +1,123 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Server side of the {@link BinaryCodec} request format, to check the requests encoded by the client.
+ */
+final class BinaryRequestDecoder {
+  private static final int NULL = 0;
+  private static final int ANALYZER_INFO_CSHARP_ENTERPRISE = 2;
+  private static final int ANALYZER_INFO_VB_ENTERPRISE = 4;
+
+  private BinaryRequestDecoder() {
+  }
+
+  static AnalysisRequestDto decode(byte[] body) throws IOException {
+    return decode(new ByteArrayInputStream(body));
+  }
+
+  static AnalysisRequestDto decode(InputStream input) throws IOException {
+    var in = new DataInputStream(input);
+    var version = in.readUnsignedByte();
+    if (version != BinaryCodec.FORMAT_VERSION) {
+      throw new IOException("Unsupported binary format version: " + version);
+    }
+    var fileUris = readList(in, uriIn -> {
+      var text = readString(uriIn);
+      return text == null ? null : URI.create(text);
+    });
+    var activeRules = readList(in, ruleIn -> new ActiveRuleDto(readString(ruleIn), readStringMap(ruleIn)));
+    var analysisProperties = readStringMap(in);
+    var analyzerInfoFlags = in.readUnsignedByte();
+    var analyzerInfo = analyzerInfoFlags == NULL ? null
+      : new AnalyzerInfoDto((analyzerInfoFlags & ANALYZER_INFO_CSHARP_ENTERPRISE) != 0, (analyzerInfoFlags & ANALYZER_INFO_VB_ENTERPRISE) != 0);
+    var analysisId = in.readUnsignedByte() == NULL ? null : new UUID(in.readLong(), in.readLong());
+    if (in.read() != -1) {
+      throw new IOException("Unexpected bytes after the request");
+    }
+    return new AnalysisRequestDto(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+  }
+
+  private static Map<String, String> readStringMap(DataInputStream in) throws IOException {
+    var size = readVarInt(in) - 1;
+    if (size < 0) {
+      return null;
+    }
+    var map = new LinkedHashMap<String, String>();
+    for (var i = 0; i < size; i++) {
+      map.put(readString(in), readString(in));
+    }
+    return map;
+  }
+
+  private static <T> List<T> readList(DataInputStream in, ElementReader<T> elementReader) throws IOException {
+    var size = readVarInt(in) - 1;
+    if (size < 0) {
+      return null;
+    }
+    var list = new ArrayList<T>();
+    for (var i = 0; i < size; i++) {
+      list.add(elementReader.read(in));
+    }
+    return list;
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    var length = readVarInt(in) - 1;
+    if (length < 0) {
+      return null;
+    }
+    var bytes = in.readNBytes(length);
+    if (bytes.length != length) {
+      throw new EOFException();
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static int readVarInt(DataInputStream in) throws IOException {
+    var value = 0;
+    for (var shift = 0; shift < 32; shift += 7) {
+      var b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint in binary payload");
+  }
+
+  private interface ElementReader<T> {
+    T read(DataInputStream in) throws IOException;
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.sonarsource.sonarlint.visualstudio.roslyn.Hash128;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FragmentCacheTest {
+  private static final Hash128 HASH_1 = Hash128.builder().add("rules-1").build();
+  private static final Hash128 HASH_2 = Hash128.builder().add("rules-2").build();
+  private final FragmentCache underTest = new FragmentCache();
+  private final AtomicInteger encodeCount = new AtomicInteger();
+
+  @Test
+  void get_sameFingerprint_reusesTheEncodedBytes() throws IOException {
+    var first = underTest.get(HASH_1, this::encode);
+    var second = underTest.get(HASH_1, this::encode);
+
+    assertThat(second).isSameAs(first);
+    assertThat(encodeCount).hasValue(1);
+  }
+
+  @Test
+  void get_otherFingerprint_encodesItAndKeepsBoth() throws IOException {
+    var first = underTest.get(HASH_1, this::encode);
+    var second = underTest.get(HASH_2, this::encode);
+    var third = underTest.get(HASH_1, this::encode);
+
+    assertThat(second).isNotSameAs(first);
+    assertThat(third).isSameAs(first);
+    assertThat(encodeCount).hasValue(2);
+  }
+
+  @Test
+  void get_tooManyFingerprints_forgetsThePreviousFragments() throws IOException {
+    var first = underTest.get(HASH_1, this::encode);
+    for (var i = 1; i < FragmentCache.MAX_FRAGMENTS; i++) {
+      underTest.get(Hash128.builder().add("other-" + i).build(), this::encode);
+    }
+
+    assertThat(underTest.get(HASH_1, this::encode)).isSameAs(first);
+
+    underTest.get(HASH_2, this::encode);
+
+    assertThat(underTest.get(HASH_1, this::encode)).isNotSameAs(first).isEqualTo(first);
+    assertThat(encodeCount).hasValue(FragmentCache.MAX_FRAGMENTS + 2);
+  }
+
+  private byte[] encode() {
+    encodeCount.incrementAndGet();
+    return new byte[] {1, 2, 3};
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GzipBodyTest {
+
+  @Test
+  void chunks_areCompressedToTheConcatenationOfTheUncompressedBody() throws IOException {
+    var chunks = new ArrayList<byte[]>();
+    var expected = new ByteArrayOutputStream();
+    for (var i = 0; i < 1_000; i++) {
+      var chunk = ("{\"FileUri\":\"file:///C:/project/src/File" + i + ".cs\"}").getBytes();
+      chunks.add(chunk);
+      expected.writeBytes(chunk);
+    }
+
+    var compressed = concat(new GzipBody(chunks));
+
+    assertThat(compressed.length).isLessThan(expected.size());
+    assertThat(decompress(compressed)).isEqualTo(expected.toByteArray());
+  }
+
+  @Test
+  void emptyBody_isCompressedToAnEmptyGzipStream() throws IOException {
+    var compressed = concat(new GzipBody(List.of()));
+
+    assertThat(decompress(compressed)).isEmpty();
+  }
+
+  @Test
+  void iteratingTwice_producesTheSameBody() {
+    var underTest = new GzipBody(List.of("body".getBytes()));
+
+    assertThat(concat(underTest)).isEqualTo(concat(underTest));
+  }
+
+  @Test
+  void close_midBody_releasesTheDeflaterAndFailsTheNextChunk() {
+    // random bytes do not compress, so that each chunk of the compressed body needs about one chunk of the uncompressed one
+    var random = new Random(42);
+    var chunks = new ArrayList<byte[]>();
+    for (var i = 0; i < 100; i++) {
+      var chunk = new byte[ChunkedBody.CHUNK_SIZE];
+      random.nextBytes(chunk);
+      chunks.add(chunk);
+    }
+    var underTest = new GzipBody(chunks);
+    var iterator = underTest.iterator();
+    iterator.next();
+
+    underTest.close();
+
+    var thrown = assertThrows(UncheckedIOException.class, () -> {
+      while (iterator.hasNext()) {
+        iterator.next();
+      }
+    });
+    assertThat(thrown).hasMessageContaining("closed");
+  }
+
+  @Test
+  void close_afterTheWholeBody_keepsTheBodyIntact() throws IOException {
+    var underTest = new GzipBody(List.of("body".getBytes()));
+    var compressed = concat(underTest);
+
+    underTest.close();
+
+    assertThat(decompress(compressed)).isEqualTo("body".getBytes());
+  }
+
+  @Test
+  void isLargerThan_comparesTheTotalSizeOfTheChunks() {
+    var chunks = List.of(new byte[10], new byte[10]);
+
+    assertThat(GzipBody.isLargerThan(chunks, 19)).isTrue();
+    assertThat(GzipBody.isLargerThan(chunks, 20)).isFalse();
+    assertThat(GzipBody.isLargerThan(List.of(), 0)).isFalse();
+  }
+
+  private static byte[] concat(Iterable<byte[]> chunks) {
+    var output = new ByteArrayOutputStream();
+    chunks.forEach(output::writeBytes);
+    return output.toByteArray();
+  }
+
+  private static byte[] decompress(byte[] compressed) throws IOException {
+    try (var input = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      return input.readAllBytes();
+    }
+  }
+}
@@ -19,25 +19,45 @@
  */
 package org.sonarsource.sonarlint.visualstudio.roslyn.http;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.sonar.api.batch.rule.ActiveRule;
 import org.sonar.api.testfixtures.log.LogTesterJUnit5;
 import org.sonar.api.utils.log.LoggerLevel;
+import org.sonarsource.sonarlint.visualstudio.roslyn.IssueReceiverExecutor;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueLocation;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueTextRange;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -55,55 +75,292 @@ class HttpAnalysisRequestHandlerTests {
   @RegisterExtension
   private final LogTesterJUnit5 logTester = new LogTesterJUnit5();
   private HttpClientHandler httpClientHandler;
+  private ServerCapabilities serverCapabilities;
+  private IssueReceiverExecutor issueReceiverExecutor;
   private HttpAnalysisRequestHandler analysisRequestHandler;
+  private List<RoslynIssue> result;
 
   @BeforeEach
   void init() {
     httpClientHandler = mock(HttpClientHandler.class);
-    analysisRequestHandler = new HttpAnalysisRequestHandler(httpClientHandler);
+    serverCapabilities = mock(ServerCapabilities.class);
+    issueReceiverExecutor = new IssueReceiverExecutor();
+    analysisRequestHandler = new HttpAnalysisRequestHandler(httpClientHandler, serverCapabilities, new AnalysisResponseDecoder(new JsonCodec(), new BinaryCodec(), serverCapabilities),
+      issueReceiverExecutor);
+    result = new ArrayList<>();
+  }
+
+  @AfterEach
+  void tearDown() {
+    issueReceiverExecutor.stop();
   }
 
   @Test
-  void analyze_requestSucceeds_ReturnsIssues() throws IOException, InterruptedException {
+  void analyze_requestSucceeds_ReturnsIssues() {
     mockResponseWithOneIssue(200);
 
-    var result = analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+    var complete = analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add);
 
+    assertThat(complete).isTrue();
     assertThat(result).hasSize(1);
-    verify(httpClientHandler).sendAnalyzeRequest(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+    verify(httpClientHandler).sendAnalyzeRequestAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
   }
 
   @Test
-  void analyze_requestSucceedsWithEmptyBody_logsAndReturnsEmptyIssues() throws IOException, InterruptedException {
+  void analyze_requestSucceedsWithEmptyBody_logsAndReturnsEmptyIssues() {
     mockResponse(200, "");
 
-    var result = analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+    var complete = analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add);
 
+    assertThat(complete).isFalse();
     assertThat(result).isEmpty();
     assertThat(logTester.logs(LoggerLevel.WARN)).contains("No body received from the server.");
   }
 
   @Test
-  void analyze_requestFails_returnsEmptyIssues() throws IOException, InterruptedException {
+  void analyze_requestSucceedsWithSeveralIssues_passesEachIssueToSinkInOrder() {
+    mockResponse(200, "{\"Other\":{\"Ignored\":[1,2]},\"RoslynIssues\":[{\"RuleId\":\"S100\"},{\"RuleId\":\"S101\"},{\"RuleId\":\"S102\"}]}");
+
+    analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add);
+
+    assertThat(result).extracting(RoslynIssue::getRuleId).containsExactly("S100", "S101", "S102");
+  }
+
+  @Test
+  void analyze_requestSucceedsWithNullIssues_returnsEmptyIssues() {
+    mockResponse(200, "{\"RoslynIssues\":null}");
+
+    analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add);
+
+    assertThat(result).isEmpty();
+  }
+
+  @Test
+  void analyze_sinkThrows_propagatesAsIllegalStateException() {
+    mockResponseWithOneIssue(200);
+
+    var thrown = assertThrows(IllegalStateException.class, () -> analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, issue -> {
+      throw new IllegalArgumentException("sink failure");
+    }));
+
+    assertThat(thrown).hasMessageContaining("Response crashed due to: sink failure");
+  }
+
+  @Test
+  void analyze_requestFails_returnsEmptyIssues() {
     mockResponseWithOneIssue(404);
 
-    var result = analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+    var complete = analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add);
 
+    assertThat(complete).isFalse();
     assertThat(result).isEmpty();
-    verify(httpClientHandler).sendAnalyzeRequest(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+    verify(httpClientHandler).sendAnalyzeRequestAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
     assertThat(logTester.logs(LoggerLevel.ERROR)).contains("Response from server is 404.");
   }
 
   @Test
-  void analyze_throws_logsAndReturnsEmptyIssues() throws IOException, InterruptedException {
+  void analyze_throws_logsAndReturnsEmptyIssues() {
     var exceptionMessage = "message";
-    when(httpClientHandler.sendAnalyzeRequest(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId)).thenThrow(new RuntimeException(exceptionMessage));
+    when(httpClientHandler.sendAnalyzeRequestAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId))
+      .thenReturn(CompletableFuture.failedFuture(new RuntimeException(exceptionMessage)));
 
-    var thrown = assertThrows(IllegalStateException.class, () -> analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId));
+    var thrown = assertThrows(IllegalStateException.class, () -> analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add));
 
     assertThat(thrown).hasMessageContaining("Response crashed due to: " + exceptionMessage);
   }
 
+  @Test
+  void analyze_streamingSupported_passesIssuesOfEachBatchToSink() {
+    when(serverCapabilities.isAnalyzeStreamSupported()).thenReturn(true);
+    mockStreamResponse(200, """
+      {"FileUri":"file:///C:/project/src/File1.cs","RoslynIssues":[{"RuleId":"S100"},{"RuleId":"S101"}]}
+      {"FileUri":"file:///C:/project/src/File2.cs","RoslynIssues":[]}
+      {"FileUri":"file:///C:/project/src/File3.cs","RoslynIssues":[{"RuleId":"S102"}]}
+      """);
+
+    analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add);
+
+    assertThat(result).extracting(RoslynIssue::getRuleId).containsExactly("S100", "S101", "S102");
+    verify(httpClientHandler, never()).sendAnalyzeRequestAsync(any(), any(), any(), any(), any());
+    verify(serverCapabilities, never()).setAnalyzeStreamUnsupported();
+  }
+
+  @Test
+  void analyze_streamingSupportedWithEmptyBody_returnsEmptyIssues() {
+    when(serverCapabilities.isAnalyzeStreamSupported()).thenReturn(true);
+    mockStreamResponse(200, "");
+
+    analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add);
+
+    assertThat(result).isEmpty();
+    verify(httpClientHandler, never()).sendAnalyzeRequestAsync(any(), any(), any(), any(), any());
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {404, 405, 501})
+  void analyze_streamingNotSupportedByServer_fallsBackToSingleResponseAndRemembersIt(int statusCode) {
+    when(serverCapabilities.isAnalyzeStreamSupported()).thenReturn(true);
+    mockStreamResponse(statusCode, "");
+    mockResponseWithOneIssue(200);
+
+    analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add);
+
+    assertThat(result).hasSize(1);
+    verify(serverCapabilities).setAnalyzeStreamUnsupported();
+    verify(httpClientHandler).sendAnalyzeRequestAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+  }
+
+  @Test
+  void analyze_streamingFails_logsAndDoesNotFallBack() {
+    when(serverCapabilities.isAnalyzeStreamSupported()).thenReturn(true);
+    mockStreamResponse(500, "");
+
+    var complete = analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add);
+
+    assertThat(complete).isFalse();
+    assertThat(result).isEmpty();
+    assertThat(logTester.logs(LoggerLevel.ERROR)).contains("Response from server is 500.");
+    verify(serverCapabilities, never()).setAnalyzeStreamUnsupported();
+    verify(httpClientHandler, never()).sendAnalyzeRequestAsync(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  void analyze_streamingNotSupported_doesNotCallStreamingEndpoint() {
+    mockResponseWithOneIssue(200);
+
+    analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add);
+
+    verify(httpClientHandler, never()).sendAnalyzeStreamRequestAsync(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  void analyze_binaryResponse_decodesIssuesAndRemembersBinarySupport() {
+    mockResponse(200, BinaryCodec.MEDIA_TYPE, binaryResponse("S100", "S101"));
+
+    analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add);
+
+    assertThat(result).extracting(RoslynIssue::getRuleId).containsExactly("S100", "S101");
+    assertThat(result.get(0).getPrimaryLocation().getTextRange().getEndLineOffset()).isEqualTo(5);
+    verify(serverCapabilities).setBinaryFormatSupported();
+  }
+
+  @Test
+  void analyze_binaryResponseWithEmptyBody_logsAndReturnsEmptyIssues() {
+    mockResponse(200, BinaryCodec.MEDIA_TYPE, new byte[0]);
+
+    var complete = analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add);
+
+    assertThat(complete).isFalse();
+    assertThat(result).isEmpty();
+    assertThat(logTester.logs(LoggerLevel.WARN)).contains("No body received from the server.");
+  }
+
+  @Test
+  void analyze_truncatedBinaryResponse_throws() {
+    var body = binaryResponse("S100");
+    mockResponse(200, BinaryCodec.MEDIA_TYPE, Arrays.copyOf(body, body.length - 1));
+
+    assertThrows(IllegalStateException.class, () -> analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add));
+
+    assertThat(result).hasSize(1);
+  }
+
+  @Test
+  void analyze_streamingBinaryResponse_decodesIssues() {
+    when(serverCapabilities.isAnalyzeStreamSupported()).thenReturn(true);
+    mockStreamResponse(200, BinaryCodec.MEDIA_TYPE + "; v=1", binaryResponse("S100", "S101", "S102"));
+
+    analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add);
+
+    assertThat(result).extracting(RoslynIssue::getRuleId).containsExactly("S100", "S101", "S102");
+    verify(serverCapabilities).setBinaryFormatSupported();
+    verify(httpClientHandler, never()).sendAnalyzeRequestAsync(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  void analyze_jsonResponse_doesNotRememberBinarySupport() {
+    mockResponseWithOneIssue(200);
+
+    analysisRequestHandler.analyze(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add);
+
+    verify(serverCapabilities, never()).setBinaryFormatSupported();
+  }
+
+  @Test
+  void analyzeAsync_returnsBeforeTheResponseIsReceivedAndPassesIssuesOnAnotherThread() {
+    var pendingResponse = new CompletableFuture<HttpResponse<InputStream>>();
+    when(httpClientHandler.sendAnalyzeRequestAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId)).thenReturn(pendingResponse);
+    var sinkThreads = new ArrayList<Thread>();
+
+    var analysis = analysisRequestHandler.analyzeAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, issue -> {
+      sinkThreads.add(Thread.currentThread());
+      result.add(issue);
+    });
+
+    assertThat(analysis).isNotDone();
+    pendingResponse.complete(mockHttpResponse(200, HttpClientHandler.JSON_CONTENT_TYPE, "{\"RoslynIssues\":[{\"RuleId\":\"S100\"}]}".getBytes(StandardCharsets.UTF_8)));
+    analysis.join();
+    assertThat(result).extracting(RoslynIssue::getRuleId).containsExactly("S100");
+    assertThat(sinkThreads).singleElement().isNotSameAs(Thread.currentThread());
+  }
+
+  @Test
+  void analyzeAsync_cancelled_cancelsTheRequestInFlight() {
+    var pendingResponse = new CompletableFuture<HttpResponse<InputStream>>();
+    when(httpClientHandler.sendAnalyzeRequestAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId)).thenReturn(pendingResponse);
+
+    analysisRequestHandler.analyzeAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add).cancel(true);
+
+    assertThat(pendingResponse).isCancelled();
+  }
+
+  @Test
+  void analyzeAsync_timedOut_cancelsTheStreamingRequestInFlight() {
+    when(serverCapabilities.isAnalyzeStreamSupported()).thenReturn(true);
+    var pendingResponse = new CompletableFuture<HttpResponse<InputStream>>();
+    when(httpClientHandler.sendAnalyzeStreamRequestAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId)).thenReturn(pendingResponse);
+
+    var analysis = analysisRequestHandler.analyzeAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add)
+      .orTimeout(10, TimeUnit.MILLISECONDS);
+    var thrown = assertThrows(CompletionException.class, analysis::join);
+
+    assertThat(thrown).hasCauseInstanceOf(TimeoutException.class);
+    assertThat(pendingResponse).isCancelled();
+  }
+
+  @Test
+  void analyzeAsync_cancelledWhileReadingTheResponse_closesTheBody() throws InterruptedException {
+    var readingStarted = new CountDownLatch(1);
+    var bodyClosed = new CountDownLatch(1);
+    var body = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        readingStarted.countDown();
+        try {
+          bodyClosed.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        throw new IOException("closed");
+      }
+
+      @Override
+      public void close() {
+        bodyClosed.countDown();
+      }
+    };
+    var response = mockHttpResponse(200, HttpClientHandler.JSON_CONTENT_TYPE, new byte[0]);
+    when(response.body()).thenReturn(body);
+    when(httpClientHandler.sendAnalyzeRequestAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId))
+      .thenReturn(CompletableFuture.completedFuture(response));
+
+    var analysis = analysisRequestHandler.analyzeAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId, result::add);
+    assertThat(readingStarted.await(5, TimeUnit.SECONDS)).isTrue();
+    analysis.cancel(true);
+
+    assertThat(bodyClosed.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
   @Test
   void cancelAnalysis_shouldSendCancelRequest() {
     HttpResponse<Void> mockResponse = mock(HttpResponse.class);
@@ -142,14 +399,45 @@ class HttpAnalysisRequestHandlerTests {
     assertThat(logTester.logs(LoggerLevel.ERROR)).contains("Response from cancel request is 404.");
   }
 
-  private void mockResponseWithOneIssue(int statusCode) throws IOException, InterruptedException {
+  private void mockResponseWithOneIssue(int statusCode) {
     mockResponse(statusCode, "{\"RoslynIssues\":[{\"RuleId\":\"S100\"}]}");
   }
 
-  private void mockResponse(int statusCode, String body) throws IOException, InterruptedException {
-    var mockResponse = mock(HttpResponse.class);
+  private void mockStreamResponse(int statusCode, String body) {
+    mockStreamResponse(statusCode, HttpClientHandler.JSON_CONTENT_TYPE, body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void mockStreamResponse(int statusCode, String contentType, byte[] body) {
+    var mockResponse = mockHttpResponse(statusCode, contentType, body);
+    when(httpClientHandler.sendAnalyzeStreamRequestAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId)).thenReturn(CompletableFuture.completedFuture(mockResponse));
+  }
+
+  private void mockResponse(int statusCode, String body) {
+    mockResponse(statusCode, HttpClientHandler.JSON_CONTENT_TYPE, body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void mockResponse(int statusCode, String contentType, byte[] body) {
+    var mockResponse = mockHttpResponse(statusCode, contentType, body);
+    when(httpClientHandler.sendAnalyzeRequestAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId)).thenReturn(CompletableFuture.completedFuture(mockResponse));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static HttpResponse<InputStream> mockHttpResponse(int statusCode, String contentType, byte[] body) {
+    HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
     when(mockResponse.statusCode()).thenReturn(statusCode);
-    when(mockResponse.body()).thenReturn(body);
-    when(httpClientHandler.sendAnalyzeRequest(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId)).thenReturn(mockResponse);
+    when(mockResponse.headers()).thenReturn(HttpHeaders.of(Map.of("Content-Type", List.of(contentType)), (name, value) -> true));
+    when(mockResponse.body()).thenReturn(new ByteArrayInputStream(body));
+    return mockResponse;
+  }
+
+  private static byte[] binaryResponse(String... ruleIds) throws IOException {
+    var fileUri = URI.create("file:///C:/project/src/File1.cs");
+    var issues = new ArrayList<RoslynIssue>();
+    for (var ruleId : ruleIds) {
+      issues.add(new RoslynIssue(ruleId, new RoslynIssueLocation(fileUri, "message", new RoslynIssueTextRange(1, 1, 0, 5)), List.of(), List.of()));
+    }
+    var output = new ByteArrayOutputStream();
+    new BinaryCodec().writeAnalysisResponse(output, new AnalysisResponseDto(issues));
+    return output.toByteArray();
   }
 }
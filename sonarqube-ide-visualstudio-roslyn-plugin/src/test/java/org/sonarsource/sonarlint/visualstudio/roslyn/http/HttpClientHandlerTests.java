@@ -19,14 +19,24 @@
  */
 package org.sonarsource.sonarlint.visualstudio.roslyn.http;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -34,12 +44,16 @@ import org.sonar.api.batch.rule.ActiveRule;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.config.Settings;
 import org.sonar.api.rule.RuleKey;
+import org.sonarsource.sonarlint.visualstudio.roslyn.ConfigurationSnapshotProvider;
 import org.sonarsource.sonarlint.visualstudio.roslyn.SqvsRoslynPluginPropertyDefinitions;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -47,6 +61,8 @@ class HttpClientHandlerTests {
   private SensorContext sensorContext;
   private JsonRequestBuilder jsonRequestBuilder;
   private HttpClient httpClient;
+  private ServerCapabilities serverCapabilities;
+  private AnalysisSession analysisSession;
   private HttpClientHandler underTest;
 
   @BeforeEach
@@ -54,12 +70,17 @@ class HttpClientHandlerTests {
     sensorContext = mock(SensorContext.class);
     mockSettings("60000", "myToken");
     jsonRequestBuilder = mock(JsonRequestBuilder.class);
-    when(jsonRequestBuilder.buildAnalyzeBody(any(), any(), any(), any(), any())).thenReturn("");
+    when(jsonRequestBuilder.buildAnalyzeBodyChunks(any(), any(), any(), any(), any())).thenReturn(List.of());
     when(jsonRequestBuilder.buildCancelBody(any())).thenReturn("");
     HttpClientProvider httpClientProvider = mock(HttpClientProvider.class);
     httpClient = mock(HttpClient.class);
     when(httpClientProvider.getHttpClient()).thenReturn(httpClient);
-    underTest = new HttpClientHandler(sensorContext, jsonRequestBuilder, httpClientProvider);
+    serverCapabilities = new ServerCapabilities();
+    when(jsonRequestBuilder.buildSessionBody(any(), any(), any())).thenReturn("{}");
+    analysisSession = new AnalysisSession();
+    mockSendResponses(200);
+    underTest = new HttpClientHandler(sensorContext, jsonRequestBuilder, new JsonCodec(), new BinaryCodec(), httpClientProvider, serverCapabilities, analysisSession,
+      new ConfigurationSnapshotProvider());
   }
 
   @Test
@@ -74,7 +95,26 @@ class HttpClientHandlerTests {
   }
 
   @Test
-  void sendAnalyzeRequest_callsSerializerWithExpectedParameters() throws IOException, InterruptedException {
+  void createRequest_severalRequests_readTheSettingsOnlyOnce() {
+    underTest.createRequest("", "analyze");
+    underTest.createRequest("", "cancel");
+
+    verify(sensorContext, times(1)).settings();
+  }
+
+  @Test
+  void createRequest_withBodyPublisher_usesPublisherAsBody() {
+    var bodyPublisher = HttpRequest.BodyPublishers.ofByteArrays(List.of(new byte[] {'{'}, new byte[] {'}'}));
+
+    var result = underTest.createRequest(bodyPublisher, "analyze");
+
+    assertThat(result.bodyPublisher()).containsSame(bodyPublisher);
+    assertThat(result.uri().toString()).hasToString("http://localhost:60000/analyze");
+    assertThat(result.headers().firstValue("Content-Type")).contains("application/json; charset=utf-8");
+  }
+
+  @Test
+  void sendAnalyzeRequest_callsSerializerWithExpectedParameters() {
 
     var fileUris = List.of(
         URI.create("file:///C:/project/src/File1.cs"),
@@ -86,10 +126,279 @@ class HttpClientHandlerTests {
     Collection<ActiveRule> activeRules = List.of(createMockActiveRule("S100"));
     var analysisId = UUID.randomUUID();
 
-    underTest.sendAnalyzeRequest(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+    underTest.sendAnalyzeRequestAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId).join();
+
+    verify(jsonRequestBuilder).buildAnalyzeBodyChunks(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+    verify(httpClient).sendAsync(argThat(httpRequest -> httpRequest.uri().toString().endsWith("/analyze")), any());
+  }
+
+  @Test
+  void sendAnalyzeStreamRequest_callsStreamingEndpoint() {
+    var fileUris = List.of(URI.create("file:///C:/project/src/File1.cs"));
+    Map<String, String> analysisProperties = Map.of();
+    var analyzerInfo = new AnalyzerInfoDto(false, false);
+    Collection<ActiveRule> activeRules = List.of(createMockActiveRule("S100"));
+    var analysisId = UUID.randomUUID();
+
+    underTest.sendAnalyzeStreamRequestAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId).join();
+
+    verify(jsonRequestBuilder).buildAnalyzeBodyChunks(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+    verify(httpClient).sendAsync(argThat(httpRequest -> httpRequest.uri().toString().endsWith("/analyze-stream")), any());
+  }
+
+  @Test
+  void sendAnalyzeRequest_byDefault_sendsJsonAndAcceptsBinary() {
+    underTest.sendAnalyzeRequestAsync(List.of(), List.of(), Map.of(), new AnalyzerInfoDto(false, false), UUID.randomUUID()).join();
+
+    verify(httpClient).sendAsync(argThat(httpRequest -> httpRequest.headers().firstValue("Content-Type").orElseThrow().equals("application/json; charset=utf-8")
+      && httpRequest.headers().firstValue("Accept").orElseThrow().equals("application/x-sqvs-roslyn, application/json;q=0.9")
+      && httpRequest.headers().firstValue("Accept-Encoding").orElseThrow().equals("gzip, deflate")
+      && httpRequest.headers().firstValue("X-Protocol-Version").orElseThrow().equals("4")
+      && httpRequest.headers().firstValue("Content-Encoding").isEmpty()
+      && httpRequest.headers().firstValue("X-Config-Id").isEmpty()), any());
+    verify(jsonRequestBuilder, never()).buildSessionBody(any(), any(), any());
+  }
+
+  @Test
+  void sendAnalyzeRequest_gzipSupportedAndLargeBody_compressesBody() {
+    serverCapabilities.setGzipRequestSupported();
+    when(jsonRequestBuilder.buildAnalyzeBodyChunks(any(), any(), any(), any(), any())).thenReturn(List.of(new byte[HttpClientHandler.COMPRESSION_THRESHOLD + 1]));
+    mockSendResponses(200);
+
+    underTest.sendAnalyzeRequestAsync(List.of(), List.of(), Map.of(), new AnalyzerInfoDto(false, false), UUID.randomUUID()).join();
+
+    verify(httpClient).sendAsync(argThat(httpRequest -> httpRequest.headers().firstValue("Content-Encoding").orElseThrow().equals("gzip")), any());
+  }
+
+  @Test
+  void sendAnalyzeRequest_gzipSupportedAndSmallBody_doesNotCompressBody() {
+    serverCapabilities.setGzipRequestSupported();
+    when(jsonRequestBuilder.buildAnalyzeBodyChunks(any(), any(), any(), any(), any())).thenReturn(List.of(new byte[HttpClientHandler.COMPRESSION_THRESHOLD]));
+    mockSendResponses(200);
+
+    underTest.sendAnalyzeRequestAsync(List.of(), List.of(), Map.of(), new AnalyzerInfoDto(false, false), UUID.randomUUID()).join();
+
+    verify(httpClient).sendAsync(argThat(httpRequest -> httpRequest.headers().firstValue("Content-Encoding").isEmpty()), any());
+  }
+
+  @Test
+  void sendAnalyzeRequest_compressedBodyRejected_fallsBackToUncompressedBodyAndRemembersIt() {
+    serverCapabilities.setGzipRequestSupported();
+    var largeBody = new byte[HttpClientHandler.COMPRESSION_THRESHOLD + 1];
+    when(jsonRequestBuilder.buildAnalyzeBodyChunks(any(), any(), any(), any(), any())).thenReturn(List.of(largeBody));
+    mockSendResponses(415, 200);
+
+    var response = underTest.sendAnalyzeRequestAsync(List.of(), List.of(), Map.of(), new AnalyzerInfoDto(false, false), UUID.randomUUID()).join();
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(serverCapabilities.isGzipRequestSupported()).isFalse();
+    verify(httpClient, times(2)).sendAsync(any(), any());
+    verify(httpClient).sendAsync(argThat(httpRequest -> httpRequest.headers().firstValue("Content-Encoding").isEmpty()), any());
+  }
+
+  @Test
+  void sendAnalyzeRequest_jsonRejected_returnsResponseWithoutRetrying() {
+    mockSendResponses(415);
+
+    var response = underTest.sendAnalyzeRequestAsync(List.of(), List.of(), Map.of(), new AnalyzerInfoDto(false, false), UUID.randomUUID()).join();
+
+    assertThat(response.statusCode()).isEqualTo(415);
+    verify(httpClient).sendAsync(any(), any());
+  }
+
+  @Test
+  void sendAnalyzeRequest_binarySupported_sendsBinaryBody() {
+    serverCapabilities.setBinaryFormatSupported();
+    mockSendResponses(200);
+
+    var response = underTest.sendAnalyzeRequestAsync(List.of(), List.of(), Map.of(), new AnalyzerInfoDto(false, false), UUID.randomUUID()).join();
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    verify(httpClient).sendAsync(argThat(httpRequest -> httpRequest.headers().firstValue("Content-Type").orElseThrow().equals(BinaryCodec.MEDIA_TYPE)), any());
+    verify(jsonRequestBuilder, never()).buildAnalyzeBodyChunks(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  void sendAnalyzeRequest_binaryRejected_fallsBackToJsonAndRemembersIt() {
+    serverCapabilities.setBinaryFormatSupported();
+    mockSendResponses(415, 200);
+
+    var response = underTest.sendAnalyzeRequestAsync(List.of(), List.of(), Map.of(), new AnalyzerInfoDto(false, false), UUID.randomUUID()).join();
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(serverCapabilities.isBinaryRequestSupported()).isFalse();
+    verify(httpClient, times(2)).sendAsync(any(), any());
+    verify(httpClient).sendAsync(argThat(httpRequest -> httpRequest.headers().firstValue("Content-Type").orElseThrow().equals("application/json; charset=utf-8")), any());
+  }
+
+  @Test
+  void sendAnalyzeRequest_sessionSupported_registersConfigurationOnceAndSendsOnlyConfigId() {
+    serverCapabilities.setSessionSupported();
+    mockSendResponses(response(200, "{\"ConfigId\":\"config-1\"}"), response(200, ""), response(200, ""));
+    var fileUris = List.of(URI.create("file:///C:/project/src/File1.cs"));
+    Collection<ActiveRule> activeRules = List.of(createMockActiveRule("S100"));
+    Map<String, String> analysisProperties = Map.of("sonar.cs.disableRazor", "true");
+    var analyzerInfo = new AnalyzerInfoDto(false, false);
+    var analysisId = UUID.randomUUID();
+
+    underTest.sendAnalyzeRequestAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId).join();
+    underTest.sendAnalyzeRequestAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId).join();
 
-    verify(jsonRequestBuilder).buildAnalyzeBody(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
-    verify(httpClient).send(argThat(httpRequest -> httpRequest.uri().toString().endsWith("/analyze")), any());
+    verify(jsonRequestBuilder).buildSessionBody(activeRules, analysisProperties, analyzerInfo);
+    verify(httpClient).sendAsync(argThat(httpRequest -> httpRequest.uri().toString().endsWith("/session")), any());
+    verify(httpClient, times(2)).sendAsync(argThat(httpRequest -> httpRequest.uri().toString().endsWith("/analyze")
+      && httpRequest.headers().firstValue("X-Config-Id").orElseThrow().equals("config-1")), any());
+    verify(jsonRequestBuilder, times(2)).buildAnalyzeBodyChunks(fileUris, null, null, null, analysisId);
+  }
+
+  @Test
+  void sendAnalyzeRequest_concurrentBatches_registerTheConfigurationOnce() {
+    serverCapabilities.setSessionSupported();
+    var sessionResponse = new CompletableFuture<HttpResponse<InputStream>>();
+    var analyzeResponse = response(200, "");
+    when(httpClient.<InputStream>sendAsync(any(), any())).thenAnswer(invocation -> invocation.<HttpRequest>getArgument(0).uri().toString().endsWith("/session")
+      ? sessionResponse
+      : CompletableFuture.completedFuture(analyzeResponse));
+    Collection<ActiveRule> activeRules = List.of(createMockActiveRule("S100"));
+    var analyzerInfo = new AnalyzerInfoDto(false, false);
+    var analysisId = UUID.randomUUID();
+
+    var firstBatch = underTest.sendAnalyzeRequestAsync(List.of(URI.create("file:///C:/project/src/File1.cs")), activeRules, Map.of(), analyzerInfo, analysisId);
+    var secondBatch = underTest.sendAnalyzeRequestAsync(List.of(URI.create("file:///C:/project/src/File2.cs")), activeRules, Map.of(), analyzerInfo, analysisId);
+    sessionResponse.complete(response(200, "{\"ConfigId\":\"config-1\"}"));
+
+    assertThat(firstBatch.join()).isSameAs(analyzeResponse);
+    assertThat(secondBatch.join()).isSameAs(analyzeResponse);
+    verify(httpClient).sendAsync(argThat(httpRequest -> httpRequest.uri().toString().endsWith("/session")), any());
+    verify(httpClient, times(2)).sendAsync(argThat(httpRequest -> httpRequest.uri().toString().endsWith("/analyze")
+      && httpRequest.headers().firstValue("X-Config-Id").orElseThrow().equals("config-1")), any());
+  }
+
+  @Test
+  void sendAnalyzeRequest_configurationChanged_registersItAgain() {
+    serverCapabilities.setSessionSupported();
+    mockSendResponses(response(200, "{\"ConfigId\":\"config-1\"}"), response(200, ""), response(200, "{\"ConfigId\":\"config-2\"}"), response(200, ""));
+    Collection<ActiveRule> activeRules = List.of(createMockActiveRule("S100"));
+    var analyzerInfo = new AnalyzerInfoDto(false, false);
+
+    underTest.sendAnalyzeRequestAsync(List.of(), activeRules, Map.of(), analyzerInfo, UUID.randomUUID()).join();
+    underTest.sendAnalyzeRequestAsync(List.of(), activeRules, Map.of("sonar.cs.disableRazor", "true"), analyzerInfo, UUID.randomUUID()).join();
+
+    verify(httpClient, times(2)).sendAsync(argThat(httpRequest -> httpRequest.uri().toString().endsWith("/session")), any());
+    verify(httpClient).sendAsync(argThat(httpRequest -> httpRequest.headers().firstValue("X-Config-Id").orElse("").equals("config-2")), any());
+  }
+
+  @Test
+  void sendAnalyzeRequest_unknownConfig_registersConfigurationAgainAndRetries() {
+    serverCapabilities.setSessionSupported();
+    mockSendResponses(response(200, "{\"ConfigId\":\"config-1\"}"), response(410, ""), response(200, "{\"ConfigId\":\"config-2\"}"), response(200, ""));
+
+    var response = underTest.sendAnalyzeRequestAsync(List.of(), List.of(), Map.of(), new AnalyzerInfoDto(false, false), UUID.randomUUID()).join();
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(serverCapabilities.isSessionSupported()).isTrue();
+    verify(httpClient, times(4)).sendAsync(any(), any());
+    verify(httpClient).sendAsync(argThat(httpRequest -> httpRequest.uri().toString().endsWith("/analyze")
+      && httpRequest.headers().firstValue("X-Config-Id").orElseThrow().equals("config-2")), any());
+  }
+
+  @Test
+  void sendAnalyzeRequest_unknownConfigTwice_sendsConfigurationWithRequestAndRemembersIt() {
+    serverCapabilities.setSessionSupported();
+    mockSendResponses(response(200, "{\"ConfigId\":\"config-1\"}"), response(410, ""), response(200, "{\"ConfigId\":\"config-2\"}"), response(410, ""),
+      response(200, ""));
+    var fileUris = List.of(URI.create("file:///C:/project/src/File1.cs"));
+    Collection<ActiveRule> activeRules = List.of(createMockActiveRule("S100"));
+    Map<String, String> analysisProperties = Map.of();
+    var analyzerInfo = new AnalyzerInfoDto(false, false);
+    var analysisId = UUID.randomUUID();
+
+    var response = underTest.sendAnalyzeRequestAsync(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId).join();
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(serverCapabilities.isSessionSupported()).isFalse();
+    verify(httpClient, times(5)).sendAsync(any(), any());
+    verify(jsonRequestBuilder).buildAnalyzeBodyChunks(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+  }
+
+  @Test
+  void sendAnalyzeRequest_sessionEndpointNotSupported_sendsConfigurationWithRequestAndRemembersIt() {
+    serverCapabilities.setSessionSupported();
+    mockSendResponses(response(404, ""), response(200, ""));
+    Collection<ActiveRule> activeRules = List.of(createMockActiveRule("S100"));
+    Map<String, String> analysisProperties = Map.of();
+    var analyzerInfo = new AnalyzerInfoDto(false, false);
+    var analysisId = UUID.randomUUID();
+
+    var response = underTest.sendAnalyzeRequestAsync(List.of(), activeRules, analysisProperties, analyzerInfo, analysisId).join();
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(serverCapabilities.isSessionSupported()).isFalse();
+    verify(jsonRequestBuilder).buildAnalyzeBodyChunks(List.of(), activeRules, analysisProperties, analyzerInfo, analysisId);
+    verify(httpClient).sendAsync(argThat(httpRequest -> httpRequest.uri().toString().endsWith("/analyze")
+      && httpRequest.headers().firstValue("X-Config-Id").isEmpty()), any());
+  }
+
+  @Test
+  void sendAnalyzeRequest_sessionRequestFailed_sendsConfigurationWithRequestAndRetriesSessionLater() {
+    serverCapabilities.setSessionSupported();
+    mockSendResponses(response(500, ""), response(200, ""));
+
+    var response = underTest.sendAnalyzeRequestAsync(List.of(), List.of(), Map.of(), new AnalyzerInfoDto(false, false), UUID.randomUUID()).join();
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(serverCapabilities.isSessionSupported()).isTrue();
+    verify(httpClient).sendAsync(argThat(httpRequest -> httpRequest.headers().firstValue("X-Config-Id").isEmpty()
+      && httpRequest.uri().toString().endsWith("/analyze")), any());
+  }
+
+  @Test
+  void sendAnalyzeRequestAsync_returnsBeforeTheResponseIsReceived() {
+    var pendingResponse = new CompletableFuture<HttpResponse<InputStream>>();
+    when(httpClient.<InputStream>sendAsync(any(), any())).thenReturn(pendingResponse);
+
+    var result = underTest.sendAnalyzeRequestAsync(List.of(), List.of(), Map.of(), new AnalyzerInfoDto(false, false), UUID.randomUUID());
+
+    assertThat(result).isNotDone();
+    var response = response(200, "");
+    pendingResponse.complete(response);
+    assertThat(result).isCompletedWithValue(response);
+  }
+
+  @Test
+  void sendAnalyzeRequestAsync_cancelled_cancelsTheRequestInFlight() {
+    var pendingResponse = new CompletableFuture<HttpResponse<InputStream>>();
+    when(httpClient.<InputStream>sendAsync(any(), any())).thenReturn(pendingResponse);
+
+    underTest.sendAnalyzeRequestAsync(List.of(), List.of(), Map.of(), new AnalyzerInfoDto(false, false), UUID.randomUUID()).cancel(true);
+
+    assertThat(pendingResponse).isCancelled();
+  }
+
+  @Test
+  void sendAnalyzeRequestAsync_timedOutWhileRegisteringTheSession_cancelsTheSessionRequest() {
+    serverCapabilities.setSessionSupported();
+    var pendingResponse = new CompletableFuture<HttpResponse<InputStream>>();
+    when(httpClient.<InputStream>sendAsync(any(), any())).thenReturn(pendingResponse);
+
+    var result = underTest.sendAnalyzeRequestAsync(List.of(), List.of(), Map.of(), new AnalyzerInfoDto(false, false), UUID.randomUUID())
+      .orTimeout(10, TimeUnit.MILLISECONDS);
+    var thrown = assertThrows(CompletionException.class, result::join);
+
+    assertThat(thrown).hasCauseInstanceOf(TimeoutException.class);
+    assertThat(pendingResponse).isCancelled();
+    verify(httpClient).sendAsync(argThat(httpRequest -> httpRequest.uri().toString().endsWith("/session")), any());
+    verify(httpClient, never()).sendAsync(argThat(httpRequest -> httpRequest.uri().toString().endsWith("/analyze")), any());
+  }
+
+  @Test
+  void sendAnalyzeRequestAsync_requestFails_completesExceptionally() {
+    when(httpClient.<InputStream>sendAsync(any(), any())).thenReturn(CompletableFuture.failedFuture(new IOException("connection refused")));
+
+    var result = underTest.sendAnalyzeRequestAsync(List.of(), List.of(), Map.of(), new AnalyzerInfoDto(false, false), UUID.randomUUID());
+    var thrown = assertThrows(CompletionException.class, result::join);
+
+    assertThat(thrown).hasCauseInstanceOf(IOException.class).hasMessageContaining("connection refused");
   }
 
   @Test
@@ -102,6 +411,31 @@ class HttpClientHandlerTests {
     verify(httpClient).sendAsync(argThat(httpRequest -> httpRequest.uri().toString().endsWith("/cancel")), any());
   }
 
+  @SuppressWarnings("unchecked")
+  private void mockSendResponses(int... statusCodes) {
+    var responses = new ArrayList<HttpResponse<InputStream>>();
+    for (var statusCode : statusCodes) {
+      responses.add(response(statusCode, ""));
+    }
+    mockSendResponses(responses.toArray(HttpResponse[]::new));
+  }
+
+  @SafeVarargs
+  private void mockSendResponses(HttpResponse<InputStream>... responses) {
+    var stubbing = when(httpClient.<InputStream>sendAsync(any(), any()));
+    for (var response : responses) {
+      stubbing = stubbing.thenReturn(CompletableFuture.completedFuture(response));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static HttpResponse<InputStream> response(int statusCode, String body) {
+    HttpResponse<InputStream> response = mock(HttpResponse.class);
+    when(response.statusCode()).thenReturn(statusCode);
+    when(response.body()).thenReturn(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    return response;
+  }
+
   private ActiveRule createMockActiveRule(String ruleId) {
     ActiveRule activeRule = mock(ActiveRule.class);
     RuleKey ruleKey = mock(RuleKey.class);
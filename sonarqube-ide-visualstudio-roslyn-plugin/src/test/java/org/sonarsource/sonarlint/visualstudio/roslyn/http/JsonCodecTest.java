@@ -0,0 +1,210 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssue;
+import org.sonarsource.sonarlint.visualstudio.roslyn.protocol.RoslynIssueLocation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonCodecTest {
+  private static final UUID ANALYSIS_ID = UUID.fromString("ed89f185-c2d6-4d03-aef1-334747e7fbdb");
+  private static final String ISSUE_JSON = """
+    {
+      "RuleId": "csharpsquid:S100",
+      "Unknown": [1, {"Nested": true}],
+      "PrimaryLocation": {
+        "FileUri": "file:///test/file/path.cs",
+        "Message": "Rename <this>",
+        "TextRange": {"StartLine": 10, "EndLine": 15, "StartLineOffset": 5, "EndLineOffset": 20}
+      },
+      "Flows": [
+        {
+          "Locations": [
+            {
+              "FileUri": "file:///flow/file/path.cs",
+              "Message": "Flow message",
+              "TextRange": {"StartLine": 1, "EndLine": 2, "StartLineOffset": 3, "EndLineOffset": null}
+            }
+          ]
+        }
+      ],
+      "QuickFixes": [{"Value": "Quick fix value"}]
+    }
+    """;
+
+  private final JsonCodec underTest = new JsonCodec();
+
+  @Test
+  void toJson_analysisRequest_isIdenticalToGson() {
+    var params = new HashMap<String, String>();
+    params.put("format", "^[A-Z]'");
+    params.put("nullValue", null);
+    var request = new AnalysisRequestDto(
+      List.of(URI.create("file:///C:/project/src/File1.cs"), Path.of("d\u00e9j\u00e0 vu.cs").toUri()),
+      List.of(new ActiveRuleDto("csharpsquid:S100", params), new ActiveRuleDto("vbnet:S101", Map.of())),
+      Map.of("sonar.cs.disableRazor", "<true>"),
+      new AnalyzerInfoDto(true, false),
+      ANALYSIS_ID);
+
+    assertThat(underTest.toJson(request)).isEqualTo(new Gson().toJson(request));
+  }
+
+  @Test
+  void toJson_analysisRequestWithNulls_isIdenticalToGson() {
+    var request = new AnalysisRequestDto(List.of(), List.of(), null, null, null);
+
+    assertThat(underTest.toJson(request)).isEqualTo(new Gson().toJson(request));
+  }
+
+  @Test
+  void toJson_cancellationRequest_isIdenticalToGson() {
+    var request = new CancellationRequestDto(ANALYSIS_ID);
+
+    assertThat(underTest.toJson(request)).isEqualTo("{\"AnalysisId\":\"ed89f185-c2d6-4d03-aef1-334747e7fbdb\"}");
+  }
+
+  @Test
+  void readSessionResponse_readsConfigIdAndSkipsUnknownOnes() throws IOException {
+    var result = underTest.readSessionResponse(underTest.newJsonReader(new StringReader("{\"Unknown\":[1],\"ConfigId\":\"config-1\"}")));
+
+    assertThat(result).isEqualTo(new SessionResponseDto("config-1"));
+  }
+
+  @Test
+  void readAnalysisResponse_readsAllFieldsAndSkipsUnknownOnes() throws IOException {
+    var roslynIssue = readIssue(ISSUE_JSON);
+
+    assertThat(roslynIssue.getRuleId()).isEqualTo("csharpsquid:S100");
+    assertThat(roslynIssue.getPrimaryLocation().getFileUri()).hasToString("file:///test/file/path.cs");
+    assertThat(roslynIssue.getPrimaryLocation().getMessage()).isEqualTo("Rename <this>");
+    assertThat(roslynIssue.getPrimaryLocation().getTextRange().getStartLine()).isEqualTo(10);
+    assertThat(roslynIssue.getPrimaryLocation().getTextRange().getEndLine()).isEqualTo(15);
+    assertThat(roslynIssue.getPrimaryLocation().getTextRange().getStartLineOffset()).isEqualTo(5);
+    assertThat(roslynIssue.getPrimaryLocation().getTextRange().getEndLineOffset()).isEqualTo(20);
+    var flowLocation = roslynIssue.getFlows().get(0).getLocations().get(0);
+    assertThat(flowLocation.getFileUri()).hasToString("file:///flow/file/path.cs");
+    assertThat(flowLocation.getTextRange().getEndLineOffset()).isZero();
+    assertThat(roslynIssue.getQuickFixes()).singleElement().extracting("value").isEqualTo("Quick fix value");
+  }
+
+  @Test
+  void readAnalysisResponse_writtenByGson_readsTheSameIssues() throws IOException {
+    var roslynIssue = new Gson().fromJson(ISSUE_JSON, RoslynIssue.class);
+
+    var result = readIssues(new Gson().toJson(new AnalysisResponseDto(List.of(roslynIssue))));
+
+    assertThat(result).singleElement().usingRecursiveComparison().isEqualTo(roslynIssue);
+  }
+
+  @Test
+  void readAnalysisResponse_issueWithMissingFields_behavesLikeGson() throws IOException {
+    var roslynIssue = readIssue("{\"RuleId\":\"S100\"}");
+
+    assertThat(roslynIssue.getRuleId()).isEqualTo("S100");
+    assertThat(roslynIssue.getPrimaryLocation()).isNull();
+    assertThat(roslynIssue.getFlows()).isNull();
+    assertThat(roslynIssue.getQuickFixes()).isNull();
+  }
+
+  @Test
+  void readAnalysisResponse_sameFileUriInConsecutiveLocations_isParsedOnce() throws IOException {
+    var issueJson = "{\"RuleId\":\"S1\",\"PrimaryLocation\":{\"FileUri\":\"file:///C:/project/src/File1.cs\"}}";
+    var json = "{\"RoslynIssues\":[" + issueJson + "," + issueJson + "]}";
+
+    var issues = readIssues(json);
+
+    assertThat(issues).hasSize(2);
+    assertThat(issues.get(0).getPrimaryLocation().getFileUri())
+      .hasToString("file:///C:/project/src/File1.cs")
+      .isSameAs(issues.get(1).getPrimaryLocation().getFileUri());
+  }
+
+  @Test
+  void readAnalysisResponse_withSink_passesEachIssue() throws IOException {
+    var json = "{\"Other\":null,\"RoslynIssues\":[{\"RuleId\":\"S1\"},{\"RuleId\":\"S2\"}]}";
+    var ruleIds = new ArrayList<String>();
+
+    underTest.readAnalysisResponse(underTest.newJsonReader(new StringReader(json)), issue -> ruleIds.add(issue.getRuleId()));
+
+    assertThat(ruleIds).containsExactly("S1", "S2");
+  }
+
+  @Test
+  void readAnalysisResponse_withSink_skipsIssuesOfRejectedRules() throws IOException {
+    var json = "{\"RoslynIssues\":[" + ISSUE_JSON + ",{\"PrimaryLocation\":{\"Message\":\"before the rule\"},\"RuleId\":\"S2\"},null,{\"RuleId\":\"S3\",\"Flows\":[]}]}";
+    var checkedRuleIds = new ArrayList<String>();
+    var received = new ArrayList<RoslynIssue>();
+
+    underTest.readAnalysisResponse(underTest.newJsonReader(new StringReader(json)), new RoslynIssueSink() {
+      @Override
+      public boolean acceptsRule(String ruleId) {
+        checkedRuleIds.add(ruleId);
+        return !"csharpsquid:S100".equals(ruleId);
+      }
+
+      @Override
+      public void accept(RoslynIssue roslynIssue) {
+        received.add(roslynIssue);
+      }
+    });
+
+    assertThat(checkedRuleIds).containsExactly("csharpsquid:S100", "S2", "S3");
+    assertThat(received).hasSize(3);
+    assertThat(received.get(0).getRuleId()).isEqualTo("S2");
+    assertThat(received.get(0).getPrimaryLocation().getMessage()).isEqualTo("before the rule");
+    assertThat(received.get(1)).isNull();
+    assertThat(received.get(2).getRuleId()).isEqualTo("S3");
+  }
+
+  @Test
+  void readAnalysisResponse_withFileIds_readsFileIdsInsteadOfUris() throws IOException {
+    var json = "{\"RuleId\":\"S1\",\"PrimaryLocation\":{\"FileId\":3,\"Message\":\"m\"},\"Flows\":[{\"Locations\":[{\"FileId\":0},{\"FileId\":null}]}]}";
+
+    var roslynIssue = readIssue(json);
+
+    assertThat(roslynIssue.getPrimaryLocation().getFileId()).isEqualTo(3);
+    assertThat(roslynIssue.getPrimaryLocation().getFileUri()).isNull();
+    assertThat(roslynIssue.getFlows().get(0).getLocations()).extracting(RoslynIssueLocation::getFileId).containsExactly(0, null);
+  }
+
+  private RoslynIssue readIssue(String issueJson) throws IOException {
+    var issues = readIssues("{\"RoslynIssues\":[" + issueJson + "]}");
+    assertThat(issues).hasSize(1);
+    return issues.get(0);
+  }
+
+  private List<RoslynIssue> readIssues(String json) throws IOException {
+    var issues = new ArrayList<RoslynIssue>();
+    underTest.readAnalysisResponse(underTest.newJsonReader(new StringReader(json)), issues::add);
+    return issues;
+  }
+}
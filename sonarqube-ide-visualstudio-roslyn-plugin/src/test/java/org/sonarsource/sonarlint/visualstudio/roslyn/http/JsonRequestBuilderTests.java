@@ -21,7 +21,9 @@ package org.sonarsource.sonarlint.visualstudio.roslyn.http;
 
 import com.google.gson.JsonParser;
 
+import java.io.ByteArrayOutputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -50,7 +52,7 @@ class JsonRequestBuilderTests {
 
   @BeforeEach
   void init() {
-    jsonParser = new JsonRequestBuilder();
+    jsonParser = new JsonRequestBuilder(new JsonCodec());
   }
 
   @Test
@@ -61,7 +63,7 @@ class JsonRequestBuilderTests {
     var analyzerInfo = new AnalyzerInfoDto(false, false);
     var expected = "{\"FileUris\":[],\"ActiveRules\":[],\"AnalysisProperties\":{},\"AnalyzerInfo\":{\"ShouldUseCsharpEnterprise\":false,\"ShouldUseVbEnterprise\":false},\"AnalysisId\":\"ed89f185-c2d6-4d03-aef1-334747e7fbdb\"}";
 
-    var result = jsonParser.buildAnalyzeBody(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+    var result = buildAnalyzeBody(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
 
     assertThat(result).isEqualTo(expected);
   }
@@ -78,7 +80,7 @@ class JsonRequestBuilderTests {
     var analyzerInfo = new AnalyzerInfoDto(true, false);
     var expected = "{\"FileUris\":[\"file:///C:/project/src/File1.cs\",\"file://localhost/$c/project/src/File2.cs\"],\"ActiveRules\":[{\"RuleId\":\"csharpsquid:S100\",\"Parameters\":{}},{\"RuleId\":\"vbnet:S101\",\"Parameters\":{}}],\"AnalysisProperties\":{\"sonar.vb.disableRazor\":\"false\"},\"AnalyzerInfo\":{\"ShouldUseCsharpEnterprise\":true,\"ShouldUseVbEnterprise\":false},\"AnalysisId\":\"ed89f185-c2d6-4d03-aef1-334747e7fbdb\"}";
 
-    var result = jsonParser.buildAnalyzeBody(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+    var result = buildAnalyzeBody(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
 
     assertThat(result).isEqualTo(expected);
   }
@@ -91,7 +93,7 @@ class JsonRequestBuilderTests {
     var analyzerInfo = new AnalyzerInfoDto(false, true);
     var expected = "{\"FileUris\":[],\"ActiveRules\":[{\"RuleId\":\"csharpsquid:S100\",\"Parameters\":{}}],\"AnalysisProperties\":{},\"AnalyzerInfo\":{\"ShouldUseCsharpEnterprise\":false,\"ShouldUseVbEnterprise\":true},\"AnalysisId\":\"ed89f185-c2d6-4d03-aef1-334747e7fbdb\"}";
 
-    var result = jsonParser.buildAnalyzeBody(fileUris, List.of(activeRule), analysisProperties, analyzerInfo, analysisId);
+    var result = buildAnalyzeBody(fileUris, List.of(activeRule), analysisProperties, analyzerInfo, analysisId);
 
     assertThat(result).isEqualTo(expected);
   }
@@ -109,7 +111,7 @@ class JsonRequestBuilderTests {
     var analyzerInfo = new AnalyzerInfoDto(true, true);
     var expected = "{\"FileUris\":[],\"ActiveRules\":[{\"RuleId\":\"csharpsquid:S1003\",\"Parameters\":{\"maximum\":\"10\",\"isRegularExpression\":\"true\"}},{\"RuleId\":\"vbnet:S1066\",\"Parameters\":{\"maximum\":\"10\",\"isRegularExpression\":\"true\"}}],\"AnalysisProperties\":{},\"AnalyzerInfo\":{\"ShouldUseCsharpEnterprise\":true,\"ShouldUseVbEnterprise\":true},\"AnalysisId\":\"ed89f185-c2d6-4d03-aef1-334747e7fbdb\"}";
 
-    var result = jsonParser.buildAnalyzeBody(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+    var result = buildAnalyzeBody(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
 
     assertThat(result).isEqualTo(expected);
   }
@@ -121,7 +123,7 @@ class JsonRequestBuilderTests {
     Map<String, String> analysisProperties = null;
     AnalyzerInfoDto analyzerInfo = null;
 
-    assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> jsonParser.buildAnalyzeBody(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId));
+    assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> buildAnalyzeBody(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId));
   }
 
   @Test
@@ -140,7 +142,7 @@ class JsonRequestBuilderTests {
     var analyzerInfo = new AnalyzerInfoDto(false, false);
     var expected = "{\"FileUris\":[\"file:///C:/project/src/file%20with%20spaces.cs\",\"file:///C:/project/src/file(with)braces\\u0027and\\u0027quotes.cs\",\"file://server-name/share-name/path/to/uncfile.cs\"],\"ActiveRules\":[],\"AnalysisProperties\":{},\"AnalyzerInfo\":{\"ShouldUseCsharpEnterprise\":false,\"ShouldUseVbEnterprise\":false},\"AnalysisId\":\"ed89f185-c2d6-4d03-aef1-334747e7fbdb\"}";
 
-    var result = jsonParser.buildAnalyzeBody(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+    var result = buildAnalyzeBody(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
 
     assertThat(result).isEqualTo(expected);
     var serializedFileUris = JsonParser.parseString(result).getAsJsonObject().get("FileUris").getAsJsonArray();
@@ -162,11 +164,21 @@ class JsonRequestBuilderTests {
     var analysisProperties = Map.<String, String>of();
     var analyzerInfo = new AnalyzerInfoDto(false, false);
 
-    var result = jsonParser.buildAnalyzeBody(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
+    var result = buildAnalyzeBody(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId);
 
     assertThat(result).contains("file%20with%20spaces.cs", "file(with)braces\\u0027and\\u0027quotes.cs");
   }
 
+  @Test
+  void buildSessionBody_sendsTheConfigurationWithoutFilesNorAnalysisId() {
+    var activeRules = List.of(createMockActiveRule("S1003", CSharpLanguage.REPOSITORY_KEY, Map.of("maximum", "10")));
+    var expected = "{\"ActiveRules\":[{\"RuleId\":\"csharpsquid:S1003\",\"Parameters\":{\"maximum\":\"10\"}}],\"AnalysisProperties\":{\"sonar.cs.disableRazor\":\"true\"},\"AnalyzerInfo\":{\"ShouldUseCsharpEnterprise\":false,\"ShouldUseVbEnterprise\":true}}";
+
+    var result = jsonParser.buildSessionBody(activeRules, Map.of("sonar.cs.disableRazor", "true"), new AnalyzerInfoDto(false, true));
+
+    assertThat(result).isEqualTo(expected);
+  }
+
   @Test
   void buildCancelBody_withValidAnalysisId_shouldReturnValidJson() {
     var expected = "{\"AnalysisId\":\"ed89f185-c2d6-4d03-aef1-334747e7fbdb\"}";
@@ -176,6 +188,13 @@ class JsonRequestBuilderTests {
     assertThat(result).isEqualTo(expected);
   }
 
+  private String buildAnalyzeBody(Collection<URI> fileUris, Collection<ActiveRule> activeRules, Map<String, String> analysisProperties, AnalyzerInfoDto analyzerInfo,
+    java.util.UUID analysisId) {
+    var body = new ByteArrayOutputStream();
+    jsonParser.buildAnalyzeBodyChunks(fileUris, activeRules, analysisProperties, analyzerInfo, analysisId).forEach(body::writeBytes);
+    return body.toString(StandardCharsets.UTF_8);
+  }
+
   private ActiveRule createMockActiveRule(String ruleKey, String repositoryKey, Map<String, String> params) {
     ActiveRule activeRule = mock(ActiveRule.class);
     RuleKey rule = mock(RuleKey.class);
@@ -0,0 +1,91 @@
+/*
+ * SonarQube Ide VisualStudio Roslyn Plugin
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.visualstudio.roslyn.http;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServerCapabilitiesTest {
+
+  @Test
+  void analyzeStream_isSupportedOnceServerAnsweredWithItsProtocolVersionUntilItRejectsIt() {
+    var underTest = new ServerCapabilities();
+
+    assertThat(underTest.isAnalyzeStreamSupported()).isFalse();
+
+    underTest.setAnalyzeStreamSupported();
+
+    assertThat(underTest.isAnalyzeStreamSupported()).isTrue();
+
+    underTest.setAnalyzeStreamUnsupported();
+    underTest.setAnalyzeStreamSupported();
+
+    assertThat(underTest.isAnalyzeStreamSupported()).isFalse();
+  }
+
+  @Test
+  void binaryRequest_isSupportedOnceServerAnsweredInBinaryUntilItRejectsOne() {
+    var underTest = new ServerCapabilities();
+
+    assertThat(underTest.isBinaryRequestSupported()).isFalse();
+
+    underTest.setBinaryFormatSupported();
+
+    assertThat(underTest.isBinaryRequestSupported()).isTrue();
+
+    underTest.setBinaryRequestUnsupported();
+    underTest.setBinaryFormatSupported();
+
+    assertThat(underTest.isBinaryRequestSupported()).isFalse();
+  }
+
+  @Test
+  void gzipRequest_isSupportedOnceServerAdvertisedItUntilItRejectsOne() {
+    var underTest = new ServerCapabilities();
+
+    assertThat(underTest.isGzipRequestSupported()).isFalse();
+
+    underTest.setGzipRequestSupported();
+
+    assertThat(underTest.isGzipRequestSupported()).isTrue();
+
+    underTest.setGzipRequestUnsupported();
+    underTest.setGzipRequestSupported();
+
+    assertThat(underTest.isGzipRequestSupported()).isFalse();
+  }
+
+  @Test
+  void session_isSupportedOnceServerAnsweredWithItsProtocolVersionUntilItRejectsOne() {
+    var underTest = new ServerCapabilities();
+
+    assertThat(underTest.isSessionSupported()).isFalse();
+
+    underTest.setSessionSupported();
+
+    assertThat(underTest.isSessionSupported()).isTrue();
+
+    underTest.setSessionUnsupported();
+    underTest.setSessionSupported();
+
+    assertThat(underTest.isSessionSupported()).isFalse();
+  }
+}